@@ -21,6 +21,8 @@
 package net.sf.regain;
 
 import java.io.BufferedReader;
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -64,6 +66,7 @@ import org.apache.lucene.analysis.de.GermanAnalyzer;
 import org.apache.lucene.analysis.en.EnglishAnalyzer;
 import org.apache.lucene.analysis.fr.FrenchAnalyzer;
 import org.apache.lucene.analysis.it.ItalianAnalyzer;
+import org.apache.lucene.analysis.reverse.ReverseStringFilter;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
@@ -84,6 +87,12 @@ public class RegainToolkit {
   /** The field name where the access control groups are stored */
   public static final String FIELD_ACCESS_CONTROL_GROUPS = "groups";
 
+  /**
+   * The suffix of the fields that hold the reversed terms of another field.
+   * See {@link #getReversedFieldName(String)}.
+   */
+  public static final String REVERSED_FIELD_SUFFIX = "_reversed";
+
   /**
    * Gibt an, ob die Worte, die der Analyzer identifiziert ausgegeben werden
    * sollen.
@@ -260,6 +269,43 @@ public class RegainToolkit {
     copyDirectory(fromDir, toDir, copySubDirs, null);
   }
 
+  /**
+   * Writes a String to a data output. Unlike
+   * {@link DataOutput#writeUTF(String)} this works for Strings of any length
+   * and for <code>null</code>.
+   *
+   * @param out The output to write to.
+   * @param text The String to write. May be <code>null</code>.
+   * @throws IOException If writing failed.
+   * @see #readString(DataInput)
+   */
+  public static void writeString(DataOutput out, String text) throws IOException {
+    if (text == null) {
+      out.writeInt(-1);
+    } else {
+      byte[] bytes = text.getBytes("UTF-8");
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+  }
+
+  /**
+   * Reads a String written by {@link #writeString(DataOutput, String)}.
+   *
+   * @param in The input to read from.
+   * @return The String. May be <code>null</code>.
+   * @throws IOException If reading failed.
+   */
+  public static String readString(DataInput in) throws IOException {
+    int length = in.readInt();
+    if (length == -1) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, "UTF-8");
+  }
+
   /**
    * Reads a String from a stream.
    *
@@ -540,18 +586,21 @@ public class RegainToolkit {
     fieldNameArr = null;
 
     // Read the terms
-    if (!fieldsToReadSet.isEmpty()) {
+    // NOTE: The terms are sorted by field, so we seek to the first term of each
+    //       wanted field and stop at the next field instead of reading all terms
+    for (Map.Entry<String, ArrayList<String>> entry : fieldsToReadSet.entrySet()) {
+      String field = entry.getKey();
+      ArrayList<String> valueList = entry.getValue();
       try {
-        TermEnum termEnum = indexReader.terms();
-        while (termEnum.next()) {
+        TermEnum termEnum = indexReader.terms(new Term(field, ""));
+        try {
           Term term = termEnum.term();
-          String field = term.field();
-
-          ArrayList<String> valueList = fieldsToReadSet.get(field);
-          if (valueList != null) {
-            // This is a value of a wanted field
+          while (term != null && term.field().equals(field)) {
             valueList.add(term.text());
+            term = termEnum.next() ? termEnum.term() : null;
           }
+        } finally {
+          termEnum.close();
         }
       } catch (IOException exc) {
         throw new RegainException("Reading terms from index failed", exc);
@@ -1549,6 +1598,27 @@ public class RegainToolkit {
     }
   }
 
+  /**
+   * Gets the name of the field that holds the reversed terms of a field.
+   *
+   * @param fieldName The name of the field.
+   * @return The name of the field with the reversed terms.
+   */
+  public static String getReversedFieldName(String fieldName) {
+    return fieldName + REVERSED_FIELD_SUFFIX;
+  }
+
+  /**
+   * Reverses a term, so it can be found in a field with reversed terms.
+   * Surrogate pairs are kept intact.
+   *
+   * @param term The term to reverse.
+   * @return The reversed term.
+   */
+  public static String reverseTerm(String term) {
+    return ReverseStringFilter.reverse(getLuceneVersion(), term);
+  }
+
   /**
    * Creates a field identifier for fields with highlighted content. All high-
    * lighted content will be stored in a field named 'highlightedOldfieldname' where
@@ -1605,6 +1675,14 @@ public class RegainToolkit {
      */
     @Override
     public TokenStream tokenStream(String fieldName, Reader reader) {
+      if (fieldName.endsWith(REVERSED_FIELD_SUFFIX)) {
+        // Analyze like the original field, then reverse the terms
+        String originalFieldName = fieldName.substring(0,
+                fieldName.length() - REVERSED_FIELD_SUFFIX.length());
+        return new ReverseStringFilter(getLuceneVersion(),
+                tokenStream(originalFieldName, reader));
+      }
+
       boolean useStemming = true;
       // NOTE: For security reasons we explicitely check for the groups field
       //       and don't use the mUntokenizedFieldNames for this implicitely
@@ -20,6 +20,12 @@
  */
 package net.sf.regain.crawler;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import net.sf.regain.RegainToolkit;
+
 /**
  * Hilfsklasse für den Crawler.
  * <p>
@@ -78,6 +84,42 @@ public class CrawlerJob {
 
 
 
+  /**
+   * Reads a job written by {@link #writeTo(DataOutput)}.
+   *
+   * @param in The input to read the job from.
+   * @return The job.
+   * @throws IOException If reading failed.
+   */
+  public static CrawlerJob readFrom(DataInput in) throws IOException {
+    String url = RegainToolkit.readString(in);
+    String sourceUrl = RegainToolkit.readString(in);
+    String sourceLinkText = RegainToolkit.readString(in);
+    boolean shouldBeParsed = in.readBoolean();
+    boolean shouldBeIndexed = in.readBoolean();
+    return new CrawlerJob(url, sourceUrl, sourceLinkText, shouldBeParsed,
+        shouldBeIndexed);
+  }
+
+
+
+  /**
+   * Writes this job to a data output.
+   *
+   * @param out The output to write the job to.
+   * @throws IOException If writing failed.
+   * @see #readFrom(DataInput)
+   */
+  public void writeTo(DataOutput out) throws IOException {
+    RegainToolkit.writeString(out, mUrl);
+    RegainToolkit.writeString(out, mSourceUrl);
+    RegainToolkit.writeString(out, mSourceLinkText);
+    out.writeBoolean(mShouldBeParsed);
+    out.writeBoolean(mShouldBeIndexed);
+  }
+
+
+
   /**
    * Gibt die URL des zu bearbeitenden Dokuments zurück.
    *
@@ -0,0 +1,457 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.crawler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedList;
+
+import net.sf.regain.RegainException;
+
+/**
+ * The list of the jobs the crawler still has to process.
+ * <p>
+ * Jobs of documents that aren't parsed are taken before jobs of documents
+ * that are parsed. This keeps the job list small as first all documents are
+ * processed, before new documents are added. The jobs of documents that
+ * aren't parsed are taken last-in-first-out, the jobs of documents that are
+ * parsed first-in-first-out.
+ * <p>
+ * Only a limited number of jobs is held in memory. The other jobs are written
+ * to spool files. So the heap use stays flat even for millions of jobs.
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class CrawlerJobQueue {
+
+  /**
+   * The number of jobs that are written to one spool file. At most twice as
+   * many jobs are held in memory for each of the two job lists.
+   */
+  private static final int JOBS_PER_SPOOL_FILE = 10000;
+
+  /** The jobs of documents that aren't parsed. */
+  private JobSpool mUnparsedJobs;
+  /** The jobs of documents that are parsed. */
+  private JobSpool mParsedJobs;
+
+
+  /**
+   * Creates a new, empty CrawlerJobQueue.
+   *
+   * @param spoolDir The directory where to write the spool files. Is created
+   *        if it does not exist.
+   * @throws RegainException If the spool directory could not be created.
+   */
+  public CrawlerJobQueue(File spoolDir) throws RegainException {
+    if (!spoolDir.exists() && !spoolDir.mkdirs()) {
+      throw new RegainException("Creating spool directory failed: "
+          + spoolDir.getAbsolutePath());
+    }
+
+    mUnparsedJobs = new JobSpool(spoolDir, "unparsed", true);
+    mParsedJobs = new JobSpool(spoolDir, "parsed", false);
+  }
+
+
+  /**
+   * Adds a job.
+   *
+   * @param job The job to add.
+   * @throws RegainException If writing a spool file failed.
+   */
+  public void add(CrawlerJob job) throws RegainException {
+    if (job.shouldBeParsed()) {
+      mParsedJobs.add(job);
+    } else {
+      mUnparsedJobs.add(job);
+    }
+  }
+
+
+  /**
+   * Removes the next job.
+   *
+   * @return The next job or <code>null</code> if there are no more jobs.
+   * @throws RegainException If reading a spool file failed.
+   */
+  public CrawlerJob removeFirst() throws RegainException {
+    if (!mUnparsedJobs.isEmpty()) {
+      return mUnparsedJobs.removeFirst();
+    } else if (!mParsedJobs.isEmpty()) {
+      return mParsedJobs.removeFirst();
+    } else {
+      return null;
+    }
+  }
+
+
+  /**
+   * Gets whether there are no jobs.
+   *
+   * @return Whether there are no jobs.
+   */
+  public boolean isEmpty() {
+    return mUnparsedJobs.isEmpty() && mParsedJobs.isEmpty();
+  }
+
+
+  /**
+   * Gets the number of jobs.
+   *
+   * @return The number of jobs.
+   */
+  public int size() {
+    return mUnparsedJobs.size() + mParsedJobs.size();
+  }
+
+
+  /**
+   * Saves all jobs to a file.
+   *
+   * @param file The file to save the jobs to.
+   * @throws RegainException If saving failed.
+   * @see #load(File)
+   */
+  public void save(File file) throws RegainException {
+    DataOutputStream out = null;
+    try {
+      out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+      mUnparsedJobs.writeTo(out);
+      mParsedJobs.writeTo(out);
+      out.close();
+    } catch (IOException exc) {
+      throw new RegainException("Saving crawler jobs to " + file + " failed", exc);
+    } finally {
+      if (out != null) {
+        try { out.close(); } catch (IOException exc) {}
+      }
+    }
+  }
+
+
+  /**
+   * Adds all jobs of a file written by {@link #save(File)}.
+   *
+   * @param file The file to load the jobs from.
+   * @throws RegainException If loading failed.
+   */
+  public void load(File file) throws RegainException {
+    DataInputStream in = null;
+    try {
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+      for (int list = 0; list < 2; list++) {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+          add(CrawlerJob.readFrom(in));
+        }
+      }
+    } catch (IOException exc) {
+      throw new RegainException("Loading crawler jobs from " + file + " failed", exc);
+    } finally {
+      if (in != null) {
+        try { in.close(); } catch (IOException exc) {}
+      }
+    }
+  }
+
+
+  /**
+   * Removes all jobs and deletes the spool files.
+   */
+  public void close() {
+    mUnparsedJobs.close();
+    mParsedJobs.close();
+  }
+
+
+  /**
+   * A first-in-first-out or last-in-first-out list of jobs that writes the
+   * jobs to spool files if there are too many.
+   * <p>
+   * First-in-first-out: The oldest jobs are in mHeadList, then come the spool
+   * files, the newest jobs are in mTailList.
+   * <p>
+   * Last-in-first-out: The newest jobs are in mHeadList, the older ones in the
+   * spool files. The last written spool file is read first. mTailList is not
+   * used.
+   */
+  private static class JobSpool {
+
+    /** The directory where to write the spool files. */
+    private File mSpoolDir;
+    /** The name of the spool. Used as prefix for the spool file names. */
+    private String mName;
+    /** The oldest jobs. The next job is taken from here. */
+    private LinkedList<CrawlerJob> mHeadList;
+    /** The spool files in the order they were written. */
+    private LinkedList<File> mSpoolFileList;
+    /** The newest jobs that were not yet written to a spool file. */
+    private LinkedList<CrawlerJob> mTailList;
+    /** The number of jobs. */
+    private int mSize;
+    /** The number of the next spool file. */
+    private int mNextSpoolFileNumber;
+    /** Whether the newest job is taken first. */
+    private boolean mLastInFirstOut;
+
+
+    /**
+     * Creates a new, empty JobSpool.
+     *
+     * @param spoolDir The directory where to write the spool files.
+     * @param name The name of the spool.
+     * @param lastInFirstOut Whether the newest job should be taken first.
+     */
+    public JobSpool(File spoolDir, String name, boolean lastInFirstOut) {
+      mSpoolDir = spoolDir;
+      mName = name;
+      mLastInFirstOut = lastInFirstOut;
+      mHeadList = new LinkedList<CrawlerJob>();
+      mSpoolFileList = new LinkedList<File>();
+      mTailList = new LinkedList<CrawlerJob>();
+    }
+
+
+    /**
+     * Adds a job.
+     *
+     * @param job The job to add.
+     * @throws RegainException If writing a spool file failed.
+     */
+    public void add(CrawlerJob job) throws RegainException {
+      if (mLastInFirstOut) {
+        mHeadList.addFirst(job);
+        if (mHeadList.size() >= 2 * JOBS_PER_SPOOL_FILE) {
+          // Write the oldest jobs to a spool file
+          LinkedList<CrawlerJob> oldJobs = new LinkedList<CrawlerJob>();
+          for (int i = 0; i < JOBS_PER_SPOOL_FILE; i++) {
+            oldJobs.addFirst(mHeadList.removeLast());
+          }
+          mSpoolFileList.add(writeNextSpoolFile(oldJobs));
+        }
+      } else if (mSpoolFileList.isEmpty() && mTailList.isEmpty()
+          && (mHeadList.size() < JOBS_PER_SPOOL_FILE))
+      {
+        mHeadList.add(job);
+      } else {
+        mTailList.add(job);
+        if (mTailList.size() >= JOBS_PER_SPOOL_FILE) {
+          mSpoolFileList.add(writeNextSpoolFile(mTailList));
+          mTailList.clear();
+        }
+      }
+      mSize++;
+    }
+
+
+    /**
+     * Removes the next job.
+     *
+     * @return The next job.
+     * @throws RegainException If reading a spool file failed.
+     */
+    public CrawlerJob removeFirst() throws RegainException {
+      if (mHeadList.isEmpty()) {
+        if (!mSpoolFileList.isEmpty()) {
+          File spoolFile = mLastInFirstOut ? mSpoolFileList.removeLast()
+                                           : mSpoolFileList.removeFirst();
+          try {
+            LinkedList<CrawlerJob> jobList = new LinkedList<CrawlerJob>();
+            readSpoolFile(spoolFile, jobList);
+            mHeadList = jobList;
+          } catch (RegainException exc) {
+            // The jobs of this file are lost
+            mSize -= JOBS_PER_SPOOL_FILE;
+            throw exc;
+          } finally {
+            spoolFile.delete();
+          }
+        } else {
+          LinkedList<CrawlerJob> swap = mHeadList;
+          mHeadList = mTailList;
+          mTailList = swap;
+        }
+      }
+
+      mSize--;
+      return mHeadList.removeFirst();
+    }
+
+
+    /**
+     * Gets whether there are no jobs.
+     *
+     * @return Whether there are no jobs.
+     */
+    public boolean isEmpty() {
+      return mSize == 0;
+    }
+
+
+    /**
+     * Gets the number of jobs.
+     *
+     * @return The number of jobs.
+     */
+    public int size() {
+      return mSize;
+    }
+
+
+    /**
+     * Writes all jobs to a stream.
+     *
+     * @param out The stream to write to.
+     * @throws IOException If writing failed.
+     * @throws RegainException If reading a spool file failed.
+     */
+    public void writeTo(DataOutputStream out) throws IOException, RegainException {
+      out.writeInt(mSize);
+      if (mLastInFirstOut) {
+        // Write the oldest job first, so adding the jobs again restores the
+        // order
+        for (File spoolFile : mSpoolFileList) {
+          LinkedList<CrawlerJob> list = new LinkedList<CrawlerJob>();
+          readSpoolFile(spoolFile, list);
+          for (Iterator<CrawlerJob> iter = list.descendingIterator(); iter.hasNext();) {
+            iter.next().writeTo(out);
+          }
+        }
+        for (Iterator<CrawlerJob> iter = mHeadList.descendingIterator(); iter.hasNext();) {
+          iter.next().writeTo(out);
+        }
+        return;
+      }
+
+      for (CrawlerJob job : mHeadList) {
+        job.writeTo(out);
+      }
+      for (File spoolFile : mSpoolFileList) {
+        LinkedList<CrawlerJob> list = new LinkedList<CrawlerJob>();
+        readSpoolFile(spoolFile, list);
+        for (CrawlerJob job : list) {
+          job.writeTo(out);
+        }
+      }
+      for (CrawlerJob job : mTailList) {
+        job.writeTo(out);
+      }
+    }
+
+
+    /**
+     * Removes all jobs and deletes the spool files.
+     */
+    public void close() {
+      for (File spoolFile : mSpoolFileList) {
+        spoolFile.delete();
+      }
+      mSpoolFileList.clear();
+      mHeadList.clear();
+      mTailList.clear();
+      mSize = 0;
+    }
+
+
+    /**
+     * Writes jobs to a new spool file.
+     *
+     * @param jobList The jobs to write.
+     * @return The written spool file.
+     * @throws RegainException If writing failed.
+     */
+    private File writeNextSpoolFile(LinkedList<CrawlerJob> jobList)
+      throws RegainException
+    {
+      File spoolFile = new File(mSpoolDir, mName + "-" + mNextSpoolFileNumber + ".spool");
+      mNextSpoolFileNumber++;
+      writeSpoolFile(spoolFile, jobList);
+      return spoolFile;
+    }
+
+
+    /**
+     * Writes jobs to a spool file.
+     *
+     * @param spoolFile The file to write.
+     * @param jobList The jobs to write.
+     * @throws RegainException If writing failed.
+     */
+    private void writeSpoolFile(File spoolFile, LinkedList<CrawlerJob> jobList)
+      throws RegainException
+    {
+      DataOutputStream out = null;
+      try {
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(spoolFile)));
+        out.writeInt(jobList.size());
+        for (CrawlerJob job : jobList) {
+          job.writeTo(out);
+        }
+        out.close();
+      } catch (IOException exc) {
+        throw new RegainException("Writing spool file " + spoolFile + " failed", exc);
+      } finally {
+        if (out != null) {
+          try { out.close(); } catch (IOException exc) {}
+        }
+      }
+    }
+
+
+    /**
+     * Reads the jobs of a spool file.
+     *
+     * @param spoolFile The file to read.
+     * @param jobList The list where to add the jobs.
+     * @throws RegainException If reading failed.
+     */
+    private void readSpoolFile(File spoolFile, LinkedList<CrawlerJob> jobList)
+      throws RegainException
+    {
+      DataInputStream in = null;
+      try {
+        in = new DataInputStream(new BufferedInputStream(new FileInputStream(spoolFile)));
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+          jobList.add(CrawlerJob.readFrom(in));
+        }
+      } catch (IOException exc) {
+        throw new RegainException("Reading spool file " + spoolFile + " failed", exc);
+      } finally {
+        if (in != null) {
+          try { in.close(); } catch (IOException exc) {}
+        }
+      }
+    }
+
+  }
+
+}
@@ -25,8 +25,11 @@ import java.net.*;
 import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 
 import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.apache.log4j.Logger;
@@ -50,6 +53,17 @@ public class CrawlerToolkit {
   private static Logger mLog = Logger.getLogger(CrawlerToolkit.class);
   private static Pattern urlPatternLeft = Pattern.compile("([\\w]*://[\\w\\.:\\d-]*[^/]).*");
 
+  /** The timeout for HTTP downloads in milli seconds. */
+  private static int mHttpTimeoutMillis = 180 * 1000;
+  /** The maximum number of HTTP connections to the same host. */
+  private static int mMaxHttpConnectionsPerHost = 4;
+  /**
+   * Holds for each host a semaphore limiting the number of parallel HTTP
+   * connections to this host. The key is the host (with port).
+   */
+  private static HashMap<String, Semaphore> mHostSemaphoreHash
+    = new HashMap<String, Semaphore>();
+
   public static String createURLFromProps(String[] parts) {
 
     StringBuilder result = new StringBuilder(32);
@@ -194,6 +208,24 @@ public class CrawlerToolkit {
    */
   public static InputStream getHttpStream(URL url)
     throws RedirectException, HttpStreamException
+  {
+    return getHttpStream(url, null);
+  }
+
+
+  /**
+   * Gets the stream of a HTTP URL and remembers the Content-Type header of
+   * the response. See {@link #getHttpStream(URL)}.
+   *
+   * @param url the URL of the page
+   * @param content The content to set the Content-Type header at. May be
+   *        <code>null</code>.
+   * @return a stream reading data from the specified URL.
+   * @throws RedirectException if the URL redirects to another URL.
+   * @throws HttpStreamException if something went wrong.
+   */
+  private static InputStream getHttpStream(URL url, HttpContent content)
+    throws RedirectException, HttpStreamException
   {
     URLConnection conn = null;
     try {
@@ -212,6 +244,8 @@ public class CrawlerToolkit {
         });
       }
       conn = url.openConnection();
+      conn.setConnectTimeout(mHttpTimeoutMillis);
+      conn.setReadTimeout(mHttpTimeoutMillis);
       if (conn instanceof HttpURLConnection) {
         HttpURLConnection hconn = (HttpURLConnection) conn;
         // Required in Java 1.5 (redirect followed automatically)
@@ -244,14 +278,65 @@ public class CrawlerToolkit {
         }
       }
 
-      return conn.getInputStream();
+      InputStream in = conn.getInputStream();
+      if (content != null) {
+        content.setContentType(conn.getContentType());
+      }
+      return in;
     }
     catch (RedirectException thr) {
       throw thr;
     }
     catch (Throwable thr) {
-      throw HttpStreamException.createInstance("Could not get HTTP connection to "
-          + url.toString(), thr, conn);
+      HttpStreamException exc = HttpStreamException.createInstance(
+          "Could not get HTTP connection to " + url.toString(), thr, conn);
+      discardErrorStream(conn);
+      throw exc;
+    }
+  }
+
+
+  /**
+   * Reads and closes the error stream of a failed HTTP connection. This way
+   * the connection may be kept alive and reused for the next download.
+   *
+   * @param conn The failed connection. May be <code>null</code>.
+   */
+  private static void discardErrorStream(URLConnection conn) {
+    if (conn instanceof HttpURLConnection) {
+      InputStream err = ((HttpURLConnection) conn).getErrorStream();
+      if (err != null) {
+        try {
+          byte[] buffer = new byte[1024];
+          while (err.read(buffer) != -1) {}
+        }
+        catch (IOException exc) {}
+        finally {
+          try { err.close(); } catch (IOException exc) {}
+        }
+      }
+    }
+  }
+
+
+  /**
+   * Gets the semaphore limiting the parallel connections to the host of an
+   * URL.
+   *
+   * @param url The URL to get the semaphore for.
+   * @return The semaphore of the host.
+   */
+  private static Semaphore getHostSemaphore(URL url) {
+    // NOTE: http://host/ and http://host:80/ are the same host
+    int port = (url.getPort() == -1) ? url.getDefaultPort() : url.getPort();
+    String host = url.getHost().toLowerCase() + ":" + port;
+    synchronized (mHostSemaphoreHash) {
+      Semaphore semaphore = mHostSemaphoreHash.get(host);
+      if (semaphore == null) {
+        semaphore = new Semaphore(mMaxHttpConnectionsPerHost, true);
+        mHostSemaphoreHash.put(host, semaphore);
+      }
+      return semaphore;
     }
   }
 
@@ -267,32 +352,119 @@ public class CrawlerToolkit {
    * @throws RegainException Wenn das Laden fehl schlug.
    */
   public static byte[] loadHttpDocument(String url) throws RegainException {
-    InputStream in = null;
-    ByteArrayOutputStream out = null;
+    return loadHttpContent(url, Integer.MAX_VALUE, null).getContent();
+  }
+
+
+  /**
+   * Loads a document from a HTTP server. Documents that are larger than
+   * <code>maxMemorySize</code> are written to a temporary file while they are
+   * loaded, so they don't have to be held in memory.
+   *
+   * @param url The URL of the document.
+   * @param maxMemorySize The maximum number of bytes to hold in memory.
+   * @param tempFileExtension The extension of the temporary file (like
+   *        <code>.pdf</code>). May be <code>null</code>.
+   * @return The content of the document.
+   * @throws RegainException If loading the document failed.
+   */
+  public static HttpContent loadHttpContent(String url, int maxMemorySize,
+    String tempFileExtension)
+    throws RegainException
+  {
+    URL asUrl;
+    try {
+      asUrl = new URL(url);
+    }
+    catch (MalformedURLException exc) {
+      throw new RegainException("Could not load Document with HTTP", exc);
+    }
 
+    // Wait for a free connection to the host
+    long deadline = System.currentTimeMillis() + mHttpTimeoutMillis;
+    Semaphore hostSemaphore = getHostSemaphore(asUrl);
     try {
-      in = getHttpStream(new URL(url));
+      if (! hostSemaphore.tryAcquire(mHttpTimeoutMillis, TimeUnit.MILLISECONDS)) {
+        throw new RegainException("Loading Document by HTTP timed out after " +
+            (mHttpTimeoutMillis / 1000) + " seconds while waiting for a free " +
+            "connection to " + asUrl.getHost() + ": " + url);
+      }
+    }
+    catch (InterruptedException exc) {
+      throw new RegainException("Waiting for a free connection to " +
+          asUrl.getHost() + " was interrupted", exc);
+    }
 
-      out = new ByteArrayOutputStream();
+    HttpContent content = new HttpContent();
+    InputStream in = null;
+    ByteArrayOutputStream memoryOut = null;
+    OutputStream fileOut = null;
+    try {
+      in = getHttpStream(asUrl, content);
+
+      memoryOut = new ByteArrayOutputStream();
+
+      // NOTE: The read timeout only limits the time between two packets. So we
+      //       check the deadline of the whole download, too.
+      byte[] buffer = new byte[10240]; // 10 kB
+      int len;
+      while ((len = in.read(buffer)) != -1) {
+        if ((fileOut == null) && (memoryOut.size() + len > maxMemorySize)) {
+          // The document is too large for the memory -> Write it to a file
+          content.setFile(File.createTempFile("lucenesearch_", tempFileExtension));
+          fileOut = new FileOutputStream(content.getFile());
+          memoryOut.writeTo(fileOut);
+          memoryOut = null;
+        }
 
-      RegainToolkit.pipe(in, out);
+        if (fileOut != null) {
+          fileOut.write(buffer, 0, len);
+        } else {
+          memoryOut.write(buffer, 0, len);
+        }
 
-      out.close();
-      return out.toByteArray();
+        if (System.currentTimeMillis() > deadline) {
+          throw new RegainException("Loading Document by HTTP timed out after " +
+              (mHttpTimeoutMillis / 1000) + " seconds: " + url);
+        }
+      }
+
+      if (fileOut != null) {
+        fileOut.close();
+        fileOut = null;
+      } else {
+        content.setContent(memoryOut.toByteArray());
+      }
+      return content;
     }
-    catch (RedirectException exc) {
+    catch (RegainException exc) {
+      deleteTempFile(content);
       throw exc;
     }
     catch (IOException exc) {
+      deleteTempFile(content);
       throw new RegainException("Could not load Document with HTTP", exc);
     }
     finally {
       if (in != null) {
         try { in.close(); } catch (Exception exc) {}
       }
-      if (out != null) {
-        try { out.close(); } catch (Exception exc) {}
+      if (fileOut != null) {
+        try { fileOut.close(); } catch (Exception exc) {}
       }
+      hostSemaphore.release();
+    }
+  }
+
+
+  /**
+   * Deletes the temporary file of a HTTP download that failed.
+   *
+   * @param content The content of the failed download.
+   */
+  private static void deleteTempFile(HttpContent content) {
+    if ((content.getFile() != null) && ! content.getFile().delete()) {
+      content.getFile().deleteOnExit();
     }
   }
 
@@ -314,8 +486,37 @@ public class CrawlerToolkit {
     ByteArrayOutputStream out = null;
     try {
       in = new FileInputStream(file);
-      out = new ByteArrayOutputStream((int) file.length());
+      long length = file.length();
+      if (length > Integer.MAX_VALUE) {
+        throw new RegainException("File is too large to be loaded: "
+          + file.getAbsolutePath());
+      }
+
+      // Read the file directly into the array, so it isn't copied
+      byte[] content = new byte[(int) length];
+      int pos = 0;
+      int len;
+      while (pos < content.length
+        && (len = in.read(content, pos, content.length - pos)) != -1)
+      {
+        pos += len;
+      }
 
+      int next = (pos < content.length) ? -1 : in.read();
+      if (next == -1) {
+        if (pos < content.length) {
+          // The file got shorter while it was read
+          byte[] shortened = new byte[pos];
+          System.arraycopy(content, 0, shortened, 0, pos);
+          content = shortened;
+        }
+        return content;
+      }
+
+      // The file got longer while it was read -> Read the rest
+      out = new ByteArrayOutputStream(content.length * 2);
+      out.write(content);
+      out.write(next);
       RegainToolkit.pipe(in, out);
 
       return out.toByteArray();
@@ -552,6 +753,19 @@ public class CrawlerToolkit {
       System.setProperty("http.agent", userAgent);
       mLog.info("Using HTTP user agent:" + userAgent);
     }
+
+    // Set the timeout and the connection limits
+    // NOTE: The JDK keeps idle connections alive and reuses them. The
+    //       maximum number of idle connections per host is set by
+    //       http.maxConnections.
+    mHttpTimeoutMillis = config.getHttpTimeoutSecs() * 1000;
+    mMaxHttpConnectionsPerHost = config.getMaxHttpConnectionsPerHost();
+    synchronized (mHostSemaphoreHash) {
+      mHostSemaphoreHash.clear();
+    }
+    System.setProperty("http.keepAlive", "true");
+    System.setProperty("http.maxConnections",
+        Integer.toString(mMaxHttpConnectionsPerHost));
   }
 
 
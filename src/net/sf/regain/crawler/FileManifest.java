@@ -0,0 +1,327 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.crawler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import net.sf.regain.RegainException;
+import net.sf.regain.util.FingerprintSet;
+
+import org.apache.log4j.Logger;
+
+/**
+ * The size and the last modification date of the files in an index.
+ * <p>
+ * The manifest of the old index is read into memory. Only a 64 bit fingerprint
+ * of the URL and of the file state is kept, so three million files take about
+ * 70 MB. The manifest of the new index is written while crawling: Every file
+ * that is in the new index and whose state is known is appended.
+ * <p>
+ * If the crawler continues an interrupted run from a breakpoint, the files
+ * handled before the interruption are not visited again. In this case the
+ * entries of the old manifest are kept in the new one.
+ * <p>
+ * This class is thread-safe.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class FileManifest {
+
+  /** The name of the manifest file in the index directory. */
+  public static final String MANIFEST_FILE_NAME = "filemanifest.dat";
+
+  /** The first int of a manifest file. */
+  private static final int MAGIC = 0x52474d46;
+  /** The version of the file format. */
+  private static final int VERSION = 2;
+
+  /** The logger for this class */
+  private static Logger mLog = Logger.getLogger(FileManifest.class);
+
+  /**
+   * The URL fingerprints of the old manifest. An open addressing hash table,
+   * a slot is 0 if it is empty.
+   */
+  private long[] mUrlTable;
+  /** The file states of the old manifest. Same slots as mUrlTable. */
+  private long[] mStateTable;
+  /** The number of entries in the old manifest. */
+  private int mOldSize;
+
+  /** The file where the new manifest is written to. */
+  private File mNewFile;
+  /** The stream that writes the new manifest. */
+  private DataOutputStream mNewOut;
+  /** The number of entries in the new manifest. */
+  private int mNewSize;
+
+
+  /**
+   * Creates a new instance of FileManifest.
+   *
+   * @param oldFile The manifest of the old index. May be <code>null</code> or
+   *        a file that does not exist. May be the same file as
+   *        <code>newFile</code>.
+   * @param newFile The file where to write the manifest of the new index.
+   * @throws RegainException If reading the old or creating the new manifest
+   *         failed.
+   */
+  public FileManifest(File oldFile, File newFile) throws RegainException {
+    this(oldFile, newFile, false);
+  }
+
+
+  /**
+   * Creates a new instance of FileManifest.
+   *
+   * @param oldFile The manifest of the old index. May be <code>null</code> or
+   *        a file that does not exist. May be the same file as
+   *        <code>newFile</code>.
+   * @param newFile The file where to write the manifest of the new index.
+   * @param keepOldEntries Whether the entries of the old manifest should be
+   *        written to the new one. Set this if the old manifest belongs to a
+   *        breakpoint whose files will not be visited again.
+   * @throws RegainException If reading the old or creating the new manifest
+   *         failed.
+   */
+  public FileManifest(File oldFile, File newFile, boolean keepOldEntries)
+    throws RegainException
+  {
+    if ((oldFile != null) && oldFile.exists()) {
+      readOldManifest(oldFile);
+    } else {
+      mUrlTable = new long[0];
+      mStateTable = new long[0];
+    }
+
+    mNewFile = newFile;
+    try {
+      mNewOut = new DataOutputStream(new BufferedOutputStream(
+          new FileOutputStream(newFile)));
+      mNewOut.writeInt(MAGIC);
+      mNewOut.writeInt(VERSION);
+
+      // NOTE: The old manifest is completely in memory, so it doesn't matter
+      // that the new manifest may overwrite it
+      if (keepOldEntries) {
+        for (int slot = 0; slot < mUrlTable.length; slot++) {
+          if (mUrlTable[slot] != 0) {
+            mNewOut.writeLong(mUrlTable[slot]);
+            mNewOut.writeLong(mStateTable[slot]);
+            mNewSize++;
+          }
+        }
+      }
+    }
+    catch (IOException exc) {
+      throw new RegainException("Creating file manifest failed: " + newFile, exc);
+    }
+  }
+
+
+  /**
+   * Reads the manifest of the old index.
+   *
+   * @param file The file to read.
+   * @throws RegainException If reading failed.
+   */
+  private void readOldManifest(File file) throws RegainException {
+    // Each entry has two longs
+    long entryCount = Math.max(0, (file.length() - 8) / 16);
+    int capacity = 16;
+    while (capacity < entryCount + entryCount / 3 + 1) {
+      capacity <<= 1;
+    }
+    mUrlTable = new long[capacity];
+    mStateTable = new long[capacity];
+
+    DataInputStream in = null;
+    try {
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+      if ((in.readInt() != MAGIC) || (in.readInt() != VERSION)) {
+        mLog.warn("Ignoring file manifest with unknown format: " + file);
+        return;
+      }
+      for (long i = 0; i < entryCount; i++) {
+        long urlFingerprint = in.readLong();
+        long state = in.readLong();
+        putOld(urlFingerprint, state);
+      }
+    }
+    catch (EOFException exc) {
+      // The manifest was copied to a breakpoint while it was written
+      // -> The last entry is incomplete
+    }
+    catch (IOException exc) {
+      throw new RegainException("Reading file manifest failed: " + file, exc);
+    }
+    finally {
+      if (in != null) {
+        try { in.close(); } catch (IOException exc) {}
+      }
+    }
+
+    mLog.info("Read file manifest with " + mOldSize + " files");
+  }
+
+
+  /**
+   * Puts an entry into the hash table of the old manifest.
+   *
+   * @param urlFingerprint The fingerprint of the URL.
+   * @param state The state of the file.
+   */
+  private void putOld(long urlFingerprint, long state) {
+    int mask = mUrlTable.length - 1;
+    int slot = (int) urlFingerprint & mask;
+    while (true) {
+      long current = mUrlTable[slot];
+      if (current == 0) {
+        mUrlTable[slot] = urlFingerprint;
+        mStateTable[slot] = state;
+        mOldSize++;
+        return;
+      } else if (current == urlFingerprint) {
+        // A later entry replaces an earlier one
+        mStateTable[slot] = state;
+        return;
+      }
+      slot = (slot + 1) & mask;
+    }
+  }
+
+
+  /**
+   * Calculates a fingerprint of the state of a file.
+   *
+   * @param size The size of the file.
+   * @param lastModified The last modification date of the file.
+   * @return The fingerprint.
+   */
+  private static long state(long size, long lastModified) {
+    long hash = size * 0x9e3779b97f4a7c15L + lastModified;
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    return hash;
+  }
+
+
+  /**
+   * Checks whether a file has the same size and last modification date as in
+   * the old manifest.
+   *
+   * @param url The URL of the file.
+   * @param size The current size of the file.
+   * @param lastModified The current last modification date of the file.
+   * @return Whether the file is unchanged. <code>false</code> if the file is
+   *         not in the old manifest.
+   */
+  public boolean isUnchanged(String url, long size, long lastModified) {
+    if (mOldSize == 0) {
+      return false;
+    }
+
+    long urlFingerprint = FingerprintSet.fingerprint(url);
+    int mask = mUrlTable.length - 1;
+    int slot = (int) urlFingerprint & mask;
+    while (true) {
+      long current = mUrlTable[slot];
+      if (current == 0) {
+        return false;
+      } else if (current == urlFingerprint) {
+        return mStateTable[slot] == state(size, lastModified);
+      }
+      slot = (slot + 1) & mask;
+    }
+  }
+
+
+  /**
+   * Adds a file to the new manifest.
+   *
+   * @param url The URL of the file.
+   * @param size The size of the file.
+   * @param lastModified The last modification date of the file.
+   * @throws RegainException If writing the manifest failed.
+   */
+  public synchronized void add(String url, long size, long lastModified)
+    throws RegainException
+  {
+    try {
+      mNewOut.writeLong(FingerprintSet.fingerprint(url));
+      mNewOut.writeLong(state(size, lastModified));
+      mNewSize++;
+    }
+    catch (IOException exc) {
+      throw new RegainException("Writing file manifest failed: " + mNewFile, exc);
+    }
+  }
+
+
+  /**
+   * Writes all buffered entries of the new manifest to the file.
+   *
+   * @throws RegainException If writing the manifest failed.
+   */
+  public synchronized void flush() throws RegainException {
+    try {
+      mNewOut.flush();
+    }
+    catch (IOException exc) {
+      throw new RegainException("Writing file manifest failed: " + mNewFile, exc);
+    }
+  }
+
+
+  /**
+   * Gets the number of files in the new manifest.
+   *
+   * @return The number of files in the new manifest.
+   */
+  public synchronized int getNewSize() {
+    return mNewSize;
+  }
+
+
+  /**
+   * Closes the new manifest.
+   *
+   * @throws RegainException If writing the manifest failed.
+   */
+  public synchronized void close() throws RegainException {
+    try {
+      mNewOut.close();
+    }
+    catch (IOException exc) {
+      throw new RegainException("Writing file manifest failed: " + mNewFile, exc);
+    }
+  }
+
+}
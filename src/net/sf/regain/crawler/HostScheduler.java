@@ -0,0 +1,510 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.crawler;
+
+import java.io.File;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+
+import net.sf.regain.RegainException;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Decides which crawler job is processed next, so that no HTTP host is
+ * overloaded while others are idle.
+ * <p>
+ * A limited number of jobs is taken from the {@link CrawlerJobQueue} and
+ * buffered in one queue per host. The hosts are served round robin. For each
+ * HTTP host a job is only started if
+ * <ul>
+ *   <li>less than the maximum number of jobs of this host are running,</li>
+ *   <li>the delay since the last request to this host is over. The delay is
+ *       the largest of the configured host delay, the Crawl-delay of the
+ *       host's robots.txt and the backoff delay.</li>
+ * </ul>
+ * The backoff delay is doubled every time the host answers with a server error
+ * or does not answer in time and halved every time it answers successfully.
+ * <p>
+ * Jobs of other protocols (file, smb, imap) are not restricted.
+ * <p>
+ * This class is not thread-safe. The crawler guards it with the lock of its
+ * job list.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class HostScheduler {
+
+  /** The logger for this class. */
+  private static Logger mLog = Logger.getLogger(HostScheduler.class);
+
+  /** The maximum number of jobs that are buffered in the host queues. */
+  private static final int MAX_BUFFERED_JOBS = 1000;
+  /**
+   * The maximum number of jobs that are buffered for one HTTP host. If there
+   * are more, they are put back into the job queue, so jobs of other hosts
+   * get into the buffer.
+   */
+  private static final int MAX_BUFFERED_JOBS_PER_HOST = 100;
+  /** The backoff delay after the first server error of a host. */
+  private static final long MIN_BACKOFF_DELAY = 1000;
+  /** The maximum backoff delay. */
+  private static final long MAX_BACKOFF_DELAY = 5 * 60 * 1000;
+  /** The maximum Crawl-delay that is taken from a robots.txt. */
+  private static final long MAX_CRAWL_DELAY = 60 * 1000;
+
+  /** The queue where the jobs come from. */
+  private CrawlerJobQueue mJobQueue;
+  /** The maximum number of jobs of the same HTTP host running at a time. */
+  private int mMaxJobsPerHost;
+  /** The minimum time in milliseconds between two requests to a host. */
+  private long mHostDelay;
+  /** Specifies whether the Crawl-delay of the robots.txt should be kept. */
+  private boolean mUseRobotsCrawlDelay;
+
+  /** The state of the hosts. The key is the host (with port). */
+  private HashMap<String, HostState> mHostHash;
+  /** The state of all jobs that are not HTTP jobs. */
+  private HostState mLocalHost;
+  /** The hosts that have buffered jobs. In the order they are served. */
+  private LinkedList<HostState> mQueuedHostList;
+  /** The number of buffered jobs. */
+  private int mBufferedJobCount;
+  /**
+   * Specifies whether the last attempt to fill the buffer had to put back jobs
+   * and whether nothing changed since then that could make a difference. In
+   * this case trying again is useless.
+   */
+  private boolean mFillingIsUseless;
+
+
+  /**
+   * Creates a new instance of HostScheduler.
+   *
+   * @param jobQueue The queue where the jobs come from.
+   * @param maxJobsPerHost The maximum number of jobs of the same HTTP host
+   *        running at a time.
+   * @param hostDelay The minimum time in milliseconds between two requests to
+   *        the same HTTP host.
+   * @param useRobotsCrawlDelay Specifies whether the Crawl-delay of the
+   *        robots.txt should be kept.
+   */
+  public HostScheduler(CrawlerJobQueue jobQueue, int maxJobsPerHost,
+    long hostDelay, boolean useRobotsCrawlDelay)
+  {
+    mJobQueue = jobQueue;
+    mMaxJobsPerHost = maxJobsPerHost;
+    mHostDelay = hostDelay;
+    mUseRobotsCrawlDelay = useRobotsCrawlDelay;
+
+    mHostHash = new HashMap<String, HostState>();
+    mLocalHost = new HostState(null);
+    mQueuedHostList = new LinkedList<HostState>();
+  }
+
+
+  /**
+   * Adds a job.
+   *
+   * @param job The job to add.
+   * @throws RegainException If writing a spool file failed.
+   */
+  public void add(CrawlerJob job) throws RegainException {
+    mJobQueue.add(job);
+
+    HostState host = getHostState(job.getUrl());
+    if ((host == mLocalHost) || (host.mJobList.size() < MAX_BUFFERED_JOBS_PER_HOST)) {
+      mFillingIsUseless = false;
+    }
+  }
+
+
+  /**
+   * Takes the next job that may be started now.
+   *
+   * @param now The current time.
+   * @return The next job or <code>null</code> if no job may be started now.
+   * @throws RegainException If reading a spool file failed.
+   */
+  public CrawlerJob takeJob(long now) throws RegainException {
+    if ((mBufferedJobCount < MAX_BUFFERED_JOBS / 2) && ! mFillingIsUseless) {
+      fillBuffer();
+    }
+    CrawlerJob job = takeBufferedJob(now);
+    if ((job == null) && (mBufferedJobCount < MAX_BUFFERED_JOBS)
+        && ! mFillingIsUseless)
+    {
+      // All buffered jobs have to wait -> Look for jobs of other hosts
+      fillBuffer();
+      job = takeBufferedJob(now);
+    }
+    return job;
+  }
+
+
+  /**
+   * Gets the time to wait until a buffered job may be started.
+   *
+   * @param now The current time.
+   * @return The time to wait in milliseconds. Is 0 if this is unknown,
+   *         because the jobs wait for running jobs to finish.
+   */
+  public long getWaitTime(long now) {
+    long waitTime = 0;
+    for (HostState host : mQueuedHostList) {
+      if (host.mActiveJobCount < host.getMaxActiveJobCount()) {
+        long hostWaitTime = Math.max(host.mNextStartTime - now, 1);
+        if ((waitTime == 0) || (hostWaitTime < waitTime)) {
+          waitTime = hostWaitTime;
+        }
+      }
+    }
+    return waitTime;
+  }
+
+
+  /**
+   * Tells the scheduler that a job taken by {@link #takeJob(long)} is
+   * finished.
+   *
+   * @param job The finished job.
+   */
+  public void jobFinished(CrawlerJob job) {
+    getHostState(job.getUrl()).mActiveJobCount--;
+  }
+
+
+  /**
+   * Tells the scheduler how the host of an URL answered.
+   *
+   * @param url The URL that was loaded.
+   * @param now The current time.
+   * @param overloaded Whether the host answered with a server error or did not
+   *        answer in time.
+   */
+  public void reportResult(String url, long now, boolean overloaded) {
+    HostState host = getHostState(url);
+    if (host == mLocalHost) {
+      return;
+    }
+
+    if (overloaded) {
+      host.mBackoffDelay = Math.min(Math.max(host.mBackoffDelay * 2, MIN_BACKOFF_DELAY),
+          MAX_BACKOFF_DELAY);
+      host.mNextStartTime = Math.max(host.mNextStartTime, now + host.mBackoffDelay);
+      mLog.warn("Host " + host.mName + " seems to be overloaded. Waiting "
+          + host.mBackoffDelay + " ms between two requests.");
+    }
+    else if (host.mBackoffDelay > 0) {
+      host.mBackoffDelay /= 2;
+      if (host.mBackoffDelay < MIN_BACKOFF_DELAY) {
+        host.mBackoffDelay = 0;
+      }
+    }
+  }
+
+
+  /**
+   * Gets the URL of the robots.txt if it has to be loaded before an URL is
+   * loaded. Returns the robots.txt of each host only once.
+   *
+   * @param url The URL that should be loaded.
+   * @return The URL of the robots.txt or <code>null</code> if there is no
+   *         robots.txt to load.
+   * @see #setCrawlDelay(String, long)
+   */
+  public String takeRobotsTxtUrl(String url) {
+    HostState host = getHostState(url);
+    if ((host == mLocalHost) || host.mRobotsTxtRequested) {
+      return null;
+    }
+
+    host.mRobotsTxtRequested = true;
+    return RobotsTxt.getRobotsTxtUrl(url);
+  }
+
+
+  /**
+   * Sets the Crawl-delay of the robots.txt of the host of an URL.
+   *
+   * @param url An URL of the host.
+   * @param crawlDelay The Crawl-delay in milliseconds. -1 if the host has no
+   *        Crawl-delay.
+   */
+  public void setCrawlDelay(String url, long crawlDelay) {
+    HostState host = getHostState(url);
+    if (crawlDelay > MAX_CRAWL_DELAY) {
+      mLog.warn("The Crawl-delay of host " + host.mName + " is " + crawlDelay
+          + " ms. Using " + MAX_CRAWL_DELAY + " ms instead.");
+      crawlDelay = MAX_CRAWL_DELAY;
+    }
+    if (crawlDelay > 0) {
+      mLog.info("Using Crawl-delay of " + crawlDelay + " ms for host " + host.mName);
+    }
+    host.mCrawlDelay = Math.max(crawlDelay, 0);
+    host.mRobotsTxtLoaded = true;
+    host.mNextStartTime = Math.max(host.mNextStartTime,
+        host.mLastStartTime + host.getDelay());
+  }
+
+
+  /**
+   * Gets whether there are no jobs.
+   *
+   * @return Whether there are no jobs.
+   */
+  public boolean isEmpty() {
+    return (mBufferedJobCount == 0) && mJobQueue.isEmpty();
+  }
+
+
+  /**
+   * Gets the number of jobs.
+   *
+   * @return The number of jobs.
+   */
+  public int size() {
+    return mBufferedJobCount + mJobQueue.size();
+  }
+
+
+  /**
+   * Saves all jobs to a file. Must only be called if there are no running
+   * jobs.
+   *
+   * @param file The file to save the jobs to.
+   * @throws RegainException If saving failed.
+   * @see CrawlerJobQueue#save(File)
+   */
+  public void save(File file) throws RegainException {
+    // Put the buffered jobs back into the job queue
+    for (HostState host : mQueuedHostList) {
+      for (CrawlerJob job : host.mJobList) {
+        mJobQueue.add(job);
+      }
+      host.mJobList.clear();
+    }
+    mQueuedHostList.clear();
+    mBufferedJobCount = 0;
+    mFillingIsUseless = false;
+
+    mJobQueue.save(file);
+  }
+
+
+  /**
+   * Adds all jobs of a file written by {@link #save(File)}.
+   *
+   * @param file The file to load the jobs from.
+   * @throws RegainException If loading failed.
+   */
+  public void load(File file) throws RegainException {
+    mJobQueue.load(file);
+    mFillingIsUseless = false;
+  }
+
+
+  /**
+   * Takes the next buffered job that may be started now.
+   *
+   * @param now The current time.
+   * @return The next job or <code>null</code> if no buffered job may be
+   *         started now.
+   */
+  private CrawlerJob takeBufferedJob(long now) {
+    for (Iterator<HostState> iter = mQueuedHostList.iterator(); iter.hasNext();) {
+      HostState host = iter.next();
+      if ((host.mActiveJobCount < host.getMaxActiveJobCount())
+          && (host.mNextStartTime <= now))
+      {
+        CrawlerJob job = host.mJobList.removeFirst();
+        mBufferedJobCount--;
+        host.mActiveJobCount++;
+        host.mLastStartTime = now;
+        host.mNextStartTime = now + host.getDelay();
+
+        // Serve the other hosts first
+        iter.remove();
+        if (! host.mJobList.isEmpty()) {
+          mQueuedHostList.addLast(host);
+        }
+        if (host.mJobList.size() == MAX_BUFFERED_JOBS_PER_HOST / 2) {
+          // Jobs of this host that were put back may be taken again
+          mFillingIsUseless = false;
+        }
+        return job;
+      }
+    }
+    return null;
+  }
+
+
+  /**
+   * Moves jobs from the job queue into the host queues.
+   *
+   * @throws RegainException If reading a spool file failed.
+   */
+  private void fillBuffer() throws RegainException {
+    // NOTE: We look at each job in the queue at most once and put back only a
+    //       limited number of jobs. Otherwise we would put back the same jobs
+    //       again and again if they are all of the same host.
+    //       The jobs are put back after the loop, because the queue takes
+    //       the jobs of unparsed documents last-in-first-out.
+    int maxTakeCount = mJobQueue.size();
+    LinkedList<CrawlerJob> putBackList = new LinkedList<CrawlerJob>();
+    try {
+      for (int i = 0; (i < maxTakeCount) && (mBufferedJobCount < MAX_BUFFERED_JOBS)
+          && (putBackList.size() < MAX_BUFFERED_JOBS); i++)
+      {
+        CrawlerJob job = mJobQueue.removeFirst();
+        HostState host = getHostState(job.getUrl());
+        if ((host != mLocalHost)
+            && (host.mJobList.size() >= MAX_BUFFERED_JOBS_PER_HOST))
+        {
+          // There are enough jobs of this host -> Give the other hosts a chance
+          putBackList.add(job);
+          continue;
+        }
+
+        if (host.mJobList.isEmpty()) {
+          mQueuedHostList.addLast(host);
+        }
+        host.mJobList.add(job);
+        mBufferedJobCount++;
+      }
+    } finally {
+      for (CrawlerJob job : putBackList) {
+        mJobQueue.add(job);
+      }
+    }
+
+    mFillingIsUseless = (mBufferedJobCount < MAX_BUFFERED_JOBS)
+        && ! mJobQueue.isEmpty();
+  }
+
+
+  /**
+   * Gets the state of the host of an URL.
+   *
+   * @param url The URL to get the host state for.
+   * @return The host state. Is {@link #mLocalHost} for all URLs that are not
+   *         HTTP URLs.
+   */
+  private HostState getHostState(String url) {
+    if (! (url.startsWith("http://") || url.startsWith("https://"))) {
+      return mLocalHost;
+    }
+
+    String name;
+    try {
+      URL asUrl = new URL(url);
+      // NOTE: http://host/ and http://host:80/ are the same host
+      int port = (asUrl.getPort() == -1) ? asUrl.getDefaultPort() : asUrl.getPort();
+      name = asUrl.getHost().toLowerCase() + ":" + port;
+    }
+    catch (MalformedURLException exc) {
+      return mLocalHost;
+    }
+
+    HostState host = mHostHash.get(name);
+    if (host == null) {
+      host = new HostState(name);
+      host.mRobotsTxtLoaded = ! mUseRobotsCrawlDelay;
+      host.mRobotsTxtRequested = host.mRobotsTxtLoaded;
+      mHostHash.put(name, host);
+    }
+    return host;
+  }
+
+
+  /**
+   * The state of a host.
+   */
+  private class HostState {
+
+    /** The name of the host (with port). Is null for the local host. */
+    private String mName;
+    /** The buffered jobs of this host. */
+    private LinkedList<CrawlerJob> mJobList;
+    /** The number of running jobs of this host. */
+    private int mActiveJobCount;
+    /** The time when the last job of this host was started. */
+    private long mLastStartTime;
+    /** The earliest time when the next job of this host may be started. */
+    private long mNextStartTime;
+    /** The Crawl-delay of the robots.txt. */
+    private long mCrawlDelay;
+    /** The current backoff delay. Is 0 if the host is not overloaded. */
+    private long mBackoffDelay;
+    /** Whether the robots.txt was already requested. */
+    private boolean mRobotsTxtRequested;
+    /** Whether the robots.txt was loaded. */
+    private boolean mRobotsTxtLoaded;
+
+
+    /**
+     * Creates a new instance of HostState.
+     *
+     * @param name The name of the host (with port). Is null for the local host.
+     */
+    public HostState(String name) {
+      mName = name;
+      mJobList = new LinkedList<CrawlerJob>();
+    }
+
+
+    /**
+     * Gets the maximum number of running jobs of this host.
+     *
+     * @return The maximum number of running jobs.
+     */
+    public int getMaxActiveJobCount() {
+      if (mName == null) {
+        return Integer.MAX_VALUE;
+      } else if (! mRobotsTxtLoaded) {
+        // The first job loads the robots.txt. The other jobs have to wait for
+        // the Crawl-delay.
+        return 1;
+      } else {
+        return mMaxJobsPerHost;
+      }
+    }
+
+
+    /**
+     * Gets the minimum time between two requests to this host.
+     *
+     * @return The delay in milliseconds.
+     */
+    public long getDelay() {
+      if (mName == null) {
+        return 0;
+      } else {
+        return Math.max(mHostDelay, Math.max(mCrawlDelay, mBackoffDelay));
+      }
+    }
+
+  }
+
+}
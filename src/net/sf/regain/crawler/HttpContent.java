@@ -0,0 +1,157 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.crawler;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+
+/**
+ * The content of a document loaded by HTTP.
+ * <p>
+ * Small documents are held in memory, large documents are written to a
+ * temporary file while they are loaded (see
+ * {@link CrawlerToolkit#loadHttpContent(String, int, String)}).
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class HttpContent {
+
+  /** The content. Is <code>null</code> if the content is in a file. */
+  private byte[] mContent;
+
+  /**
+   * The temporary file that holds the content. Is <code>null</code> if the
+   * content is in memory.
+   */
+  private File mFile;
+
+  /** The Content-Type header of the response. May be <code>null</code>. */
+  private String mContentType;
+
+
+  /**
+   * Sets the Content-Type header of the response.
+   *
+   * @param contentType The Content-Type header. May be <code>null</code>.
+   */
+  void setContentType(String contentType) {
+    mContentType = contentType;
+  }
+
+
+  /**
+   * Sets the content held in memory.
+   *
+   * @param content The content.
+   */
+  void setContent(byte[] content) {
+    mContent = content;
+  }
+
+
+  /**
+   * Sets the temporary file that holds the content.
+   *
+   * @param file The file.
+   */
+  void setFile(File file) {
+    mFile = file;
+  }
+
+
+  /**
+   * Gets the content if it is held in memory.
+   *
+   * @return The content or <code>null</code> if the content is in a file.
+   */
+  public byte[] getContent() {
+    return mContent;
+  }
+
+
+  /**
+   * Gets the temporary file that holds the content. The caller is responsible
+   * for deleting the file.
+   *
+   * @return The file or <code>null</code> if the content is in memory.
+   */
+  public File getFile() {
+    return mFile;
+  }
+
+
+  /**
+   * Gets the length of the content.
+   *
+   * @return The length of the content (in bytes).
+   */
+  public long getLength() {
+    return (mContent != null) ? mContent.length : mFile.length();
+  }
+
+
+  /**
+   * Gets the Content-Type header of the response.
+   *
+   * @return The Content-Type header or <code>null</code> if the server sent
+   *         none.
+   */
+  public String getContentType() {
+    return mContentType;
+  }
+
+
+  /**
+   * Gets the charset of the Content-Type header (like
+   * <code>text/html; charset=utf-8</code>).
+   *
+   * @return The charset or <code>null</code> if the header has no charset or
+   *         if the charset is not supported by this JVM.
+   */
+  public String getCharset() {
+    if (mContentType == null) {
+      return null;
+    }
+
+    int pos = mContentType.toLowerCase().indexOf("charset=");
+    if (pos == -1) {
+      return null;
+    }
+    pos += "charset=".length();
+    int end = mContentType.indexOf(';', pos);
+    if (end == -1) {
+      end = mContentType.length();
+    }
+    String charset = mContentType.substring(pos, end).trim();
+    if (charset.length() > 1 && charset.startsWith("\"") && charset.endsWith("\"")) {
+      charset = charset.substring(1, charset.length() - 1);
+    }
+
+    try {
+      return Charset.isSupported(charset) ? charset : null;
+    }
+    catch (IllegalCharsetNameException exc) {
+      return null;
+    }
+  }
+
+}
@@ -106,4 +106,16 @@ public class HttpStreamException extends RegainException {
     return (mHttpReturnCode == 404 || mHttpReturnCode == 400);
   }
 
+
+
+  /**
+   * Returns whether the HTTP code says that the server is overloaded or
+   * failed.
+   *
+   * @return Whether the HTTP code says that the server is overloaded.
+   */
+  public boolean isHttpReturnCodeFromOverloadedServer() {
+    return (mHttpReturnCode == 429 || mHttpReturnCode >= 500);
+  }
+
 }
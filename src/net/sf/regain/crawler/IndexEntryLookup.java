@@ -0,0 +1,427 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.crawler;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import net.sf.regain.RegainException;
+import net.sf.regain.util.FingerprintSet;
+
+import org.apache.log4j.Logger;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.FieldSelector;
+import org.apache.lucene.document.MapFieldSelector;
+import org.apache.lucene.index.IndexReader;
+
+/**
+ * Holds the URL, the last-modified date and the preparation-error flag of all
+ * entries of an existing index.
+ * <p>
+ * The entries are read once in one pass over the index. After that checking
+ * whether a document is already in the index and whether it is up-to-date
+ * needs no search.
+ * <p>
+ * To keep the lookup small for large indexes, the URLs are not held in memory.
+ * The entries are stored in parallel arrays sorted by the fingerprint of their
+ * URL (about 16 bytes per document). The 64 bit fingerprint is taken as the
+ * identity of the URL, so a lookup needs no disk access. Only if several
+ * entries have the same fingerprint (duplicate entries of an URL or a
+ * fingerprint collision), the URLs stored in the index are compared.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class IndexEntryLookup {
+
+  /** The logger for this class. */
+  private static Logger mLog = Logger.getLogger(IndexEntryLookup.class);
+
+  /** The fields that are read from the index. */
+  private static final String[] LOADED_FIELDS
+    = { "url", "last-modified", "preparation-error" };
+
+  /** The field selector that only loads the URL. */
+  private static final FieldSelector URL_SELECTOR
+    = new MapFieldSelector(new String[] { "url" });
+
+  /** The bit of a state that is set if the preparation failed. */
+  private static final int PREPARATION_ERROR_BIT = 0x80000000;
+
+  /**
+   * The reader of the index. Used for comparing the URLs of entries with the
+   * same fingerprint.
+   */
+  private IndexReader mReader;
+  /** The fingerprints of the URLs, sorted ascending. */
+  private long[] mFingerprintArr;
+  /** The lucene document IDs (parallel to {@link #mFingerprintArr}). */
+  private int[] mDocIdArr;
+  /**
+   * The states of the entries (parallel to {@link #mFingerprintArr}): The
+   * index in {@link #mLastModifiedArr} plus one (0 means that there is no
+   * date) and the {@link #PREPARATION_ERROR_BIT}.
+   */
+  private int[] mStateArr;
+  /**
+   * The distinct last-modified dates. Most documents share their date with
+   * others, so each date is held only once.
+   */
+  private String[] mLastModifiedArr;
+  /** The number of distinct URL fingerprints. */
+  private int mUrlCount;
+
+
+  /**
+   * Creates a new instance of IndexEntryLookup and reads all entries of an
+   * index.
+   *
+   * @param reader The reader of the index to read the entries from. It must
+   *        stay open as long as the lookup is used.
+   * @throws RegainException If reading the index failed.
+   */
+  public IndexEntryLookup(IndexReader reader) throws RegainException {
+    mReader = reader;
+    int maxDoc = reader.maxDoc();
+    long[] fingerprintArr = new long[maxDoc];
+    int[] docIdArr = new int[maxDoc];
+    int[] stateArr = new int[maxDoc];
+    HashMap<String, Integer> lastModifiedHash = new HashMap<String, Integer>();
+
+    FieldSelector selector = new MapFieldSelector(LOADED_FIELDS);
+    long startTime = System.currentTimeMillis();
+    int count = 0;
+    for (int docId = 0; docId < maxDoc; docId++) {
+      if (reader.isDeleted(docId)) {
+        continue;
+      }
+
+      Document doc;
+      try {
+        doc = reader.document(docId, selector);
+      } catch (Throwable thr) {
+        throw new RegainException("Getting document #" + docId + " from index failed.", thr);
+      }
+
+      String url = doc.get("url");
+      if (url == null) {
+        continue;
+      }
+
+      int state = 0;
+      String lastModified = doc.get("last-modified");
+      if (lastModified != null) {
+        Integer index = lastModifiedHash.get(lastModified);
+        if (index == null) {
+          index = lastModifiedHash.size();
+          lastModifiedHash.put(lastModified, index);
+        }
+        state = index + 1;
+      }
+      if (doc.get("preparation-error") != null) {
+        state |= PREPARATION_ERROR_BIT;
+      }
+
+      fingerprintArr[count] = FingerprintSet.fingerprint(url);
+      docIdArr[count] = docId;
+      stateArr[count] = state;
+      count++;
+    }
+
+    mFingerprintArr = new long[count];
+    mDocIdArr = new int[count];
+    mStateArr = new int[count];
+    System.arraycopy(fingerprintArr, 0, mFingerprintArr, 0, count);
+    System.arraycopy(docIdArr, 0, mDocIdArr, 0, count);
+    System.arraycopy(stateArr, 0, mStateArr, 0, count);
+    sort(0, count - 1);
+
+    mLastModifiedArr = new String[lastModifiedHash.size()];
+    for (Map.Entry<String, Integer> entry : lastModifiedHash.entrySet()) {
+      mLastModifiedArr[entry.getValue()] = entry.getKey();
+    }
+
+    for (int i = 0; i < count; i++) {
+      if (i == 0 || mFingerprintArr[i] != mFingerprintArr[i - 1]) {
+        mUrlCount++;
+      }
+    }
+
+    mLog.info("Read " + mUrlCount + " index entries for lookup in "
+        + (System.currentTimeMillis() - startTime) + " ms");
+  }
+
+
+  /**
+   * Sorts the entries by fingerprint and document ID (quicksort on the
+   * parallel arrays).
+   *
+   * @param from The first position to sort.
+   * @param to The last position to sort.
+   */
+  private void sort(int from, int to) {
+    while (from < to) {
+      int mid = (from + to) >>> 1;
+      long pivotFingerprint = mFingerprintArr[mid];
+      int pivotDocId = mDocIdArr[mid];
+      int i = from;
+      int j = to;
+      while (i <= j) {
+        while (compare(i, pivotFingerprint, pivotDocId) < 0) {
+          i++;
+        }
+        while (compare(j, pivotFingerprint, pivotDocId) > 0) {
+          j--;
+        }
+        if (i <= j) {
+          swap(i, j);
+          i++;
+          j--;
+        }
+      }
+
+      // Recurse into the smaller part, loop on the larger one
+      if (j - from < to - i) {
+        sort(from, j);
+        from = i;
+      } else {
+        sort(i, to);
+        to = j;
+      }
+    }
+  }
+
+
+  /**
+   * Compares an entry with a fingerprint and a document ID.
+   *
+   * @param pos The position of the entry.
+   * @param fingerprint The fingerprint to compare with.
+   * @param docId The document ID to compare with.
+   * @return A negative number, zero or a positive number if the entry is
+   *         smaller, equal or greater.
+   */
+  private int compare(int pos, long fingerprint, int docId) {
+    if (mFingerprintArr[pos] != fingerprint) {
+      return (mFingerprintArr[pos] < fingerprint) ? -1 : 1;
+    }
+    return mDocIdArr[pos] - docId;
+  }
+
+
+  /**
+   * Swaps two entries.
+   *
+   * @param i The position of the first entry.
+   * @param j The position of the second entry.
+   */
+  private void swap(int i, int j) {
+    long fingerprint = mFingerprintArr[i];
+    mFingerprintArr[i] = mFingerprintArr[j];
+    mFingerprintArr[j] = fingerprint;
+    int docId = mDocIdArr[i];
+    mDocIdArr[i] = mDocIdArr[j];
+    mDocIdArr[j] = docId;
+    int state = mStateArr[i];
+    mStateArr[i] = mStateArr[j];
+    mStateArr[j] = state;
+  }
+
+
+  /**
+   * Gets the index entry of an URL.
+   *
+   * @param url The URL to get the entry for.
+   * @return The entry or <code>null</code> if the URL is not in the index.
+   *         Further entries with the same URL are appended as duplicates.
+   * @throws RegainException If the URL of an entry could not be read from the
+   *         index.
+   */
+  public Entry getEntry(String url) throws RegainException {
+    long fingerprint = FingerprintSet.fingerprint(url);
+
+    // Find the first entry with this fingerprint
+    int low = 0;
+    int high = mFingerprintArr.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (mFingerprintArr[mid] < fingerprint) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+
+    int end = low;
+    while (end < mFingerprintArr.length && mFingerprintArr[end] == fingerprint) {
+      end++;
+    }
+    boolean compareUrls = (end - low > 1);
+
+    Entry first = null;
+    for (int pos = low; pos < end; pos++) {
+      int docId = mDocIdArr[pos];
+      if (compareUrls && ! url.equals(getIndexedUrl(docId))) {
+        // Fingerprint collision
+        continue;
+      }
+
+      int state = mStateArr[pos];
+      int lastModifiedIndex = (state & ~PREPARATION_ERROR_BIT) - 1;
+      Entry entry = new Entry(docId,
+          (lastModifiedIndex == -1) ? null : mLastModifiedArr[lastModifiedIndex],
+          (state & PREPARATION_ERROR_BIT) != 0);
+      if (first == null) {
+        first = entry;
+      } else {
+        // There are duplicate entries for this URL -> Append it to the first
+        first.addDuplicate(entry);
+      }
+    }
+    return first;
+  }
+
+
+  /**
+   * Reads the URL of a document from the index.
+   *
+   * @param docId The ID of the document.
+   * @return The URL.
+   * @throws RegainException If reading the document failed.
+   */
+  private String getIndexedUrl(int docId) throws RegainException {
+    try {
+      return mReader.document(docId, URL_SELECTOR).get("url");
+    } catch (Throwable thr) {
+      throw new RegainException("Getting document #" + docId + " from index failed.", thr);
+    }
+  }
+
+
+  /**
+   * Gets the number of URLs in the index.
+   *
+   * @return The number of URLs.
+   */
+  public int getUrlCount() {
+    return mUrlCount;
+  }
+
+
+  /**
+   * An entry of the index.
+   */
+  public static class Entry {
+
+    /** The lucene document ID. */
+    private int mDocId;
+    /** The last-modified date as stored in the index. May be null. */
+    private String mLastModified;
+    /** Whether the preparation failed. */
+    private boolean mPreparationError;
+    /** The next entry with the same URL. Is null if there are no duplicates. */
+    private Entry mDuplicate;
+
+
+    /**
+     * Creates a new instance of Entry.
+     *
+     * @param docId The lucene document ID.
+     * @param lastModified The last-modified date as stored in the index.
+     * @param preparationError Whether the preparation failed.
+     */
+    Entry(int docId, String lastModified, boolean preparationError) {
+      mDocId = docId;
+      mLastModified = lastModified;
+      mPreparationError = preparationError;
+    }
+
+
+    /**
+     * Appends an entry with the same URL.
+     *
+     * @param duplicate The entry to append.
+     */
+    void addDuplicate(Entry duplicate) {
+      Entry last = this;
+      while (last.mDuplicate != null) {
+        last = last.mDuplicate;
+      }
+      last.mDuplicate = duplicate;
+    }
+
+
+    /**
+     * Gets the lucene document ID.
+     *
+     * @return The lucene document ID.
+     */
+    public int getDocId() {
+      return mDocId;
+    }
+
+
+    /**
+     * Gets the last-modified date as stored in the index.
+     *
+     * @return The last-modified date. May be null.
+     */
+    public String getLastModified() {
+      return mLastModified;
+    }
+
+
+    /**
+     * Gets whether the preparation of the document failed.
+     *
+     * @return Whether the preparation failed.
+     */
+    public boolean hasPreparationError() {
+      return mPreparationError;
+    }
+
+
+    /**
+     * Gets the number of entries with the same URL, this one included.
+     *
+     * @return The number of entries with the same URL.
+     */
+    public int getEntryCount() {
+      int count = 0;
+      for (Entry entry = this; entry != null; entry = entry.mDuplicate) {
+        count++;
+      }
+      return count;
+    }
+
+
+    /**
+     * Gets the next entry with the same URL.
+     *
+     * @return The next entry or <code>null</code> if there are no more
+     *         duplicates.
+     */
+    public Entry getDuplicate() {
+      return mDuplicate;
+    }
+
+  }
+
+}
@@ -28,7 +28,11 @@ import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
-import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import net.sf.regain.RegainException;
 import net.sf.regain.RegainToolkit;
@@ -37,21 +41,27 @@ import net.sf.regain.crawler.config.UrlMatcher;
 import net.sf.regain.crawler.document.DocumentFactory;
 import net.sf.regain.crawler.document.RawDocument;
 import net.sf.regain.crawler.plugin.CrawlerPluginManager;
+import net.sf.regain.util.io.DirectoryWatcher;
 
 import org.apache.log4j.Logger;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.document.DateTools;
 import org.apache.lucene.document.Document;
+import org.apache.lucene.document.FieldSelector;
+import org.apache.lucene.document.MapFieldSelector;
+import org.apache.lucene.index.IndexCommit;
+import org.apache.lucene.index.IndexFileNameFilter;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.KeepOnlyLastCommitDeletionPolicy;
+import org.apache.lucene.index.SnapshotDeletionPolicy;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.index.TermEnum;
-import org.apache.lucene.search.IndexSearcher;
-import org.apache.lucene.search.Query;
-import org.apache.lucene.search.ScoreDoc;
-import org.apache.lucene.search.TermQuery;
-import org.apache.lucene.search.TopScoreDocCollector;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.TermRangeQuery;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
 
@@ -63,6 +73,14 @@ import org.apache.lucene.store.FSDirectory;
  * auf. Rufen Sie am Ende {@link #close(boolean)} auf, um den Index zu
  * schlie�en. Danach sind keine weiteren Aufrufe von
  * {@link #addToIndex(RawDocument, ErrorLogger)} erlaubt.
+ * <p>
+ * {@link #addToIndex(RawDocument, ErrorLogger)} may be called by several
+ * crawler threads at the same time. The documents are prepared in parallel,
+ * every access to the index is synchronized.
+ * <p>
+ * The index is written by one IndexWriter that stays open until
+ * {@link #close(boolean)} is called. Outdated entries are replaced at once
+ * using {@link IndexWriter#updateDocument(Term, Document)}.
  *
  * @author Til Schneider, www.murfman.de
  */
@@ -115,44 +133,47 @@ public class IndexWriterManager {
    */
   private static final long RENAME_TIMEOUT = 60000; // 1 min
   /**
-   * The writing mode.
-   * @see #setIndexMode(int)
+   * The ID of the snapshot that holds the index files while a breakpoint is
+   * created.
    */
-  private static final int WRITING_MODE = 1;
+  private static final String BREAKPOINT_SNAPSHOT_ID = "breakpoint";
   /**
-   * The reading mode.
-   * @see #setIndexMode(int)
+   * The fields that are read when looking for obsolete entries.
+   *
+   * @see #removeObsoleteEntries(UrlChecker)
    */
-  private static final int READING_MODE = 2;
+  private static final String[] OBSOLETE_CHECK_FIELDS = { "url", "last-modified" };
   /**
-   * The searching mode.
-   * @see #setIndexMode(int)
+   * The number of index entries that are checked at once when looking for
+   * obsolete entries.
    */
-  private static final int SEARCHING_MODE = 3;
+  private static final int OBSOLETE_CHECK_BATCH_SIZE = 1000;
   /**
-   * The all closed mode.
-   * @see #setIndexMode(int)
+   * The number of threads that check in parallel whether the files of index
+   * entries still exist.
    */
-  private static final int ALL_CLOSED_MODE = 4;
+  private static final int FILE_CHECK_THREAD_COUNT = 8;
   /** The crawler configuration. */
   private CrawlerConfig mConfig;
   /** Der Analyzer, der vom IndexWriter genutzt werden soll. */
   private Analyzer mAnalyzer;
-  /** Der gekapselte IndexWriter, der den eigentlichen Index erstellt. */
+  /**
+   * Der gekapselte IndexWriter, der den eigentlichen Index erstellt. Stays
+   * open until the index is closed.
+   */
   private IndexWriter mIndexWriter;
   /**
-   * Der gekapselte IndexReader. Wird zum L�schen von Dokumenten aus dem Index
-   * ben�tigt.
-   * <p>
-   * Ist <code>null</code>, wenn der Index nicht aktualisiert werden soll.
+   * The deletion policy of mIndexWriter. Used to keep the files of a commit
+   * while a breakpoint is created.
    */
-  private IndexReader mIndexReader;
+  private SnapshotDeletionPolicy mSnapshotPolicy;
   /**
-   * Der gekapselte IndexSearcher. Wird zum Finden von Dokumenten ben�tigt.
+   * A reader on the old index like it was when the IndexWriterManager was
+   * created. Used for reading the old entries that are replaced.
    * <p>
    * Ist <code>null</code>, wenn der Index nicht aktualisiert werden soll.
    */
-  private IndexSearcher mIndexSearcher;
+  private IndexReader mOldIndexReader;
   /**
    * Gibt an, ob ein bestehender Index aktualisiert wird.
    * <p>
@@ -163,8 +184,17 @@ public class IndexWriterManager {
    * Specifies whether a document that couldn't be prepared the last time should be retried.
    */
   private boolean mRetryFailedDocs;
+  /**
+   * Specifies whether the index is updated from a breakpoint. In this case
+   * an interrupted crawler run is continued.
+   */
+  private boolean mUpdatesBreakpoint;
   /** Die DocumentFactory, die die Inhalte für die Indizierung aufbereitet. */
   private DocumentFactory mDocumentFactory;
+  /** The DocumentFactory of each crawler thread. */
+  private ThreadLocal<DocumentFactory> mThreadDocumentFactory;
+  /** The copies of mDocumentFactory created for other crawler threads. */
+  private List<DocumentFactory> mDocumentFactoryCopyList;
   /**
    * Das Verzeichnis, in dem der Suchindex am Ende stehen soll, wenn es keine
    * fatalen Fehler gab.
@@ -204,13 +234,18 @@ public class IndexWriterManager {
   private Profiler mAddToIndexProfiler = new Profiler("Indexed documents", "docs");
   /** The profiler for the breakpoint creation. */
   private Profiler mBreakpointProfiler = new Profiler("Created breakpoints", "breakpoints");
+  /** The number of entries that were removed from the index. */
+  private volatile int mRemovedDocCount;
   /**
-   * enthält die URL und den LastUpdated-String aller Dokumente, deren Eintr�ge
-   * beim Abschlie�en des Index entfernt werden m�ssen.
-   * <p>
-   * Die URL bildet den key, der LastUpdated-String die value.
+   * The entries of the old index. Is <code>null</code> if a new index is
+   * created.
+   */
+  private IndexEntryLookup mOldEntryLookup;
+  /**
+   * The size and last modification date of the indexed files. Is
+   * <code>null</code> if no file manifest should be used.
    */
-  private HashMap<String, String> mUrlsToDeleteHash;
+  private FileManifest mFileManifest;
 
   /** Crawler Plugin Manager instance */
   private CrawlerPluginManager pluginManager = CrawlerPluginManager.getInstance();
@@ -278,32 +313,42 @@ public class IndexWriterManager {
 
     // Alten Index kopieren, wenn Index aktualisiert werden soll
     if (updateIndex) {
-      if (!copyExistingIndex(indexDir, analyzerType)) {
+      if (!copyExistingIndex(indexDir, analyzerType, config.getReversedFieldNames())) {
         mUpdateIndex = updateIndex = false;
       }
     }
 
-    // Check whether we have to create a new index
-    boolean createNewIndex = !updateIndex;
-    if (createNewIndex) {
-      // Create a new index
+    if (updateIndex) {
       try {
-        mIndexWriter = createIndexWriter(true);
+        // Force an unlock of the index (we just created a copy so this is save)
+        IndexWriter.unlock(mLuceneTempIndexDir);
+
+        mOldIndexReader = IndexReader.open(mLuceneTempIndexDir, true);
+        mInitialDocCount = mOldIndexReader.numDocs();
       } catch (IOException exc) {
-        throw new RegainException("Creating new index failed", exc);
+        throw new RegainException("Opening old index failed", exc);
       }
+
+      // Read the entries of the old index, so we don't have to search for
+      // every single document
+      mOldEntryLookup = new IndexEntryLookup(mOldIndexReader);
     }
 
-    if (updateIndex) {
-      // Force an unlock of the index (we just created a copy so this is save)
-      setIndexMode(READING_MODE);
-      try {
+    // Read the manifest of the old index and start the one of the new index
+    if (config.getUseFileManifest()) {
+      File manifestFile = new File(mTempIndexDir, FileManifest.MANIFEST_FILE_NAME);
+      // NOTE: The crawler doesn't visit the files again it handled before a
+      //       breakpoint, so their entries are kept
+      mFileManifest = new FileManifest(updateIndex ? manifestFile : null,
+              manifestFile, updateIndex && mUpdatesBreakpoint);
+    }
 
-        IndexWriter.unlock(mIndexReader.directory());
-        mInitialDocCount = mIndexReader.numDocs();
-      } catch (IOException exc) {
-        throw new RegainException("Forcing unlock failed", exc);
-      }
+    // Open the index writer. It stays open until the index is closed
+    boolean createNewIndex = !updateIndex;
+    try {
+      mIndexWriter = createIndexWriter(createNewIndex);
+    } catch (IOException exc) {
+      throw new RegainException("Creating IndexWriter failed", exc);
     }
 
     // Write the stopWordList and the exclusionList in a file so it can be found
@@ -314,6 +359,10 @@ public class IndexWriterManager {
     if (untokenizedFieldNames.length != 0) {
       RegainToolkit.writeListToFile(untokenizedFieldNames, new File(mTempIndexDir, "untokenizedFieldNames.txt"));
     }
+    String[] reversedFieldNames = config.getReversedFieldNames();
+    if (reversedFieldNames.length != 0) {
+      RegainToolkit.writeListToFile(reversedFieldNames, new File(mTempIndexDir, "reversedFieldNames.txt"));
+    }
 
     // Prepare the analysis directory if wanted
     if (config.getWriteAnalysisFiles()) {
@@ -325,6 +374,9 @@ public class IndexWriterManager {
     }
 
     mDocumentFactory = new DocumentFactory(config, mAnalysisDir);
+    mDocumentFactoryCopyList = new ArrayList<DocumentFactory>();
+    mThreadDocumentFactory = new ThreadLocal<DocumentFactory>();
+    mThreadDocumentFactory.set(mDocumentFactory);
   }
 
   /**
@@ -338,6 +390,26 @@ public class IndexWriterManager {
     return mUpdateIndex;
   }
 
+  /**
+   * Gets whether the index is updated from a breakpoint. In this case an
+   * interrupted crawler run is continued.
+   *
+   * @return Whether the index is updated from a breakpoint.
+   */
+  public boolean getUpdatesBreakpoint() {
+    return mUpdatesBreakpoint;
+  }
+
+  /**
+   * Gets the directory of the last breakpoint. The crawler may put its own
+   * state into a sub directory. It is deleted together with the breakpoint.
+   *
+   * @return The directory of the last breakpoint.
+   */
+  public File getBreakpointDir() {
+    return mBreakpointIndexDir;
+  }
+
   /**
    * Gets the number of documents that were in the (old) index when the
    * IndexWriterManager was created.
@@ -358,15 +430,12 @@ public class IndexWriterManager {
   }
 
   /**
-   * Gets the number of documents that will be removed from the index.
+   * Gets the number of documents that were removed from the index.
    *
    * @return The number of documents removed from the index.
    */
   public int getRemovedDocCount() {
-    // NOTE: We get a local pointer to the mUrlsToDeleteHash, if the hash should
-    //       be set to null in the same time.
-    HashMap<String, String> hash = mUrlsToDeleteHash;
-    return (hash == null) ? 0 : hash.size();
+    return mRemovedDocCount;
   }
 
   /**
@@ -376,7 +445,7 @@ public class IndexWriterManager {
    * @param thr The error to log. May be <code>null</code>.
    * @throws RegainException If writing to the error log failed.
    */
-  public void logError(String msg, Throwable thr) throws RegainException {
+  public synchronized void logError(String msg, Throwable thr) throws RegainException {
     if (mErrorLogStream == null) {
       try {
         new File(mTempIndexDir, "log").mkdir();
@@ -398,102 +467,13 @@ public class IndexWriterManager {
   }
 
   /**
-   * Sets the current mode
-   * <p>
-   * The are the following modes:
-   * <ul>
-   *   <li>Writing mode: The mIndexWriter is opened, the mIndexSearcher may be
-   *     opened, the mIndexReader is closed. In this mode documents may be added
-   *     to the index.</li>
-   *   <li>Reading mode: The mIndexReader is opened, the mIndexSearcher may be
-   *     opened, the mIndexWriter is closed. In this mode documents may be
-   *     read or removed from the index.</li>
-   *   <li>Searching mode: The mIndexSearcher is opened, the mIndexWriter or
-   *     mIndexReader may be opened. In this mode documents may be searched.
-   *   <li>All closed mode: All access to the index ist closed:
-   *     mIndexWriter, mIndexReader and mIndexSearcher. In this mode the index
-   *     can't be accessed at all.
-   * </ul>
-   * <p>
-   * If the index already is in the wanted mode nothing happens. This method is
-   * very fast in this case.
+   * Creates the IndexWriter.
    *
-   * @param mode The mode the index should have. Must be one of
-   *        {@link #WRITING_MODE}, {@link #READING_MODE}, {@link #SEARCHING_MODE}
-   *        or {@link #ALL_CLOSED_MODE}.
-   * @throws RegainException If closing or opening failed.
+   * @param createNewIndex Whether a new index should be created. If false an
+   *        existing index is opened.
+   * @return The IndexWriter.
+   * @throws IOException If creating the IndexWriter failed.
    */
-  private void setIndexMode(int mode) throws RegainException {
-    // Close the mIndexReader in WRITING_MODE and ALL_CLOSED_MODE
-    if ((mode == WRITING_MODE) || (mode == ALL_CLOSED_MODE)) {
-      if (mIndexReader != null) {
-        try {
-          mIndexReader.close();
-          mIndexReader = null;
-        } catch (IOException exc) {
-          throw new RegainException("Closing IndexReader failed", exc);
-        }
-      }
-    }
-
-    // Close the mIndexWriter in READING_MODE and ALL_CLOSED_MODE
-    if ((mode == READING_MODE) || (mode == ALL_CLOSED_MODE)) {
-      if (mIndexWriter != null) {
-        try {
-          mIndexWriter.close();
-          mIndexWriter = null;
-        } catch (IOException exc) {
-          throw new RegainException("Closing IndexWriter failed", exc);
-        }
-      }
-    }
-
-    // Close the mIndexSearcher in ALL_CLOSED_MODE
-    if ((mode == ALL_CLOSED_MODE) && (mIndexSearcher != null)) {
-      try {
-        mIndexSearcher.close();
-        mIndexSearcher = null;
-      } catch (IOException exc) {
-        throw new RegainException("Closing IndexSearcher failed", exc);
-      }
-    }
-
-    // Open the mIndexWriter in WRITING_MODE
-    if ((mode == WRITING_MODE) && (mIndexWriter == null)) {
-      mLog.info("Switching to index mode: adding mode");
-      try {
-        mIndexWriter = createIndexWriter(false);
-      } catch (IOException exc) {
-        throw new RegainException("Creating IndexWriter failed", exc);
-      }
-    }
-
-    // Open the mIndexReader in READING_MODE
-    if ((mode == READING_MODE) && (mIndexReader == null)) {
-      mLog.info("Switching to index mode: deleting mode");
-      try {
-        mIndexReader = IndexReader.open(mLuceneTempIndexDir, false);
-      } catch (IOException exc) {
-        throw new RegainException("Creating IndexReader failed", exc);
-      }
-    }
-
-    // Open the mIndexSearcher in SEARCHING_MODE
-    if ((mode == SEARCHING_MODE) && (mIndexSearcher == null)) {
-      mLog.info("Switching to index mode: searching mode");
-      try {
-        mIndexSearcher = new IndexSearcher(mLuceneTempIndexDir, false);
-      } catch (IOException exc) {
-        throw new RegainException("Creating IndexSearcher failed", exc);
-      }
-    }
-
-    // Tell the user, when switching to ALL_CLOSED_MODE
-    if (mode == ALL_CLOSED_MODE) {
-      mLog.info("Switching to index mode: all closed mode");
-    }
-  }
-
   private IndexWriter createIndexWriter(boolean createNewIndex)
           throws IOException {
     IndexWriterConfig iConfig = new IndexWriterConfig(RegainToolkit.getLuceneVersion(), mAnalyzer);
@@ -503,6 +483,9 @@ public class IndexWriterManager {
     else
       iConfig.setOpenMode(IndexWriterConfig.OpenMode.APPEND);
 
+    mSnapshotPolicy = new SnapshotDeletionPolicy(new KeepOnlyLastCommitDeletionPolicy());
+    iConfig.setIndexDeletionPolicy(mSnapshotPolicy);
+
     IndexWriter indexWriter = new IndexWriter(mLuceneTempIndexDir, iConfig);
 
     int maxFieldLength = mConfig.getMaxFieldLength();
@@ -513,16 +496,52 @@ public class IndexWriterManager {
     return indexWriter;
   }
 
+  /**
+   * Opens a near real-time reader on the index. The reader sees all changes
+   * made by mIndexWriter so far.
+   * <p>
+   * The reader must be closed by the caller.
+   *
+   * @return The reader.
+   * @throws RegainException If opening the reader failed.
+   */
+  private IndexReader openNearRealTimeReader() throws RegainException {
+    try {
+      return IndexReader.open(mIndexWriter, true);
+    } catch (IOException exc) {
+      throw new RegainException("Opening near real-time IndexReader failed", exc);
+    }
+  }
+
+  /**
+   * Closes an IndexReader. Errors are logged.
+   *
+   * @param reader The reader to close. May be <code>null</code>.
+   */
+  private void closeReader(IndexReader reader) {
+    if (reader != null) {
+      try {
+        reader.close();
+      } catch (IOException exc) {
+        mLog.warn("Closing IndexReader failed", exc);
+      }
+    }
+  }
+
   /**
    * Kopiert den zuletzt erstellten Index in das Arbeitsverzeichnis.
    *
    * @param indexDir Das Verzeichnis, in dem der Index liegt.
    * @param analyzerType Der Analyzer-Typ, den der alte Index haben muss, um
    *        übernommen zu werden.
+   * @param reversedFieldNames The names of the fields whose terms are also
+   *        indexed reversed. The old index must have the same reversed fields,
+   *        because unchanged documents are not indexed again.
    * @return Ob ein alter Index gefunden wurde.
    * @throws RegainException Wenn das Kopieren fehl schlug.
    */
-  private boolean copyExistingIndex(File indexDir, String analyzerType)
+  private boolean copyExistingIndex(File indexDir, String analyzerType,
+          String[] reversedFieldNames)
           throws RegainException {
     // Find the newest index
     File oldIndexDir;
@@ -559,13 +578,44 @@ public class IndexWriterManager {
       return false;
     }
 
+    // Check the reversed fields of the old index
+    File reversedFieldNamesFile = new File(oldIndexDir, "reversedFieldNames.txt");
+    String[] reversedFieldNamesOfIndex = RegainToolkit.readListFromFile(reversedFieldNamesFile);
+    if (!toFieldNameSet(reversedFieldNames).equals(toFieldNameSet(reversedFieldNamesOfIndex))) {
+      mLog.warn("Can't update index, because the index was created using " +
+              "other reversed fields (index fields: " +
+              toFieldNameSet(reversedFieldNamesOfIndex) + ", configured fields: " +
+              toFieldNameSet(reversedFieldNames) + "). " +
+              "A complete new index will be created...");
+      return false;
+    }
+
     // Index in Arbeitsverzeichnis kopieren
     mLog.info("Updating index from " + oldIndexDir.getAbsolutePath());
     RegainToolkit.copyDirectory(oldIndexDir, mTempIndexDir, false, ".txt");
+    mUpdatesBreakpoint = (oldIndexDir == mBreakpointIndexDir);
 
     return true;
   }
 
+  /**
+   * Creates a sorted set of field names.
+   *
+   * @param fieldNames The field names. May be <code>null</code>.
+   * @return The trimmed, non-empty field names.
+   */
+  private static TreeSet<String> toFieldNameSet(String[] fieldNames) {
+    TreeSet<String> set = new TreeSet<String>();
+    if (fieldNames != null) {
+      for (String fieldName : fieldNames) {
+        if (fieldName.trim().length() != 0) {
+          set.add(fieldName.trim());
+        }
+      }
+    }
+    return set;
+  }
+
   /**
    * Lookup for a document matching to a given url.
    *
@@ -575,28 +625,64 @@ public class IndexWriterManager {
    * @throws RegainException if checking for url failed
    */
   public boolean isAlreadyIndexed(String url) throws RegainException {
-    boolean result = false;
-
     if (mUpdateIndex) {
-      // Search the entry for this URL
-      Term urlTerm = new Term("url", url);
-      Query query = new TermQuery(urlTerm);
+      return mOldEntryLookup.getEntry(url) != null;
+    }
+    return false;
+  }
 
-      try {
-        setIndexMode(SEARCHING_MODE);
-        TopScoreDocCollector collector = TopScoreDocCollector.create(2, false);
-        mIndexSearcher.search(query, collector);
+  /**
+   * Checks whether a file has not changed since it was indexed the last time.
+   * In this case the old index entry is kept and the file is added to the new
+   * file manifest.
+   * <p>
+   * A file is unchanged if it has the same size and last modification date as
+   * in the manifest of the old index and if the old index has exactly one
+   * entry for it. Files whose preparation failed are changed if they should be
+   * retried.
+   *
+   * @param url The URL of the file.
+   * @param file The file.
+   * @return Whether the file is unchanged.
+   * @throws RegainException If writing the file manifest failed.
+   */
+  public boolean isUnchangedFile(String url, File file) throws RegainException {
+    if ((mFileManifest == null) || (mOldEntryLookup == null)) {
+      return false;
+    }
 
-        if (collector.getTotalHits() == 1) {
-          // we found one hit for our URL
-          result = true;
+    long size = file.length();
+    long lastModified = file.lastModified();
+    if (! mFileManifest.isUnchanged(url, size, lastModified)) {
+      return false;
+    }
 
-        }
-      } catch (IOException exc) {
-        throw new RegainException("Searching old index entry failed for " + url, exc);
-      }
+    IndexEntryLookup.Entry entry = mOldEntryLookup.getEntry(url);
+    if ((entry == null) || (entry.getDuplicate() != null)
+            || (entry.hasPreparationError() && mRetryFailedDocs)) {
+      return false;
+    }
+
+    mFileManifest.add(url, size, lastModified);
+    if (mLog.isDebugEnabled()) {
+      mLog.debug("File is unchanged: " + url);
+    }
+    return true;
+  }
+
+  /**
+   * Adds a file to the file manifest of the new index.
+   *
+   * @param rawDocument The file. Documents that are no files are ignored.
+   * @throws RegainException If writing the file manifest failed.
+   */
+  private void addToFileManifest(RawDocument rawDocument) throws RegainException {
+    if ((mFileManifest != null) && rawDocument.getUrl().startsWith("file://")
+            && (rawDocument.getLastModified() != null)) {
+      File file = rawDocument.getContentAsFile();
+      mFileManifest.add(rawDocument.getUrl(), file.length(),
+              rawDocument.getLastModified().getTime());
     }
-    return result;
   }
 
   /**
@@ -610,42 +696,26 @@ public class IndexWriterManager {
   public void addToIndex(RawDocument rawDocument, ErrorLogger errorLogger)
           throws RegainException {
     // Check whether there already is an up-to-date entry in the index
+    IndexEntryLookup.Entry oldEntry = null;
     if (mUpdateIndex) {
       boolean removeOldEntry = false;
 
       // Search the entry for this URL
-      Term urlTerm = new Term("url", rawDocument.getUrl());
-      Query query = new TermQuery(urlTerm);
-      Document doc;
-      try {
-        setIndexMode(SEARCHING_MODE);
-        TopScoreDocCollector collector = TopScoreDocCollector.create(20, false);
-        mIndexSearcher.search(query, collector);
-        ScoreDoc[] hits = collector.topDocs().scoreDocs;
-
-        if (hits.length > 0) {
-          if (hits.length > 1) {
-            for (int i = 1; i < hits.length; i++) {
-              markForDeletion(mIndexSearcher.doc(hits[i].doc));
-            }
-            mLog.warn("There are duplicate entries (" + hits.length + " in " +
-                    "total) for " + rawDocument.getUrl() + ". They will be removed.");
-          }
-
-          doc = mIndexSearcher.doc(hits[0].doc);
-        } else {
-          doc = null;
-        }
-      } catch (IOException exc) {
-        throw new RegainException("Searching old index entry failed for " + rawDocument.getUrl(), exc);
-      }
+      IndexEntryLookup.Entry entry = mOldEntryLookup.getEntry(rawDocument.getUrl());
 
       // If we found an entry, check whether it is up-to-date
-      if (doc != null) {
+      if (entry != null) {
         // Get the last modification date from the document
         Date docLastModified = rawDocument.getLastModified();
 
-        if (docLastModified == null) {
+        if (entry.getDuplicate() != null) {
+          // There are duplicate entries for this URL
+          // -> Replace all of them by one new entry
+          mLog.warn("There are duplicate entries (" + entry.getEntryCount() +
+                  " in total) for " + rawDocument.getUrl() + ". They will be replaced.");
+          removeOldEntry = true;
+
+        } else if (docLastModified == null) {
           // We are not able to get the last modification date from the
           // document (this happens with all http-URLs)
           // -> Delete the old entry and create a new one
@@ -655,7 +725,7 @@ public class IndexWriterManager {
 
         } else {
           // Compare the modification date with the one from the index entry
-          String asString = doc.get("last-modified");
+          String asString = entry.getLastModified();
           if (asString != null) {
             long diff = 86400001L;
             Date indexLastModified = null;
@@ -682,6 +752,7 @@ public class IndexWriterManager {
                       rawDocument.getUrl());
 
               parseDocument(rawDocument, errorLogger);
+              addToFileManifest(rawDocument);
 
               return;
 
@@ -689,7 +760,7 @@ public class IndexWriterManager {
               // The index entry is up-to-date
 
               // Check whether the preparation failed the last time
-              boolean failedLastTime = doc.get("preparation-error") != null;
+              boolean failedLastTime = entry.hasPreparationError();
               if (failedLastTime) {
                 if (mRetryFailedDocs) {
                   // The entry failed the last time, the user want's a retry
@@ -701,12 +772,14 @@ public class IndexWriterManager {
                   // -> We are done
                   mLog.info("Ignoring " + rawDocument.getUrl() + ", because " +
                           "preparation already failed the last time and no retry is wanted.");
+                  addToFileManifest(rawDocument);
                   return;
                 }
               } else {
                 // The entry is up-to-date and contains text -> We are done
                 mLog.info("Index entry is already up to date (index=" + indexLastModified + "), " +
                         "(source=" + docLastModified + "): " + rawDocument.getUrl());
+                addToFileManifest(rawDocument);
                 return;
               }
             }
@@ -720,16 +793,15 @@ public class IndexWriterManager {
         }
       }
 
-      // Check whether we have to delete the old entry
+      // Check whether we have to replace the old entry
       if (removeOldEntry) {
-        // We don't delete the entry immediately, but we remember it.
-        // See javadoc of markForDeletion(Document)
-        markForDeletion(doc);
+        oldEntry = entry;
       }
     }
 
     // Create a new entry
-    createNewIndexEntry(rawDocument, errorLogger);
+    createIndexEntry(rawDocument, errorLogger, oldEntry);
+    addToFileManifest(rawDocument);
   }
 
   /**
@@ -742,25 +814,113 @@ public class IndexWriterManager {
    */
   public void createNewIndexEntry(RawDocument rawDocument, ErrorLogger errorLogger)
           throws RegainException {
+    createIndexEntry(rawDocument, errorLogger, null);
+  }
+
+  /**
+   * Creates a indexable document and adds it to the index.
+   *
+   * @param rawDocument which will be parsed
+   * @param errorLogger The error logger to use for logging errors.
+   * @param oldEntry The entry of the old index that should be replaced by the
+   *        new one. Is <code>null</code> if the document is new.
+   *
+   * @throws RegainException if indexing of the document failed
+   */
+  private void createIndexEntry(RawDocument rawDocument, ErrorLogger errorLogger,
+          IndexEntryLookup.Entry oldEntry)
+          throws RegainException {
     // Dokument erzeugen
     if (mLog.isDebugEnabled()) {
       mLog.debug("Creating document: " + rawDocument.getUrl());
     }
-    Document doc = mDocumentFactory.createDocument(rawDocument, errorLogger);
+    Document doc = getDocumentFactory().createDocument(rawDocument, errorLogger);
 
     // Dokument in den Index aufnehmen
     if (doc != null) {
+      writeDocument(doc, rawDocument, oldEntry);
+    } else if (oldEntry != null) {
+      // There is no new document -> Only remove the outdated entry
+      deleteOldIndexEntry(rawDocument.getUrl(), oldEntry);
+    }
+  }
 
-      mAddToIndexProfiler.startMeasuring();
-      try {
-        setIndexMode(WRITING_MODE);
-        pluginManager.eventCreateIndexEntry(doc, mIndexWriter);
+  /**
+   * Adds a document to the index.
+   *
+   * @param doc The document to add.
+   * @param rawDocument The raw document the document was created from.
+   * @param oldEntry The entry of the old index that should be replaced by the
+   *        document. Is <code>null</code> if the document is new.
+   * @throws RegainException If adding the document failed.
+   */
+  private synchronized void writeDocument(Document doc, RawDocument rawDocument,
+          IndexEntryLookup.Entry oldEntry)
+          throws RegainException {
+    if (oldEntry != null) {
+      fireDeleteEvents(oldEntry);
+    }
+
+    mAddToIndexProfiler.startMeasuring();
+    try {
+      pluginManager.eventCreateIndexEntry(doc, mIndexWriter);
+      if (oldEntry == null) {
         mIndexWriter.addDocument(doc);
-        mAddToIndexProfiler.stopMeasuring(rawDocument.getLength());
+      } else {
+        // Delete the old entries and add the new one in one step
+        mLog.info("Replacing old index entry: " + rawDocument.getUrl() +
+                " from " + oldEntry.getLastModified());
+        mIndexWriter.updateDocument(new Term("url", rawDocument.getUrl()), doc);
+        mRemovedDocCount += oldEntry.getEntryCount();
+      }
+      mAddToIndexProfiler.stopMeasuring(rawDocument.getLength());
+    } catch (IOException exc) {
+      mAddToIndexProfiler.abortMeasuring();
+      throw new RegainException("Adding document to index failed", exc);
+    }
+  }
+
+  /**
+   * Deletes an entry of the old index and all its duplicates.
+   *
+   * @param url The URL of the entry.
+   * @param oldEntry The entry to delete.
+   * @throws RegainException If deleting the entry failed.
+   */
+  private synchronized void deleteOldIndexEntry(String url,
+          IndexEntryLookup.Entry oldEntry)
+          throws RegainException {
+    fireDeleteEvents(oldEntry);
+
+    try {
+      mLog.info("Deleting from index: " + url + " from " + oldEntry.getLastModified());
+      mIndexWriter.deleteDocuments(new Term("url", url));
+      mRemovedDocCount += oldEntry.getEntryCount();
+    } catch (IOException exc) {
+      throw new RegainException("Deleting index entry failed: " + url, exc);
+    }
+  }
+
+  /**
+   * Tells the crawler plugins that an entry of the old index and all its
+   * duplicates are deleted.
+   *
+   * @param oldEntry The entry that is deleted.
+   * @throws RegainException If reading the entry from the old index failed.
+   */
+  private void fireDeleteEvents(IndexEntryLookup.Entry oldEntry)
+          throws RegainException {
+    for (IndexEntryLookup.Entry entry = oldEntry; entry != null;
+      entry = entry.getDuplicate())
+    {
+      Document doc;
+      try {
+        doc = mOldIndexReader.document(entry.getDocId());
       } catch (IOException exc) {
-        mAddToIndexProfiler.abortMeasuring();
-        throw new RegainException("Adding document to index failed", exc);
+        throw new RegainException("Getting document #" + entry.getDocId() +
+                " from index failed.", exc);
       }
+      pluginManager.eventDeleteIndexEntry(doc, mOldIndexReader);
     }
   }
 
@@ -779,34 +939,49 @@ public class IndexWriterManager {
       mLog.debug("Creating document: " + rawDocument.getUrl() + " only for parsing.");
     }
 
-    mDocumentFactory.createDocument(rawDocument, errorLogger);
-
-
+    getDocumentFactory().createDocument(rawDocument, errorLogger);
   }
 
   /**
    * Getter for the current and initialised DocumentFactory.
+   * <p>
+   * Every crawler thread gets its own DocumentFactory. The copy for a thread
+   * is created the first time the thread asks for it.
    *
    * @return the current and initialised DocumentFactory
+   * @throws RegainException If the DocumentFactory for the current thread
+   *         could not be created.
    */
-  public DocumentFactory getDocumentFactory() {
-    return mDocumentFactory;
+  public DocumentFactory getDocumentFactory() throws RegainException {
+    DocumentFactory factory = mThreadDocumentFactory.get();
+    if (factory == null) {
+      synchronized (mDocumentFactoryCopyList) {
+        factory = mDocumentFactory.createCopy();
+        mDocumentFactoryCopyList.add(factory);
+      }
+      mThreadDocumentFactory.set(factory);
+    }
+    return factory;
   }
 
   /**
    * Goes through the index and deletes all obsolete entries.
    * <p>
-   * Entries are obsolete if they are marked for deletion by the
-   * IndexWriterManager (see {@link #mUrlsToDeleteHash}) or if the don't neither
-   * match an entry of the urlToKeepSet nor of the prefixesToKeepArr.
+   * Entries are obsolete if the don't neither match an entry of the
+   * urlToKeepSet nor of the prefixesToKeepArr or if they have no url or
+   * last-modified field. Outdated entries were already replaced when their
+   * document was indexed.
+   * <p>
+   * Only the url and last-modified fields are read. The entries are checked in
+   * batches of {@link #OBSOLETE_CHECK_BATCH_SIZE}, whether the files of a batch
+   * still exist is checked in parallel.
    *
    * @param urlChecker The UrlChecker to use for deciding whether an index entry
-   *        should be kept in the index or not. If null only the documents in
-   *        the {@link #mUrlsToDeleteHash} will be deleted.
+   *        should be kept in the index or not. If null nothing will be deleted.
    * @throws RegainException If an index entry could either not be read or
    *         deleted.
    */
-  public void removeObsoleteEntries(UrlChecker urlChecker)
+  public synchronized void removeObsoleteEntries(UrlChecker urlChecker)
           throws RegainException {
     if (!mUpdateIndex) {
       // Wir haben einen komplett neuen Index erstellt
@@ -815,137 +990,151 @@ public class IndexWriterManager {
       return;
     }
 
-    if ((mUrlsToDeleteHash == null) && (urlChecker == null)) {
+    if (urlChecker == null) {
       // There is nothing to delete -> Fast return
       return;
     }
 
     // Get the UrlMatchers that identify URLs that should not be deleted
-    UrlMatcher[] preserveUrlMatcherArr = null;
-    if (urlChecker != null) {
-      preserveUrlMatcherArr = urlChecker.createPreserveUrlMatcherArr();
-    }
+    UrlMatcher[] preserveUrlMatcherArr = urlChecker.createPreserveUrlMatcherArr();
 
     // Go through the index
-    setIndexMode(READING_MODE);
-    int docCount = mIndexReader.numDocs();
-    for (int docIdx = 0; docIdx < docCount; docIdx++) {
-      if (!mIndexReader.isDeleted(docIdx)) {
-        // Document lesen
-        Document doc;
-        try {
-          doc = mIndexReader.document(docIdx);
-        } catch (Throwable thr) {
-          throw new RegainException("Getting document #" + docIdx + " from index failed.", thr);
-        }
-
-        // URL und last-modified holen
-        String url = doc.get("url");
-        String lastModified = doc.get("last-modified");
-
-        // Prüfen, ob die URL gelöscht werden soll
-        boolean shouldBeDeleted;
-        if (url != null) {
-          // Prüfen, ob dieser Eintrag zum Löschen vorgesehen ist
-          if (isMarkedForDeletion(doc)) {
-            shouldBeDeleted = true;
-          } // Check whether all other documents should NOT be deleted
-          else if ((urlChecker == null)) {
-            shouldBeDeleted = false;
-          } // Check whether this document should be kept in the index
-          else if (urlChecker.shouldBeKeptInIndex(url)) {
-            shouldBeDeleted = false;
-          } // Prüfen, ob die URL zu einem zu-verschonen-Präfix passt
-          else {
-            shouldBeDeleted = true;
-            for (int i = 0; i < preserveUrlMatcherArr.length; i++) {
-              if (preserveUrlMatcherArr[i].matches(url)) {
-                shouldBeDeleted = false;
-                break;
-              }
-            }
+    ExecutorService executor = Executors.newFixedThreadPool(FILE_CHECK_THREAD_COUNT);
+    IndexReader reader = openNearRealTimeReader();
+    try {
+      FieldSelector selector = new MapFieldSelector(OBSOLETE_CHECK_FIELDS);
+      int[] docIdxArr = new int[OBSOLETE_CHECK_BATCH_SIZE];
+      String[] urlArr = new String[OBSOLETE_CHECK_BATCH_SIZE];
+      String[] lastModifiedArr = new String[OBSOLETE_CHECK_BATCH_SIZE];
+      int batchSize = 0;
+      boolean deleteEntriesWithoutUrl = false;
+      int docCount = reader.maxDoc();
+      for (int docIdx = 0; docIdx < docCount; docIdx++) {
+        if (!reader.isDeleted(docIdx)) {
+          // URL und last-modified lesen
+          Document doc;
+          try {
+            doc = reader.document(docIdx, selector);
+          } catch (Throwable thr) {
+            throw new RegainException("Getting document #" + docIdx + " from index failed.", thr);
           }
-
-          if (shouldBeDeleted) {
-        	pluginManager.eventDeleteIndexEntry(doc, mIndexReader);
-
-            try {
-              mLog.info("Deleting from index: " + url + " from " + lastModified);
-              mIndexReader.deleteDocument(docIdx);
-            } catch (IOException exc) {
-              throw new RegainException("Deleting document #" + docIdx + " from index failed: " + url + " from " + lastModified, exc);
+          String url = doc.get("url");
+          String lastModified = doc.get("last-modified");
+
+          if ((url == null) || (lastModified == null)) {
+            // url und last-modified sind Mussfelder
+            // Da eines fehlt -> Dokument l�schen
+            deleteObsoleteEntry(reader, docIdx, url, lastModified);
+            if (url == null) {
+              deleteEntriesWithoutUrl = true;
+            }
+          } else {
+            docIdxArr[batchSize] = docIdx;
+            urlArr[batchSize] = url;
+            lastModifiedArr[batchSize] = lastModified;
+            batchSize++;
+            if (batchSize == OBSOLETE_CHECK_BATCH_SIZE) {
+              removeObsoleteEntries(reader, docIdxArr, urlArr, lastModifiedArr,
+                  urlChecker, preserveUrlMatcherArr, executor);
+              batchSize = 0;
             }
           }
         }
       }
-    }
-
-    // Merkliste der zu l�schenden Eintr�ge l�schen
-    mUrlsToDeleteHash = null;
-  }
+      if (batchSize != 0) {
+        removeObsoleteEntries(reader, Arrays.copyOf(docIdxArr, batchSize),
+            Arrays.copyOf(urlArr, batchSize), Arrays.copyOf(lastModifiedArr, batchSize),
+            urlChecker, preserveUrlMatcherArr, executor);
+      }
 
-  /**
-   * Goes through the index and deletes all obsolete entries.
-   * <p>
-   * Entries are obsolete if they are marked for deletion by the
-   * IndexWriterManager (see {@link #mUrlsToDeleteHash}).
-   *
-   * @throws RegainException If an index entry could either not be read or
-   *         deleted.
-   */
-  private void removeObsoleteEntries() throws RegainException {
-    removeObsoleteEntries(null);
+      if (deleteEntriesWithoutUrl) {
+        // NOTE: Entries without URL can't be deleted by term.
+        BooleanQuery query = new BooleanQuery();
+        query.add(new MatchAllDocsQuery(), BooleanClause.Occur.MUST);
+        query.add(new TermRangeQuery("url", null, null, true, true), BooleanClause.Occur.MUST_NOT);
+        try {
+          mIndexWriter.deleteDocuments(query);
+        } catch (IOException exc) {
+          throw new RegainException("Deleting documents without URL from index failed", exc);
+        }
+      }
+    } finally {
+      closeReader(reader);
+      executor.shutdown();
+    }
   }
 
   /**
-   * Merkt ein Dokument für die sp�tere L�schung vor.
-   * <p>
-   * Diese Methode ist Teil eines Workaround: Ein alter Eintrag, der durch einen
-   * neuen ersetzt wird, wird nicht sofort gel�scht, sondern nur zur L�schung
-   * vorgemerkt. Auf diese Weise wird ein seltener Fehler umgangen, der das
-   * Schlie�en des IndexWriter verhindert, wenn h�ufig zwischen InderWriter und
-   * IndexReader gewechselt wird.
+   * Checks a batch of index entries and deletes the obsolete ones.
    *
-   * @param doc Das vorzumerkende Dokument.
+   * @param reader The reader to read the entries from.
+   * @param docIdxArr The document numbers of the entries.
+   * @param urlArr The URLs of the entries.
+   * @param lastModifiedArr The last-modified dates of the entries.
+   * @param urlChecker The UrlChecker to use for deciding whether an index entry
+   *        should be kept in the index or not.
+   * @param preserveUrlMatcherArr The UrlMatchers that identify URLs that should
+   *        not be deleted.
+   * @param executor The executor that checks whether the files exist.
+   * @throws RegainException If checking or deleting an entry failed.
    */
-  private void markForDeletion(Document doc) {
-    if (mUrlsToDeleteHash == null) {
-      mUrlsToDeleteHash = new HashMap<String, String>();
-    }
+  private void removeObsoleteEntries(IndexReader reader, int[] docIdxArr,
+          String[] urlArr, String[] lastModifiedArr, UrlChecker urlChecker,
+          UrlMatcher[] preserveUrlMatcherArr, ExecutorService executor)
+          throws RegainException {
+    boolean[] keepArr = urlChecker.shouldBeKeptInIndex(urlArr, executor);
+    for (int docNr = 0; docNr < urlArr.length; docNr++) {
+      if (!keepArr[docNr]) {
+        // Prüfen, ob die URL zu einem zu-verschonen-Präfix passt
+        boolean shouldBeDeleted = true;
+        for (int i = 0; i < preserveUrlMatcherArr.length; i++) {
+          if (preserveUrlMatcherArr[i].matches(urlArr[docNr])) {
+            shouldBeDeleted = false;
+            break;
+          }
+        }
 
-    String url = doc.get("url");
-    String lastModified = doc.get("last-modified");
-    if ((url != null) || (lastModified != null)) {
-      mLog.info("Marking old entry for a later deletion: " + url + " from " + lastModified);
-      mUrlsToDeleteHash.put(url, lastModified);
+        if (shouldBeDeleted) {
+          deleteObsoleteEntry(reader, docIdxArr[docNr], urlArr[docNr],
+              lastModifiedArr[docNr]);
+        }
+      }
     }
   }
 
   /**
-   * Gibt zurück, ob ein Dokument für die Löschung vorgemerkt wurde.
+   * Deletes an obsolete entry from the index.
+   * <p>
+   * If the entry has no URL it can't be deleted by term. In this case only
+   * the crawler plugins are told, the caller has to delete the entry.
    *
-   * @param doc Das zu prüfende Dokument.
-   * @return Ob das Dokument für die Löschung vorgemerkt wurde.
+   * @param reader The reader to read the entry from.
+   * @param docIdx The document number of the entry.
+   * @param url The URL of the entry. May be <code>null</code>.
+   * @param lastModified The last-modified date of the entry.
+   * @throws RegainException If reading or deleting the entry failed.
    */
-  private boolean isMarkedForDeletion(Document doc) {
-    String url = doc.get("url");
-    String lastModified = doc.get("last-modified");
-
-    if ((url == null) || (lastModified == null)) {
-      // url und last-modified sind Mussfelder
-      // Da eines fehlt -> Dokument l�schen
-      return true;
+  private void deleteObsoleteEntry(IndexReader reader, int docIdx, String url,
+          String lastModified)
+          throws RegainException {
+    // The plugins get the whole document
+    Document doc;
+    try {
+      doc = reader.document(docIdx);
+    } catch (Throwable thr) {
+      throw new RegainException("Getting document #" + docIdx + " from index failed.", thr);
     }
+    pluginManager.eventDeleteIndexEntry(doc, reader);
 
-    if (mUrlsToDeleteHash == null) {
-      // Es sind gar keine Dokumente zum Löschen vorgemerkt
-      return false;
+    mLog.info("Deleting from index: " + url + " from " + lastModified);
+    if (url != null) {
+      try {
+        mIndexWriter.deleteDocuments(new Term("url", url));
+      } catch (IOException exc) {
+        throw new RegainException("Deleting document #" + docIdx + " from index failed: " + url + " from " + lastModified, exc);
+      }
     }
-
-    // Prüfen, ob es einen Eintrag für diese URL gibt und ob er dem
-    // last-modified des Dokuments entspricht
-    String lastModifiedToDelete = mUrlsToDeleteHash.get(url);
-    return lastModified.equals(lastModifiedToDelete);
+    mRemovedDocCount++;
   }
 
   /**
@@ -954,30 +1143,21 @@ public class IndexWriterManager {
    * @return Die Anzahl der Eintr�ge im Index.
    * @throws RegainException Wenn die Anzahl nicht ermittelt werden konnte.
    */
-  public int getIndexEntryCount() throws RegainException {
-    if (mIndexReader != null) {
-      return mIndexReader.numDocs();
-    } else {
-      setIndexMode(WRITING_MODE);
-      return mIndexWriter.maxDoc();
+  public synchronized int getIndexEntryCount() throws RegainException {
+    IndexReader reader = openNearRealTimeReader();
+    try {
+      return reader.numDocs();
+    } finally {
+      closeReader(reader);
     }
   }
 
   /**
-   * Prepares a breakpoint.
+   * Closes the error log of the index.
    *
-   * @throws RegainException If preparing the breakpoint failed.
+   * @throws RegainException If closing the error log failed.
    */
-  private void prepareBreakpoint() throws RegainException {
-    // Testen, ob noch Eintr�ge für die L�schung vorgesehen sind
-    if (mUrlsToDeleteHash != null) {
-      throw new RegainException("There are still documents marked for deletion." + " The method removeObsoleteEntires(...) has to be called first.");
-    }
-
-    // Switch to ALL_CLOSED_MODE
-    setIndexMode(ALL_CLOSED_MODE);
-
-    // Close the error log of the index
+  private void closeErrorLog() throws RegainException {
     if (mErrorLogStream != null) {
       mErrorLogWriter.close();
       try {
@@ -993,28 +1173,51 @@ public class IndexWriterManager {
 
   /**
    * Creates a breakpoint.
+   * <p>
+   * The changes are committed and the files of this commit are copied. The
+   * IndexWriter stays open.
    *
    * @throws RegainException If creating the breakpoint failed.
    */
-  public void createBreakpoint() throws RegainException {
+  public synchronized void createBreakpoint() throws RegainException {
     mLog.info("Creating a breakpoint...");
     try {
       mBreakpointProfiler.startMeasuring();
 
-      // Remove the entries that were marked for deletion
-      removeObsoleteEntries();
+      // Close the error log of the index
+      closeErrorLog();
 
-      // Prepare the breakpoint
-      prepareBreakpoint();
+      // Write the buffered entries of the file manifest
+      if (mFileManifest != null) {
+        mFileManifest.flush();
+      }
+
+      // Commit the changes and hold the files of this commit until they are
+      // copied
+      IndexCommit commit;
+      try {
+        mIndexWriter.commit();
+        commit = mSnapshotPolicy.snapshot(BREAKPOINT_SNAPSHOT_ID);
+      } catch (IOException exc) {
+        throw new RegainException("Committing index failed", exc);
+      }
 
       // Create a temp directory
       // NOTE: We copy to a temp directory and rename it when we are finished.
       File tempDir = new File(mBreakpointIndexDir.getAbsolutePath() + "_tmp");
-      RegainToolkit.deleteDirectory(tempDir);
-      tempDir.mkdir();
+      try {
+        RegainToolkit.deleteDirectory(tempDir);
+        tempDir.mkdir();
 
-      // Copy the current working index to the breakpoint directory
-      RegainToolkit.copyDirectory(mTempIndexDir, tempDir, false);
+        // Copy the committed working index to the breakpoint directory
+        copyIndexCommit(commit, tempDir);
+      } finally {
+        try {
+          mSnapshotPolicy.release(BREAKPOINT_SNAPSHOT_ID);
+        } catch (IOException exc) {
+          mLog.warn("Releasing index snapshot failed", exc);
+        }
+      }
 
       // Delete the old breakpoint if it exists
       deleteOldIndex(mBreakpointIndexDir);
@@ -1034,16 +1237,53 @@ public class IndexWriterManager {
     }
   }
 
+  /**
+   * Copies the files of an index commit and the other files of the working
+   * index (like the analyzerType.txt) into a directory. Sub directories are
+   * not copied.
+   * <p>
+   * Index files that don't belong to the commit are skipped, because the
+   * IndexWriter may change or delete them while we are copying.
+   *
+   * @param commit The commit to copy.
+   * @param targetDir The directory to copy the files to.
+   * @throws RegainException If copying failed.
+   */
+  private void copyIndexCommit(IndexCommit commit, File targetDir)
+          throws RegainException {
+    HashSet<String> commitFileSet;
+    try {
+      commitFileSet = new HashSet<String>(commit.getFileNames());
+    } catch (IOException exc) {
+      throw new RegainException("Getting the files of the index commit failed", exc);
+    }
+
+    IndexFileNameFilter indexFileFilter = IndexFileNameFilter.getFilter();
+    File[] fileArr = mTempIndexDir.listFiles();
+    for (int i = 0; i < fileArr.length; i++) {
+      String fileName = fileArr[i].getName();
+      if (fileArr[i].isDirectory() || fileName.equals(IndexWriter.WRITE_LOCK_NAME)) {
+        continue;
+      }
+      if (indexFileFilter.accept(mTempIndexDir, fileName)
+          && !commitFileSet.contains(fileName))
+      {
+        continue;
+      }
+
+      RegainToolkit.copyFile(fileArr[i], new File(targetDir, fileName));
+    }
+  }
+
   /**
    * Optimiert und schlie�t den Index
    *
    * @param putIntoQuarantine Gibt an, ob der Index in Quarant�ne soll.
    * @throws RegainException Wenn der Index nicht geschlossen werden konnte.
    */
-  public void close(boolean putIntoQuarantine) throws RegainException {
+  public synchronized void close(boolean putIntoQuarantine) throws RegainException {
     // Index optimieren
     try {
-      setIndexMode(WRITING_MODE);
       mIndexWriter.optimize(); // TODO: Use maybeMerge instead?
     } catch (IOException exc) {
       throw new RegainException("Finishing IndexWriter failed", exc);
@@ -1060,16 +1300,37 @@ public class IndexWriterManager {
       }
       mLog.info(msg.toString());
 
-      setIndexMode(READING_MODE);
-      RegainToolkit.readFieldValues(mIndexReader, prefetchFields, mTempIndexDir);
+      IndexReader reader = openNearRealTimeReader();
+      try {
+        RegainToolkit.readFieldValues(reader, prefetchFields, mTempIndexDir);
+      } finally {
+        closeReader(reader);
+      }
     }
 
-    // Prepare the final 'breakpoint'
-    // NOTE: This will set the ALL_CLOSED_MODE
-    prepareBreakpoint();
+    // Close the index
+    closeErrorLog();
+    if (mFileManifest != null) {
+      mLog.info("File manifest contains " + mFileManifest.getNewSize() + " files");
+      mFileManifest.close();
+    }
+    try {
+      mIndexWriter.close();
+      mIndexWriter = null;
+    } catch (IOException exc) {
+      throw new RegainException("Closing IndexWriter failed", exc);
+    }
+    closeReader(mOldIndexReader);
+    mOldIndexReader = null;
 
     // Ressourcen der DocumentFactory freigeben
     mDocumentFactory.close();
+    synchronized (mDocumentFactoryCopyList) {
+      for (DocumentFactory factory : mDocumentFactoryCopyList) {
+        factory.close();
+      }
+      mDocumentFactoryCopyList.clear();
+    }
 
     // Write all terms in the index into a file
     if (mAnalysisDir != null) {
@@ -1103,6 +1364,9 @@ public class IndexWriterManager {
     if (renameSucceed) {
       // Delete the last breakpoint if there should be one
       deleteOldIndex(mBreakpointIndexDir);
+
+      // Let a search in this JVM use the new index right away
+      DirectoryWatcher.getInstance().directoryCreated(targetDir);
     } else {
       throw new RegainException("Renaming " + mTempIndexDir + " to " + targetDir + " failed after " + (RENAME_TIMEOUT / 1000) + " seconds!");
     }
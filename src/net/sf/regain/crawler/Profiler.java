@@ -53,10 +53,17 @@ public class Profiler {
   /** Die Anzahl der abgebrochenen Messungen. */
   private int mAbortedMeasureCount;
   /**
-   * Die Zeit, zu der die laufende Messung begonnen hat. Ist -1, wenn keine
-   * Messung läuft.
+   * Die Zeit, zu der die zuletzt gestartete laufende Messung begonnen hat. Ist
+   * -1, wenn keine Messung läuft.
    */
-  private long mMeasureStart = -1;
+  private volatile long mMeasureStart = -1;
+  /** Die Anzahl der gerade laufenden Messungen (eine pro Thread). */
+  private int mRunningMeasureCount;
+  /**
+   * Die Startzeit der laufenden Messung des aktuellen Threads. Ist
+   * <code>null</code>, wenn der Thread keine Messung durchführt.
+   */
+  private ThreadLocal<Long> mThreadMeasureStart = new ThreadLocal<Long>();
 
 
 
@@ -82,7 +89,7 @@ public class Profiler {
    *
    * @return The number of measures.
    */
-  public int getMeasureCount() {
+  public synchronized int getMeasureCount() {
     return mMeasureCount;
   }
 
@@ -92,7 +99,7 @@ public class Profiler {
    *
    * @return The number of aborted measures.
    */
-  public int getAbortedMeasureCount() {
+  public synchronized int getAbortedMeasureCount() {
     return mAbortedMeasureCount;
   }
 
@@ -138,13 +145,22 @@ public class Profiler {
 
   /**
    * Startet eine Messung.
+   * <p>
+   * Several threads may measure at the same time. Each thread has its own
+   * running measuring.
    */
   public void startMeasuring() {
-    if (mMeasureStart != -1) {
+    if (mThreadMeasureStart.get() != null) {
       mLog.warn("A profiler measuring for " + mName + " was started, although "
         + "there is currently a measuring running!");
     }
-    mMeasureStart = System.currentTimeMillis();
+    long startTime = System.currentTimeMillis();
+    mThreadMeasureStart.set(startTime);
+
+    synchronized (this) {
+      mRunningMeasureCount++;
+      mMeasureStart = startTime;
+    }
   }
 
 
@@ -155,15 +171,20 @@ public class Profiler {
    * @param bytes Die Anzahl der verarbeiteten Bytes.
    */
   public void stopMeasuring(long bytes) {
-    if (mMeasureStart == -1) {
+    Long startTime = mThreadMeasureStart.get();
+    if (startTime == null) {
       mLog.warn("A profiler measuring for " + mName + " was stopped, although "
         + "there was currently no measuring running!");
     } else {
-      mTotalTime += System.currentTimeMillis() - mMeasureStart;
-      mTotalBytes += bytes;
-      mMeasureCount++;
+      mThreadMeasureStart.remove();
 
-      mMeasureStart = -1;
+      synchronized (this) {
+        mTotalTime += System.currentTimeMillis() - startTime.longValue();
+        mTotalBytes += bytes;
+        mMeasureCount++;
+
+        measuringFinished();
+      }
     }
   }
 
@@ -175,12 +196,30 @@ public class Profiler {
    * Exception geworfen wurde.
    */
   public void abortMeasuring() {
-    if (mMeasureStart == -1) {
+    if (mThreadMeasureStart.get() == null) {
       mLog.warn("A profiler measuring for " + mName + " was aborted, although "
         + "there was currently no measuring running!");
     } else {
+      mThreadMeasureStart.remove();
+
+      synchronized (this) {
+        mAbortedMeasureCount++;
+
+        measuringFinished();
+      }
+    }
+  }
+
+
+  /**
+   * Resets the start time if the last running measuring was finished. Must be
+   * called while holding the lock of this profiler.
+   */
+  private void measuringFinished() {
+    mRunningMeasureCount--;
+    if (mRunningMeasureCount <= 0) {
+      mRunningMeasureCount = 0;
       mMeasureStart = -1;
-      mAbortedMeasureCount++;
     }
   }
 
@@ -193,10 +232,16 @@ public class Profiler {
    */
   public String toString() {
     // Get a current snap shot
-    long totalTime = mTotalTime;
-    long totalBytes = mTotalBytes;
-    int measureCount = mMeasureCount;
-    int abortedMeasureCount = mAbortedMeasureCount;
+    long totalTime;
+    long totalBytes;
+    int measureCount;
+    int abortedMeasureCount;
+    synchronized (this) {
+      totalTime = mTotalTime;
+      totalBytes = mTotalBytes;
+      measureCount = mMeasureCount;
+      abortedMeasureCount = mAbortedMeasureCount;
+    }
 
     // Calculate the results
     long averageTime = 0;
@@ -309,7 +354,7 @@ public class Profiler {
    *
    * @return Ob dieser Profiler genutzt wurde.
    */
-  public boolean wasUsed() {
+  public synchronized boolean wasUsed() {
     return (mMeasureCount > 0) || (mAbortedMeasureCount > 0);
   }
 
@@ -0,0 +1,165 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.crawler;
+
+import java.io.UnsupportedEncodingException;
+import java.net.MalformedURLException;
+import java.net.URL;
+
+import net.sf.regain.RegainException;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Reads the Crawl-delay of a robots.txt.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class RobotsTxt {
+
+  /** The logger for this class. */
+  private static Logger mLog = Logger.getLogger(RobotsTxt.class);
+
+
+  /**
+   * Gets the URL of the robots.txt of the host of an URL.
+   *
+   * @param url The URL to get the robots.txt URL for.
+   * @return The URL of the robots.txt or <code>null</code> if the URL is
+   *         invalid.
+   */
+  public static String getRobotsTxtUrl(String url) {
+    try {
+      return new URL(new URL(url), "/robots.txt").toExternalForm();
+    }
+    catch (MalformedURLException exc) {
+      return null;
+    }
+  }
+
+
+  /**
+   * Loads a robots.txt and reads the Crawl-delay from it.
+   *
+   * @param robotsTxtUrl The URL of the robots.txt.
+   * @param userAgent The user agent of the crawler. May be <code>null</code>.
+   * @return The Crawl-delay in milliseconds or -1 if the robots.txt could not
+   *         be loaded or has no Crawl-delay for the crawler.
+   */
+  public static long loadCrawlDelay(String robotsTxtUrl, String userAgent) {
+    String robotsTxt;
+    try {
+      byte[] content = CrawlerToolkit.loadHttpDocument(robotsTxtUrl);
+      robotsTxt = new String(content, "ISO-8859-1");
+    }
+    catch (RegainException exc) {
+      // Most hosts have no robots.txt
+      if (mLog.isDebugEnabled()) {
+        mLog.debug("Loading " + robotsTxtUrl + " failed: " + exc.getMessage());
+      }
+      return -1;
+    }
+    catch (UnsupportedEncodingException exc) {
+      return -1;
+    }
+
+    return parseCrawlDelay(robotsTxt, userAgent);
+  }
+
+
+  /**
+   * Reads the Crawl-delay from the content of a robots.txt.
+   * <p>
+   * The Crawl-delay of the first record naming the crawler's user agent is
+   * used. If there is no such record, the one of the record for all robots
+   * ("User-agent: *") is used.
+   *
+   * @param robotsTxt The content of the robots.txt.
+   * @param userAgent The user agent of the crawler. May be <code>null</code>.
+   * @return The Crawl-delay in milliseconds or -1 if there is no Crawl-delay
+   *         for the crawler.
+   */
+  public static long parseCrawlDelay(String robotsTxt, String userAgent) {
+    // Get the name of the robot: "regain/2.0 (...)" -> "regain"
+    String robotName = null;
+    if (userAgent != null) {
+      robotName = userAgent.trim().split("[/ ]", 2)[0].toLowerCase();
+      if (robotName.length() == 0) {
+        robotName = null;
+      }
+    }
+
+    long wildcardDelay = -1;
+    boolean recordForRobot = false;
+    boolean recordForAll = false;
+    boolean inUserAgentLines = false;
+    String[] lineArr = robotsTxt.split("\r\n|\r|\n");
+    for (int i = 0; i < lineArr.length; i++) {
+      String line = lineArr[i];
+      int commentPos = line.indexOf('#');
+      if (commentPos != -1) {
+        line = line.substring(0, commentPos);
+      }
+      int colonPos = line.indexOf(':');
+      if (colonPos == -1) {
+        continue;
+      }
+      String field = line.substring(0, colonPos).trim().toLowerCase();
+      String value = line.substring(colonPos + 1).trim();
+
+      if (field.equals("user-agent")) {
+        if (! inUserAgentLines) {
+          // A new record starts
+          recordForRobot = false;
+          recordForAll = false;
+          inUserAgentLines = true;
+        }
+        String agent = value.toLowerCase();
+        if (agent.equals("*")) {
+          recordForAll = true;
+        } else if ((robotName != null) && (agent.length() != 0)
+            && robotName.indexOf(agent) != -1)
+        {
+          recordForRobot = true;
+        }
+      } else {
+        inUserAgentLines = false;
+        if (field.equals("crawl-delay") && (recordForRobot || recordForAll)) {
+          long delay;
+          try {
+            delay = Math.round(Double.parseDouble(value) * 1000);
+          }
+          catch (NumberFormatException exc) {
+            continue;
+          }
+          if (recordForRobot) {
+            return Math.max(delay, 0);
+          } else if (wildcardDelay == -1) {
+            wildcardDelay = Math.max(delay, 0);
+          }
+        }
+      }
+    }
+
+    return wildcardDelay;
+  }
+
+}
@@ -0,0 +1,355 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.crawler;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import net.sf.regain.RegainException;
+
+/**
+ * Brings the URLs found by the crawler into a normal form before they are
+ * checked and remembered.
+ * <p>
+ * The URL cleaners are compiled once, and the URLs are only copied if
+ * something has to be changed. So the URLs of the many links found in HTML
+ * pages can be normalized without much garbage.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class UrlCanonicalizer {
+
+  /** The compiled URL cleaners. Matches are removed from the URLs. */
+  private Pattern[] mUrlCleanerArr;
+  /**
+   * The maximum number of times the same path part may occur in a URL. 0 means
+   * that cycles are not checked.
+   */
+  private int mMaxCycleCount;
+
+
+  /**
+   * Creates a new instance of UrlCanonicalizer.
+   *
+   * @param urlCleanerArr The regular expressions whose matches should be
+   *        removed from the URLs.
+   * @param maxCycleCount The maximum number of times the same path part may
+   *        occur in a URL. 0 means that cycles are not checked.
+   * @throws RegainException If a URL cleaner has a wrong syntax.
+   */
+  public UrlCanonicalizer(String[] urlCleanerArr, int maxCycleCount)
+    throws RegainException
+  {
+    mUrlCleanerArr = new Pattern[(urlCleanerArr == null) ? 0 : urlCleanerArr.length];
+    for (int i = 0; i < mUrlCleanerArr.length; i++) {
+      try {
+        mUrlCleanerArr[i] = Pattern.compile(urlCleanerArr[i]);
+      }
+      catch (PatternSyntaxException exc) {
+        throw new RegainException("URL cleaner has a wrong syntax: '"
+            + urlCleanerArr[i] + "'", exc);
+      }
+    }
+    mMaxCycleCount = maxCycleCount;
+  }
+
+
+  /**
+   * Normalizes a URL: Blanks are changed to <code>%20</code>,
+   * <code>&amp;amp;</code> is changed to <code>&amp;</code> and the parts
+   * matching the URL cleaners are removed (like
+   * {@link CrawlerToolkit#cleanURL(String, String[])} does).
+   *
+   * @param url The URL to normalize.
+   * @return The normalized URL. This is the given instance if nothing had to
+   *         be changed.
+   */
+  public String canonicalize(String url) {
+    url = replaceBlanksAndEntities(url);
+
+    for (int i = 0; i < mUrlCleanerArr.length; i++) {
+      Matcher matcher = mUrlCleanerArr[i].matcher(url);
+      if (matcher.find()) {
+        url = matcher.replaceAll("");
+      }
+    }
+
+    if (url.indexOf("&&") != -1) {
+      StringBuilder buffer = new StringBuilder(url.length());
+      int pos = 0;
+      int found;
+      while ((found = url.indexOf("&&", pos)) != -1) {
+        buffer.append(url, pos, found).append('&');
+        pos = found + 2;
+      }
+      buffer.append(url, pos, url.length());
+      url = buffer.toString();
+    }
+
+    if (url.endsWith("&")) {
+      url = url.substring(0, url.length() - 1);
+    }
+    if (url.endsWith("?")) {
+      url = url.substring(0, url.length() - 1);
+    }
+
+    return url;
+  }
+
+
+  /**
+   * Changes blanks to <code>%20</code> and <code>&amp;amp;</code> to
+   * <code>&amp;</code> in one pass.
+   *
+   * @param url The URL to change.
+   * @return The changed URL. This is the given instance if there was nothing
+   *         to change.
+   */
+  private static String replaceBlanksAndEntities(String url) {
+    StringBuilder buffer = null;
+    int length = url.length();
+    int copied = 0;
+    for (int i = 0; i < length; i++) {
+      char c = url.charAt(i);
+      if (c == ' ') {
+        if (buffer == null) {
+          buffer = new StringBuilder(length + 16);
+        }
+        buffer.append(url, copied, i).append("%20");
+        copied = i + 1;
+      }
+      else if (c == '&' && url.startsWith("amp;", i + 1)) {
+        if (buffer == null) {
+          buffer = new StringBuilder(length);
+        }
+        buffer.append(url, copied, i + 1);
+        i += 4;
+        copied = i + 1;
+      }
+    }
+
+    if (buffer == null) {
+      return url;
+    }
+    buffer.append(url, copied, length);
+    return buffer.toString();
+  }
+
+
+  /**
+   * Checks whether a URL has no cycles in its path. See
+   * {@link #hasNoCycles(String, int)}.
+   *
+   * @param url The URL to check.
+   * @return Whether the URL has no cycles. Always <code>true</code> if cycles
+   *         should not be checked.
+   */
+  public boolean hasNoCycles(String url) {
+    return (mMaxCycleCount <= 0) || hasNoCycles(url, mMaxCycleCount);
+  }
+
+
+  /**
+   * Checks whether a URL has no cycles in its path. A URL has cycles if at
+   * least <code>maxCycles</code> parts of its path are repetitions of other
+   * parts (like <code>/a/b/a/b/a/b/</code>).
+   * <p>
+   * The path parts are compared in place, so no objects are created.
+   *
+   * @param url The URL to check.
+   * @param maxCycles The maximum number of repeated path parts.
+   * @return Whether the URL has no cycles.
+   */
+  public static boolean hasNoCycles(String url, int maxCycles) {
+    // Find the path: It starts after the host and ends before the query
+    int pathStart = url.indexOf("://");
+    if (pathStart == -1) {
+      return true;
+    }
+    pathStart = url.indexOf('/', pathStart + 3);
+    if (pathStart == -1) {
+      return true;
+    }
+    int pathEnd = url.length();
+    for (int i = pathStart; i < pathEnd; i++) {
+      char c = url.charAt(i);
+      if (c == '?' || c == '#') {
+        pathEnd = i;
+        break;
+      }
+    }
+    if (pathEnd - pathStart < 2) {
+      return true;
+    }
+
+    // Count the parts and the repeated parts
+    int partCount = 0;
+    int repeatCount = 0;
+    int partStart = pathStart;
+    while (partStart < pathEnd) {
+      // Skip the slashes
+      while (partStart < pathEnd && url.charAt(partStart) == '/') {
+        partStart++;
+      }
+      if (partStart == pathEnd) {
+        break;
+      }
+      int partEnd = url.indexOf('/', partStart);
+      if (partEnd == -1 || partEnd > pathEnd) {
+        partEnd = pathEnd;
+      }
+
+      partCount++;
+      if (occursBefore(url, pathStart, partStart, partEnd)) {
+        repeatCount++;
+      }
+      partStart = partEnd;
+    }
+
+    // There are cycles if the number of unique parts is at most
+    // partCount - maxCycles
+    return (repeatCount == 0) || (partCount - repeatCount > partCount - maxCycles);
+  }
+
+
+  /**
+   * Checks whether a path part occurs earlier in the path.
+   *
+   * @param url The URL.
+   * @param pathStart The start of the path.
+   * @param partStart The start of the part.
+   * @param partEnd The end of the part (exclusive).
+   * @return Whether the part occurs between <code>pathStart</code> and
+   *         <code>partStart</code>.
+   */
+  private static boolean occursBefore(String url, int pathStart, int partStart, int partEnd) {
+    int partLength = partEnd - partStart;
+    int pos = pathStart;
+    while (pos < partStart) {
+      while (pos < partStart && url.charAt(pos) == '/') {
+        pos++;
+      }
+      int end = url.indexOf('/', pos);
+      if (end == -1 || end > partStart) {
+        end = partStart;
+      }
+      if (end - pos == partLength && url.regionMatches(pos, url, partStart, partLength)) {
+        return true;
+      }
+      pos = end;
+    }
+    return false;
+  }
+
+
+  /**
+   * Creates the key a URL is remembered by in the sets of accepted and
+   * ignored URLs. The protocol and the host are written in lower case and the
+   * default port of http and https is removed, so different spellings of the
+   * same URL are detected.
+   *
+   * @param url The URL to create the key for.
+   * @return The key. This is the given instance if the URL already is in
+   *         normal form.
+   */
+  public static String createKey(String url) {
+    int schemeEnd = url.indexOf("://");
+    if (schemeEnd == -1) {
+      return url;
+    }
+
+    // Find the host (user and password are left as they are)
+    int authorityStart = schemeEnd + 3;
+    int authorityEnd = url.length();
+    for (int i = authorityStart; i < authorityEnd; i++) {
+      char c = url.charAt(i);
+      if (c == '/' || c == '?' || c == '#') {
+        authorityEnd = i;
+        break;
+      }
+    }
+    int hostStart = url.lastIndexOf('@', authorityEnd - 1) + 1;
+    if (hostStart < authorityStart) {
+      hostStart = authorityStart;
+    }
+    int hostEnd = url.lastIndexOf(':', authorityEnd - 1);
+    if (hostEnd < hostStart) {
+      hostEnd = authorityEnd;
+    }
+
+    boolean hasUpperCase = hasUpperCase(url, 0, schemeEnd)
+      || hasUpperCase(url, hostStart, hostEnd);
+    boolean hasDefaultPort = false;
+    if (hostEnd < authorityEnd) {
+      hasDefaultPort =
+        (isDefaultPort(url, hostEnd, authorityEnd, "80") && url.regionMatches(true, 0, "http://", 0, 7))
+        || (isDefaultPort(url, hostEnd, authorityEnd, "443") && url.regionMatches(true, 0, "https://", 0, 8));
+    }
+
+    if (! hasUpperCase && ! hasDefaultPort) {
+      return url;
+    }
+
+    StringBuilder buffer = new StringBuilder(url.length());
+    buffer.append(url.substring(0, schemeEnd).toLowerCase());
+    buffer.append(url, schemeEnd, hostStart);
+    buffer.append(url.substring(hostStart, hostEnd).toLowerCase());
+    buffer.append(url, hasDefaultPort ? authorityEnd : hostEnd, url.length());
+    return buffer.toString();
+  }
+
+
+  /**
+   * Checks whether a part of a String has upper case letters.
+   *
+   * @param text The text to check.
+   * @param start The start of the part.
+   * @param end The end of the part (exclusive).
+   * @return Whether the part has upper case letters.
+   */
+  private static boolean hasUpperCase(String text, int start, int end) {
+    for (int i = start; i < end; i++) {
+      if (Character.isUpperCase(text.charAt(i))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+
+  /**
+   * Checks whether the port of a URL is a certain default port.
+   *
+   * @param url The URL.
+   * @param colonPos The position of the colon before the port.
+   * @param authorityEnd The end of the port (exclusive).
+   * @param defaultPort The default port.
+   * @return Whether the URL has the default port.
+   */
+  private static boolean isDefaultPort(String url, int colonPos, int authorityEnd,
+    String defaultPort)
+  {
+    return (authorityEnd - colonPos - 1 == defaultPort.length())
+      && url.startsWith(defaultPort, colonPos + 1);
+  }
+
+}
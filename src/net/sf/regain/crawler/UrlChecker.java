@@ -20,18 +20,26 @@
  */
 package net.sf.regain.crawler;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashSet;
-import java.net.MalformedURLException;
-import java.net.URL;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import net.sf.regain.RegainException;
 import net.sf.regain.RegainToolkit;
 import net.sf.regain.crawler.config.StartUrl;
 import net.sf.regain.crawler.config.UrlMatcher;
+import net.sf.regain.crawler.config.UrlMatcherList;
 import net.sf.regain.crawler.config.UrlMatcherResult;
 import net.sf.regain.crawler.config.WhiteListEntry;
+import net.sf.regain.util.FingerprintSet;
 
 import org.apache.log4j.Logger;
 
@@ -45,7 +53,9 @@ import org.apache.log4j.Logger;
  * other (Wich is done by {@link #normalizeStartUrls(StartUrl[])}).
  * <p>
  * For http-URLs we have to remember all accepted or ignored URLs, because in
- * http URLs are found by page parsing which can ramdomly find any URL.
+ * http URLs are found by page parsing which can ramdomly find any URL. They
+ * are remembered in {@link FingerprintSet}s, so even for millions of URLs the
+ * heap use stays small.
  *
  * @author Til Schneider, www.murfman.de
  */
@@ -54,10 +64,17 @@ public class UrlChecker {
   /** The logger for this class. */
   private static Logger mLog = Logger.getLogger(UrlChecker.class);
 
+  /** The name of the file where the state is saved. */
+  private static final String STATE_FILE = "urlchecker.dat";
+  /** The name of the file where the accepted URLs are saved. */
+  private static final String ACCEPTED_FILE = "accepted.dat";
+  /** The name of the file where the ignored URLs are saved. */
+  private static final String IGNORED_FILE = "ignored.dat";
+
   /** Contains all http-URLs that have been accepted. */
-  private HashSet<String> mAcceptedUrlSet;
+  private FingerprintSet mAcceptedUrlSet;
   /** Contains all http-URLs that have been ignored. */
-  private HashSet<String> mIgnoredUrlSet;
+  private FingerprintSet mIgnoredUrlSet;
   /** The number of URLs that have been ignored. */
   private int mIgnoredCount;
 
@@ -69,12 +86,12 @@ public class UrlChecker {
    */
   private WhiteListEntry[] mWhiteListEntryArr;
   /**
-   * The black list.
-   * <p>
-   * The black list is an array of UrlMatchers, a URL <i>must not</i> match to,
-   * in order to be processed.
+   * The matchers of the white list entries that should be updated, compiled
+   * for finding the first match quickly.
    */
-  private UrlMatcher[] mBlackListArr;
+  private UrlMatcherList mWhiteListMatchers;
+  /** The black list compiled for finding a match quickly. */
+  private UrlMatcherList mBlackListMatchers;
 
 
   /**
@@ -84,14 +101,30 @@ public class UrlChecker {
    *        WhiteListEntry, a URL <i>must</i> match to, in order to be processed.
    * @param blackList The black list. The black list is an array of UrlMatchers,
    *        a URL <i>must not</i> match to, in order to be processed.
+   * @param spoolDir The directory where to put the files of the sets of
+   *        accepted and ignored URLs.
+   * @throws RegainException If creating the sets failed.
    */
-  public UrlChecker(WhiteListEntry[] whiteList, UrlMatcher[] blackList) {
-    mAcceptedUrlSet = new HashSet<String>();
-    mIgnoredUrlSet = new HashSet<String>();
+  public UrlChecker(WhiteListEntry[] whiteList, UrlMatcher[] blackList,
+    File spoolDir)
+    throws RegainException
+  {
+    mAcceptedUrlSet = new UrlSet(spoolDir, "accepted");
+    mIgnoredUrlSet = new UrlSet(spoolDir, "ignored");
     mIgnoredCount = 0;
 
     mWhiteListEntryArr = whiteList;
-    mBlackListArr = blackList;
+
+    // NOTE: The "should be updated"-flags of the white list are set before
+    //       the UrlChecker is created
+    ArrayList<UrlMatcher> updateList = new ArrayList<UrlMatcher>();
+    for (int i = 0; i < whiteList.length; i++) {
+      if (whiteList[i].shouldBeUpdated()) {
+        updateList.add(whiteList[i].getUrlMatcher());
+      }
+    }
+    mWhiteListMatchers = new UrlMatcherList(updateList.toArray(new UrlMatcher[updateList.size()]));
+    mBlackListMatchers = new UrlMatcherList(blackList);
   }
 
 
@@ -152,47 +185,7 @@ public class UrlChecker {
     * @return true if the URI has no cycles, false if cycles where detected.
     */
    public boolean hasNoCycles(String url, int maxCycles) {
-
-      String mPath = "";
-      boolean mResult = true;
-
-      try {
-         URL mUrl = new URL(url);
-         mPath = mUrl.getPath();
-
-      } catch (MalformedURLException ex) {
-         // This should never happen. We assume all URL where checked before
-         return mResult;
-      }
-
-      if (mPath.length() < 2) {
-         return mResult;
-      }
-
-      String[] mParts = RegainToolkit.splitString(mPath, "/");
-      HashSet<String> uniqueParts = new HashSet<String>();
-      // Add every part to a hashmap. The idea behind: only the first occurence
-      // will resists in the map (because of the same hash value).
-      for (int i = 0; i < mParts.length; i++) {
-         if (mLog.isDebugEnabled()) {
-            mLog.debug("Add part: '" + mParts[i] + "'");
-         }
-         uniqueParts.add(mParts[i]);
-      }
-
-      if (mLog.isDebugEnabled()) {
-         mLog.debug("uniqueParts.size(): " + uniqueParts.size());
-         mLog.debug("mParts.length: " + mParts.length);
-         mLog.debug("maxCycles: " + maxCycles);
-      }
-
-      if (uniqueParts.size() != mParts.length) {
-         if (uniqueParts.size() <= mParts.length - maxCycles) {
-            mResult = false;
-         }
-      }
-
-      return mResult;
+      return UrlCanonicalizer.hasNoCycles(url, maxCycles);
    }
 
   /**
@@ -207,29 +200,29 @@ public class UrlChecker {
   public UrlMatcher isUrlAccepted(String url) {
 
     UrlMatcher urlMatchResult = new UrlMatcherResult(false, false);
-    mLog.debug("isUrlAccepted for url: " + url);
+    boolean debug = mLog.isDebugEnabled();
+    if (debug) {
+      mLog.debug("isUrlAccepted for url: " + url);
+    }
     // check whether this URL matches to a white list prefix
-    for (int i = 0; i < mWhiteListEntryArr.length; i++) {
-      if (mWhiteListEntryArr[i].shouldBeUpdated()) {
-        UrlMatcher matcher = mWhiteListEntryArr[i].getUrlMatcher();
-        if (matcher.matches(url)) {
-          // get the values for link extraction and indexing
-          // from the current matcher hit
-          urlMatchResult.setShouldBeParsed(matcher.getShouldBeParsed());
-          urlMatchResult.setShouldBeIndexed(matcher.getShouldBeIndexed());
-          mLog.debug("Whitelist matches for url: " + url);
-          break;
-        }
+    UrlMatcher matcher = mWhiteListMatchers.getFirstMatch(url);
+    if (matcher != null) {
+      // get the values for link extraction and indexing
+      // from the current matcher hit
+      urlMatchResult.setShouldBeParsed(matcher.getShouldBeParsed());
+      urlMatchResult.setShouldBeIndexed(matcher.getShouldBeIndexed());
+      if (debug) {
+        mLog.debug("Whitelist matches for url: " + url);
       }
     }
 
     // check whether this URL matches to a black list prefix
     // check only if there was a whitelist-hit
     if( urlMatchResult.getShouldBeParsed() || urlMatchResult.getShouldBeIndexed() ) {
-      for (int i = 0; i < mBlackListArr.length; i++) {
-        if (mBlackListArr[i].matches(url)) {
-          urlMatchResult.setShouldBeParsed(false);
-          urlMatchResult.setShouldBeIndexed(false);
+      if (mBlackListMatchers.matches(url)) {
+        urlMatchResult.setShouldBeParsed(false);
+        urlMatchResult.setShouldBeIndexed(false);
+        if (debug) {
           mLog.debug("Blacklist matches for url: " + url);
         }
       }
@@ -330,12 +323,71 @@ public class UrlChecker {
   }
 
 
+  /**
+   * Decides for a batch of URLs whether they should be kept in the search
+   * index.
+   * <p>
+   * Does the same as {@link #shouldBeKeptInIndex(String)}, but checks whether
+   * the files exist in parallel. This speeds up the check a lot when the files
+   * are on a network drive.
+   *
+   * @param urlArr The URLs to check.
+   * @param executor The executor that checks whether the files exist.
+   * @return For each URL whether it should be kept in the search index.
+   * @throws RegainException If an url is invalid or if checking a file failed.
+   */
+  public boolean[] shouldBeKeptInIndex(String[] urlArr, ExecutorService executor)
+    throws RegainException
+  {
+    boolean[] keepArr = new boolean[urlArr.length];
+    Future<?>[] fileCheckArr = new Future<?>[urlArr.length];
+    for (int i = 0; i < urlArr.length; i++) {
+      String url = urlArr[i];
+      if (url.startsWith("file://")) {
+        // Check whether the url is accepted by the white and black list
+        // NOTE: This is done here, because the UrlMatchers are not thread-safe
+        UrlMatcher urlMatch = isUrlAccepted(url);
+        if (urlMatch.getShouldBeIndexed()) {
+          // Check whether the file exists
+          final File file = RegainToolkit.urlToFile(url);
+          fileCheckArr[i] = executor.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+              return file.exists();
+            }
+          });
+        }
+      } else {
+        keepArr[i] = getmAcceptedUrlSet().contains(url);
+      }
+    }
+
+    // Collect the results of the file checks
+    for (int i = 0; i < urlArr.length; i++) {
+      if (fileCheckArr[i] != null) {
+        try {
+          keepArr[i] = (Boolean) fileCheckArr[i].get();
+        }
+        catch (InterruptedException exc) {
+          throw new RegainException("Checking file failed: " + urlArr[i], exc);
+        }
+        catch (ExecutionException exc) {
+          throw new RegainException("Checking file failed: " + urlArr[i], exc.getCause());
+        }
+      }
+    }
+
+    return keepArr;
+  }
+
+
   /**
    * Used by the crawler to set the accepted state for a certain URL.
    *
    * @param url The URL that was accepted by the crawler.
+   * @throws RegainException If remembering the URL failed.
    */
-  public void setAccepted(String url) {
+  public void setAccepted(String url) throws RegainException {
     if (url.startsWith("file://")) {
       // This is a file URL -> We haven't to remember it (Why? See class javadoc)
     } else {
@@ -348,8 +400,9 @@ public class UrlChecker {
    * Used by the crawler to set the ignored state for a certain URL.
    *
    * @param url The URL that was ignored by the crawler.
+   * @throws RegainException If remembering the URL failed.
    */
-  public void setIgnored(String url) {
+  public void setIgnored(String url) throws RegainException {
     mIgnoredCount++;
 
     if (url.startsWith("file://")) {
@@ -375,9 +428,102 @@ public class UrlChecker {
    *
    * @return the mAcceptedUrlSet
    */
-  public HashSet<String> getmAcceptedUrlSet() {
+  public FingerprintSet getmAcceptedUrlSet() {
     return mAcceptedUrlSet;
   }
 
 
+  /**
+   * Saves the accepted and ignored URLs to a directory.
+   *
+   * @param stateDir The directory to save the state to.
+   * @throws RegainException If saving failed.
+   * @see #loadState(File)
+   */
+  public void saveState(File stateDir) throws RegainException {
+    mAcceptedUrlSet.save(new File(stateDir, ACCEPTED_FILE));
+    mIgnoredUrlSet.save(new File(stateDir, IGNORED_FILE));
+
+    File stateFile = new File(stateDir, STATE_FILE);
+    DataOutputStream out = null;
+    try {
+      out = new DataOutputStream(new FileOutputStream(stateFile));
+      out.writeInt(mIgnoredCount);
+      out.close();
+    }
+    catch (IOException exc) {
+      throw new RegainException("Writing " + stateFile + " failed", exc);
+    }
+    finally {
+      if (out != null) {
+        try { out.close(); } catch (IOException exc) {}
+      }
+    }
+  }
+
+
+  /**
+   * Loads the accepted and ignored URLs saved by {@link #saveState(File)}.
+   *
+   * @param stateDir The directory to load the state from.
+   * @throws RegainException If loading failed.
+   */
+  public void loadState(File stateDir) throws RegainException {
+    mAcceptedUrlSet.load(new File(stateDir, ACCEPTED_FILE));
+    mIgnoredUrlSet.load(new File(stateDir, IGNORED_FILE));
+
+    File stateFile = new File(stateDir, STATE_FILE);
+    DataInputStream in = null;
+    try {
+      in = new DataInputStream(new FileInputStream(stateFile));
+      mIgnoredCount = in.readInt();
+    }
+    catch (IOException exc) {
+      throw new RegainException("Reading " + stateFile + " failed", exc);
+    }
+    finally {
+      if (in != null) {
+        try { in.close(); } catch (IOException exc) {}
+      }
+    }
+  }
+
+
+  /**
+   * Closes the UrlChecker and deletes the files of the sets of accepted and
+   * ignored URLs.
+   */
+  public void close() {
+    mAcceptedUrlSet.close();
+    mIgnoredUrlSet.close();
+  }
+
+
+  /**
+   * A set of URLs that compares the URLs by their key (see
+   * {@link UrlCanonicalizer#createKey(String)}). The URLs themselves are kept
+   * as they were found, so the list of the crawled URLs shows them unchanged.
+   */
+  private static class UrlSet extends FingerprintSet {
+
+    /**
+     * Creates a new, empty UrlSet.
+     *
+     * @param dir The directory where to create the files of the set.
+     * @param name The name of the set.
+     * @throws RegainException If creating the files failed.
+     */
+    public UrlSet(File dir, String name) throws RegainException {
+      super(dir, name);
+    }
+
+
+    @Override
+    protected String getKey(String url) {
+      return UrlCanonicalizer.createKey(url);
+    }
+
+  }
+
+
 }
@@ -76,6 +76,30 @@ public interface CrawlerConfig {
    */
   public int getHttpTimeoutSecs();
 
+  /**
+   * Returns the maximum number of HTTP connections the crawler opens to the
+   * same host at the same time.
+   *
+   * @return the maximum number of HTTP connections per host.
+   */
+  public int getMaxHttpConnectionsPerHost();
+
+  /**
+   * Returns the minimum time in milliseconds between the start of two HTTP
+   * requests to the same host.
+   *
+   * @return the minimum delay between two requests to the same host.
+   */
+  public int getHttpHostDelay();
+
+  /**
+   * Returns whether the crawler should load the robots.txt of each HTTP host
+   * and keep the Crawl-delay given there.
+   *
+   * @return whether the Crawl-delay of the robots.txt should be kept.
+   */
+  public boolean getHttpUseRobotsCrawlDelay();
+
   /**
    * Returns the user agent the crawler should in order to identify at the HTTP
    * server(s). If null, the default (Java) user agent should be used.
@@ -205,6 +229,24 @@ public interface CrawlerConfig {
    */
   public boolean getStoreContentForPreview();
 
+  /**
+   * Returns whether the crawler keeps a manifest of the size and the last
+   * modification date of all indexed files. Files that didn't change since
+   * the last run are skipped without loading them.
+   *
+   * @return whether the file manifest is used.
+   */
+  public boolean getUseFileManifest();
+
+  /**
+   * Returns whether term vectors with positions and offsets are stored for
+   * the summary and the title. The search then highlights them using the
+   * term vectors instead of analyzing them again.
+   *
+   * @return whether term vectors are stored.
+   */
+  public boolean getStoreTermVectors();
+
   /**
    * Gibt die StartUrls zurück, bei denen der Crawler-Prozeß beginnen soll.
    *
@@ -323,6 +365,17 @@ public interface CrawlerConfig {
    */
   public String[] getUntokenizedFieldNames();
 
+  /**
+   * Returns the names of the fields whose terms should also be indexed
+   * reversed. The search uses the reversed terms for queries with a leading
+   * wildcard (like <code>*bericht</code>), so it doesn't have to scan all
+   * terms.
+   *
+   * @return The names of the fields to index reversed. Is never
+   *         <code>null</code>.
+   */
+  public String[] getReversedFieldNames();
+
   /**
    * Returns the URLCleaners. URLCleaners are regex which replace
    * parts of the URL with an empty string (in fact the remove the match
@@ -332,5 +385,60 @@ public interface CrawlerConfig {
    */
   public String[] getURLCleaners();
 
+  /**
+   * Returns the number of threads that process crawler jobs in parallel.
+   * <p>
+   * If set to 1 (the default) all jobs are processed by the thread that
+   * started the crawler.
+   *
+   * @return the number of crawler threads.
+   */
+  public int getCrawlerThreadCount();
+
+  /**
+   * Returns the maximum number of worker processes that run the isolated
+   * preparators.
+   * <p>
+   * If set to 0 (the default) the number of crawler threads is used.
+   *
+   * @return the maximum number of preparator worker processes.
+   * @see PreparatorSettings#isIsolated()
+   */
+  public int getPreparatorWorkerCount();
+
+  /**
+   * Returns the maximum heap size of a preparator worker process in MB.
+   *
+   * @return the maximum heap size of a preparator worker process.
+   */
+  public int getPreparatorWorkerMaxHeap();
+
+  /**
+   * Returns the time in seconds a preparator worker process may spend on one
+   * document. If it takes longer the worker is killed and the document is
+   * indexed as a substitute document.
+   *
+   * @return the timeout of a preparator worker process.
+   */
+  public int getPreparatorWorkerTimeout();
+
+  /**
+   * Returns the directory of the preparation cache. The cache holds the
+   * prepared fields of documents by the digest of their content, so
+   * identical documents are prepared only once.
+   *
+   * @return the directory of the preparation cache or <code>null</code> if
+   *         no cache should be used.
+   */
+  public String getPreparationCacheDir();
+
+  /**
+   * Returns the maximum size of the preparation cache in MB. If the cache
+   * grows larger, the least recently used entries are removed.
+   *
+   * @return the maximum size of the preparation cache.
+   */
+  public int getPreparationCacheMaxSize();
+
 }
 
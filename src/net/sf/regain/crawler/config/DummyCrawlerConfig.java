@@ -41,6 +41,28 @@ public class DummyCrawlerConfig implements CrawlerConfig {
     return true;
   }
 
+  /**
+   * Returns whether the crawler keeps a manifest of the size and the last
+   * modification date of all indexed files.
+   *
+   * @return whether the file manifest is used.
+   */
+  @Override
+  public boolean getUseFileManifest() {
+    return false;
+  }
+
+  /**
+   * Returns whether term vectors with positions and offsets are stored for
+   * the summary.
+   *
+   * @return whether term vectors are stored.
+   */
+  @Override
+  public boolean getStoreTermVectors() {
+    return false;
+  }
+
   /**
    * Gibt den Host-Namen des Proxy-Servers zur�ck. Wenn kein Host konfiguriert
    * wurde, wird <CODE>null</CODE> zur�ckgegeben.
@@ -119,6 +141,39 @@ public class DummyCrawlerConfig implements CrawlerConfig {
     return 180;
   }
 
+  /**
+   * Returns the maximum number of HTTP connections the crawler opens to the
+   * same host at the same time.
+   *
+   * @return the maximum number of HTTP connections per host.
+   */
+  @Override
+  public int getMaxHttpConnectionsPerHost() {
+    return 4;
+  }
+
+  /**
+   * Returns the minimum time in milliseconds between the start of two HTTP
+   * requests to the same host.
+   *
+   * @return the minimum delay between two requests to the same host.
+   */
+  @Override
+  public int getHttpHostDelay() {
+    return 0;
+  }
+
+  /**
+   * Returns whether the crawler should load the robots.txt of each HTTP host
+   * and keep the Crawl-delay given there.
+   *
+   * @return whether the Crawl-delay of the robots.txt should be kept.
+   */
+  @Override
+  public boolean getHttpUseRobotsCrawlDelay() {
+    return true;
+  }
+
 
   /**
    * Gibt zur�ck, ob URLs geladen werden sollen, die weder durchsucht noch
@@ -433,6 +488,14 @@ public class DummyCrawlerConfig implements CrawlerConfig {
 	  return null;
   }
 
+  /**
+   * {@inheritDoc }
+   */
+  @Override
+  public String[] getReversedFieldNames() {
+    return new String[0];
+  }
+
   /**
    * Returns maximum amount of characters which will be copied from content to summary
    *
@@ -451,5 +514,59 @@ public class DummyCrawlerConfig implements CrawlerConfig {
   public String[] getURLCleaners() {
     return new String[]{"PHPSESSID=[0-9a-z]{5,}"};
   }
+
+  /**
+   * {@inheritDoc }
+   *
+   */
+  @Override
+  public int getCrawlerThreadCount() {
+    return 1;
+  }
+
+  /**
+   * {@inheritDoc }
+   *
+   */
+  @Override
+  public int getPreparatorWorkerCount() {
+    return 0;
+  }
+
+  /**
+   * {@inheritDoc }
+   *
+   */
+  @Override
+  public int getPreparatorWorkerMaxHeap() {
+    return 512;
+  }
+
+  /**
+   * {@inheritDoc }
+   *
+   */
+  @Override
+  public int getPreparatorWorkerTimeout() {
+    return 300;
+  }
+
+  /**
+   * {@inheritDoc }
+   *
+   */
+  @Override
+  public String getPreparationCacheDir() {
+    return null;
+  }
+
+  /**
+   * {@inheritDoc }
+   *
+   */
+  @Override
+  public int getPreparationCacheMaxSize() {
+    return 500;
+  }
 }
 
@@ -20,6 +20,13 @@
  */
 package net.sf.regain.crawler.config;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import net.sf.regain.RegainToolkit;
 
 /**
  * The settings of a preparator
@@ -55,6 +62,11 @@ public class PreparatorSettings {
    */
   private PreparatorConfig mPreparatorConfig;
 
+  /**
+   * Specifies whether the preparator should run in a separate worker process.
+   */
+  private boolean mIsIsolated;
+
 
   /**
    * Creates a new instance of PreparatorSettings.
@@ -70,6 +82,27 @@ public class PreparatorSettings {
   public PreparatorSettings(boolean isEnabled, int priority, String preparatorClassName,
     String urlRegex, PreparatorConfig preparatorConfig)
   {
+    this(isEnabled, priority, preparatorClassName, urlRegex, preparatorConfig, false);
+  }
+
+
+  /**
+   * Creates a new instance of PreparatorSettings.
+   *
+   * @param isEnabled Specifies whether the preparator is enabled.
+   * @param preparatorClassName The class name of the preparator. The class must
+   *        implement {@link net.sf.regain.crawler.document.Preparator Preparator}.
+   * @param urlRegex The regular expression a URL must match to, to be prepared
+   *        by this preparator. If <code>null</code> the default regex of the
+   *        preparator should be used.
+   * @param preparatorConfig The configuration of the preparator.
+   * @param isIsolated Specifies whether the preparator should run in a
+   *        separate worker process.
+   */
+  public PreparatorSettings(boolean isEnabled, int priority, String preparatorClassName,
+    String urlRegex, PreparatorConfig preparatorConfig, boolean isIsolated)
+  {
+    mIsIsolated = isIsolated;
     mIsEnabled = isEnabled;
     mPriority = priority;
     mUrlRegex = urlRegex;
@@ -133,4 +166,72 @@ public class PreparatorSettings {
     return mPriority;
   }
 
+  /**
+   * Gets whether the preparator should run in a separate worker process. This
+   * way a preparator that crashes or runs out of memory can't harm the
+   * crawler.
+   *
+   * @return Whether the preparator should run in a separate worker process.
+   */
+  public boolean isIsolated() {
+    return mIsIsolated;
+  }
+
+
+  /**
+   * Writes these settings to a data output.
+   *
+   * @param out The output to write the settings to.
+   * @throws IOException If writing failed.
+   * @see #readFrom(DataInput)
+   */
+  public void writeTo(DataOutput out) throws IOException {
+    out.writeBoolean(mIsEnabled);
+    out.writeInt(mPriority);
+    RegainToolkit.writeString(out, mPreparatorClassName);
+    RegainToolkit.writeString(out, mUrlRegex);
+    out.writeBoolean(mIsIsolated);
+
+    out.writeInt(mPreparatorConfig.getSectionCount());
+    for (Map.Entry<String, Map<String, String>> section : mPreparatorConfig) {
+      RegainToolkit.writeString(out, section.getKey());
+      out.writeInt(section.getValue().size());
+      for (Map.Entry<String, String> param : section.getValue().entrySet()) {
+        RegainToolkit.writeString(out, param.getKey());
+        RegainToolkit.writeString(out, param.getValue());
+      }
+    }
+  }
+
+
+  /**
+   * Reads settings written by {@link #writeTo(DataOutput)}.
+   *
+   * @param in The input to read the settings from.
+   * @return The settings.
+   * @throws IOException If reading failed.
+   */
+  public static PreparatorSettings readFrom(DataInput in) throws IOException {
+    boolean isEnabled = in.readBoolean();
+    int priority = in.readInt();
+    String className = RegainToolkit.readString(in);
+    String urlRegex = RegainToolkit.readString(in);
+    boolean isIsolated = in.readBoolean();
+
+    PreparatorConfig config = new PreparatorConfig();
+    int sectionCount = in.readInt();
+    for (int i = 0; i < sectionCount; i++) {
+      String name = RegainToolkit.readString(in);
+      int paramCount = in.readInt();
+      Map<String, String> params = new HashMap<String, String>();
+      for (int j = 0; j < paramCount; j++) {
+        params.put(RegainToolkit.readString(in), RegainToolkit.readString(in));
+      }
+      config.addSection(name, params);
+    }
+
+    return new PreparatorSettings(isEnabled, priority, className, urlRegex,
+        config, isIsolated);
+  }
+
 }
@@ -73,12 +73,25 @@ public class RegexUrlMatcher extends UrlMatcherResult {
   public boolean matches(String url) {
     Matcher matcher = mUrlRegex.matcher(url);
     boolean result = matcher.matches();
-    mLog.debug("Exact match with pattern: " + mUrlRegexAsString + ", " + mUrlRegex.pattern() + ": " + (result ? "yes" : "no"));
+    if (mLog.isDebugEnabled()) {
+      mLog.debug("Exact match with pattern: " + mUrlRegexAsString + ", " + mUrlRegex.pattern() + ": " + (result ? "yes" : "no"));
+    }
 
     return result;
   }
 
 
+  /**
+   * Gets the regular expression a URL must match to in order to be matched by
+   * this matcher.
+   *
+   * @return The regular expression.
+   */
+  public String getUrlRegex() {
+    return mUrlRegexAsString;
+  }
+
+
   /**
    * Gets a String representation of this UrlMatcher.
    */
@@ -0,0 +1,286 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.crawler.config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A list of UrlMatchers that finds the first matching matcher without asking
+ * every matcher.
+ * <p>
+ * The prefixes of all {@link PrefixUrlMatcher}s are put into a prefix tree,
+ * so a URL is walked only once for all prefixes. The regular expressions of
+ * all {@link RegexUrlMatcher}s are combined into one alternation, so they are
+ * checked with one match. Other UrlMatchers (and regular expressions with
+ * back references, which can't be combined) are asked one by one.
+ * <p>
+ * The result is the same as asking the matchers in their order: The first
+ * matcher that matches wins.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class UrlMatcherList {
+
+  /** The logger for this class. */
+  private static Logger mLog = Logger.getLogger(UrlMatcherList.class);
+
+  /** Finds back references like <code>\1</code> or <code>\k&lt;name&gt;</code>. */
+  private static final Pattern BACK_REFERENCE_PATTERN = Pattern.compile("\\\\([1-9]|k<)");
+
+  /** The matchers in their original order. */
+  private UrlMatcher[] mMatcherArr;
+
+  /** The root of the prefix tree. Is <code>null</code> if there are no prefixes. */
+  private PrefixNode mPrefixRoot;
+
+  /** The combined regular expressions. Is <code>null</code> if there are none. */
+  private Pattern mCombinedRegex;
+  /** The group in {@link #mCombinedRegex} of each combined regular expression. */
+  private int[] mRegexGroupArr;
+  /** The index of the matcher of each combined regular expression. */
+  private int[] mRegexMatcherIndexArr;
+
+  /** The indexes of the matchers that have to be asked one by one. */
+  private int[] mOtherMatcherIndexArr;
+
+
+  /**
+   * Creates a new instance of UrlMatcherList.
+   *
+   * @param matcherArr The matchers in the order they should be asked.
+   */
+  public UrlMatcherList(UrlMatcher[] matcherArr) {
+    mMatcherArr = matcherArr;
+
+    ArrayList<Integer> regexIndexList = new ArrayList<Integer>();
+    ArrayList<Integer> otherIndexList = new ArrayList<Integer>();
+    for (int i = 0; i < matcherArr.length; i++) {
+      UrlMatcher matcher = matcherArr[i];
+      if (matcher instanceof PrefixUrlMatcher) {
+        if (mPrefixRoot == null) {
+          mPrefixRoot = new PrefixNode();
+        }
+        mPrefixRoot.add(((PrefixUrlMatcher) matcher).getUrlPrefix(), i);
+      }
+      else if (matcher instanceof RegexUrlMatcher
+        && ! BACK_REFERENCE_PATTERN.matcher(((RegexUrlMatcher) matcher).getUrlRegex()).find())
+      {
+        regexIndexList.add(i);
+      }
+      else {
+        otherIndexList.add(i);
+      }
+    }
+
+    if (! regexIndexList.isEmpty()) {
+      try {
+        combineRegexes(regexIndexList);
+      }
+      catch (PatternSyntaxException exc) {
+        // This should not happen, since every regex compiled on its own
+        mLog.warn("Combining the regular expressions of the URL matchers failed. "
+            + "They are checked one by one.", exc);
+        mCombinedRegex = null;
+        otherIndexList.addAll(regexIndexList);
+        Collections.sort(otherIndexList);
+      }
+    }
+
+    mOtherMatcherIndexArr = new int[otherIndexList.size()];
+    for (int i = 0; i < mOtherMatcherIndexArr.length; i++) {
+      mOtherMatcherIndexArr[i] = otherIndexList.get(i);
+    }
+  }
+
+
+  /**
+   * Combines the regular expressions of some RegexUrlMatchers into one
+   * alternation. Every regular expression gets its own group, so we can tell
+   * which one matched.
+   *
+   * @param regexIndexList The indexes of the RegexUrlMatchers.
+   * @throws PatternSyntaxException If the combined regex has a wrong syntax.
+   */
+  private void combineRegexes(ArrayList<Integer> regexIndexList) {
+    mRegexGroupArr = new int[regexIndexList.size()];
+    mRegexMatcherIndexArr = new int[regexIndexList.size()];
+
+    StringBuilder buffer = new StringBuilder();
+    int group = 1;
+    for (int i = 0; i < mRegexGroupArr.length; i++) {
+      int matcherIndex = regexIndexList.get(i);
+      String regex = ((RegexUrlMatcher) mMatcherArr[matcherIndex]).getUrlRegex();
+      if (i > 0) {
+        buffer.append('|');
+      }
+      buffer.append('(').append(regex).append(')');
+
+      mRegexGroupArr[i] = group;
+      mRegexMatcherIndexArr[i] = matcherIndex;
+      group += 1 + Pattern.compile(regex).matcher("").groupCount();
+    }
+
+    mCombinedRegex = Pattern.compile(buffer.toString());
+  }
+
+
+  /**
+   * Finds the first matcher that matches a URL.
+   *
+   * @param url The URL to check.
+   * @return The first matching matcher or <code>null</code> if no matcher
+   *         matches.
+   */
+  public UrlMatcher getFirstMatch(String url) {
+    int first = Integer.MAX_VALUE;
+
+    if (mPrefixRoot != null) {
+      first = mPrefixRoot.findFirst(url);
+    }
+
+    if (mCombinedRegex != null && mRegexMatcherIndexArr[0] < first) {
+      // NOTE: The alternatives are tried in their order, so the group of the
+      //       first matching regex is set
+      Matcher matcher = mCombinedRegex.matcher(url);
+      if (matcher.matches()) {
+        for (int i = 0; i < mRegexGroupArr.length; i++) {
+          if (matcher.start(mRegexGroupArr[i]) != -1) {
+            first = Math.min(first, mRegexMatcherIndexArr[i]);
+            break;
+          }
+        }
+      }
+    }
+
+    for (int i = 0; i < mOtherMatcherIndexArr.length; i++) {
+      int matcherIndex = mOtherMatcherIndexArr[i];
+      if (matcherIndex >= first) {
+        break;
+      }
+      if (mMatcherArr[matcherIndex].matches(url)) {
+        first = matcherIndex;
+        break;
+      }
+    }
+
+    return (first == Integer.MAX_VALUE) ? null : mMatcherArr[first];
+  }
+
+
+  /**
+   * Checks whether any matcher matches a URL.
+   *
+   * @param url The URL to check.
+   * @return Whether any matcher matches the URL.
+   */
+  public boolean matches(String url) {
+    return getFirstMatch(url) != null;
+  }
+
+
+  /**
+   * A node of the prefix tree. The children are kept in small arrays, since
+   * most nodes only have one child.
+   */
+  private static class PrefixNode {
+
+    /** The characters leading to the children. */
+    private char[] mCharArr = new char[0];
+    /** The children. */
+    private PrefixNode[] mChildArr = new PrefixNode[0];
+    /** The index of the first matcher whose prefix ends here. */
+    private int mMatcherIndex = Integer.MAX_VALUE;
+
+
+    /**
+     * Adds a prefix.
+     *
+     * @param prefix The prefix to add.
+     * @param matcherIndex The index of the matcher of the prefix.
+     */
+    public void add(String prefix, int matcherIndex) {
+      PrefixNode node = this;
+      for (int i = 0; i < prefix.length(); i++) {
+        char c = prefix.charAt(i);
+        PrefixNode child = node.getChild(c);
+        if (child == null) {
+          child = new PrefixNode();
+          int count = node.mCharArr.length;
+          char[] charArr = new char[count + 1];
+          PrefixNode[] childArr = new PrefixNode[count + 1];
+          System.arraycopy(node.mCharArr, 0, charArr, 0, count);
+          System.arraycopy(node.mChildArr, 0, childArr, 0, count);
+          charArr[count] = c;
+          childArr[count] = child;
+          node.mCharArr = charArr;
+          node.mChildArr = childArr;
+        }
+        node = child;
+      }
+      node.mMatcherIndex = Math.min(node.mMatcherIndex, matcherIndex);
+    }
+
+
+    /**
+     * Gets the child for a character.
+     *
+     * @param c The character.
+     * @return The child or <code>null</code> if there is none.
+     */
+    private PrefixNode getChild(char c) {
+      for (int i = 0; i < mCharArr.length; i++) {
+        if (mCharArr[i] == c) {
+          return mChildArr[i];
+        }
+      }
+      return null;
+    }
+
+
+    /**
+     * Finds the first matcher whose prefix a URL starts with.
+     *
+     * @param url The URL to check.
+     * @return The index of the first matching matcher or
+     *         <code>Integer.MAX_VALUE</code> if no prefix matches.
+     */
+    public int findFirst(String url) {
+      int first = mMatcherIndex;
+      PrefixNode node = this;
+      for (int i = 0; i < url.length(); i++) {
+        node = node.getChild(url.charAt(i));
+        if (node == null) {
+          break;
+        }
+        first = Math.min(first, node.mMatcherIndex);
+      }
+      return first;
+    }
+
+  }
+
+}
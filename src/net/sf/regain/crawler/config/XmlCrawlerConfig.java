@@ -65,6 +65,12 @@ public class XmlCrawlerConfig implements CrawlerConfig {
    * in Sekunden, die ein HTTP-Download insgesamt dauern darf.
    */
   private int mHttpTimeoutSecs;
+  /** The maximum number of HTTP connections to the same host. */
+  private int mMaxHttpConnectionsPerHost;
+  /** The minimum time in milliseconds between two requests to the same host. */
+  private int mHttpHostDelay;
+  /** Specifies whether the Crawl-delay of the robots.txt should be kept. */
+  private boolean mHttpUseRobotsCrawlDelay;
   /** Das Verzeichnis, in dem der Suchindex stehen soll. */
   private String mIndexDir;
 
@@ -74,6 +80,21 @@ public class XmlCrawlerConfig implements CrawlerConfig {
   /** The maximum count of equal occurences of path-parts in an URI. */
   private int mMaxCycleCount;
 
+  /** The number of threads that process crawler jobs in parallel. */
+  private int mCrawlerThreadCount;
+
+  /** The maximum number of worker processes for the isolated preparators. */
+  private int mPreparatorWorkerCount;
+  /** The maximum heap size of a preparator worker process in MB. */
+  private int mPreparatorWorkerMaxHeap;
+  /** The time in seconds a preparator worker may spend on one document. */
+  private int mPreparatorWorkerTimeout;
+
+  /** The directory of the preparation cache. <code>null</code> if disabled. */
+  private String mPreparationCacheDir;
+  /** The maximum size of the preparation cache in MB. */
+  private int mPreparationCacheMaxSize;
+
   /** Der zu verwendende Analyzer-Typ. */
   private String mAnalyzerType;
 
@@ -143,6 +164,15 @@ public class XmlCrawlerConfig implements CrawlerConfig {
   /** Flag for enabling/disabling content for a preview in the result page */
   private boolean storeContentForPreview;
 
+  /** Specifies whether unchanged files are detected by a file manifest. */
+  private boolean mUseFileManifest;
+
+  /** Specifies whether term vectors are stored for the summary and the title. */
+  private boolean mStoreTermVectors;
+
+  /** The names of the fields whose terms are also indexed reversed. */
+  private String[] mReversedFieldNames;
+
   private String[] mURLCleaners;
 
   /**
@@ -160,6 +190,8 @@ public class XmlCrawlerConfig implements CrawlerConfig {
     readProxyConfig(config);
     readLoadUnparsedUrls(config);
     readHttpTimeoutSecs(config);
+    readMaxHttpConnectionsPerHost(config);
+    readHttpHostDelay(config);
     readUserAgent(config);
     readIndexConfig(config);
     readControlFileConfig(config);
@@ -175,6 +207,9 @@ public class XmlCrawlerConfig implements CrawlerConfig {
     readMaxCycleCount(config);
     readMaxSummaryLength(config);
     readURLCleaner(config);
+    readCrawlerThreadCount(config);
+    readPreparatorWorkerSettings(config);
+    readPreparationCacheSettings(config);
   }
 
   /**
@@ -234,6 +269,42 @@ public class XmlCrawlerConfig implements CrawlerConfig {
   }
 
 
+  /**
+   * Reads the maximum number of HTTP connections per host from the config.
+   *
+   * @param config The configuration to read from.
+   * @throws RegainException If the configuration has an error.
+   */
+  private void readMaxHttpConnectionsPerHost(Element config) throws RegainException {
+    Node node = XmlToolkit.getChild(config, "httpMaxConnectionsPerHost");
+    mMaxHttpConnectionsPerHost = (node == null) ? 4 : XmlToolkit.getTextAsInt(node);
+    if (mMaxHttpConnectionsPerHost < 1) {
+      throw new RegainException("httpMaxConnectionsPerHost must be at least 1: "
+        + mMaxHttpConnectionsPerHost);
+    }
+  }
+
+
+  /**
+   * Reads the minimum delay between two requests to the same host and whether
+   * the Crawl-delay of the robots.txt should be kept from the config.
+   *
+   * @param config The configuration to read from.
+   * @throws RegainException If the configuration has an error.
+   */
+  private void readHttpHostDelay(Element config) throws RegainException {
+    Node node = XmlToolkit.getChild(config, "httpHostDelay");
+    mHttpHostDelay = (node == null) ? 0 : XmlToolkit.getTextAsInt(node);
+    if (mHttpHostDelay < 0) {
+      throw new RegainException("httpHostDelay must not be negative: "
+        + mHttpHostDelay);
+    }
+
+    node = XmlToolkit.getChild(config, "httpUseRobotsCrawlDelay");
+    mHttpUseRobotsCrawlDelay = (node == null) ? true : XmlToolkit.getTextAsBoolean(node);
+  }
+
+
   /**
    * Reads the user agent from the config.
    *
@@ -318,6 +389,18 @@ public class XmlCrawlerConfig implements CrawlerConfig {
     node = XmlToolkit.getChild(indexNode, "storeContentForPreview");
     this.storeContentForPreview = (node == null) ? false : XmlToolkit.getTextAsBoolean(node) ;
 
+    node = XmlToolkit.getChild(indexNode, "useFileManifest");
+    mUseFileManifest = (node == null) ? false : XmlToolkit.getTextAsBoolean(node);
+
+    node = XmlToolkit.getChild(indexNode, "storeTermVectors");
+    mStoreTermVectors = (node == null) ? false : XmlToolkit.getTextAsBoolean(node);
+
+    node = XmlToolkit.getChild(indexNode, "reversedFieldNames");
+    mReversedFieldNames = (node == null) ? null : XmlToolkit.getTextAsWordList(node, false);
+    if (mReversedFieldNames == null) {
+      mReversedFieldNames = new String[0];
+    }
+
   }
 
 
@@ -497,6 +580,8 @@ public class XmlCrawlerConfig implements CrawlerConfig {
 
       int priority = XmlToolkit.getAttributeAsInt(nodeArr[i], "priority", 0);
 
+      boolean isolated = XmlToolkit.getAttributeAsBoolean(nodeArr[i], "isolated", false);
+
       node = XmlToolkit.getChild(nodeArr[i], "class", true);
       String className = XmlToolkit.getText(node, true);
 
@@ -514,7 +599,7 @@ public class XmlCrawlerConfig implements CrawlerConfig {
         prepConfig = new PreparatorConfig();
       }
 
-      mPreparatorSettingsArr[i] = new PreparatorSettings(enabled, priority, className, urlRegex, prepConfig);
+      mPreparatorSettingsArr[i] = new PreparatorSettings(enabled, priority, className, urlRegex, prepConfig, isolated);
     }
   }
 
@@ -789,6 +874,39 @@ public class XmlCrawlerConfig implements CrawlerConfig {
     return mHttpTimeoutSecs;
   }
 
+  /**
+   * Returns the maximum number of HTTP connections the crawler opens to the
+   * same host at the same time.
+   *
+   * @return the maximum number of HTTP connections per host.
+   */
+  @Override
+  public int getMaxHttpConnectionsPerHost() {
+    return mMaxHttpConnectionsPerHost;
+  }
+
+  /**
+   * Returns the minimum time in milliseconds between the start of two HTTP
+   * requests to the same host.
+   *
+   * @return the minimum delay between two requests to the same host.
+   */
+  @Override
+  public int getHttpHostDelay() {
+    return mHttpHostDelay;
+  }
+
+  /**
+   * Returns whether the crawler should load the robots.txt of each HTTP host
+   * and keep the Crawl-delay given there.
+   *
+   * @return whether the Crawl-delay of the robots.txt should be kept.
+   */
+  @Override
+  public boolean getHttpUseRobotsCrawlDelay() {
+    return mHttpUseRobotsCrawlDelay;
+  }
+
 
   /**
    * Gibt zurück, ob URLs geladen werden sollen, die weder durchsucht noch
@@ -957,6 +1075,22 @@ public class XmlCrawlerConfig implements CrawlerConfig {
     return this.storeContentForPreview;
   }
 
+  /**
+   * {@inheritDoc }
+   */
+  @Override
+  public boolean getUseFileManifest() {
+    return mUseFileManifest;
+  }
+
+  /**
+   * {@inheritDoc }
+   */
+  @Override
+  public boolean getStoreTermVectors() {
+    return mStoreTermVectors;
+  }
+
   /**
    * Gibt die StartUrls zurück, bei denen der Crawler-Prozeß beginnen soll.
    *
@@ -1152,6 +1286,14 @@ public class XmlCrawlerConfig implements CrawlerConfig {
     return asArr;
   }
 
+  /**
+   * {@inheritDoc }
+   */
+  @Override
+  public String[] getReversedFieldNames() {
+    return mReversedFieldNames;
+  }
+
   /**
    * {@inheritDoc }
    */
@@ -1160,5 +1302,115 @@ public class XmlCrawlerConfig implements CrawlerConfig {
     return mURLCleaners;
   }
 
+  /**
+   * {@inheritDoc }
+   */
+  @Override
+  public int getCrawlerThreadCount() {
+    return mCrawlerThreadCount;
+  }
+
+  /**
+   * Reads the number of crawler threads from the config.
+   *
+   * @param config The configuration to read from.
+   * @throws RegainException If the configuration has an error.
+   */
+  private void readCrawlerThreadCount(Element config) throws RegainException {
+    Node node = XmlToolkit.getChild(config, "CrawlerThreadCount");
+    mCrawlerThreadCount = (node == null) ? 1 : XmlToolkit.getTextAsInt(node);
+    if (mCrawlerThreadCount < 1) {
+      throw new RegainException("CrawlerThreadCount must be at least 1: "
+        + mCrawlerThreadCount);
+    }
+  }
+
+  /**
+   * {@inheritDoc }
+   */
+  @Override
+  public int getPreparatorWorkerCount() {
+    return mPreparatorWorkerCount;
+  }
+
+  /**
+   * {@inheritDoc }
+   */
+  @Override
+  public int getPreparatorWorkerMaxHeap() {
+    return mPreparatorWorkerMaxHeap;
+  }
+
+  /**
+   * {@inheritDoc }
+   */
+  @Override
+  public int getPreparatorWorkerTimeout() {
+    return mPreparatorWorkerTimeout;
+  }
+
+  /**
+   * Reads the settings of the preparator worker processes from the config.
+   *
+   * @param config The configuration to read from.
+   * @throws RegainException If the configuration has an error.
+   */
+  private void readPreparatorWorkerSettings(Element config) throws RegainException {
+    Node node = XmlToolkit.getChild(config, "PreparatorWorkerCount");
+    mPreparatorWorkerCount = (node == null) ? 0 : XmlToolkit.getTextAsInt(node);
+    if (mPreparatorWorkerCount < 0) {
+      throw new RegainException("PreparatorWorkerCount must not be negative: "
+        + mPreparatorWorkerCount);
+    }
+
+    node = XmlToolkit.getChild(config, "PreparatorWorkerMaxHeap");
+    mPreparatorWorkerMaxHeap = (node == null) ? 512 : XmlToolkit.getTextAsInt(node);
+    if (mPreparatorWorkerMaxHeap < 16) {
+      throw new RegainException("PreparatorWorkerMaxHeap must be at least 16 MB: "
+        + mPreparatorWorkerMaxHeap);
+    }
+
+    node = XmlToolkit.getChild(config, "PreparatorWorkerTimeout");
+    mPreparatorWorkerTimeout = (node == null) ? 300 : XmlToolkit.getTextAsInt(node);
+    if (mPreparatorWorkerTimeout < 1) {
+      throw new RegainException("PreparatorWorkerTimeout must be at least 1: "
+        + mPreparatorWorkerTimeout);
+    }
+  }
+
+  /**
+   * {@inheritDoc }
+   */
+  @Override
+  public String getPreparationCacheDir() {
+    return mPreparationCacheDir;
+  }
+
+  /**
+   * {@inheritDoc }
+   */
+  @Override
+  public int getPreparationCacheMaxSize() {
+    return mPreparationCacheMaxSize;
+  }
+
+  /**
+   * Reads the settings of the preparation cache from the config.
+   *
+   * @param config The configuration to read from.
+   * @throws RegainException If the configuration has an error.
+   */
+  private void readPreparationCacheSettings(Element config) throws RegainException {
+    Node node = XmlToolkit.getChild(config, "PreparationCacheDir");
+    mPreparationCacheDir = (node == null) ? null : XmlToolkit.getText(node, true, true);
+
+    node = XmlToolkit.getChild(config, "PreparationCacheMaxSize");
+    mPreparationCacheMaxSize = (node == null) ? 500 : XmlToolkit.getTextAsInt(node);
+    if (mPreparationCacheMaxSize < 1) {
+      throw new RegainException("PreparationCacheMaxSize must be at least 1: "
+        + mPreparationCacheMaxSize);
+    }
+  }
+
 
 }
@@ -239,6 +239,48 @@ public abstract class AbstractPreparator implements Preparator, WriteablePrepara
     }
   }
 
+  /**
+   * Gets the mime types this preparator accepts if its decision only depends
+   * on the mime type of a document. This way the {@link DocumentFactory}
+   * doesn't have to ask every preparator whether it accepts a document.
+   *
+   * @return The accepted mime types or <code>null</code> if the preparator
+   *         has to be asked by {@link #accepts(RawDocument)}. This is the case
+   *         if a URL regex is set or if a subclass overrides
+   *         {@link #accepts(RawDocument)}.
+   */
+  public String[] getAcceptedMimeTypes() {
+    if (mUrlRegex != null) {
+      return null;
+    }
+    try {
+      if (getClass().getMethod("accepts", RawDocument.class).getDeclaringClass()
+        != AbstractPreparator.class)
+      {
+        return null;
+      }
+    } catch (NoSuchMethodException exc) {
+      return null;
+    }
+
+    return (mMimeTypes == null) ? new String[0] : mMimeTypes;
+  }
+
+  /**
+   * Gets which part of the configuration this preparator uses for a document,
+   * if this depends on the URL of the document (like a command chosen by a
+   * URL regex). The preparation cache puts it into the cache key, so documents
+   * with the same content but another configuration part don't share their
+   * cache entry.
+   *
+   * @param rawDocument The document.
+   * @return The key of the used configuration part or <code>null</code> if
+   *         the result of the preparation only depends on the content.
+   */
+  public String getPreparationVariant(RawDocument rawDocument) {
+    return null;
+  }
+
   /**
    * Gibt den Titel des Dokuments zurück.
    * <p>
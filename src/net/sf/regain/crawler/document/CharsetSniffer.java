@@ -0,0 +1,281 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.crawler.document;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+
+import net.sf.regain.RegainException;
+import net.sf.regain.RegainToolkit;
+
+/**
+ * Finds out the charset of a document (HTML, XML or plain text) from its raw
+ * bytes.
+ * <p>
+ * The charset is taken from (in this order):
+ * <ol>
+ * <li>a byte order mark,</li>
+ * <li>a <code>charset</code> in the first 1024 bytes (a meta tag like
+ *     <code>&lt;meta charset="utf-8"&gt;</code> or
+ *     <code>&lt;meta http-equiv="Content-Type" content="text/html; charset=utf-8"&gt;</code>),</li>
+ * <li>the <code>encoding</code> of a XML declaration (for XHTML),</li>
+ * <li>the given default charset.</li>
+ * </ol>
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class CharsetSniffer {
+
+  /** The number of bytes that are searched for a charset declaration. */
+  private static final int SNIFF_LENGTH = 1024;
+
+
+  /**
+   * Finds out the charset of a document.
+   *
+   * @param content The raw bytes of the document.
+   * @param defaultCharset The charset to use if the document doesn't declare
+   *        one. If <code>null</code>, the system's default is used.
+   * @return The charset of the document.
+   */
+  public static String sniffCharset(byte[] content, String defaultCharset) {
+    String bomCharset = getBomCharset(content);
+    if (bomCharset != null) {
+      return bomCharset;
+    }
+
+    // NOTE: The declarations only use ASCII characters, so each byte can be
+    //       looked at as character
+    int length = Math.min(content.length, SNIFF_LENGTH);
+    String charset = findDeclaredCharset(content, length, "charset");
+    if (charset == null) {
+      charset = findDeclaredCharset(content, length, "encoding");
+    }
+    if (charset != null && charset.toLowerCase().startsWith("utf-16")) {
+      // The declaration could be read byte by byte, so it can't be UTF-16
+      return "UTF-8";
+    }
+    if (charset != null && isSupported(charset)) {
+      return charset;
+    }
+
+    return (defaultCharset == null) ? RegainToolkit.getSystemDefaultEncoding() : defaultCharset;
+  }
+
+
+  /**
+   * Gets the charset of the byte order mark a document starts with.
+   *
+   * @param content The raw bytes of the document.
+   * @return The charset of the byte order mark or <code>null</code> if the
+   *         document doesn't start with a byte order mark.
+   */
+  public static String getBomCharset(byte[] content) {
+    if (getBomLength(content, "UTF-8") > 0) {
+      return "UTF-8";
+    }
+    if (getBomLength(content, "UTF-16BE") > 0) {
+      return "UTF-16BE";
+    }
+    if (getBomLength(content, "UTF-16LE") > 0) {
+      return "UTF-16LE";
+    }
+    return null;
+  }
+
+
+  /**
+   * Decodes a document using the charset it declares.
+   *
+   * @param content The raw bytes of the document.
+   * @param defaultCharset The charset to use if the document doesn't declare
+   *        one. If <code>null</code>, the system's default is used.
+   * @return The decoded document.
+   * @throws RegainException If the charset is not supported.
+   */
+  public static String decode(byte[] content, String defaultCharset)
+    throws RegainException
+  {
+    return decodeAs(content, sniffCharset(content, defaultCharset));
+  }
+
+
+  /**
+   * Decodes a document using a known charset. A byte order mark of this
+   * charset is skipped.
+   *
+   * @param content The raw bytes of the document.
+   * @param charset The charset of the document.
+   * @return The decoded document.
+   * @throws RegainException If the charset is not supported.
+   */
+  public static String decodeAs(byte[] content, String charset)
+    throws RegainException
+  {
+    int bomLength = getBomLength(content, charset);
+    try {
+      return new String(content, bomLength, content.length - bomLength, charset);
+    }
+    catch (UnsupportedEncodingException exc) {
+      throw new RegainException("Charset not supported: " + charset, exc);
+    }
+  }
+
+
+  /**
+   * Gets the length of the byte order mark of a charset at the start of a
+   * document.
+   *
+   * @param content The raw bytes of the document.
+   * @param charset The charset.
+   * @return The length of the byte order mark or 0 if the document doesn't
+   *         start with the byte order mark of this charset.
+   */
+  private static int getBomLength(byte[] content, String charset) {
+    if ("UTF-8".equalsIgnoreCase(charset)) {
+      if (content.length >= 3 && (content[0] & 0xFF) == 0xEF
+        && (content[1] & 0xFF) == 0xBB && (content[2] & 0xFF) == 0xBF)
+      {
+        return 3;
+      }
+    }
+    else if ("UTF-16BE".equalsIgnoreCase(charset)) {
+      if (content.length >= 2 && (content[0] & 0xFF) == 0xFE && (content[1] & 0xFF) == 0xFF) {
+        return 2;
+      }
+    }
+    else if ("UTF-16LE".equalsIgnoreCase(charset)) {
+      if (content.length >= 2 && (content[0] & 0xFF) == 0xFF && (content[1] & 0xFF) == 0xFE) {
+        return 2;
+      }
+    }
+    return 0;
+  }
+
+
+  /**
+   * Finds the value of a charset declaration like <code>charset=utf-8</code>
+   * or <code>encoding="utf-8"</code>.
+   *
+   * @param content The raw bytes of the document.
+   * @param length The number of bytes to search.
+   * @param name The name of the declaration.
+   * @return The declared charset or <code>null</code> if there is none.
+   */
+  private static String findDeclaredCharset(byte[] content, int length, String name) {
+    for (int i = 0; i <= length - name.length(); i++) {
+      if (! regionMatches(content, i, name)) {
+        continue;
+      }
+
+      int pos = i + name.length();
+      while (pos < length && isWhitespace(content[pos])) {
+        pos++;
+      }
+      if (pos >= length || content[pos] != '=') {
+        continue;
+      }
+      pos++;
+      while (pos < length && (isWhitespace(content[pos]) || content[pos] == '"'
+        || content[pos] == '\''))
+      {
+        pos++;
+      }
+
+      int start = pos;
+      while (pos < length && isCharsetChar(content[pos])) {
+        pos++;
+      }
+      if (pos > start) {
+        StringBuilder charset = new StringBuilder(pos - start);
+        for (int j = start; j < pos; j++) {
+          charset.append((char) content[j]);
+        }
+        return charset.toString();
+      }
+    }
+    return null;
+  }
+
+
+  /**
+   * Checks whether the bytes at a position are a certain ASCII text (ignoring
+   * the case).
+   *
+   * @param content The raw bytes.
+   * @param pos The position to check.
+   * @param text The expected text in lower case.
+   * @return Whether the text is at the position.
+   */
+  private static boolean regionMatches(byte[] content, int pos, String text) {
+    for (int i = 0; i < text.length(); i++) {
+      int b = content[pos + i];
+      if (b >= 'A' && b <= 'Z') {
+        b += 'a' - 'A';
+      }
+      if (b != text.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+
+  /**
+   * Checks whether a byte is an ASCII whitespace.
+   *
+   * @param b The byte to check.
+   * @return Whether the byte is a whitespace.
+   */
+  private static boolean isWhitespace(byte b) {
+    return b == ' ' || b == '\t' || b == '\r' || b == '\n' || b == '\f';
+  }
+
+
+  /**
+   * Checks whether a byte may be part of a charset name.
+   *
+   * @param b The byte to check.
+   * @return Whether the byte may be part of a charset name.
+   */
+  private static boolean isCharsetChar(byte b) {
+    return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9')
+      || b == '-' || b == '_' || b == '.' || b == ':';
+  }
+
+
+  /**
+   * Checks whether a charset is supported by this JVM.
+   *
+   * @param charset The name of the charset.
+   * @return Whether the charset is supported.
+   */
+  private static boolean isSupported(String charset) {
+    try {
+      return Charset.isSupported(charset);
+    }
+    catch (IllegalCharsetNameException exc) {
+      return false;
+    }
+  }
+
+}
@@ -22,15 +22,15 @@ package net.sf.regain.crawler.document;
 
 import java.io.Closeable;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStreamWriter;
 import java.io.StringReader;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.PriorityQueue;
 import java.util.Properties;
 
 import net.sf.regain.RegainException;
@@ -51,6 +51,8 @@ import org.apache.lucene.document.CompressionTools;
 import org.apache.lucene.document.DateTools;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.document.Fieldable;
+import org.apache.lucene.index.FieldInfo;
 import org.apache.regexp.RE;
 import org.apache.regexp.RESyntaxException;
 import org.ontoware.rdf2go.model.node.impl.URIImpl;
@@ -68,6 +70,8 @@ import org.semanticdesktop.aperture.mime.identifier.magic.MagicMimeTypeIdentifie
 public class DocumentFactory {
 
   private static final String MIME_TYPE_UNKNOWN = "application/x-unknown-mime-type";
+  /** The maximum number of detected mime types that are cached. */
+  private static final int MIME_TYPE_CACHE_SIZE = 1000;
   /** The logger for this class */
   private static Logger mLog = Logger.getLogger(DocumentFactory.class);
   /** The crawler config. */
@@ -76,6 +80,10 @@ public class DocumentFactory {
   private int mMaxSummaryLength;
   /** should the whole content stored in the index for a preview on the result page */
   private boolean storeContentForPreview;
+  /** Specifies whether term vectors are stored for the summary and the title. */
+  private boolean mStoreTermVectors;
+  /** The names of the fields whose terms are also indexed reversed. */
+  private String[] mReversedFieldNames;
   /**
    * Das Verzeichnis, in dem Analyse-Dateien erzeugt werden sollen. Ist
    * <CODE>null</CODE>, wenn keine Analyse-Dateien erzeugt werden sollen.
@@ -83,8 +91,33 @@ public class DocumentFactory {
   private File mAnalysisDir = null;
   /** The preparators. */
   private Preparator[] mPreparatorArr;
+  /** Finds the preparators that accept a document. */
+  private PreparatorDispatcher mPreparatorDispatcher;
   /** Die Profiler, die die Bearbeitung durch die Präparatoren messen. */
   private Profiler[] mPreparatorProfilerArr;
+  /**
+   * The pool of the worker processes that run the isolated preparators. Is
+   * <code>null</code> if no preparator is isolated. Copies share the pool of
+   * their parent.
+   */
+  private PreparatorWorkerPool mWorkerPool;
+  /** Specifies whether this factory created the worker pool and closes it. */
+  private boolean mOwnsWorkerPool;
+  /**
+   * The cache of prepared documents. Is <code>null</code> if no cache is
+   * configured. Copies share the cache of their parent.
+   */
+  private PreparationCache mPreparationCache;
+  /** Specifies whether this factory created the preparation cache. */
+  private boolean mOwnsPreparationCache;
+  /** The profiler that measures the documents taken from the cache. */
+  private Profiler mPreparationCacheProfiler;
+  /**
+   * The class name of the preparator that uses the URL as content. Its
+   * documents are not cached.
+   */
+  private static final String FILENAME_PREPARATOR
+    = "net.sf.regain.crawler.preparator.FilenamePreparator";
   /**
    * The {@link CrawlerAccessController} to use for identifying the groups that
    * are allowed to read a document. May be <code>null</code>.
@@ -97,9 +130,14 @@ public class DocumentFactory {
    */
   private RE[] mUseLinkTextAsTitleReArr;
   /** The profile that measures the addition to index. */
-  private Profiler mWriteAnalysisProfiler = new Profiler("Writing Analysis files", "files");
+  private Profiler mWriteAnalysisProfiler;
   /** The mimetype mimeTypeIdentifier */
   MimeTypeIdentifier mimeTypeIdentifier;
+  /**
+   * The cache of the detected mime types. Copies share the cache of their
+   * parent.
+   */
+  private MimeTypeCache mMimeTypeCache;
   /** Crawler Plugin Manager instance */
   private CrawlerPluginManager pluginManager = CrawlerPluginManager.getInstance();
 
@@ -115,6 +153,24 @@ public class DocumentFactory {
    */
   public DocumentFactory(CrawlerConfig config, File analysisDir)
           throws RegainException {
+    this(config, analysisDir, null);
+  }
+
+  /**
+   * Creates a new instance of DocumentFactory.
+   *
+   * @param config The crawler configuration.
+   * @param analysisDir The directory where to store the analysis files. Is
+   *        <code>null</code> if no analysis files should be created.
+   * @param parent The factory to share the profilers with. Is
+   *        <code>null</code> if this factory should create its own profilers.
+   *
+   * @throws RegainException If a preparator could not be created or if a regex
+   *         has a syntax error.
+   */
+  private DocumentFactory(CrawlerConfig config, File analysisDir,
+          DocumentFactory parent)
+          throws RegainException {
     mConfig = config;
     mAnalysisDir = analysisDir;
 
@@ -122,15 +178,42 @@ public class DocumentFactory {
     try {
       PreparatorSettings[] prepConf = config.getPreparatorSettingsList();
       mPreparatorArr = PreparatorFactory.getInstance().createPreparatorArr(prepConf);
+      isolatePreparators(prepConf, parent);
+      mPreparatorDispatcher = new PreparatorDispatcher(mPreparatorArr);
     } catch (RegainException exc) {
       throw new RegainException("Creating the document preparators failed", exc);
     }
 
     // Create a profiler for each preparator
+    // NOTE: A copy uses the profilers of its parent, so the statistics of all
+    //       crawler threads are summed up.
     mPreparatorProfilerArr = new Profiler[mPreparatorArr.length];
     for (int i = 0; i < mPreparatorProfilerArr.length; i++) {
-      String name = mPreparatorArr[i].getClass().getName();
-      mPreparatorProfilerArr[i] = new Profiler("Preparator " + name, "docs");
+      String name = getPreparatorClassName(mPreparatorArr[i]);
+      if (parent != null) {
+        mPreparatorProfilerArr[i] = parent.getPreparatorProfiler(name);
+      }
+      if (mPreparatorProfilerArr[i] == null) {
+        mPreparatorProfilerArr[i] = new Profiler("Preparator " + name, "docs");
+      }
+    }
+    if (parent != null) {
+      mWriteAnalysisProfiler = parent.mWriteAnalysisProfiler;
+    } else {
+      mWriteAnalysisProfiler = new Profiler("Writing Analysis files", "files");
+    }
+
+    // Create the preparation cache
+    if (parent != null) {
+      mPreparationCache = parent.mPreparationCache;
+      mPreparationCacheProfiler = parent.mPreparationCacheProfiler;
+    } else if (config.getPreparationCacheDir() != null) {
+      File cacheDir = new File(config.getPreparationCacheDir());
+      mPreparationCache = new PreparationCache(cacheDir,
+              config.getPreparationCacheMaxSize() * 1024L * 1024L);
+      mPreparationCacheProfiler = new Profiler("Documents taken from the preparation cache", "docs");
+      mOwnsPreparationCache = true;
+      mLog.info("Using preparation cache: " + cacheDir.getAbsolutePath());
     }
 
     // Create the CrawlerAccessController
@@ -168,11 +251,94 @@ public class DocumentFactory {
     // Read some more configuration entries from the config
     this.mMaxSummaryLength = this.mConfig.getMaxSummaryLength();
     this.storeContentForPreview = this.mConfig.getStoreContentForPreview();
+    mStoreTermVectors = mConfig.getStoreTermVectors();
+    mReversedFieldNames = mConfig.getReversedFieldNames();
 
     // Set up the MimeTypeIdentifierFactory
     MagicMimeTypeIdentifierFactory factory = new MagicMimeTypeIdentifierFactory();
     mimeTypeIdentifier = factory.get();
+    if (parent != null) {
+      mMimeTypeCache = parent.mMimeTypeCache;
+    } else {
+      mMimeTypeCache = new MimeTypeCache(MIME_TYPE_CACHE_SIZE);
+    }
+
+  }
 
+  /**
+   * Replaces the preparators that should run in a worker process by an
+   * {@link IsolatedPreparator}.
+   *
+   * @param prepConf The preparator settings.
+   * @param parent The factory to share the worker pool with. May be
+   *        <code>null</code>.
+   * @throws RegainException If the worker pool could not be created.
+   */
+  private void isolatePreparators(PreparatorSettings[] prepConf,
+          DocumentFactory parent)
+          throws RegainException {
+    for (int i = 0; i < mPreparatorArr.length; i++) {
+      String className = mPreparatorArr[i].getClass().getName();
+      for (int j = 0; j < prepConf.length; j++) {
+        if (prepConf[j].isIsolated()
+                && prepConf[j].getPreparatorClassName().equals(className)) {
+          if (mWorkerPool == null) {
+            if (parent != null) {
+              mWorkerPool = parent.mWorkerPool;
+            } else {
+              mWorkerPool = new PreparatorWorkerPool(mConfig);
+              mOwnsWorkerPool = true;
+            }
+          }
+          mLog.info("Preparator " + className + " runs in a worker process");
+          mPreparatorArr[i] = new IsolatedPreparator(mPreparatorArr[i], mWorkerPool);
+          break;
+        }
+      }
+    }
+  }
+
+  /**
+   * Gets the class name of a preparator. For an {@link IsolatedPreparator}
+   * the class name of the preparator in the worker process is returned.
+   *
+   * @param preparator The preparator.
+   * @return The class name of the preparator.
+   */
+  private static String getPreparatorClassName(Preparator preparator) {
+    if (preparator instanceof IsolatedPreparator) {
+      return ((IsolatedPreparator) preparator).getPreparatorClassName();
+    }
+    return preparator.getClass().getName();
+  }
+
+  /**
+   * Creates a copy of this factory for another crawler thread.
+   * <p>
+   * The preparators hold the state of the document they are preparing, so
+   * every thread needs its own preparators. The copy has its own preparators
+   * and regular expressions, but shares the profilers with this factory.
+   *
+   * @return The copy.
+   * @throws RegainException If a preparator could not be created.
+   */
+  public DocumentFactory createCopy() throws RegainException {
+    return new DocumentFactory(mConfig, mAnalysisDir, this);
+  }
+
+  /**
+   * Gets the profiler of a preparator.
+   *
+   * @param preparatorClassName The class name of the preparator.
+   * @return The profiler or <code>null</code> if there is no such preparator.
+   */
+  private Profiler getPreparatorProfiler(String preparatorClassName) {
+    for (int i = 0; i < mPreparatorArr.length; i++) {
+      if (getPreparatorClassName(mPreparatorArr[i]).equals(preparatorClassName)) {
+        return mPreparatorProfilerArr[i];
+      }
+    }
+    return null;
   }
 
   /**
@@ -188,81 +354,90 @@ public class DocumentFactory {
 
     // Determine the mime-type
     String mimeType;
-    FileInputStream fis = null;
+    InputStream stream = null;
     try {
-      File file = rawDocument.getContentAsFile();
-      if (file.canRead() == false) {
-        mLog.warn("canRead() on file return: false. Maybe no access rights for sourceURL: "
-                + RegainToolkit.fileToUrl(file));
-        return null;
+      String url = rawDocument.getUrl();
+      String fileName;
+      if (url.startsWith("file:")) {
+        File file = RegainToolkit.urlToFile(url);
+        if (file.canRead() == false) {
+          mLog.warn("canRead() on file return: false. Maybe no access rights for sourceURL: "
+                  + RegainToolkit.fileToUrl(file));
+          return null;
+        }
+        fileName = file.getPath();
+      } else {
+        // NOTE: The identifier only uses the extension of the file name. So
+        //       there is no need to write the content to a temporary file.
+        fileName = "document" + rawDocument.getFileExtension();
       }
 
-      fis = new FileInputStream(file);
+      stream = rawDocument.getContentAsStream();
       byte[] bytes = new byte[mimeTypeIdentifier.getMinArrayLength()];
-      fis.read(bytes);
-      mimeType = mimeTypeIdentifier.identify(bytes, file.getPath(),
-              new URIImpl(rawDocument.getUrl(), false));
-      if (mimeType == null || mimeType.length() == 0) {
-        mimeType = MIME_TYPE_UNKNOWN;
+      int length = 0;
+      int read;
+      while (length < bytes.length
+              && (read = stream.read(bytes, length, bytes.length - length)) != -1) {
+        length += read;
       }
 
-      mLog.debug("Detected mimetype cycle 1: " + mimeType + ". " + rawDocument.getUrl());
-      if (mimeType.equalsIgnoreCase("application/zip")) {
-        // some new files like MS Office documents are zip files
-        // so rewrite the URL for the correct mimetype detection
-        // TODO: Maybe merge MimeTypeDetecter from javaThumbnailer? Seems more reliable
-        mimeType = mimeTypeIdentifier.identify(bytes, null,
-                new URIImpl("zip:mime:file:" + rawDocument.getUrl()));
-        mLog.debug("Detected mimetype cycle 2: " + mimeType + ". " + "zip:mime:file:" + rawDocument.getUrl());
+      // Documents with the same magic bytes and extension have the same
+      // mime-type
+      String fileExtension = getExtension(fileName);
+      String urlExtension = getExtension(url);
+      mimeType = mMimeTypeCache.get(fileExtension, urlExtension, bytes);
+      if (mimeType != null) {
+        if (mLog.isDebugEnabled()) {
+          mLog.debug("Took mimetype from cache: " + mimeType + ". " + url);
+        }
+      } else {
+        mimeType = identifyMimeType(bytes, fileName, url);
+        if (mimeType != null) {
+          mMimeTypeCache.put(fileExtension, urlExtension, bytes, mimeType);
+        }
       }
     } catch (Exception exc) {
       errorLogger.logError("Determine mime-type of " + rawDocument.getUrl()
               + " failed", exc, false);
       mimeType = MIME_TYPE_UNKNOWN;
     } finally {
-      if (fis != null) {
-        try { fis.close(); } catch(IOException e) {}
+      if (stream != null) {
+        try { stream.close(); } catch(IOException e) {}
       }
     }
 
     rawDocument.setMimeType(mimeType);
 
-    // Find the preparator that will prepare this URL
-    PriorityQueue<PreparatorProfilerPair> matchingPreparators = new PriorityQueue<PreparatorProfilerPair>(mPreparatorArr.length);
-    for (int i = 0; i < mPreparatorArr.length; i++) {
-      if (mPreparatorArr[i].accepts(rawDocument)) {
-        // This preparator can prepare this URL
-
-        matchingPreparators.add(new PreparatorProfilerPair(mPreparatorArr[i], mPreparatorProfilerArr[i]));
-        if (mLog.isDebugEnabled()) {
-          mLog.debug("Found: " + mPreparatorArr[i].getClass().getSimpleName()
-                  + ", Prio: " + mPreparatorArr[i].getPriority());
-        }
+    // Find the preparators that will prepare this URL (sorted by priority)
+    int[] acceptingArr = mPreparatorDispatcher.getAcceptingPreparators(rawDocument);
+    if (mLog.isDebugEnabled()) {
+      for (int i = 0; i < acceptingArr.length; i++) {
+        mLog.debug("Found: " + getPreparatorClassName(mPreparatorArr[acceptingArr[i]])
+                + ", Prio: " + mPreparatorArr[acceptingArr[i]].getPriority());
       }
     }
 
     Document doc = null;
     boolean preparatorFound = false;
-      PreparatorProfilerPair preparatorProfiler;
-      while (doc == null && (preparatorProfiler = matchingPreparators.poll()) != null)
-      {
-        preparatorFound = true;
-        try {
-          doc = createDocument(preparatorProfiler.getPreparator(), preparatorProfiler.getProfiler(), rawDocument);
-          mLog.info("Preparation with " + preparatorProfiler.getPreparator().getClass().getSimpleName()
-                  + " done: " + rawDocument.getUrl());
-        } catch (RegainException exc) {
-          errorLogger.logError("Preparing " + rawDocument.getUrl()
-                  + " with preparator " + preparatorProfiler.getPreparator().getClass().getName()
-                  + " failed", exc, false);
-        }
-
-        /* For backwards compability reasons we could introduce this parameter with default true:
-        if (mConfig.getUseOnlyOnePreparator())
-          break;
-        */
+    for (int i = 0; doc == null && i < acceptingArr.length; i++) {
+      Preparator preparator = mPreparatorArr[acceptingArr[i]];
+      preparatorFound = true;
+      try {
+        doc = createDocument(preparator, mPreparatorProfilerArr[acceptingArr[i]], rawDocument);
+        mLog.info("Preparation with " + getPreparatorClassName(preparator)
+                + " done: " + rawDocument.getUrl());
+      } catch (RegainException exc) {
+        errorLogger.logError("Preparing " + rawDocument.getUrl()
+                + " with preparator " + getPreparatorClassName(preparator)
+                + " failed", exc, false);
       }
 
+      /* For backwards compability reasons we could introduce this parameter with default true:
+      if (mConfig.getUseOnlyOnePreparator())
+        break;
+      */
+    }
+
     if (!preparatorFound) {
       mLog.info("No preparator feels responsible for " + rawDocument.getUrl());
 
@@ -284,6 +459,46 @@ public class DocumentFactory {
     return doc;
   }
 
+  /**
+   * Identifies the mime-type of a document.
+   *
+   * @param bytes The first bytes of the document.
+   * @param fileName The file name of the document.
+   * @param url The URL of the document.
+   * @return The mime-type.
+   */
+  private String identifyMimeType(byte[] bytes, String fileName, String url) {
+    String mimeType = mimeTypeIdentifier.identify(bytes, fileName,
+            new URIImpl(url, false));
+    if (mimeType == null || mimeType.length() == 0) {
+      mimeType = MIME_TYPE_UNKNOWN;
+    }
+
+    mLog.debug("Detected mimetype cycle 1: " + mimeType + ". " + url);
+    if (mimeType.equalsIgnoreCase("application/zip")) {
+      // some new files like MS Office documents are zip files
+      // so rewrite the URL for the correct mimetype detection
+      // TODO: Maybe merge MimeTypeDetecter from javaThumbnailer? Seems more reliable
+      mimeType = mimeTypeIdentifier.identify(bytes, null,
+              new URIImpl("zip:mime:file:" + url));
+      mLog.debug("Detected mimetype cycle 2: " + mimeType + ". " + "zip:mime:file:" + url);
+    }
+    return mimeType;
+  }
+
+  /**
+   * Gets the extension of a file name or a URL.
+   *
+   * @param name The file name or the URL.
+   * @return Everything after the last dot of the last path element or
+   *         <code>null</code> if the last path element has no dot.
+   */
+  private static String getExtension(String name) {
+    int lastDot = name.lastIndexOf('.');
+    int lastSeparator = Math.max(name.lastIndexOf('/'), name.lastIndexOf('\\'));
+    return (lastDot > lastSeparator) ? name.substring(lastDot + 1) : null;
+  }
+
   /**
    * Creates a lucene {@link Document} from a {@link RawDocument} using a
    * certain Preparator.
@@ -308,15 +523,57 @@ public class DocumentFactory {
     PathElement[] path;
     Map<String, String> additionalFieldMap;
     if (mLog.isDebugEnabled()) {
-      mLog.debug("Using preparator " + preparator.getClass().getName()
+      mLog.debug("Using preparator " + getPreparatorClassName(preparator)
               + " for " + rawDocument + ", " + rawDocument.getMimeType());
     }
 
+    // Look for a document with the same content in the cache
+    String preparatorClassName = getPreparatorClassName(preparator);
+    String digest = null;
+    PreparationCache.Entry cacheEntry = null;
+    if ((mPreparationCache != null) && ! FILENAME_PREPARATOR.equals(preparatorClassName)) {
+      mPreparationCacheProfiler.startMeasuring();
+      String variant = null;
+      if (preparator instanceof AbstractPreparator) {
+        variant = ((AbstractPreparator) preparator).getPreparationVariant(rawDocument);
+      }
+      digest = PreparationCache.getDigest(rawDocument, preparatorClassName, variant);
+      cacheEntry = (digest == null) ? null : mPreparationCache.get(digest);
+      if (cacheEntry != null) {
+        mPreparationCacheProfiler.stopMeasuring(rawDocument.getLength());
+        if (mLog.isDebugEnabled()) {
+          mLog.debug("Took " + url + " from the preparation cache");
+        }
+      } else {
+        mPreparationCacheProfiler.abortMeasuring();
+      }
+    }
+
     preparatorProfiler.startMeasuring();
     pluginManager.eventBeforePrepare(rawDocument, (WriteablePreparator) preparator);
 
     try {
-      preparator.prepare(rawDocument);
+      if (cacheEntry != null) {
+        // Give the cached fields to the preparator, so the plugins see them
+        // like they were prepared
+        setPreparedFields((WriteablePreparator) preparator, cacheEntry);
+      } else {
+        preparator.prepare(rawDocument);
+
+        // Put the prepared fields into the cache before the plugins change
+        // them. Documents with links or a path are not cached, because these
+        // depend on the URL of the document.
+        if ((digest != null) && ! rawDocument.hasLinks() && (preparator.getPath() == null)
+                && (preparator.getCleanedContent() != null)) {
+          Map<String, String> fieldMap = preparator.getAdditionalFields();
+          if (fieldMap != null) {
+            fieldMap = new HashMap<String, String>(fieldMap);
+          }
+          mPreparationCache.put(digest, new PreparationCache.Entry(preparator.getTitle(),
+                  preparator.getCleanedContent(), preparator.getCleanedMetaData(),
+                  preparator.getSummary(), preparator.getHeadlines(), null, fieldMap));
+        }
+      }
 
       pluginManager.eventAfterPrepare(rawDocument, (WriteablePreparator) preparator);
 
@@ -334,12 +591,12 @@ public class DocumentFactory {
     } catch (Throwable thr) {
       preparatorProfiler.abortMeasuring();
       throw new RegainException("Preparing " + url
-              + " with preparator " + preparator.getClass().getName() + " failed", thr);
+              + " with preparator " + getPreparatorClassName(preparator) + " failed", thr);
     }
 
     // Check the mandatory information
     if (cleanedContent == null) {
-      throw new RegainException("Preparator " + preparator.getClass().getName()
+      throw new RegainException("Preparator " + getPreparatorClassName(preparator)
               + " did not extract the content of " + url);
     }
 
@@ -351,6 +608,27 @@ public class DocumentFactory {
     return doc;
   }
 
+  /**
+   * Sets the fields of a cache entry as the result of a preparator.
+   *
+   * @param preparator The preparator.
+   * @param entry The cache entry.
+   */
+  private void setPreparedFields(WriteablePreparator preparator,
+          PreparationCache.Entry entry) {
+    preparator.setTitle(entry.getTitle());
+    preparator.setCleanedContent(entry.getCleanedContent());
+    preparator.setCleanedMetaData(entry.getMetadata());
+    preparator.setSummary(entry.getSummary());
+    preparator.setHeadlines(entry.getHeadlines());
+    Map<String, String> fieldMap = entry.getAdditionalFieldMap();
+    if (fieldMap != null) {
+      for (Map.Entry<String, String> field : fieldMap.entrySet()) {
+        preparator.addAdditionalField(field.getKey(), field.getValue());
+      }
+    }
+  }
+
   /**
    * Creates a substitute lucene {@link Document} for a {@link RawDocument}.
    * <p>
@@ -553,7 +831,8 @@ public class DocumentFactory {
 
     // Add the document's title
     if (hasContent(title)) {
-      doc.add(new Field("title", title, Field.Store.YES, Field.Index.ANALYZED));
+      doc.add(new Field("title", title, Field.Store.YES, Field.Index.ANALYZED,
+              mStoreTermVectors ? Field.TermVector.WITH_POSITIONS_OFFSETS : Field.TermVector.NO));
       doc.add(new Field("title_sort", title.toLowerCase(), Field.Store.YES, Field.Index.NOT_ANALYZED));
     } else {
       doc.add(new Field("title_sort", "", Field.Store.YES, Field.Index.NOT_ANALYZED));
@@ -564,7 +843,8 @@ public class DocumentFactory {
       summary = createSummaryFromContent(cleanedContent);
     }
     if (hasContent(summary)) {
-      doc.add(new Field("summary", summary, Field.Store.NO, Field.Index.ANALYZED));
+      doc.add(new Field("summary", summary, Field.Store.NO, Field.Index.ANALYZED,
+              mStoreTermVectors ? Field.TermVector.WITH_POSITIONS_OFFSETS : Field.TermVector.NO));
       doc.add(new Field("summary", CompressionTools.compressString(summary)));
     }
 
@@ -591,6 +871,19 @@ public class DocumentFactory {
       doc.add(new Field("path_sort", "", Field.Store.YES, Field.Index.NOT_ANALYZED));
     }
 
+    // Add the reversed terms for queries with a leading wildcard
+    // NOTE: The analyzer reverses the terms, see RegainToolkit.WrapperAnalyzer
+    for (int i = 0; i < mReversedFieldNames.length; i++) {
+      for (Fieldable field : doc.getFieldables(mReversedFieldNames[i])) {
+        if (field.isIndexed() && field.isTokenized() && field.stringValue() != null) {
+          Field reversedField = new Field(RegainToolkit.getReversedFieldName(field.name()),
+                  field.stringValue(), Field.Store.NO, Field.Index.ANALYZED_NO_NORMS);
+          reversedField.setIndexOptions(FieldInfo.IndexOptions.DOCS_ONLY);
+          doc.add(reversedField);
+        }
+      }
+    }
+
     return doc;
   }
 
@@ -759,18 +1052,27 @@ public class DocumentFactory {
    */
   public void close() {
     for (int i = 0; i < mPreparatorArr.length; i++) {
-      mLog.info("Closing preparator " + mPreparatorArr[i].getClass().getName());
+      mLog.info("Closing preparator " + getPreparatorClassName(mPreparatorArr[i]));
       try {
         mPreparatorArr[i].close();
       } catch (Throwable thr) {
         mLog.error("Closing preparator failed: "
-                + mPreparatorArr[i].getClass().getName(), thr);
+                + getPreparatorClassName(mPreparatorArr[i]), thr);
       }
     }
 
     // Ensure that no call of createDocument(RawDocument) is possible any more
     mPreparatorArr = null;
 
+    if (mOwnsWorkerPool) {
+      mLog.info("Stopping the preparator worker processes");
+      mWorkerPool.close();
+    }
+
+    if (mOwnsPreparationCache) {
+      mPreparationCache.close();
+    }
+
     // Close CrawlerAccessControl if possible
     if (mCrawlerAccessController != null && mCrawlerAccessController instanceof Closeable)
     {
@@ -0,0 +1,111 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.crawler.document;
+
+import net.sf.regain.RegainException;
+
+import org.apache.regexp.RE;
+
+/**
+ * A preparator that lets another preparator prepare the documents in a
+ * worker process of a {@link PreparatorWorkerPool}.
+ * <p>
+ * The local instance of the preparator is only used to decide which documents
+ * it accepts.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class IsolatedPreparator extends AbstractPreparator {
+
+  /** The preparator that runs in the crawler process. */
+  private Preparator mLocalPreparator;
+
+  /** The pool of the worker processes. */
+  private PreparatorWorkerPool mWorkerPool;
+
+
+  /**
+   * Creates a new instance of IsolatedPreparator.
+   *
+   * @param localPreparator The preparator that should run in a worker process.
+   * @param workerPool The pool of the worker processes.
+   */
+  public IsolatedPreparator(Preparator localPreparator,
+    PreparatorWorkerPool workerPool)
+  {
+    mLocalPreparator = localPreparator;
+    mWorkerPool = workerPool;
+    setPriority(localPreparator.getPriority());
+  }
+
+
+  /**
+   * Gets the class name of the preparator that runs in a worker process.
+   *
+   * @return The class name of the isolated preparator.
+   */
+  public String getPreparatorClassName() {
+    return mLocalPreparator.getClass().getName();
+  }
+
+
+  @Override
+  public void setUrlRegex(RE urlRegex) {
+    mLocalPreparator.setUrlRegex(urlRegex);
+  }
+
+
+  @Override
+  public boolean accepts(RawDocument rawDocument) {
+    return mLocalPreparator.accepts(rawDocument);
+  }
+
+
+  @Override
+  public String[] getAcceptedMimeTypes() {
+    if (mLocalPreparator instanceof AbstractPreparator) {
+      return ((AbstractPreparator) mLocalPreparator).getAcceptedMimeTypes();
+    }
+    return null;
+  }
+
+
+  @Override
+  public String getPreparationVariant(RawDocument rawDocument) {
+    if (mLocalPreparator instanceof AbstractPreparator) {
+      return ((AbstractPreparator) mLocalPreparator).getPreparationVariant(rawDocument);
+    }
+    return null;
+  }
+
+
+  @Override
+  public void prepare(RawDocument rawDocument) throws RegainException {
+    mWorkerPool.prepare(getPreparatorClassName(), rawDocument, this);
+  }
+
+
+  @Override
+  public void close() throws RegainException {
+    mLocalPreparator.close();
+  }
+
+}
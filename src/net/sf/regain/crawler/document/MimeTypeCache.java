@@ -0,0 +1,171 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.crawler.document;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Caches the detected mime types.
+ * <p>
+ * The mime type identifier only looks at the first bytes of a document (the
+ * magic bytes) and at the file extension. So documents with the same first
+ * bytes and the same extension get the same mime type and only have to be
+ * identified once. The least recently used entries are removed if the cache
+ * is full.
+ * <p>
+ * The cache may be used by several threads.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class MimeTypeCache {
+
+  /** The entries. */
+  private LinkedHashMap<Key, String> mEntryMap;
+
+
+  /**
+   * Creates a new instance of MimeTypeCache.
+   *
+   * @param maxSize The maximum number of entries.
+   */
+  public MimeTypeCache(final int maxSize) {
+    mEntryMap = new LinkedHashMap<Key, String>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Key, String> eldest) {
+        return size() > maxSize;
+      }
+    };
+  }
+
+
+  /**
+   * Gets a cached mime type.
+   *
+   * @param fileExtension The extension of the file name given to the
+   *        identifier. May be <code>null</code>.
+   * @param urlExtension The extension of the URL given to the identifier.
+   *        May be <code>null</code>.
+   * @param magicBytes The first bytes of the document.
+   * @return The mime type or <code>null</code> if it is not cached.
+   */
+  public synchronized String get(String fileExtension, String urlExtension,
+    byte[] magicBytes)
+  {
+    return mEntryMap.get(new Key(fileExtension, urlExtension, magicBytes));
+  }
+
+
+  /**
+   * Adds a mime type to the cache.
+   *
+   * @param fileExtension The extension of the file name given to the
+   *        identifier. May be <code>null</code>.
+   * @param urlExtension The extension of the URL given to the identifier.
+   *        May be <code>null</code>.
+   * @param magicBytes The first bytes of the document. The array must not be
+   *        changed afterwards.
+   * @param mimeType The mime type.
+   */
+  public synchronized void put(String fileExtension, String urlExtension,
+    byte[] magicBytes, String mimeType)
+  {
+    mEntryMap.put(new Key(fileExtension, urlExtension, magicBytes), mimeType);
+  }
+
+
+  /**
+   * Gets the number of cached mime types.
+   *
+   * @return The number of entries.
+   */
+  public synchronized int size() {
+    return mEntryMap.size();
+  }
+
+
+  /**
+   * The key of a cache entry.
+   */
+  private static class Key {
+
+    /** The extension of the file name. May be <code>null</code>. */
+    private String mFileExtension;
+    /** The extension of the URL. May be <code>null</code>. */
+    private String mUrlExtension;
+    /** The first bytes of the document. */
+    private byte[] mMagicBytes;
+    /** The hash code. */
+    private int mHashCode;
+
+
+    /**
+     * Creates a new instance of Key.
+     *
+     * @param fileExtension The extension of the file name.
+     * @param urlExtension The extension of the URL.
+     * @param magicBytes The first bytes of the document.
+     */
+    public Key(String fileExtension, String urlExtension, byte[] magicBytes) {
+      mFileExtension = fileExtension;
+      mUrlExtension = urlExtension;
+      mMagicBytes = magicBytes;
+
+      mHashCode = Arrays.hashCode(magicBytes);
+      mHashCode = 31 * mHashCode + ((fileExtension == null) ? 0 : fileExtension.hashCode());
+      mHashCode = 31 * mHashCode + ((urlExtension == null) ? 0 : urlExtension.hashCode());
+    }
+
+
+    @Override
+    public int hashCode() {
+      return mHashCode;
+    }
+
+
+    @Override
+    public boolean equals(Object obj) {
+      if (! (obj instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) obj;
+      return (mHashCode == other.mHashCode)
+        && equals(mFileExtension, other.mFileExtension)
+        && equals(mUrlExtension, other.mUrlExtension)
+        && Arrays.equals(mMagicBytes, other.mMagicBytes);
+    }
+
+
+    /**
+     * Compares two Strings that may be <code>null</code>.
+     *
+     * @param s1 The first String.
+     * @param s2 The second String.
+     * @return Whether both Strings are equal.
+     */
+    private static boolean equals(String s1, String s2) {
+      return (s1 == null) ? (s2 == null) : s1.equals(s2);
+    }
+
+  }
+
+}
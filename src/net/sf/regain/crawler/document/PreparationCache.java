@@ -0,0 +1,550 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.crawler.document;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import net.sf.regain.RegainException;
+import net.sf.regain.RegainToolkit;
+
+import org.apache.log4j.Logger;
+
+/**
+ * An on-disk cache of prepared documents. The key is a digest of the content
+ * of a document and of the preparator that prepared it, so identical files
+ * are prepared only once, also across crawler runs.
+ * <p>
+ * Every entry is a gzipped file in a sub directory named after the first two
+ * characters of the digest. If the cache grows larger than its maximum size,
+ * the least recently used entries are removed.
+ * <p>
+ * This class is thread-safe.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class PreparationCache {
+
+  /** The extension of the cache files. */
+  private static final String EXTENSION = ".dat";
+  /** The version of the file format. */
+  private static final int VERSION = 1;
+
+  /** The logger for this class */
+  private static Logger mLog = Logger.getLogger(PreparationCache.class);
+
+  /** The directory of the cache. */
+  private File mDir;
+  /** The maximum size of the cache in bytes. */
+  private long mMaxSize;
+  /** The current size of the cache in bytes. */
+  private long mSize;
+  /**
+   * The sizes of the cache entries in access order. Key: The digest, value:
+   * The size of the file.
+   */
+  private LinkedHashMap<String, Long> mEntryMap;
+
+  /** The number of documents found in the cache. */
+  private int mHitCount;
+  /** The number of documents not found in the cache. */
+  private int mMissCount;
+
+
+  /**
+   * Creates a new instance of PreparationCache.
+   *
+   * @param dir The directory of the cache.
+   * @param maxSize The maximum size of the cache in bytes.
+   * @throws RegainException If the directory could not be created.
+   */
+  public PreparationCache(File dir, long maxSize) throws RegainException {
+    mDir = dir;
+    mMaxSize = maxSize;
+    mEntryMap = new LinkedHashMap<String, Long>(16, 0.75f, true);
+
+    if (! dir.exists() && ! dir.mkdirs()) {
+      throw new RegainException("Creating preparation cache directory failed: " + dir);
+    }
+
+    // Read the existing entries, the oldest first
+    List<File> fileList = new ArrayList<File>();
+    File[] subDirArr = dir.listFiles();
+    for (int i = 0; i < subDirArr.length; i++) {
+      File[] fileArr = subDirArr[i].listFiles();
+      if (fileArr != null) {
+        for (int j = 0; j < fileArr.length; j++) {
+          if (fileArr[j].getName().endsWith(EXTENSION)) {
+            fileList.add(fileArr[j]);
+          } else {
+            // A temp file of an aborted put
+            fileArr[j].delete();
+          }
+        }
+      }
+    }
+    File[] fileArr = fileList.toArray(new File[fileList.size()]);
+    Arrays.sort(fileArr, new Comparator<File>() {
+      public int compare(File file1, File file2) {
+        long diff = file1.lastModified() - file2.lastModified();
+        return (diff < 0) ? -1 : ((diff > 0) ? 1 : 0);
+      }
+    });
+    for (int i = 0; i < fileArr.length; i++) {
+      String name = fileArr[i].getName();
+      String digest = name.substring(0, name.length() - EXTENSION.length());
+      long size = fileArr[i].length();
+      mEntryMap.put(digest, size);
+      mSize += size;
+    }
+
+    mLog.info("Preparation cache has " + mEntryMap.size() + " entries with "
+        + RegainToolkit.bytesToString(mSize));
+    evict();
+  }
+
+
+  /**
+   * Calculates the cache key of a document.
+   * <p>
+   * Besides the content the key contains the mime type and the charset, since
+   * the charset of a HTTP document may come from the Content-Type header.
+   *
+   * @param rawDocument The document.
+   * @param preparatorClassName The class name of the preparator that prepares
+   *        the document.
+   * @return The digest or <code>null</code> if the content of the document
+   *         could not be read.
+   */
+  public static String getDigest(RawDocument rawDocument, String preparatorClassName) {
+    return getDigest(rawDocument, preparatorClassName, null);
+  }
+
+
+  /**
+   * Calculates the cache key of a document.
+   *
+   * @param rawDocument The document.
+   * @param preparatorClassName The class name of the preparator that prepares
+   *        the document.
+   * @param preparationVariant The part of the preparator's configuration that
+   *        is used for the document (see
+   *        {@link AbstractPreparator#getPreparationVariant(RawDocument)}). May
+   *        be <code>null</code>.
+   * @return The digest or <code>null</code> if the content of the document
+   *         could not be read.
+   */
+  public static String getDigest(RawDocument rawDocument, String preparatorClassName,
+    String preparationVariant)
+  {
+    ReadableByteChannel channel = null;
+    try {
+      MessageDigest md = MessageDigest.getInstance("MD5");
+      md.update(preparatorClassName.getBytes("UTF-8"));
+      md.update((byte) 0);
+      if (preparationVariant != null) {
+        md.update(preparationVariant.getBytes("UTF-8"));
+      }
+      md.update((byte) 0);
+      if (rawDocument.getMimeType() != null) {
+        md.update(rawDocument.getMimeType().getBytes("UTF-8"));
+      }
+      md.update((byte) 0);
+      md.update(rawDocument.getCharset().getBytes("UTF-8"));
+      md.update((byte) 0);
+
+      channel = rawDocument.getContentAsChannel();
+      ByteBuffer buffer = ByteBuffer.allocateDirect(65536);
+      while (channel.read(buffer) != -1) {
+        buffer.flip();
+        md.update(buffer);
+        buffer.clear();
+      }
+
+      byte[] digest = md.digest();
+      StringBuilder hex = new StringBuilder(digest.length * 2);
+      for (int i = 0; i < digest.length; i++) {
+        hex.append(Character.forDigit((digest[i] >> 4) & 0xf, 16));
+        hex.append(Character.forDigit(digest[i] & 0xf, 16));
+      }
+      return hex.toString();
+    }
+    catch (Throwable thr) {
+      mLog.warn("Calculating the digest of " + rawDocument.getUrl() + " failed", thr);
+      return null;
+    }
+    finally {
+      if (channel != null) {
+        try { channel.close(); } catch (IOException exc) {}
+      }
+    }
+  }
+
+
+  /**
+   * Gets the file of a cache entry.
+   *
+   * @param digest The digest of the entry.
+   * @return The file of the entry.
+   */
+  private File getFile(String digest) {
+    return new File(new File(mDir, digest.substring(0, 2)), digest + EXTENSION);
+  }
+
+
+  /**
+   * Gets a prepared document from the cache.
+   *
+   * @param digest The digest of the document.
+   * @return The prepared document or <code>null</code> if the document is not
+   *         in the cache.
+   */
+  public Entry get(String digest) {
+    synchronized (this) {
+      if (mEntryMap.get(digest) == null) {
+        mMissCount++;
+        return null;
+      }
+    }
+
+    File file = getFile(digest);
+    DataInputStream in = null;
+    try {
+      in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(
+          new FileInputStream(file))));
+      if (in.readInt() != VERSION) {
+        throw new IOException("Unknown version");
+      }
+      Entry entry = new Entry();
+      entry.mTitle = RegainToolkit.readString(in);
+      entry.mCleanedContent = RegainToolkit.readString(in);
+      entry.mMetadata = RegainToolkit.readString(in);
+      entry.mSummary = RegainToolkit.readString(in);
+      entry.mHeadlines = RegainToolkit.readString(in);
+
+      int pathLength = in.readInt();
+      if (pathLength != -1) {
+        entry.mPath = new PathElement[pathLength];
+        for (int i = 0; i < pathLength; i++) {
+          String url = RegainToolkit.readString(in);
+          String title = RegainToolkit.readString(in);
+          entry.mPath[i] = new PathElement(url, title);
+        }
+      }
+
+      int fieldCount = in.readInt();
+      if (fieldCount != -1) {
+        entry.mAdditionalFieldMap = new HashMap<String, String>();
+        for (int i = 0; i < fieldCount; i++) {
+          String name = RegainToolkit.readString(in);
+          entry.mAdditionalFieldMap.put(name, RegainToolkit.readString(in));
+        }
+      }
+
+      file.setLastModified(System.currentTimeMillis());
+      synchronized (this) {
+        mHitCount++;
+      }
+      return entry;
+    }
+    catch (IOException exc) {
+      mLog.warn("Removing corrupt preparation cache entry: " + file, exc);
+      remove(digest);
+      return null;
+    }
+    finally {
+      if (in != null) {
+        try { in.close(); } catch (IOException exc) {}
+      }
+    }
+  }
+
+
+  /**
+   * Puts a prepared document into the cache.
+   *
+   * @param digest The digest of the document.
+   * @param entry The prepared document.
+   */
+  public void put(String digest, Entry entry) {
+    File file = getFile(digest);
+    File tmpFile = new File(file.getParentFile(), digest + "."
+        + Thread.currentThread().getId() + ".tmp");
+    DataOutputStream out = null;
+    try {
+      file.getParentFile().mkdirs();
+      out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(
+          new FileOutputStream(tmpFile))));
+      out.writeInt(VERSION);
+      RegainToolkit.writeString(out, entry.mTitle);
+      RegainToolkit.writeString(out, entry.mCleanedContent);
+      RegainToolkit.writeString(out, entry.mMetadata);
+      RegainToolkit.writeString(out, entry.mSummary);
+      RegainToolkit.writeString(out, entry.mHeadlines);
+
+      if (entry.mPath == null) {
+        out.writeInt(-1);
+      } else {
+        out.writeInt(entry.mPath.length);
+        for (int i = 0; i < entry.mPath.length; i++) {
+          RegainToolkit.writeString(out, entry.mPath[i].getUrl());
+          RegainToolkit.writeString(out, entry.mPath[i].getTitle());
+        }
+      }
+
+      if (entry.mAdditionalFieldMap == null) {
+        out.writeInt(-1);
+      } else {
+        out.writeInt(entry.mAdditionalFieldMap.size());
+        for (Map.Entry<String, String> field : entry.mAdditionalFieldMap.entrySet()) {
+          RegainToolkit.writeString(out, field.getKey());
+          RegainToolkit.writeString(out, field.getValue());
+        }
+      }
+      out.close();
+      out = null;
+    }
+    catch (IOException exc) {
+      mLog.warn("Writing preparation cache entry failed: " + file, exc);
+      if (out != null) {
+        try { out.close(); } catch (IOException exc2) {}
+      }
+      tmpFile.delete();
+      return;
+    }
+
+    synchronized (this) {
+      // Another thread may have put the same document in the meantime
+      Long oldSize = mEntryMap.get(digest);
+      if (oldSize != null) {
+        tmpFile.delete();
+        return;
+      }
+      if (! tmpFile.renameTo(file)) {
+        mLog.warn("Writing preparation cache entry failed: " + file);
+        tmpFile.delete();
+        return;
+      }
+      long size = file.length();
+      mEntryMap.put(digest, size);
+      mSize += size;
+      evict();
+    }
+  }
+
+
+  /**
+   * Removes an entry from the cache.
+   *
+   * @param digest The digest of the entry to remove.
+   */
+  private synchronized void remove(String digest) {
+    Long size = mEntryMap.remove(digest);
+    if (size != null) {
+      mSize -= size;
+    }
+    getFile(digest).delete();
+  }
+
+
+  /**
+   * Removes the least recently used entries until the cache is not larger
+   * than its maximum size.
+   */
+  private synchronized void evict() {
+    Iterator<Map.Entry<String, Long>> iter = mEntryMap.entrySet().iterator();
+    while ((mSize > mMaxSize) && iter.hasNext()) {
+      Map.Entry<String, Long> eldest = iter.next();
+      iter.remove();
+      mSize -= eldest.getValue();
+      getFile(eldest.getKey()).delete();
+    }
+  }
+
+
+  /**
+   * Gets the number of entries in the cache.
+   *
+   * @return The number of entries in the cache.
+   */
+  public synchronized int getEntryCount() {
+    return mEntryMap.size();
+  }
+
+
+  /**
+   * Gets the size of the cache.
+   *
+   * @return The size of the cache in bytes.
+   */
+  public synchronized long getSize() {
+    return mSize;
+  }
+
+
+  /**
+   * Logs the statistics of the cache.
+   */
+  public synchronized void close() {
+    mLog.info("Preparation cache: " + mHitCount + " hits, " + mMissCount
+        + " misses, " + mEntryMap.size() + " entries with "
+        + RegainToolkit.bytesToString(mSize));
+  }
+
+
+  /**
+   * The prepared fields of a document.
+   */
+  public static class Entry {
+
+    /** The title of the document. */
+    String mTitle;
+    /** The cleaned content of the document. */
+    String mCleanedContent;
+    /** The cleaned meta data of the document. */
+    String mMetadata;
+    /** The summary of the document. */
+    String mSummary;
+    /** The headlines of the document. */
+    String mHeadlines;
+    /** The path to the document. */
+    PathElement[] mPath;
+    /** The additional fields of the document. */
+    Map<String, String> mAdditionalFieldMap;
+
+
+    /**
+     * Creates a new, empty instance of Entry.
+     */
+    Entry() {
+    }
+
+
+    /**
+     * Creates a new instance of Entry.
+     *
+     * @param title The title of the document.
+     * @param cleanedContent The cleaned content of the document.
+     * @param metadata The cleaned meta data of the document.
+     * @param summary The summary of the document.
+     * @param headlines The headlines of the document.
+     * @param path The path to the document.
+     * @param additionalFieldMap The additional fields of the document.
+     */
+    public Entry(String title, String cleanedContent, String metadata,
+      String summary, String headlines, PathElement[] path,
+      Map<String, String> additionalFieldMap)
+    {
+      mTitle = title;
+      mCleanedContent = cleanedContent;
+      mMetadata = metadata;
+      mSummary = summary;
+      mHeadlines = headlines;
+      mPath = path;
+      mAdditionalFieldMap = additionalFieldMap;
+    }
+
+
+    /**
+     * Gets the title of the document.
+     *
+     * @return The title.
+     */
+    public String getTitle() {
+      return mTitle;
+    }
+
+    /**
+     * Gets the cleaned content of the document.
+     *
+     * @return The cleaned content.
+     */
+    public String getCleanedContent() {
+      return mCleanedContent;
+    }
+
+    /**
+     * Gets the cleaned meta data of the document.
+     *
+     * @return The cleaned meta data.
+     */
+    public String getMetadata() {
+      return mMetadata;
+    }
+
+    /**
+     * Gets the summary of the document.
+     *
+     * @return The summary.
+     */
+    public String getSummary() {
+      return mSummary;
+    }
+
+    /**
+     * Gets the headlines of the document.
+     *
+     * @return The headlines.
+     */
+    public String getHeadlines() {
+      return mHeadlines;
+    }
+
+    /**
+     * Gets the path to the document.
+     *
+     * @return The path.
+     */
+    public PathElement[] getPath() {
+      return mPath;
+    }
+
+    /**
+     * Gets the additional fields of the document.
+     *
+     * @return The additional fields.
+     */
+    public Map<String, String> getAdditionalFieldMap() {
+      return mAdditionalFieldMap;
+    }
+
+  }
+
+}
@@ -0,0 +1,181 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.crawler.document;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the preparators that accept a document.
+ * <p>
+ * Most preparators only accept documents of certain mime types. For these the
+ * dispatcher holds a table from the mime type to the preparators, already
+ * sorted by their priority. Only the preparators whose decision depends on
+ * more than the mime type (like a URL regex) are asked by
+ * {@link Preparator#accepts(RawDocument)}.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class PreparatorDispatcher {
+
+  /** The preparators. */
+  private Preparator[] mPreparatorArr;
+  /**
+   * The indexes of the preparators accepting a mime type, sorted by priority.
+   * Only holds the preparators that decide by the mime type only.
+   */
+  private HashMap<String, int[]> mMimeTypeChainMap;
+  /**
+   * The indexes of the preparators that have to be asked whether they accept a
+   * document, sorted by priority.
+   */
+  private int[] mAskedIndexArr;
+
+
+  /**
+   * Creates a new instance of PreparatorDispatcher.
+   *
+   * @param preparatorArr The preparators.
+   */
+  public PreparatorDispatcher(Preparator[] preparatorArr) {
+    mPreparatorArr = preparatorArr;
+
+    HashMap<String, List<Integer>> chainMap = new HashMap<String, List<Integer>>();
+    List<Integer> askedList = new ArrayList<Integer>();
+    for (int i = 0; i < preparatorArr.length; i++) {
+      String[] mimeTypeArr = null;
+      if (preparatorArr[i] instanceof AbstractPreparator) {
+        mimeTypeArr = ((AbstractPreparator) preparatorArr[i]).getAcceptedMimeTypes();
+      }
+
+      if (mimeTypeArr == null) {
+        askedList.add(i);
+      } else {
+        for (String mimeType : mimeTypeArr) {
+          List<Integer> chain = chainMap.get(mimeType);
+          if (chain == null) {
+            chain = new ArrayList<Integer>();
+            chainMap.put(mimeType, chain);
+          }
+          if (! chain.contains(i)) {
+            chain.add(i);
+          }
+        }
+      }
+    }
+
+    mMimeTypeChainMap = new HashMap<String, int[]>(chainMap.size() * 2);
+    for (Map.Entry<String, List<Integer>> entry : chainMap.entrySet()) {
+      mMimeTypeChainMap.put(entry.getKey(), sortByPriority(entry.getValue()));
+    }
+    mAskedIndexArr = sortByPriority(askedList);
+  }
+
+
+  /**
+   * Sorts preparator indexes by the priority of the preparators (highest
+   * first). Preparators with the same priority keep their order.
+   *
+   * @param indexList The indexes to sort.
+   * @return The sorted indexes.
+   */
+  private int[] sortByPriority(List<Integer> indexList) {
+    int[] indexArr = new int[indexList.size()];
+    for (int i = 0; i < indexArr.length; i++) {
+      // Insertion sort: The lists are short
+      int index = indexList.get(i);
+      int pos = i;
+      while (pos > 0 && comparePriority(indexArr[pos - 1], index) > 0) {
+        indexArr[pos] = indexArr[pos - 1];
+        pos--;
+      }
+      indexArr[pos] = index;
+    }
+    return indexArr;
+  }
+
+
+  /**
+   * Compares two preparators by their priority.
+   *
+   * @param index1 The index of the first preparator.
+   * @param index2 The index of the second preparator.
+   * @return A negative number if the first preparator comes first, a positive
+   *         number if the second preparator comes first.
+   */
+  private int comparePriority(int index1, int index2) {
+    int priority1 = mPreparatorArr[index1].getPriority();
+    int priority2 = mPreparatorArr[index2].getPriority();
+    if (priority1 != priority2) {
+      return (priority1 > priority2) ? -1 : 1;
+    }
+    return index1 - index2;
+  }
+
+
+  /**
+   * Gets the preparators that accept a document. The mime type of the
+   * document must be set.
+   *
+   * @param rawDocument The document.
+   * @return The indexes of the preparators that accept the document, sorted by
+   *         priority (highest first).
+   */
+  public int[] getAcceptingPreparators(RawDocument rawDocument) {
+    int[] chain = null;
+    if (rawDocument.getMimeType() != null) {
+      chain = mMimeTypeChainMap.get(rawDocument.getMimeType());
+    }
+    if (chain == null) {
+      chain = new int[0];
+    }
+    if (mAskedIndexArr.length == 0) {
+      return chain;
+    }
+
+    // Merge the chain with the asked preparators that accept the document
+    int[] result = new int[chain.length + mAskedIndexArr.length];
+    int count = 0;
+    int chainPos = 0;
+    for (int i = 0; i < mAskedIndexArr.length; i++) {
+      int index = mAskedIndexArr[i];
+      if (mPreparatorArr[index].accepts(rawDocument)) {
+        while (chainPos < chain.length && comparePriority(chain[chainPos], index) < 0) {
+          result[count++] = chain[chainPos++];
+        }
+        result[count++] = index;
+      }
+    }
+    while (chainPos < chain.length) {
+      result[count++] = chain[chainPos++];
+    }
+
+    if (count == result.length) {
+      return result;
+    }
+    int[] shortened = new int[count];
+    System.arraycopy(result, 0, shortened, 0, count);
+    return shortened;
+  }
+
+}
@@ -1,56 +0,0 @@
-/*
- * regain - A file search engine providing plenty of formats
- * Copyright (C) 2004  Til Schneider
- *
- * This library is free software; you can redistribute it and/or
- * modify it under the terms of the GNU Lesser General Public
- * License as published by the Free Software Foundation; either
- * version 2.1 of the License, or (at your option) any later version.
- *
- * This library is distributed in the hope that it will be useful,
- * but WITHOUT ANY WARRANTY; without even the implied warranty of
- * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
- * Lesser General Public License for more details.
- *
- * You should have received a copy of the GNU Lesser General Public
- * License along with this library; if not, write to the Free Software
- * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
- *
- * Contact: Til Schneider, info@murfman.de
- */
-package net.sf.regain.crawler.document;
-
-import net.sf.regain.crawler.Profiler;
-
-/**
- * Allow ordering by priority of Preparator. (Higher values first.)
- * @author Benjamin
- */
-public class PreparatorProfilerPair implements Comparable<PreparatorProfilerPair>
-{
-  private Preparator preparator;
-  private Profiler profiler;
-
-  public Preparator getPreparator()
-  {
-    return preparator;
-  }
-
-  public Profiler getProfiler()
-  {
-    return profiler;
-  }
-
-  public PreparatorProfilerPair(Preparator preparator, Profiler profiler)
-  {
-    this.preparator = preparator;
-    this.profiler = profiler;
-  }
-
-  @Override
-  public int compareTo(PreparatorProfilerPair other)
-  {
-    return Integer.valueOf(other.preparator.getPriority()).compareTo(preparator.getPriority());
-  }
-
-}
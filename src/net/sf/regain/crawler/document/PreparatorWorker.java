@@ -0,0 +1,308 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.crawler.document;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import net.sf.regain.RegainToolkit;
+import net.sf.regain.crawler.config.PreparatorSettings;
+
+import org.apache.log4j.ConsoleAppender;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.PatternLayout;
+
+/**
+ * The main class of a preparator worker process. Runs the isolated
+ * preparators for the {@link PreparatorWorkerPool} of the crawler.
+ * <p>
+ * The crawler sends the preparator settings and then one request per document
+ * over stdin. The worker answers over stdout. Everything the preparators write
+ * to stdout or stderr as well as the log go to stderr, which is read by the
+ * crawler.
+ *
+ * @see PreparatorWorkerPool
+ * @author Til Schneider, www.murfman.de
+ */
+public class PreparatorWorker {
+
+  /** The status of a document that was prepared successfully. */
+  static final byte STATUS_OK = 0;
+  /** The status of a document that couldn't be prepared. */
+  static final byte STATUS_ERROR = 1;
+  /**
+   * The status of a document that killed the worker (e.g. because of an
+   * OutOfMemoryError). The worker exits after sending this status.
+   */
+  static final byte STATUS_FATAL = 2;
+
+  /** The logger for this class */
+  private static Logger mLog = Logger.getLogger(PreparatorWorker.class);
+
+  /** The preparators of this worker. Key: The class name of the preparator. */
+  private Map<String, Preparator> mPreparatorMap;
+
+  /** The input where the requests are read from. */
+  private DataInputStream mIn;
+
+  /** The output where the answers are written to. */
+  private DataOutputStream mOut;
+
+
+  /**
+   * Creates a new instance of PreparatorWorker.
+   *
+   * @param in The input where the requests are read from.
+   * @param out The output where the answers are written to.
+   */
+  private PreparatorWorker(DataInputStream in, DataOutputStream out) {
+    mIn = in;
+    mOut = out;
+  }
+
+
+  /**
+   * Reads the preparator settings and creates the preparators.
+   *
+   * @throws IOException If reading the settings or writing the answer failed.
+   */
+  private void init() throws IOException {
+    int count = mIn.readInt();
+    PreparatorSettings[] settingsArr = new PreparatorSettings[count];
+    for (int i = 0; i < count; i++) {
+      settingsArr[i] = PreparatorSettings.readFrom(mIn);
+    }
+
+    try {
+      Preparator[] preparatorArr = PreparatorFactory.getInstance().createPreparatorArr(settingsArr);
+      mPreparatorMap = new HashMap<String, Preparator>();
+      for (int i = 0; i < preparatorArr.length; i++) {
+        mPreparatorMap.put(preparatorArr[i].getClass().getName(), preparatorArr[i]);
+      }
+      mOut.writeByte(STATUS_OK);
+    }
+    catch (Throwable thr) {
+      mLog.error("Creating the preparators failed", thr);
+      mOut.writeByte(STATUS_ERROR);
+      RegainToolkit.writeString(mOut, thr.toString());
+    }
+    mOut.flush();
+  }
+
+
+  /**
+   * Processes the requests until the crawler closes the input.
+   *
+   * @throws IOException If the communication with the crawler failed.
+   */
+  private void run() throws IOException {
+    while (true) {
+      String className;
+      try {
+        className = RegainToolkit.readString(mIn);
+      }
+      catch (EOFException exc) {
+        // The crawler closed the connection
+        return;
+      }
+      String url = RegainToolkit.readString(mIn);
+      String sourceUrl = RegainToolkit.readString(mIn);
+      String sourceLinkText = RegainToolkit.readString(mIn);
+      String mimeType = RegainToolkit.readString(mIn);
+      String charset = RegainToolkit.readString(mIn);
+      long lastModified = mIn.readLong();
+      String contentFileName = RegainToolkit.readString(mIn);
+
+      RawDocument rawDocument = new RawDocument(url, sourceUrl, sourceLinkText,
+          new File(contentFileName), (lastModified == -1) ? null : new Date(lastModified));
+      rawDocument.setMimeType(mimeType);
+      rawDocument.setCharset(charset);
+      try {
+        prepare(className, rawDocument);
+      }
+      finally {
+        rawDocument.dispose();
+      }
+      mOut.flush();
+    }
+  }
+
+
+  /**
+   * Prepares one document and writes the result.
+   *
+   * @param className The class name of the preparator to use.
+   * @param rawDocument The document to prepare.
+   * @throws IOException If writing the result failed.
+   */
+  private void prepare(String className, RawDocument rawDocument)
+    throws IOException
+  {
+    Preparator preparator = mPreparatorMap.get(className);
+    if (preparator == null) {
+      mOut.writeByte(STATUS_ERROR);
+      RegainToolkit.writeString(mOut, "Preparator " + className
+          + " is not available in the worker process");
+      return;
+    }
+
+    String title, cleanedContent, metadata, summary, headlines;
+    PathElement[] path;
+    Map<String, String> additionalFieldMap;
+    try {
+      preparator.prepare(rawDocument);
+
+      title = preparator.getTitle();
+      cleanedContent = preparator.getCleanedContent();
+      metadata = preparator.getCleanedMetaData();
+      summary = preparator.getSummary();
+      headlines = preparator.getHeadlines();
+      path = preparator.getPath();
+      additionalFieldMap = preparator.getAdditionalFields();
+    }
+    catch (OutOfMemoryError err) {
+      // The heap may be corrupt now -> Give up this worker
+      preparator.cleanUp();
+      mOut.writeByte(STATUS_FATAL);
+      RegainToolkit.writeString(mOut, err.toString());
+      mOut.flush();
+      System.exit(1);
+      return;
+    }
+    catch (Throwable thr) {
+      preparator.cleanUp();
+      StringWriter trace = new StringWriter();
+      thr.printStackTrace(new PrintWriter(trace));
+      mOut.writeByte(STATUS_ERROR);
+      RegainToolkit.writeString(mOut, trace.toString());
+      return;
+    }
+    preparator.cleanUp();
+
+    mOut.writeByte(STATUS_OK);
+    RegainToolkit.writeString(mOut, title);
+    RegainToolkit.writeString(mOut, cleanedContent);
+    RegainToolkit.writeString(mOut, metadata);
+    RegainToolkit.writeString(mOut, summary);
+    RegainToolkit.writeString(mOut, headlines);
+
+    if (path == null) {
+      mOut.writeInt(-1);
+    } else {
+      mOut.writeInt(path.length);
+      for (int i = 0; i < path.length; i++) {
+        RegainToolkit.writeString(mOut, path[i].getUrl());
+        RegainToolkit.writeString(mOut, path[i].getTitle());
+      }
+    }
+
+    writeMap(additionalFieldMap);
+    writeMap(rawDocument.getLinks());
+  }
+
+
+  /**
+   * Writes a map of Strings.
+   *
+   * @param map The map to write. May be <code>null</code>.
+   * @throws IOException If writing failed.
+   */
+  private void writeMap(Map<String, String> map) throws IOException {
+    if (map == null) {
+      mOut.writeInt(0);
+    } else {
+      mOut.writeInt(map.size());
+      for (Map.Entry<String, String> entry : map.entrySet()) {
+        RegainToolkit.writeString(mOut, entry.getKey());
+        RegainToolkit.writeString(mOut, entry.getValue());
+      }
+    }
+  }
+
+
+  /**
+   * Closes all preparators.
+   */
+  private void close() {
+    if (mPreparatorMap == null) {
+      return;
+    }
+    for (Preparator preparator : mPreparatorMap.values()) {
+      try {
+        preparator.close();
+      }
+      catch (Throwable thr) {
+        mLog.error("Closing preparator failed: "
+            + preparator.getClass().getName(), thr);
+      }
+    }
+  }
+
+
+  /**
+   * Starts a preparator worker.
+   *
+   * @param args The command line arguments. Not used.
+   */
+  public static void main(String[] args) {
+    // Keep stdout for the answers only
+    PrintStream answerStream = System.out;
+    System.setOut(System.err);
+
+    Logger rootLogger = Logger.getRootLogger();
+    rootLogger.removeAllAppenders();
+    rootLogger.addAppender(new ConsoleAppender(new PatternLayout("%-5p %c{1}: %m%n"),
+        ConsoleAppender.SYSTEM_ERR));
+    rootLogger.setLevel(Level.INFO);
+
+    DataInputStream in = new DataInputStream(new BufferedInputStream(System.in));
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(answerStream));
+    PreparatorWorker worker = new PreparatorWorker(in, out);
+    int exitCode = 0;
+    try {
+      worker.init();
+      worker.run();
+    }
+    catch (Throwable thr) {
+      mLog.error("Preparator worker failed", thr);
+      exitCode = 1;
+    }
+    finally {
+      worker.close();
+    }
+
+    // Some preparators start threads that would keep the VM alive
+    System.exit(exitCode);
+  }
+
+}
@@ -0,0 +1,483 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.crawler.document;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import net.sf.regain.RegainException;
+import net.sf.regain.RegainToolkit;
+import net.sf.regain.crawler.config.CrawlerConfig;
+import net.sf.regain.crawler.config.PreparatorSettings;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A pool of worker processes that run the isolated preparators.
+ * <p>
+ * Every worker is a separate VM with a limited heap. If a preparator crashes
+ * the worker, runs out of memory or takes longer than the configured timeout,
+ * only the worker is lost: The document fails and the next document gets a
+ * new worker.
+ *
+ * @see PreparatorSettings#isIsolated()
+ * @see PreparatorWorker
+ * @author Til Schneider, www.murfman.de
+ */
+public class PreparatorWorkerPool {
+
+  /** The logger for this class */
+  private static Logger mLog = Logger.getLogger(PreparatorWorkerPool.class);
+
+  /**
+   * The preparator settings sent to the workers. Only the isolated preparators
+   * are enabled.
+   */
+  private PreparatorSettings[] mWorkerSettingsArr;
+
+  /** The maximum number of workers. */
+  private int mMaxWorkerCount;
+
+  /** The maximum heap size of a worker in MB. */
+  private int mMaxHeap;
+
+  /** The time in milliseconds a worker may spend on one document. */
+  private long mTimeout;
+
+  /** The workers that wait for a document. */
+  private LinkedList<Worker> mIdleWorkerList;
+
+  /** The number of running workers (idle or busy). */
+  private int mWorkerCount;
+
+  /** Specifies whether the pool was closed. */
+  private boolean mClosed;
+
+  /** The timer that kills the workers that exceed the timeout. */
+  private Timer mWatchdogTimer;
+
+
+  /**
+   * Creates a new instance of PreparatorWorkerPool and starts the first
+   * worker.
+   *
+   * @param config The crawler configuration.
+   * @throws RegainException If the first worker could not be started.
+   */
+  public PreparatorWorkerPool(CrawlerConfig config) throws RegainException {
+    PreparatorSettings[] settingsArr = config.getPreparatorSettingsList();
+    mWorkerSettingsArr = new PreparatorSettings[settingsArr.length];
+    for (int i = 0; i < settingsArr.length; i++) {
+      PreparatorSettings settings = settingsArr[i];
+      mWorkerSettingsArr[i] = new PreparatorSettings(
+          settings.isEnabled() && settings.isIsolated(), settings.getPriority(),
+          settings.getPreparatorClassName(), settings.getUrlRegex(),
+          settings.getPreparatorConfig(), settings.isIsolated());
+    }
+
+    mMaxWorkerCount = config.getPreparatorWorkerCount();
+    if (mMaxWorkerCount == 0) {
+      mMaxWorkerCount = config.getCrawlerThreadCount();
+    }
+    mMaxHeap = config.getPreparatorWorkerMaxHeap();
+    mTimeout = config.getPreparatorWorkerTimeout() * 1000L;
+
+    mIdleWorkerList = new LinkedList<Worker>();
+    mWatchdogTimer = new Timer("PreparatorWorkerWatchdog", true);
+
+    // Start the first worker now, so a broken setup is detected immediately
+    mWorkerCount = 1;
+    Worker worker;
+    try {
+      worker = startWorker();
+    }
+    catch (RegainException exc) {
+      mWatchdogTimer.cancel();
+      throw exc;
+    }
+    mIdleWorkerList.add(worker);
+
+    mLog.info("Using up to " + mMaxWorkerCount + " preparator worker processes");
+  }
+
+
+  /**
+   * Prepares a document in a worker process.
+   *
+   * @param preparatorClassName The class name of the preparator to use.
+   * @param rawDocument The document to prepare. The links found by the
+   *        preparator are added to it.
+   * @param target The preparator that gets the results.
+   * @throws RegainException If preparing failed.
+   */
+  public void prepare(String preparatorClassName, RawDocument rawDocument,
+    AbstractPreparator target)
+    throws RegainException
+  {
+    // Get the content file before a worker is taken
+    File contentFile = rawDocument.getContentAsFile();
+
+    Worker worker = acquireWorker();
+    boolean workerIsOk = false;
+    TimerTask watchdog = worker.createWatchdog();
+    mWatchdogTimer.schedule(watchdog, mTimeout);
+    try {
+      DataOutputStream out = worker.mOut;
+      RegainToolkit.writeString(out, preparatorClassName);
+      RegainToolkit.writeString(out, rawDocument.getUrl());
+      RegainToolkit.writeString(out, rawDocument.getSourceUrl());
+      RegainToolkit.writeString(out, rawDocument.getSourceLinkText());
+      RegainToolkit.writeString(out, rawDocument.getMimeType());
+      RegainToolkit.writeString(out, rawDocument.getCharset());
+      Date lastModified = rawDocument.getLastModified();
+      out.writeLong((lastModified == null) ? -1 : lastModified.getTime());
+      RegainToolkit.writeString(out, contentFile.getAbsolutePath());
+      out.flush();
+
+      DataInputStream in = worker.mIn;
+      byte status = in.readByte();
+      if (status == PreparatorWorker.STATUS_OK) {
+        readResult(in, rawDocument, target);
+        workerIsOk = true;
+      } else if (status == PreparatorWorker.STATUS_ERROR) {
+        String error = RegainToolkit.readString(in);
+        workerIsOk = true;
+        if (mLog.isDebugEnabled()) {
+          mLog.debug("Preparing " + rawDocument.getUrl() + " in worker failed: " + error);
+        }
+        int lineEnd = error.indexOf('\n');
+        throw new RegainException("Preparing in worker process failed: "
+            + ((lineEnd == -1) ? error : error.substring(0, lineEnd).trim()));
+      } else {
+        String error = RegainToolkit.readString(in);
+        throw new RegainException("Preparator worker process died: " + error);
+      }
+    }
+    catch (IOException exc) {
+      if (worker.mKilled) {
+        throw new RegainException("Preparator worker process was killed because "
+            + "it took longer than " + (mTimeout / 1000) + " seconds", exc);
+      } else {
+        throw new RegainException("Communication with preparator worker process failed", exc);
+      }
+    }
+    finally {
+      watchdog.cancel();
+      releaseWorker(worker, workerIsOk && ! worker.mKilled);
+    }
+  }
+
+
+  /**
+   * Reads the result of a successfully prepared document.
+   *
+   * @param in The input to read from.
+   * @param rawDocument The prepared document.
+   * @param target The preparator that gets the results.
+   * @throws IOException If reading failed.
+   */
+  private void readResult(DataInputStream in, RawDocument rawDocument,
+    AbstractPreparator target)
+    throws IOException
+  {
+    target.setTitle(RegainToolkit.readString(in));
+    target.setCleanedContent(RegainToolkit.readString(in));
+    target.setCleanedMetaData(RegainToolkit.readString(in));
+    target.setSummary(RegainToolkit.readString(in));
+    target.setHeadlines(RegainToolkit.readString(in));
+
+    int pathLength = in.readInt();
+    if (pathLength != -1) {
+      PathElement[] path = new PathElement[pathLength];
+      for (int i = 0; i < pathLength; i++) {
+        String url = RegainToolkit.readString(in);
+        String title = RegainToolkit.readString(in);
+        path[i] = new PathElement(url, title);
+      }
+      target.setPath(path);
+    }
+
+    int fieldCount = in.readInt();
+    for (int i = 0; i < fieldCount; i++) {
+      String name = RegainToolkit.readString(in);
+      String value = RegainToolkit.readString(in);
+      target.addAdditionalField(name, value);
+    }
+
+    int linkCount = in.readInt();
+    for (int i = 0; i < linkCount; i++) {
+      String url = RegainToolkit.readString(in);
+      String linkText = RegainToolkit.readString(in);
+      rawDocument.addLink(url, linkText);
+    }
+  }
+
+
+  /**
+   * Takes an idle worker. Starts a new worker if there is none and the
+   * maximum number of workers is not reached yet. Otherwise waits until a
+   * worker becomes idle.
+   *
+   * @return The worker.
+   * @throws RegainException If the pool was closed or the worker could not be
+   *         started.
+   */
+  private Worker acquireWorker() throws RegainException {
+    synchronized (mIdleWorkerList) {
+      while (true) {
+        if (mClosed) {
+          throw new RegainException("The preparator worker pool is closed");
+        }
+        if (! mIdleWorkerList.isEmpty()) {
+          return mIdleWorkerList.removeFirst();
+        }
+        if (mWorkerCount < mMaxWorkerCount) {
+          mWorkerCount++;
+          break;
+        }
+        try {
+          mIdleWorkerList.wait();
+        }
+        catch (InterruptedException exc) {
+          throw new RegainException("Waiting for a preparator worker was interrupted", exc);
+        }
+      }
+    }
+
+    // Start a new worker outside the lock, this takes a while
+    try {
+      return startWorker();
+    }
+    catch (RegainException exc) {
+      synchronized (mIdleWorkerList) {
+        mWorkerCount--;
+        mIdleWorkerList.notifyAll();
+      }
+      throw exc;
+    }
+  }
+
+
+  /**
+   * Gives a worker back to the pool.
+   *
+   * @param worker The worker.
+   * @param reusable Whether the worker may process more documents. If
+   *        <code>false</code> the worker is killed.
+   */
+  private void releaseWorker(Worker worker, boolean reusable) {
+    boolean stopWorker = ! reusable;
+    synchronized (mIdleWorkerList) {
+      if (reusable && ! mClosed) {
+        mIdleWorkerList.addLast(worker);
+      } else {
+        stopWorker = true;
+        mWorkerCount--;
+      }
+      mIdleWorkerList.notifyAll();
+    }
+
+    if (stopWorker) {
+      worker.stop(! reusable);
+    }
+  }
+
+
+  /**
+   * Starts a new worker process and sends it the preparator settings.
+   *
+   * @return The worker.
+   * @throws RegainException If the worker could not be started.
+   */
+  private Worker startWorker() throws RegainException {
+    List<String> command = new ArrayList<String>();
+    File javaBinDir = new File(System.getProperty("java.home"), "bin");
+    command.add(new File(javaBinDir, "java").getAbsolutePath());
+    command.add("-Xmx" + mMaxHeap + "m");
+    command.add("-cp");
+    command.add(System.getProperty("java.class.path"));
+    command.add(PreparatorWorker.class.getName());
+
+    Process process;
+    try {
+      process = new ProcessBuilder(command).start();
+    }
+    catch (IOException exc) {
+      throw new RegainException("Starting preparator worker process failed: "
+          + command, exc);
+    }
+
+    Worker worker = new Worker(process);
+    try {
+      worker.mOut.writeInt(mWorkerSettingsArr.length);
+      for (int i = 0; i < mWorkerSettingsArr.length; i++) {
+        mWorkerSettingsArr[i].writeTo(worker.mOut);
+      }
+      worker.mOut.flush();
+
+      if (worker.mIn.readByte() != PreparatorWorker.STATUS_OK) {
+        String error = RegainToolkit.readString(worker.mIn);
+        worker.stop(true);
+        throw new RegainException("Preparator worker process could not create "
+            + "the preparators: " + error);
+      }
+    }
+    catch (IOException exc) {
+      worker.stop(true);
+      throw new RegainException("Initializing preparator worker process failed", exc);
+    }
+
+    mLog.debug("Started preparator worker process");
+    return worker;
+  }
+
+
+  /**
+   * Stops all workers. Busy workers are stopped when they have finished their
+   * document.
+   */
+  public void close() {
+    List<Worker> idleWorkerList;
+    synchronized (mIdleWorkerList) {
+      if (mClosed) {
+        return;
+      }
+      mClosed = true;
+      idleWorkerList = new ArrayList<Worker>(mIdleWorkerList);
+      mWorkerCount -= mIdleWorkerList.size();
+      mIdleWorkerList.clear();
+      mIdleWorkerList.notifyAll();
+    }
+
+    for (Worker worker : idleWorkerList) {
+      worker.stop(false);
+    }
+    mWatchdogTimer.cancel();
+  }
+
+
+  /**
+   * A worker process.
+   */
+  private static class Worker {
+
+    /** The worker process. */
+    private Process mProcess;
+
+    /** The output where the requests are written to. */
+    private DataOutputStream mOut;
+
+    /** The input where the answers are read from. */
+    private DataInputStream mIn;
+
+    /** Specifies whether the worker was killed by the watchdog. */
+    private volatile boolean mKilled;
+
+
+    /**
+     * Creates a new instance of Worker and starts the thread that logs the
+     * output of the worker.
+     *
+     * @param process The worker process.
+     */
+    public Worker(Process process) {
+      mProcess = process;
+      mOut = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+      mIn = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+
+      Thread logThread = new Thread("PreparatorWorkerLog") {
+        @Override
+        public void run() {
+          logWorkerOutput();
+        }
+      };
+      logThread.setDaemon(true);
+      logThread.start();
+    }
+
+
+    /**
+     * Writes the stderr output of the worker to the log until the worker
+     * exits.
+     */
+    private void logWorkerOutput() {
+      BufferedReader reader = new BufferedReader(
+          new InputStreamReader(mProcess.getErrorStream()));
+      try {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          mLog.info("Preparator worker: " + line);
+        }
+      }
+      catch (IOException exc) {
+        // The worker is gone
+      }
+      finally {
+        try { reader.close(); } catch (IOException exc) {}
+      }
+    }
+
+
+    /**
+     * Creates a task that kills this worker.
+     *
+     * @return The task.
+     */
+    public TimerTask createWatchdog() {
+      return new TimerTask() {
+        @Override
+        public void run() {
+          mLog.warn("Killing preparator worker process because of timeout");
+          mKilled = true;
+          mProcess.destroy();
+        }
+      };
+    }
+
+
+    /**
+     * Stops the worker.
+     *
+     * @param kill Whether to kill the worker. If <code>false</code> the worker
+     *        closes its preparators and exits.
+     */
+    public void stop(boolean kill) {
+      try { mOut.close(); } catch (IOException exc) {}
+      if (kill) {
+        mProcess.destroy();
+      }
+    }
+
+  }
+
+}
@@ -30,8 +30,12 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.FileOutputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.util.Date;
 import java.util.zip.CRC32;
 
@@ -48,6 +52,7 @@ import net.sf.regain.ImapToolkit;
 import net.sf.regain.RegainException;
 import net.sf.regain.RegainToolkit;
 import net.sf.regain.crawler.CrawlerToolkit;
+import net.sf.regain.crawler.HttpContent;
 import net.sf.regain.crawler.Profiler;
 import net.sf.regain.crawler.RedirectException;
 
@@ -76,14 +81,17 @@ public class RawDocument {
   private static final Profiler FILE_LOADING_PROFILER
     = new Profiler("Documents loaded from the file system", "docs");
 
-  /** The pattern which matches for imap-urls (folder, message and attachment) */
-  //Pattern imapPattern = Pattern.compile(".*(message_([0-9]+))(_attachment_([0-9]+))$");
-
   /**
-   * Der Timeout für HTTP-Downloads. Dieser Wert bestimmt die maximale Zeit
-   * in Sekunden, die ein HTTP-Download insgesamt dauern darf.
+   * The maximum size of a HTTP document that is held in memory. Larger
+   * documents are written to a temporary file while they are loaded.
    */
-  private static int mHttpTimeoutSecs = 180;
+  private static final int MAX_MEMORY_CONTENT_SIZE = 4 * 1024 * 1024;
+
+  /** The number of bytes that are read to find out the charset. */
+  private static final int CHARSET_SNIFF_LENGTH = 1024;
+
+  /** The pattern which matches for imap-urls (folder, message and attachment) */
+  //Pattern imapPattern = Pattern.compile(".*(message_([0-9]+))(_attachment_([0-9]+))$");
 
   /** Die URL des Dokuments. */
   private String mUrl;
@@ -111,6 +119,19 @@ public class RawDocument {
    */
   private String mContentAsString;
 
+  /**
+   * The charset of the Content-Type header of a HTTP document. Is
+   * <code>null</code> if the document wasn't loaded by HTTP or if the server
+   * sent no (supported) charset.
+   */
+  private String mHttpCharset;
+
+  /**
+   * The charset of the document. Is <code>null</code> until it was requested
+   * for the first time.
+   */
+  private String mCharset;
+
   /**
    * Die Datei, in der sich der Inhalt des Dokuments befindet.
    * Ist <CODE>null</CODE>, wenn das Dokument über HTTP bezogen wird und noch
@@ -173,21 +194,37 @@ public class RawDocument {
       mContent = null;
       mContentAsFile = null;
     } else {
-      mContent = loadContent(url);
-      mContentAsFile = null;
+      HttpContent content = loadContent(url);
+      mContent = content.getContent();
+      mContentAsFile = content.getFile();
+      mContentAsFileIsTemporary = (mContentAsFile != null);
+      mHttpCharset = content.getCharset();
     }
   }
 
   /**
-   * Setzt den Timeout für HTTP-Downloads.
+   * Creates a RawDocument whose content is in a file.
    * <p>
-   * Dieser Wert bestimmt die maximale Zeit, die ein HTTP-Download insgesamt
-   * dauern darf.
+   * Used by the preparator worker processes: The crawler passes the file that
+   * holds the already loaded content, so the document isn't loaded twice.
    *
-   * @param httpTimeoutSecs Der neue Timeout.
+   * @param url The URL of the document.
+   * @param sourceUrl The URL of the document where the URL of this document
+   *        was found.
+   * @param sourceLinkText The text of the link where the URL was found. May
+   *        be <code>null</code>.
+   * @param contentFile The file that contains the content of the document.
+   * @param lastModified The last modified date. May be <code>null</code>.
    */
-  public static void setHttpTimeoutSecs(int httpTimeoutSecs) {
-    mHttpTimeoutSecs = httpTimeoutSecs;
+  public RawDocument(String url, String sourceUrl, String sourceLinkText,
+    File contentFile, Date lastModified)
+  {
+    this.mLinks = new HashMap<String,String>();
+    this.mUrl = url;
+    this.mSourceUrl = sourceUrl;
+    this.mSourceLinkText = sourceLinkText;
+    this.mContentAsFile = contentFile;
+    this.mLastModifiedDate = lastModified;
   }
 
   /**
@@ -315,47 +352,25 @@ public class RawDocument {
    * Load content from URL for http/https documents.
    *
    * @param url The URL.
-   * @return content of document.
+   * @return content of document. Large documents are in a temporary file.
    * @throws RegainException if loading was erroneous
    */
-  private byte[] loadContent(String url) throws RegainException {
+  private HttpContent loadContent(String url) throws RegainException {
     HTTP_LOADING_PROFILER.startMeasuring();
-    HttpDownloadThread loaderThread = new HttpDownloadThread(
-      CrawlerToolkit.replaceAuthenticationValuesInURL(url, mAccountPasswordEntry),
-      Thread.currentThread());
-    loaderThread.start();
-
-    // Warten bis entweder der Timeout abläuft, oder bis dieser Thread vom
-    // HttpContentLoaderThread unterbrochen wird.
     try {
-      Thread.sleep(mHttpTimeoutSecs * 1000);
-    } catch (InterruptedException exc) {
-    }
-
-    // Prüfen, ob wir mittlerweile den Inhalt haben
-    byte[] content = loaderThread.getContent();
-    if (content != null) {
-      HTTP_LOADING_PROFILER.stopMeasuring(content.length);
+      HttpContent content = CrawlerToolkit.loadHttpContent(
+        CrawlerToolkit.replaceAuthenticationValuesInURL(url, mAccountPasswordEntry),
+        MAX_MEMORY_CONTENT_SIZE, getFileExtension());
+      HTTP_LOADING_PROFILER.stopMeasuring(content.getLength());
       return content;
-    } else {
-      // Wir haben keinen Inhalt
+    }
+    catch (RedirectException exc) {
       HTTP_LOADING_PROFILER.abortMeasuring();
-
-      // Check whether download failed
-      if (loaderThread.getError() != null) {
-        if (loaderThread.getError() instanceof RedirectException) {
-          throw (RedirectException) loaderThread.getError();
-        } else {
-          throw new RegainException("Loading Document by HTTP failed: " + url,
-                                    loaderThread.getError());
-        }
-      }
-
-      // Wir haben weder einen Inhalt noch einen Fehler
-      // -> Der Download läuft noch
-      // -> Da jedoch mittlerweile der Timeout abgelaufen ist -> Exception werfen
-      throw new RegainException("Loading Document by HTTP timed out after " +
-          mHttpTimeoutSecs + " seconds: " + url);
+      throw exc;
+    }
+    catch (RegainException exc) {
+      HTTP_LOADING_PROFILER.abortMeasuring();
+      throw new RegainException("Loading Document by HTTP failed: " + url, exc);
     }
   }
 
@@ -453,7 +468,7 @@ public class RawDocument {
       FILE_LOADING_PROFILER.startMeasuring();
       try {
         byte[] content = new byte[0];
-        if( mUrl.startsWith("file://")) {
+        if( mContentAsFile != null) {
           content = CrawlerToolkit.loadFile(mContentAsFile);
         } else if( mUrl.startsWith("smb://")) {
           content =  loadSmbFile(mUrl);
@@ -487,13 +502,94 @@ public class RawDocument {
    */
   public String getContentAsString() throws RegainException {
     if (mContentAsString == null) {
-      mContentAsString = new String(getContent());
+      byte[] content = getContent();
+      if (mCharset == null) {
+        mCharset = detectCharset(content);
+      }
+      mContentAsString = CharsetSniffer.decodeAs(content, mCharset);
     }
 
     return mContentAsString;
   }
 
 
+  /**
+   * Gets the charset of the document.
+   * <p>
+   * The charset is taken from the byte order mark, the Content-Type header of
+   * a HTTP document or the charset declaration in the document (like a meta
+   * tag in HTML or the encoding of a XML declaration). If none of them is
+   * found, the system's default charset is used.
+   *
+   * @return The charset of the document.
+   * @throws RegainException If the document could not be read.
+   */
+  public String getCharset() throws RegainException {
+    if (mCharset == null) {
+      if (mContent != null) {
+        mCharset = detectCharset(mContent);
+      } else {
+        // Only read the start of the document
+        InputStream stream = null;
+        try {
+          stream = getContentAsStream();
+          byte[] buffer = new byte[CHARSET_SNIFF_LENGTH];
+          int length = 0;
+          int read;
+          while (length < buffer.length
+            && (read = stream.read(buffer, length, buffer.length - length)) != -1)
+          {
+            length += read;
+          }
+          byte[] head = new byte[length];
+          System.arraycopy(buffer, 0, head, 0, length);
+          mCharset = detectCharset(head);
+        }
+        catch (IOException exc) {
+          throw new RegainException("Reading the start of " + mUrl + " failed", exc);
+        }
+        finally {
+          if (stream != null) {
+            try { stream.close(); } catch (IOException exc) {}
+          }
+        }
+      }
+    }
+
+    return mCharset;
+  }
+
+
+  /**
+   * Sets the charset of the document. Used if the charset is already known
+   * (e.g. in a preparator worker process).
+   *
+   * @param charset The charset. If <code>null</code>, the charset is detected
+   *        when it is needed.
+   */
+  public void setCharset(String charset) {
+    mCharset = charset;
+  }
+
+
+  /**
+   * Finds out the charset of the document.
+   *
+   * @param content The content of the document or at least its start.
+   * @return The charset.
+   */
+  private String detectCharset(byte[] content) {
+    String bomCharset = CharsetSniffer.getBomCharset(content);
+    if (bomCharset != null) {
+      return bomCharset;
+    } else if (mHttpCharset != null) {
+      return mHttpCharset;
+    } else {
+      return CharsetSniffer.sniffCharset(content, null);
+    }
+  }
+
+
   /**
    * Gets the content of the document as stream. The stream must be closed by
    * the caller.
@@ -508,7 +604,7 @@ public class RawDocument {
       return new ByteArrayInputStream(mContent);
     } else {
       // This document must be a file
-      if(mUrl.startsWith("file://")){
+      if(mContentAsFile != null){
         try {
           return new FileInputStream(mContentAsFile);
 
@@ -527,9 +623,34 @@ public class RawDocument {
               mContentAsFile, thr);
         }
       } else {
-        throw new RegainException("Creating stream for unknown file protocoll failed.");
+        // The content of IMAP messages is loaded on demand
+        return new ByteArrayInputStream(getContent());
+      }
+    }
+  }
 
+
+  /**
+   * Gets the content of the document as channel. The channel must be closed
+   * by the caller.
+   * <p>
+   * The content of files is read directly from the file (as
+   * {@link FileChannel}), so it is not copied into memory.
+   *
+   * @return The content of the document as channel.
+   * @throws RegainException If creating the channel failed.
+   */
+  public ReadableByteChannel getContentAsChannel() throws RegainException {
+    if ((mContent == null) && (mContentAsFile != null)) {
+      try {
+        return new FileInputStream(mContentAsFile).getChannel();
+      }
+      catch (IOException exc) {
+        throw new RegainException("Creating channel for file failed: " +
+            mContentAsFile, exc);
       }
+    } else {
+      return Channels.newChannel(getContentAsStream());
     }
   }
 
@@ -542,7 +663,12 @@ public class RawDocument {
    */
   public void writeToFile(File file) throws RegainException {
     try {
-      RegainToolkit.writeToFile(getContent(), file);
+      if ((mContent == null) && (mContentAsFile != null)) {
+        // Copy the file without loading it into memory
+        copyFile(mContentAsFile, file);
+      } else {
+        RegainToolkit.writeToFile(getContent(), file);
+      }
 
       if (mContentAsFile == null) {
         // Falls das Dokument in Dateiform benötigt wird, dann diese Datei
@@ -557,6 +683,39 @@ public class RawDocument {
   }
 
 
+  /**
+   * Copies a file using a channel transfer.
+   *
+   * @param source The file to copy.
+   * @param target The file to write to.
+   * @throws RegainException If copying the file failed.
+   */
+  private static void copyFile(File source, File target) throws RegainException {
+    FileChannel in = null;
+    FileChannel out = null;
+    try {
+      in = new FileInputStream(source).getChannel();
+      out = new FileOutputStream(target).getChannel();
+      long size = in.size();
+      long pos = 0;
+      while (pos < size) {
+        pos += in.transferTo(pos, size - pos, out);
+      }
+    }
+    catch (IOException exc) {
+      throw new RegainException("Copying " + source + " to " + target + " failed", exc);
+    }
+    finally {
+      if (in != null) {
+        try { in.close(); } catch (IOException exc) {}
+      }
+      if (out != null) {
+        try { out.close(); } catch (IOException exc) {}
+      }
+    }
+  }
+
+
   /**
    * Gibt den Datei des Dokuments zurück. Falls das Dokument nicht als Datei
    * existiert, wird eine tempor�re Datei erzeugt.
@@ -589,35 +748,7 @@ public class RawDocument {
       // -> Inhalt in eine Datei schreiben
 
       // Determine the file extension
-      String extension = "";
-      URL url;
-      String path;
-      if( mUrl.toLowerCase().startsWith("http") /* || mUrl.toLowerCase().startsWith("https") */) {
-        try {
-          url = new URL(mUrl);
-          path = url.getPath();
-          // Handles urls like http://www.example.com/ an http://www.example.com/blog/
-          if( (path.length()==0
-                  && (url.getProtocol().equalsIgnoreCase("http") || url.getProtocol().equalsIgnoreCase("https") ))
-                  || path.endsWith("/")) {
-            path = "index.html";
-          }
-        } catch (MalformedURLException ex) {
-           mLog.debug("Couldn't create URL", ex);
-           path = mUrl;
-        }
-
-        int lastDot = path.lastIndexOf('.');
-        if (lastDot == -1 || path.length()-lastDot>=6 ) {
-          extension = "";
-        } else {
-          extension = path.substring(lastDot);
-        }
-      } else if( mUrl.toLowerCase().startsWith("imap") /* || mUrl.toLowerCase().startsWith("imaps") */ ) {
-        // @todo: consider extensions for attachments too
-        extension = ".mht";
-
-      }
+      String extension = getFileExtension();
 
       // Get an unused file
       File tmpFile;
@@ -639,6 +770,48 @@ public class RawDocument {
   }
 
 
+  /**
+   * Gets the file extension of this document as it is used for a temporary
+   * file holding the content. HTTP URLs without a file name get
+   * <code>.html</code>, IMAP messages get <code>.mht</code>.
+   *
+   * @return The extension (like <code>.pdf</code>) or an empty String.
+   */
+  public String getFileExtension() {
+    String extension = "";
+    URL url;
+    String path;
+    if( mUrl.toLowerCase().startsWith("http") /* || mUrl.toLowerCase().startsWith("https") */) {
+      try {
+        url = new URL(mUrl);
+        path = url.getPath();
+        // Handles urls like http://www.example.com/ an http://www.example.com/blog/
+        if( (path.length()==0
+                && (url.getProtocol().equalsIgnoreCase("http") || url.getProtocol().equalsIgnoreCase("https") ))
+                || path.endsWith("/")) {
+          path = "index.html";
+        }
+      } catch (MalformedURLException ex) {
+         mLog.debug("Couldn't create URL", ex);
+         path = mUrl;
+      }
+
+      int lastDot = path.lastIndexOf('.');
+      if (lastDot == -1 || path.length()-lastDot>=6 ) {
+        extension = "";
+      } else {
+        extension = path.substring(lastDot);
+      }
+    } else if( mUrl.toLowerCase().startsWith("imap") /* || mUrl.toLowerCase().startsWith("imaps") */ ) {
+      // @todo: consider extensions for attachments too
+      extension = ".mht";
+
+    }
+
+    return extension;
+  }
+
+
   /**
    * Gibt alle genutzten System-Ressourcen, wie temporäre Dateien, wieder frei.
    * <p>
@@ -124,7 +124,7 @@ public interface CrawlerPlugin extends Pluggable {
 		/**
 		 * Called when a document is deleted from the index.
 		 * Note that when being replaced by another document ("update index"),
-		 * the old document is added to index first, deleting is part of the cleaning-up-at-the-end-Phase.
+		 * this is called with the old document right before the new one is added.
 		 *
 		 * @param doc			  Document to read
 		 * @param index			Luce Index Reader
@@ -108,6 +108,18 @@ public class ExternalPreparator extends AbstractPreparator {
   }
 
 
+  @Override
+  public String getPreparationVariant(RawDocument rawDocument) {
+    // The command is chosen by the URL
+    for (int i = 0; i < mUrlRegexArr.length; i++) {
+      if (mUrlRegexArr[i].match(rawDocument.getUrl())) {
+        return Integer.toString(i);
+      }
+    }
+    return null;
+  }
+
+
   // overridden super().super().prepare
   // @Override
   public void prepare(RawDocument rawDocument) throws RegainException {
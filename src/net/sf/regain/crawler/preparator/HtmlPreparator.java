@@ -21,7 +21,6 @@
 package net.sf.regain.crawler.preparator;
 
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import net.sf.regain.RegainException;
@@ -32,22 +31,16 @@ import net.sf.regain.crawler.document.PathElement;
 import net.sf.regain.crawler.document.RawDocument;
 import net.sf.regain.crawler.preparator.html.HtmlContentExtractor;
 import net.sf.regain.crawler.preparator.html.HtmlPathExtractor;
-import net.sf.regain.crawler.preparator.html.LinkVisitor;
+import net.sf.regain.crawler.preparator.html.HtmlScanner;
 import org.apache.log4j.Logger;
-import org.apache.regexp.RE;
-import org.apache.regexp.RESyntaxException;
-import org.htmlparser.Parser;
-import org.htmlparser.Tag;
-import org.htmlparser.beans.StringBean;
-import org.htmlparser.lexer.Lexer;
 import org.htmlparser.lexer.Page;
-import org.htmlparser.tags.BaseHrefTag;
-import org.htmlparser.tags.FrameTag;
-import org.htmlparser.tags.LinkTag;
-import org.htmlparser.util.ParserException;
 
 /**
  * Prepares a HTML-document for indexing. <p> The document will be parsed and a title will be extracted.
+ * <p>
+ * The document is decoded once (using the charset it declares) and read in
+ * one pass by a {@link HtmlScanner}, which finds the text, the title, the
+ * headlines and the links at the same time.
  *
  * @author Til Schneider, www.murfman.de
  */
@@ -152,6 +145,39 @@ public class HtmlPreparator extends AbstractPreparator {
     }
   }
 
+  @Override
+  public String getPreparationVariant(RawDocument rawDocument) {
+    // The content and the path extractor are chosen by the URL
+    int pathExtractorIndex = -1;
+    if (mPathExtractorList != null) {
+      for (int i = 0; i < mPathExtractorList.size(); i++) {
+        if (mPathExtractorList.get(i).accepts(rawDocument)) {
+          pathExtractorIndex = i;
+        }
+      }
+    }
+    return findContentExtractor(rawDocument) + "," + pathExtractorIndex;
+  }
+
+  /**
+   * Finds the content extractor that is responsible for a document. If
+   * several extractors accept the document, the last one is taken.
+   *
+   * @param rawDocument The document.
+   * @return The index of the extractor or -1 if there is none.
+   */
+  private int findContentExtractor(RawDocument rawDocument) {
+    int index = -1;
+    if (mContentExtractorList != null) {
+      for (int i = 0; i < mContentExtractorList.size(); i++) {
+        if (mContentExtractorList.get(i).accepts(rawDocument)) {
+          index = i;
+        }
+      }
+    }
+    return index;
+  }
+
   /**
    * Prepares a document for indexing.
    *
@@ -161,127 +187,87 @@ public class HtmlPreparator extends AbstractPreparator {
    */
   @Override
   public void prepare(RawDocument rawDocument) throws RegainException {
-    // Get the title
-    String title = extractHtmlTitle(rawDocument.getContentAsString());
-    setTitle(title);
+    String content = rawDocument.getContentAsString();
 
     // Find the content extractor that is responsible for this document
     HtmlContentExtractor contentExtractor = null;
-    if (mContentExtractorList != null) {
-      for (HtmlContentExtractor iContextExtractor : mContentExtractorList) {
-        if (iContextExtractor.accepts(rawDocument)) {
-          contentExtractor = iContextExtractor;
-        }
-      }
+    int contentExtractorIndex = findContentExtractor(rawDocument);
+    if (contentExtractorIndex != -1) {
+      contentExtractor = mContentExtractorList.get(contentExtractorIndex);
     }
 
-    // Cut the content and extract the headlines
-    String cuttedContent;
-    String headlines;
-    boolean isContentCutted = false;
+    // Find the content to index
+    int[] contentRange;
     if (contentExtractor == null) {
       // There is no HtmlContentExtractor responsible for this document
       if (mLog.isDebugEnabled()) {
         mLog.debug("No HTML content extractor is responsible for " + rawDocument.getUrl());
       }
 
-      cuttedContent = rawDocument.getContentAsString();
-      headlines = null;
+      contentRange = new int[] { 0, content.length() };
     } else {
-      cuttedContent = contentExtractor.extractContent(rawDocument);
-      headlines = contentExtractor.extractHeadlines(cuttedContent);
-      if (!cuttedContent.equals(rawDocument.getContentAsString())) {
-        isContentCutted = true;
-      }
+      contentRange = contentExtractor.findContentRange(content, rawDocument.getUrl());
     }
 
-    // Using HTMLParser to extract the content
-    String cleanedContent = null;
-    Page htmlPage = new Page(cuttedContent, "UTF-8");
-    Parser parser = new Parser(new Lexer(htmlPage));
-    StringBean stringBean = new StringBean();
-
-    // replace multiple whitespace with one whitespace
-    stringBean.setCollapse(true);
-    // Do not extract URLs
-    stringBean.setLinks(false);
-    // replace &nbsp; with whitespace
-    stringBean.setReplaceNonBreakingSpaces(true);
+    // Read the document in one pass: The text is taken from the content range,
+    // the title and the links from the whole document
+    HtmlScanner scanner = new HtmlScanner(content, contentRange[0], contentRange[1]);
+    scanner.scan();
 
-    try {
-      // Parse the content
-      parser.visitAllNodesWith(stringBean);
-      cleanedContent = stringBean.getStrings();
+    setTitle(scanner.getTitle());
+    setCleanedContent(scanner.getText());
 
-    } catch (ParserException ex) {
-      throw new RegainException("Error while parsing content: ", ex);
+    // Set the headlines
+    String headlines;
+    if (contentExtractor != null) {
+      headlines = contentExtractor.extractHeadlines(
+          content.substring(contentRange[0], contentRange[1]));
+      if (headlines != null) {
+        // Replace HTML Entities
+        headlines = CrawlerToolkit.replaceHtmlEntities(headlines);
+      }
+    } else {
+      headlines = scanner.getHeadlines();
+    }
+    if (headlines != null) {
+      setHeadlines(headlines);
     }
 
-    // The result of parsing the html-content
-    setCleanedContent(cleanedContent);
-
-    // Extract links
-    LinkVisitor linkVisitor = new LinkVisitor();
-    if (isContentCutted) {
-      // This means a new parser run which is expensive but neccessary
-      htmlPage = new Page(rawDocument.getContentAsString(), "UTF-8");
-      parser = new Parser(new Lexer(htmlPage));
+    // Add the links
+    Page htmlPage = new Page();
+    if (scanner.getBaseHref() != null) {
+      htmlPage.setBaseUrl(scanner.getBaseHref());
     } else {
-      parser.reset();
+      htmlPage.setBaseUrl(rawDocument.getUrl());
     }
-
-    try {
-      // Parse the content
-      parser.visitAllNodesWith(linkVisitor);
-      ArrayList<Tag> links = linkVisitor.getLinks();
-      ArrayList<Tag> frames = linkVisitor.getFrames();
-      if (linkVisitor.getBaseTag() != null) {
-        htmlPage.setBaseUrl(((BaseHrefTag) linkVisitor.getBaseTag()).getBaseUrl());
-      } else {
-        htmlPage.setBaseUrl(rawDocument.getUrl());
-      }
+    if (mLog.isDebugEnabled()) {
       mLog.debug("Set base URL to: " + htmlPage.getBaseUrl());
+    }
 
-      // Iterate over all links found
-      Iterator<Tag> linksIter = links.iterator();
-      while (linksIter.hasNext()) {
-        LinkTag currTag = ((LinkTag) linksIter.next());
-        String link = CrawlerToolkit.removeAnchor(currTag.extractLink());
-
-        // find urls which do not end with an '/' but are a directory
-        link = CrawlerToolkit.completeDirectory(link);
+    List<String> linkUrlList = scanner.getLinkUrlList();
+    List<String> linkTextList = scanner.getLinkTextList();
+    for (int i = 0; i < linkUrlList.size(); i++) {
+      String link = htmlPage.getAbsoluteURL(linkUrlList.get(i));
 
-        //link = CrawlerToolkit.toAbsoluteUrl(link, rawDocument.getUrl());
-        String linkText = (currTag.getLinkText() == null) ? "" : currTag.getLinkText();
-
-        // store all http(s)-links the link
-        if (currTag.isHTTPLikeLink()) {
-          rawDocument.addLink(link, linkText);
-        }
-      }
-
-      // Iterate over all frames found
-      Iterator<Tag> framesIter = frames.iterator();
-      while (framesIter.hasNext()) {
-        FrameTag currTag = ((FrameTag) framesIter.next());
-        String link = CrawlerToolkit.removeAnchor(currTag.getFrameLocation());
+      // store all http(s)-like links
+      if (isHttpLikeLink(link)) {
+        link = CrawlerToolkit.removeAnchor(link);
 
         // find urls which do not end with an '/' but are a directory
         link = CrawlerToolkit.completeDirectory(link);
 
-        rawDocument.addLink(link, "frame");
+        rawDocument.addLink(link, linkTextList.get(i));
       }
-
-    } catch (ParserException ex) {
-      throw new RegainException("Error while extracting links: ", ex);
     }
 
-    if (headlines != null) {
-      // Replace HTML Entities
-      headlines = CrawlerToolkit.replaceHtmlEntities(headlines);
+    // Add the frames
+    for (String frameUrl : scanner.getFrameUrlList()) {
+      String link = CrawlerToolkit.removeAnchor(htmlPage.getAbsoluteURL(frameUrl));
 
-      // Set the headlines
-      setHeadlines(headlines);
+      // find urls which do not end with an '/' but are a directory
+      link = CrawlerToolkit.completeDirectory(link);
+
+      rawDocument.addLink(link, "frame");
     }
 
     // Find the path extractor that is responsible for this document
@@ -302,63 +288,16 @@ public class HtmlPreparator extends AbstractPreparator {
   }
 
   /**
-   * Extrahiert den Titel aus einem HTML-Dokument.
-   *
-   * @param content Der Inhalt (die HTML-Rohdaten) des Dokuments, dessen Titel ermittelt werden soll.
-   *
-   * @return Den Titel des HTML-Dokuments.
-   */
-  private String extractHtmlTitle(String content) {
-    final String TITLE_START_TAG = "<title>";
-
-    // NOTE: We don't use a regex here, beause it's far too slow and it doesn't
-    //       stop when the body begins.
-    int pos = -1;
-    int startPos = -1;
-    while ((pos = content.indexOf('<', pos + 1)) != -1) {
-      // A tag starts here -> Check whether this is the title tag
-      if (isIndexOf(content, TITLE_START_TAG, pos)) {
-        // The title starts here -> Remember the start pos
-        startPos = pos + TITLE_START_TAG.length();
-        break;
-      } else if (isIndexOf(content, "<body", pos)) {
-        // The body starts here -> Give up
-        break;
-      }
-    }
-
-    // Scan until the end of the title
-    if (startPos != -1) {
-      pos = startPos - 1;
-      while ((pos = content.indexOf('<', pos + 1)) != -1) {
-        if (isIndexOf(content, "</title>", pos)) {
-          // We found the title's end tag -> extract the title
-          return content.substring(startPos, pos);
-        } else if (pos > startPos + 1000) {
-          // This is too long -> There won't come a end tag -> Give up
-          break;
-        }
-      }
-    }
-
-    return null;
-  }
-
-  /**
-   * Checks whether an expected substring is at a certain position.
+   * Checks whether a link may be crawled. Like htmlparser, every link is
+   * taken except for mail, javascript, ftp and irc links.
    *
-   * @param content The String to check the excepted substring.
-   * @param expected The expected substring.
-   * @param pos The position where the substring is expected.
-   * @return Whether the expected substring is really at this position.
+   * @param link The absolute link.
+   * @return Whether the link may be crawled.
    */
-  private boolean isIndexOf(String content, String expected, int pos) {
-    if (content.length() < pos + expected.length()) {
-      // The expected String doesn't match here
-      return false;
-    }
-
-    String substring = content.substring(pos, pos + expected.length());
-    return expected.equalsIgnoreCase(substring);
+  private boolean isHttpLikeLink(String link) {
+    return ! (link.regionMatches(true, 0, "mailto:", 0, 7)
+      || link.regionMatches(true, 0, "javascript:", 0, 11)
+      || link.regionMatches(true, 0, "ftp://", 0, 6)
+      || link.regionMatches(true, 0, "irc://", 0, 6));
   }
 }
@@ -20,6 +20,9 @@
  */
 package net.sf.regain.crawler.preparator.html;
 
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
 import net.sf.regain.RegainException;
 import net.sf.regain.crawler.document.RawDocument;
 
@@ -45,7 +48,7 @@ public class AbstractExtractor {
    * Der Präfix, den eine URL haben muss, um von diesem Extrahierer bearbeitet
    * zu werden.
    */
-  private String mPrefix;
+  private Pattern mPrefix;
 
   /**
    * Der compilierte Regul�re Ausdruck, der die Stelle findet, wo das zu
@@ -107,7 +110,12 @@ public class AbstractExtractor {
     String fragmentEndRegex)
     throws RegainException
   {
-    mPrefix = prefix;
+    try {
+      mPrefix = Pattern.compile(prefix);
+    }
+    catch (PatternSyntaxException exc) {
+      throw new RegainException("Syntax error in regular expression", exc);
+    }
 
     try {
       if ((fragmentStartRegex != null) && (fragmentStartRegex.length() != 0)) {
@@ -136,7 +144,7 @@ public class AbstractExtractor {
    * @return Ob der Extrahierer das gegebene Dokument bearbeiten kann.
    */
   public boolean accepts(RawDocument rawDocument) {
-    return rawDocument.getUrl().matches(mPrefix);
+    return mPrefix.matcher(rawDocument.getUrl()).matches();
   }
 
 
@@ -153,7 +161,26 @@ public class AbstractExtractor {
     throws RegainException
   {
     String content = rawDocument.getContentAsString();
+    int[] range = findFragment(content, rawDocument.getUrl());
+
+    if ((range[0] == 0) && (range[1] == content.length())) {
+      // Nothing to do -> So don't waste ressources
+      return content;
+    } else {
+      return content.substring(range[0], range[1]);
+    }
+  }
+
+
 
+  /**
+   * Findet das Fragment im gegebenen Inhalt, ohne es auszuschneiden.
+   *
+   * @param content Der Inhalt, in dem das Fragment gesucht werden soll.
+   * @param url Die URL des Dokuments (wird nur für Warnungen genutzt).
+   * @return Der Anfang und das Ende (exklusiv) des Fragments.
+   */
+  protected int[] findFragment(String content, String url) {
     // Find the fragment start
     int fragmentStart = 0;
     if (mFragmentStartRE != null) {
@@ -161,7 +188,7 @@ public class AbstractExtractor {
         fragmentStart = mFragmentStartRE.getParenEnd(0);
       } else {
         mLog.warn("The regular expression '" + mFragmentStartRegex + "' had no "
-          + "match for '" + rawDocument.getUrl() + "'");
+          + "match for '" + url + "'");
       }
     }
 
@@ -172,16 +199,11 @@ public class AbstractExtractor {
         fragmentEnd = mFragmentEndRE.getParenStart(0);
       } else {
         mLog.warn("The regular expression '" + mFragmentEndRegex + "' had no "
-          + "match for '" + rawDocument.getUrl() + "'");
+          + "match for '" + url + "'");
       }
     }
 
-    if ((fragmentStart == 0) && (fragmentEnd == content.length())) {
-      // Nothing to do -> So don't waste ressources
-      return content;
-    } else {
-      return content.substring(fragmentStart, fragmentEnd);
-    }
+    return new int[] { fragmentStart, fragmentEnd };
   }
 
 
@@ -107,6 +107,20 @@ public class HtmlContentExtractor extends AbstractExtractor {
 
 
 
+  /**
+   * Findet den eigentlichen HTML-Inhalt im gegebenen Dokument, ohne ihn
+   * auszuschneiden.
+   *
+   * @param content Das HTML-Dokument.
+   * @param url Die URL des Dokuments.
+   * @return Der Anfang und das Ende (exklusiv) des eigentlichen Inhalts.
+   */
+  public int[] findContentRange(String content, String url) {
+    return findFragment(content, url);
+  }
+
+
+
   /**
    * Extrahiert die überschrifen aus einem HTML-Dokuments.
    * <p>
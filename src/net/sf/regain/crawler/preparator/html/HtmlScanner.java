@@ -0,0 +1,602 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.crawler.preparator.html;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.htmlparser.util.Translate;
+
+/**
+ * Reads a HTML document in one pass and collects everything the
+ * HtmlPreparator needs: The title, the text, the headlines, the links, the
+ * frames and the base URL.
+ * <p>
+ * The scanner doesn't build a tree of the document. It only looks at the tags
+ * it needs and skips the rest, so it's a lot faster than a full HTML parser.
+ * The text may be restricted to a part of the document (see
+ * {@link HtmlContentExtractor}), while the links are taken from the whole
+ * document.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class HtmlScanner {
+
+  /** The maximum length of a title. Longer titles are ignored. */
+  private static final int MAX_TITLE_LENGTH = 1000;
+
+  /** The tags (in lower case) that start a new line in the text. */
+  private static final HashSet<String> FLOW_BREAKING_TAG_SET = new HashSet<String>(Arrays.asList(
+    "address", "article", "aside", "blockquote", "body", "br", "center", "dd",
+    "div", "dl", "dt", "fieldset", "footer", "form", "h1", "h2", "h3", "h4",
+    "h5", "h6", "head", "header", "hr", "li", "nav", "noframes", "ol",
+    "option", "p", "pre", "section", "table", "td", "th", "title", "tr", "ul"));
+
+  /** The HTML document. */
+  private String mHtml;
+  /** The start of the part of the document the text is taken from. */
+  private int mTextStart;
+  /** The end (exclusive) of the part of the document the text is taken from. */
+  private int mTextEnd;
+
+  /** The collected text. */
+  private StringBuilder mText;
+  /** The title. Is <code>null</code> if the document has no title. */
+  private String mTitle;
+  /** The start of the title text. Is -1 if no title tag was found yet. */
+  private int mTitleStart = -1;
+  /** Specifies whether the body was reached. */
+  private boolean mInBody;
+  /** The collected headlines, separated by \n. */
+  private StringBuilder mHeadlines;
+  /** The text of the current headline. Is <code>null</code> outside a headline. */
+  private StringBuilder mHeadline;
+  /** The URLs of the found links as they are written in the document. */
+  private ArrayList<String> mLinkUrlList;
+  /** The texts of the found links. */
+  private ArrayList<String> mLinkTextList;
+  /** The text of the current link. Is <code>null</code> outside a link. */
+  private StringBuilder mLinkText;
+  /** The URLs of the found frames as they are written in the document. */
+  private ArrayList<String> mFrameUrlList;
+  /** The URL of the base tag. Is <code>null</code> if there is none. */
+  private String mBaseHref;
+
+
+  /**
+   * Creates a new instance of HtmlScanner.
+   *
+   * @param html The HTML document.
+   * @param textStart The start of the part of the document the text should be
+   *        taken from.
+   * @param textEnd The end (exclusive) of the part of the document the text
+   *        should be taken from.
+   */
+  public HtmlScanner(String html, int textStart, int textEnd) {
+    mHtml = html;
+    mTextStart = textStart;
+    mTextEnd = textEnd;
+  }
+
+
+  /**
+   * Reads the document.
+   */
+  public void scan() {
+    mText = new StringBuilder(Math.max(16, (mTextEnd - mTextStart) / 2));
+    mHeadlines = new StringBuilder();
+    mLinkUrlList = new ArrayList<String>();
+    mLinkTextList = new ArrayList<String>();
+    mFrameUrlList = new ArrayList<String>();
+
+    String html = mHtml;
+    int length = html.length();
+    int pos = 0;
+    while (pos < length) {
+      int tagStart = html.indexOf('<', pos);
+      if (tagStart == -1) {
+        tagStart = length;
+      }
+      if (tagStart > pos) {
+        addText(pos, tagStart);
+      }
+      if (tagStart == length) {
+        break;
+      }
+      pos = scanMarkup(tagStart);
+    }
+
+    finishLink();
+  }
+
+
+  /**
+   * Reads a tag, a comment or a declaration.
+   *
+   * @param tagStart The position of the <code>&lt;</code>.
+   * @return The position after the markup.
+   */
+  private int scanMarkup(int tagStart) {
+    String html = mHtml;
+    int length = html.length();
+
+    if (html.startsWith("<!--", tagStart)) {
+      int end = html.indexOf("-->", tagStart + 4);
+      return (end == -1) ? length : end + 3;
+    }
+
+    int pos = tagStart + 1;
+    if (pos < length && (html.charAt(pos) == '!' || html.charAt(pos) == '?')) {
+      int end = html.indexOf('>', pos);
+      return (end == -1) ? length : end + 1;
+    }
+
+    boolean isEndTag = (pos < length && html.charAt(pos) == '/');
+    int nameStart = isEndTag ? pos + 1 : pos;
+    if (nameStart >= length || ! Character.isLetter(html.charAt(nameStart))) {
+      // This is no tag, just a less-than sign
+      addText(tagStart, tagStart + 1);
+      return tagStart + 1;
+    }
+
+    int nameEnd = nameStart + 1;
+    while (nameEnd < length && isNameChar(html.charAt(nameEnd))) {
+      nameEnd++;
+    }
+    int tagEnd = findTagEnd(nameEnd);
+    String name = toLowerCase(html.substring(nameStart, nameEnd));
+    int next = (tagEnd == length) ? length : tagEnd + 1;
+
+    if (FLOW_BREAKING_TAG_SET.contains(name)) {
+      breakFlow(tagStart);
+    }
+
+    if (isEndTag) {
+      if (name.equals("a")) {
+        finishLink();
+      }
+      else if (name.equals("title")) {
+        if (mTitle == null && mTitleStart != -1 && tagStart - mTitleStart <= MAX_TITLE_LENGTH) {
+          mTitle = html.substring(mTitleStart, tagStart);
+        }
+        mTitleStart = -1;
+      }
+      else if (isHeadlineTag(name)) {
+        finishHeadline();
+      }
+      return next;
+    }
+
+    if (name.equals("a")) {
+      String href = getAttribute(nameEnd, tagEnd, "href");
+      if (href != null) {
+        finishLink();
+        mLinkUrlList.add(removeLineBreaks(href));
+        mLinkText = new StringBuilder();
+      }
+    }
+    else if (name.equals("frame")) {
+      String src = getAttribute(nameEnd, tagEnd, "src");
+      if (src != null) {
+        mFrameUrlList.add(removeLineBreaks(src));
+      }
+    }
+    else if (name.equals("base")) {
+      String href = getAttribute(nameEnd, tagEnd, "href");
+      if (href != null && mBaseHref == null) {
+        mBaseHref = href.trim();
+      }
+    }
+    else if (name.equals("title")) {
+      if (! mInBody && mTitle == null) {
+        mTitleStart = next;
+      }
+    }
+    else if (name.equals("body")) {
+      mInBody = true;
+    }
+    else if (isHeadlineTag(name)) {
+      finishHeadline();
+      mHeadline = new StringBuilder();
+    }
+    else if (name.equals("script") || name.equals("style")) {
+      if (html.charAt(tagEnd - 1) != '/') {
+        // Skip the script or the style
+        return skipRawText(next, name);
+      }
+    }
+
+    return next;
+  }
+
+
+  /**
+   * Finds the end of a tag. Greater-than signs in quoted attribute values are
+   * skipped.
+   *
+   * @param pos The position after the tag name.
+   * @return The position of the <code>&gt;</code> or the length of the
+   *         document if the tag isn't closed.
+   */
+  private int findTagEnd(int pos) {
+    String html = mHtml;
+    int length = html.length();
+    char quote = 0;
+    boolean afterEquals = false;
+    for (; pos < length; pos++) {
+      char c = html.charAt(pos);
+      if (quote != 0) {
+        if (c == quote) {
+          quote = 0;
+        }
+      }
+      else if (c == '>') {
+        return pos;
+      }
+      else if ((c == '"' || c == '\'') && afterEquals) {
+        quote = c;
+      }
+
+      if (! Character.isWhitespace(c)) {
+        afterEquals = (c == '=');
+      }
+    }
+    return length;
+  }
+
+
+  /**
+   * Gets the value of an attribute of a tag.
+   *
+   * @param pos The position after the tag name.
+   * @param tagEnd The position of the end of the tag.
+   * @param attributeName The name of the attribute in lower case.
+   * @return The value of the attribute or <code>null</code> if the tag doesn't
+   *         have this attribute.
+   */
+  private String getAttribute(int pos, int tagEnd, String attributeName) {
+    String html = mHtml;
+    while (pos < tagEnd) {
+      // Find the attribute name
+      while (pos < tagEnd && (Character.isWhitespace(html.charAt(pos)) || html.charAt(pos) == '/')) {
+        pos++;
+      }
+      int nameStart = pos;
+      while (pos < tagEnd && ! Character.isWhitespace(html.charAt(pos))
+        && html.charAt(pos) != '=' && html.charAt(pos) != '/')
+      {
+        pos++;
+      }
+      int nameEnd = pos;
+      if (nameEnd == nameStart) {
+        pos++;
+        continue;
+      }
+
+      // Find the value
+      while (pos < tagEnd && Character.isWhitespace(html.charAt(pos))) {
+        pos++;
+      }
+      String value = "";
+      if (pos < tagEnd && html.charAt(pos) == '=') {
+        pos++;
+        while (pos < tagEnd && Character.isWhitespace(html.charAt(pos))) {
+          pos++;
+        }
+        int valueStart;
+        int valueEnd;
+        if (pos < tagEnd && (html.charAt(pos) == '"' || html.charAt(pos) == '\'')) {
+          valueStart = pos + 1;
+          valueEnd = html.indexOf(html.charAt(pos), valueStart);
+          if (valueEnd == -1 || valueEnd > tagEnd) {
+            valueEnd = tagEnd;
+          }
+          pos = valueEnd + 1;
+        } else {
+          valueStart = pos;
+          while (pos < tagEnd && ! Character.isWhitespace(html.charAt(pos))) {
+            pos++;
+          }
+          valueEnd = pos;
+        }
+        if (nameEnd - nameStart == attributeName.length()
+          && html.regionMatches(true, nameStart, attributeName, 0, attributeName.length()))
+        {
+          value = html.substring(valueStart, valueEnd);
+        } else {
+          continue;
+        }
+      }
+
+      if (nameEnd - nameStart == attributeName.length()
+        && html.regionMatches(true, nameStart, attributeName, 0, attributeName.length()))
+      {
+        return value;
+      }
+    }
+    return null;
+  }
+
+
+  /**
+   * Skips the content of a script or a style tag.
+   *
+   * @param pos The position after the start tag.
+   * @param name The name of the tag.
+   * @return The position of the end tag.
+   */
+  private int skipRawText(int pos, String name) {
+    String html = mHtml;
+    while ((pos = html.indexOf("</", pos)) != -1) {
+      if (html.regionMatches(true, pos + 2, name, 0, name.length())) {
+        return pos;
+      }
+      pos += 2;
+    }
+    return html.length();
+  }
+
+
+  /**
+   * Adds a text of the document to the text, the current link text and the
+   * current headline. Whitespace is collapsed.
+   *
+   * @param start The start of the text.
+   * @param end The end of the text (exclusive).
+   */
+  private void addText(int start, int end) {
+    int textStart = Math.max(start, mTextStart);
+    int textEnd = Math.min(end, mTextEnd);
+    if (textStart < textEnd) {
+      appendCollapsed(mText, textStart, textEnd);
+    }
+    if (mLinkText != null) {
+      appendCollapsed(mLinkText, start, end);
+    }
+    if (mHeadline != null) {
+      appendCollapsed(mHeadline, start, end);
+    }
+  }
+
+
+  /**
+   * Appends a text of the document to a buffer and collapses the whitespace.
+   *
+   * @param buffer The buffer to append the text to.
+   * @param start The start of the text.
+   * @param end The end of the text (exclusive).
+   */
+  private void appendCollapsed(StringBuilder buffer, int start, int end) {
+    String html = mHtml;
+    for (int i = start; i < end; i++) {
+      char c = html.charAt(i);
+      if (Character.isWhitespace(c)) {
+        int last = buffer.length() - 1;
+        if (last >= 0 && buffer.charAt(last) != ' ' && buffer.charAt(last) != '\n') {
+          buffer.append(' ');
+        }
+      } else {
+        buffer.append(c);
+      }
+    }
+  }
+
+
+  /**
+   * Starts a new line in the text, if the tag is in the part of the document
+   * the text is taken from.
+   *
+   * @param tagStart The start of the tag.
+   */
+  private void breakFlow(int tagStart) {
+    if (tagStart >= mTextStart && tagStart < mTextEnd) {
+      int last = mText.length() - 1;
+      if (last >= 0 && mText.charAt(last) == ' ') {
+        mText.setLength(last);
+        last--;
+      }
+      if (last >= 0 && mText.charAt(last) != '\n') {
+        mText.append('\n');
+      }
+    }
+  }
+
+
+  /**
+   * Adds the current link to the found links.
+   */
+  private void finishLink() {
+    if (mLinkText != null) {
+      mLinkTextList.add(decode(mLinkText));
+      mLinkText = null;
+    }
+  }
+
+
+  /**
+   * Adds the current headline to the found headlines.
+   */
+  private void finishHeadline() {
+    if (mHeadline != null) {
+      String headline = decode(mHeadline);
+      if (headline.length() != 0) {
+        mHeadlines.append(headline).append('\n');
+      }
+      mHeadline = null;
+    }
+  }
+
+
+  /**
+   * Decodes the HTML entities of a text and trims it.
+   *
+   * @param text The text to decode.
+   * @return The decoded text.
+   */
+  private static String decode(CharSequence text) {
+    String decoded = text.toString();
+    if (decoded.indexOf('&') != -1) {
+      decoded = Translate.decode(decoded);
+    }
+    return decoded.replace('\u00a0', ' ').trim();
+  }
+
+
+  /**
+   * Checks whether a character may be part of a tag name.
+   *
+   * @param c The character to check.
+   * @return Whether the character may be part of a tag name.
+   */
+  private static boolean isNameChar(char c) {
+    return Character.isLetterOrDigit(c) || c == '-' || c == ':' || c == '_';
+  }
+
+
+  /**
+   * Checks whether a tag is a headline (h1 to h6).
+   *
+   * @param name The tag name in lower case.
+   * @return Whether the tag is a headline.
+   */
+  private static boolean isHeadlineTag(String name) {
+    return name.length() == 2 && name.charAt(0) == 'h'
+      && name.charAt(1) >= '1' && name.charAt(1) <= '6';
+  }
+
+
+  /**
+   * Converts a tag name to lower case. Does not create a new String if the
+   * name already is in lower case.
+   *
+   * @param name The tag name.
+   * @return The tag name in lower case.
+   */
+  private static String toLowerCase(String name) {
+    for (int i = 0; i < name.length(); i++) {
+      if (Character.isUpperCase(name.charAt(i))) {
+        return name.toLowerCase();
+      }
+    }
+    return name;
+  }
+
+
+  /**
+   * Removes the line breaks from a URL (like htmlparser does).
+   *
+   * @param url The URL.
+   * @return The URL without line breaks.
+   */
+  private static String removeLineBreaks(String url) {
+    if (url.indexOf('\n') == -1 && url.indexOf('\r') == -1) {
+      return url;
+    }
+    StringBuilder buffer = new StringBuilder(url.length());
+    for (int i = 0; i < url.length(); i++) {
+      char c = url.charAt(i);
+      if (c != '\n' && c != '\r') {
+        buffer.append(c);
+      }
+    }
+    return buffer.toString();
+  }
+
+
+  /**
+   * Gets the title of the document.
+   *
+   * @return The title as it is written in the document or <code>null</code>
+   *         if the document has no title.
+   */
+  public String getTitle() {
+    return mTitle;
+  }
+
+
+  /**
+   * Gets the text of the document. The whitespace is collapsed, the HTML
+   * entities are decoded and block tags start a new line.
+   *
+   * @return The text.
+   */
+  public String getText() {
+    return decode(mText);
+  }
+
+
+  /**
+   * Gets the headlines (h1 to h6) of the document.
+   *
+   * @return The headlines, separated by \n, or <code>null</code> if the
+   *         document has no headlines.
+   */
+  public String getHeadlines() {
+    return (mHeadlines.length() == 0) ? null : mHeadlines.toString();
+  }
+
+
+  /**
+   * Gets the URLs of the links of the document as they are written in the
+   * document.
+   *
+   * @return The URLs of the links.
+   */
+  public List<String> getLinkUrlList() {
+    return mLinkUrlList;
+  }
+
+
+  /**
+   * Gets the texts of the links of the document. The text at an index belongs
+   * to the URL at the same index of {@link #getLinkUrlList()}.
+   *
+   * @return The texts of the links.
+   */
+  public List<String> getLinkTextList() {
+    return mLinkTextList;
+  }
+
+
+  /**
+   * Gets the URLs of the frames of the document as they are written in the
+   * document.
+   *
+   * @return The URLs of the frames.
+   */
+  public List<String> getFrameUrlList() {
+    return mFrameUrlList;
+  }
+
+
+  /**
+   * Gets the URL of the base tag.
+   *
+   * @return The URL of the base tag or <code>null</code> if the document has
+   *         no base tag.
+   */
+  public String getBaseHref() {
+    return mBaseHref;
+  }
+
+}
@@ -0,0 +1,197 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004 Thomas Tesche, Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider <info@murfman.de>, Thomas Tesche <thtesche@gmail.com>
+ */
+package net.sf.regain.search;
+
+import java.io.IOException;
+import java.util.Set;
+
+import net.sf.regain.RegainException;
+import net.sf.regain.search.config.IndexConfig;
+import net.sf.regain.search.results.SortingOption;
+
+import org.apache.log4j.Logger;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.queryParser.ParseException;
+import org.apache.lucene.queryParser.QueryParser;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IndexInput;
+
+/**
+ * Warms up a new searcher using the settings of an index config:
+ * <ul>
+ * <li>Replays the queries recently searched on the old index and the
+ *     configured warm-up queries.</li>
+ * <li>Loads the sort values for every configured sorting option.</li>
+ * <li>Reads all index files once, so the operating system caches them (if
+ *     configured).</li>
+ * </ul>
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class DefaultSearcherWarmer implements SearcherWarmer {
+
+  /** The logger for this class. */
+  private static Logger mLog = Logger.getLogger(DefaultSearcherWarmer.class);
+
+  /** The number of hits whose documents are loaded for each query. */
+  private static final int HIT_COUNT = 10;
+
+  /** The config of the index to warm up. */
+  private IndexConfig mConfig;
+
+
+  /**
+   * Creates a new instance of DefaultSearcherWarmer.
+   *
+   * @param config The config of the index to warm up.
+   */
+  public DefaultSearcherWarmer(IndexConfig config) {
+    mConfig = config;
+  }
+
+
+  /**
+   * {@inheritDoc }
+   */
+  @Override
+  public void warm(IndexSearcher searcher, Analyzer analyzer, Query[] recentQueryArr)
+    throws RegainException
+  {
+    long startTime = System.currentTimeMillis();
+    int queryCount = 0;
+    try {
+      if (mConfig.getWarmUpTouchFiles()) {
+        touchFiles(searcher.getIndexReader().directory());
+      }
+
+      // Load the sort values of all sorting options
+      SortingOption[] sortingOptionArr = mConfig.getSortingOptions();
+      if (sortingOptionArr != null) {
+        for (int i = 0; i < sortingOptionArr.length; i++) {
+          if (! SortingOption.RELEVANCE.equals(sortingOptionArr[i].getSortFieldName())) {
+            searcher.search(new MatchAllDocsQuery(), null, 1,
+                    new Sort(sortingOptionArr[i].getSortField()));
+          }
+        }
+      }
+
+      // Replay the recent queries
+      for (int i = 0; i < recentQueryArr.length; i++) {
+        runQuery(searcher, recentQueryArr[i]);
+        queryCount++;
+      }
+
+      // Run the configured queries
+      String[] queryTextArr = mConfig.getWarmUpQueries();
+      for (int i = 0; i < queryTextArr.length; i++) {
+        runQuery(searcher, parseQuery(queryTextArr[i], analyzer));
+        queryCount++;
+      }
+    }
+    catch (IOException exc) {
+      throw new RegainException("Warming up the searcher of index '"
+              + mConfig.getName() + "' failed", exc);
+    }
+
+    mLog.info("Warmed up the new searcher of index '" + mConfig.getName() + "' with "
+            + queryCount + " queries in " + (System.currentTimeMillis() - startTime) + " ms");
+  }
+
+
+  /**
+   * Runs a query and loads the documents of the first hits.
+   *
+   * @param searcher The searcher to use.
+   * @param query The query to run.
+   * @throws IOException If searching failed.
+   */
+  private void runQuery(IndexSearcher searcher, Query query) throws IOException {
+    TopDocs topDocs = searcher.search(query, HIT_COUNT);
+    for (int i = 0; i < topDocs.scoreDocs.length; i++) {
+      searcher.doc(topDocs.scoreDocs[i].doc);
+    }
+  }
+
+
+  /**
+   * Parses a warm-up query the same way the search parses the queries of
+   * the users.
+   *
+   * @param queryText The query to parse.
+   * @param analyzer The analyzer to use.
+   * @return The parsed query.
+   * @throws RegainException If the query has syntax errors.
+   */
+  private Query parseQuery(String queryText, Analyzer analyzer) throws RegainException {
+    BooleanQuery query = new BooleanQuery();
+    Set<String> reversedFieldNames =
+            IndexSearcherManager.getInstance(mConfig.getDirectory()).getReversedFieldNames();
+    String[] searchFieldArr = mConfig.getSearchFieldList();
+    for (int i = 0; i < searchFieldArr.length; i++) {
+      QueryParser parser = new ReversedWildcardQueryParser(searchFieldArr[i], analyzer,
+              reversedFieldNames);
+      parser.setDefaultOperator(QueryParser.AND_OPERATOR);
+      try {
+        // Add as OR
+        query.add(parser.parse(queryText), Occur.SHOULD);
+      }
+      catch (ParseException exc) {
+        throw new RegainException("Error while parsing warm-up query '" + queryText
+                + "': " + exc.getMessage(), exc);
+      }
+    }
+    return query;
+  }
+
+
+  /**
+   * Reads all files of an index once, so the operating system caches them.
+   *
+   * @param dir The directory of the index.
+   * @throws IOException If reading a file failed.
+   */
+  private void touchFiles(Directory dir) throws IOException {
+    byte[] buffer = new byte[65536];
+    String[] fileNameArr = dir.listAll();
+    for (int i = 0; i < fileNameArr.length; i++) {
+      IndexInput in = dir.openInput(fileNameArr[i]);
+      try {
+        long remaining = in.length();
+        while (remaining > 0) {
+          int count = (int) Math.min(buffer.length, remaining);
+          in.readBytes(buffer, 0, count);
+          remaining -= count;
+        }
+      }
+      finally {
+        in.close();
+      }
+    }
+  }
+
+}
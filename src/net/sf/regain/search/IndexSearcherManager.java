@@ -23,13 +23,32 @@ package net.sf.regain.search;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import net.sf.regain.RegainException;
 import net.sf.regain.RegainToolkit;
+import net.sf.regain.search.config.IndexConfig;
+import net.sf.regain.search.results.QueryResultCache;
+import net.sf.regain.util.io.DirectoryWatcher;
 
+import org.apache.log4j.Logger;
 import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
 import org.apache.lucene.search.SearcherFactory;
 import org.apache.lucene.search.SearcherManager;
 import org.apache.lucene.store.FSDirectory;
@@ -37,14 +56,18 @@ import org.apache.lucene.store.FSDirectory;
 /**
  * Encapsulates the search on the lucene search index.
  * <p>
- * Additionally, every 10 seconds we check if there is a new index available.
- * Search queries cannot be execute during index update.
- * If yes, the new index is used and the old saved in /backup/.
+ * Additionally, the {@link DirectoryWatcher} tells us when there is a new
+ * index available. If yes, the new index is used and the old saved in /backup/. Until the
+ * searcher of the new index is warmed up (see {@link SearcherWarmer}), the
+ * queries are answered by the old searcher.
  *
  * @author Til Schneider, www.murfman.de
  */
 public class IndexSearcherManager implements Closeable {
 
+  /** The logger for this class. */
+  private static Logger mLog = Logger.getLogger(IndexSearcherManager.class);
+
   /**
    * Der Name des Index-Unterverzeichnisses, in das der neue Index gestellt
    * wird, sobald er fertig ist.
@@ -60,6 +83,18 @@ public class IndexSearcherManager implements Closeable {
    * werden soll.
    */
   private static final String BACKUP_INDEX_SUBDIR = "backup";
+  /**
+   * The maximum number of threads that search indexes. If all are busy, the
+   * search runs in the thread of the request.
+   */
+  private static final int MAX_SEARCH_THREADS = 32;
+  /**
+   * The maximum number of threads that highlight hits. If all are busy, the
+   * highlighting runs in the thread of the request.
+   */
+  private static final int MAX_HIGHLIGHT_THREADS = 16;
+  /** The time in seconds after that an idle thread of an executor ends. */
+  private static final long EXECUTOR_KEEP_ALIVE = 60;
   /**
    * enthält für ein Index-Verzeichnis (key) den zust�ndigen
    * IndexWriterManager (value).
@@ -69,6 +104,31 @@ public class IndexSearcherManager implements Closeable {
   static {
     mIndexManagerHash = new HashMap<String, IndexSearcherManager>();
   }
+  /**
+   * The threads that search the indexes of a multi-index search. Is
+   * <code>null</code> until the first multi-index search.
+   */
+  private static ExecutorService mSearchExecutor;
+  /**
+   * The threads that highlight the hits. Is <code>null</code> until hits are
+   * highlighted the first time.
+   */
+  private static ExecutorService mHighlightExecutor;
+  /**
+   * The threads that swap the indexes and warm up their new searchers. Every
+   * index has at most one update at a time, so a slow warm-up doesn't delay
+   * the other indexes. Is <code>null</code> until the first update.
+   */
+  private static ExecutorService mUpdateExecutor;
+  /** Whether an update of this index is scheduled or running. */
+  private AtomicBoolean mUpdateScheduled = new AtomicBoolean(false);
+  /** The directory of the index as given to {@link #getInstance(String)}. */
+  private String mIndexDir;
+  /**
+   * The generation of the current searcher. Is incremented every time a new
+   * searcher is opened.
+   */
+  private long mGeneration;
   /**
    * Das Verzeichnis, in das der neue Index gestellt wird, sobald er fertig ist.
    * <p>
@@ -83,20 +143,33 @@ public class IndexSearcherManager implements Closeable {
 
   /** Der Analyzer, der für Suchen verwendet werden soll. */
   private Analyzer mAnalyzer;
+  /** The names of the fields whose terms are also indexed reversed. */
+  private Set<String> mReversedFieldNames;
 
-  /** Der Thread, der alle 10 Sekunden Prüft, ob ein neuer Suchindex vorhanden ist. */
-  private IndexUpdateThread mIndexUpdateThread;
+  /** Wird benachrichtigt, sobald ein neuer Suchindex vorhanden ist. */
+  private DirectoryWatcher.Listener mNewIndexListener;
   /**
    * Holds for a field name (String) all distinct values the index has for that
    * field (String[]).
    */
-  private HashMap<String,String[]> mFieldTermHash;
+  private final ConcurrentHashMap<String,String[]> mFieldTermHash =
+    new ConcurrentHashMap<String,String[]>();
 
   /**
    * Keeps reference of the current IndexSearcher.
    */
   private SearcherManager mSearcherManager;
 
+  /**
+   * Warms up the searcher of a new index. Is <code>null</code> if the new
+   * searcher should be used right away.
+   */
+  private volatile SearcherWarmer mSearcherWarmer;
+  /** The maximum number of recent queries to replay when warming up. */
+  private int mRecentQueryCount;
+  /** The recently searched queries (value) by their text (key). */
+  private LinkedHashMap<String, Query> mRecentQueryMap;
+
   /**
    * Erzeugt eine neue IndexWriterManager-Instanz.
    *
@@ -104,9 +177,11 @@ public class IndexSearcherManager implements Closeable {
    * @throws RegainException Wenn kein Index-Verzeichnis existiert.
    */
   private IndexSearcherManager(String indexDir) throws RegainException {
+    mIndexDir = indexDir;
     mNewIndexDir = new File(indexDir + File.separator + NEW_INDEX_SUBDIR);
     mWorkingIndexDir = new File(indexDir + File.separator + WORKING_INDEX_SUBDIR);
     mBackupIndexDir = new File(indexDir + File.separator + BACKUP_INDEX_SUBDIR);
+    mRecentQueryMap = new LinkedHashMap<String, Query>(16, 0.75f, true);
 
     if (!(new File(indexDir).exists()))
       throw new RegainException("No index folder found at " + indexDir);
@@ -115,16 +190,42 @@ public class IndexSearcherManager implements Closeable {
 
     try
     {
-      mSearcherManager = new SearcherManager(FSDirectory.open(mWorkingIndexDir), new SearcherFactory());
+      mSearcherManager = new SearcherManager(FSDirectory.open(mWorkingIndexDir), new SearcherFactory() {
+        @Override
+        public IndexSearcher newSearcher(IndexReader reader) throws IOException {
+          IndexSearcher searcher;
+          synchronized (IndexSearcherManager.this) {
+            mGeneration++;
+            searcher = new GenerationSearcher(reader, mGeneration);
+          }
+
+          // Warm up the searcher of a new index before it is published
+          SearcherWarmer warmer = mSearcherWarmer;
+          if (warmer != null && getGeneration(searcher) > 1) {
+            try {
+              warmer.warm(searcher, getAnalyzer(), getRecentQueries());
+            } catch (Throwable thr) {
+              // The new searcher is published anyway, it is just not warm
+              mLog.error("Warming up the new index failed", thr);
+            }
+          }
+          return searcher;
+        }
+      });
     }
     catch (IOException e)
     {
       throw new RegainException("Could not open index folder found at " + indexDir, e);
     }
 
-    mIndexUpdateThread = new IndexUpdateThread();
-    mIndexUpdateThread.setPriority(Thread.MIN_PRIORITY);
-    mIndexUpdateThread.start();
+    // Use the new index as soon as the crawler has put it into place
+    mNewIndexListener = new DirectoryWatcher.Listener() {
+      @Override
+      public void directoryExists(File dir) {
+        scheduleIndexUpdate();
+      }
+    };
+    DirectoryWatcher.getInstance().addDirectory(mNewIndexDir, mNewIndexListener);
   }
 
   /**
@@ -150,6 +251,71 @@ public class IndexSearcherManager implements Closeable {
     }
   }
 
+  /**
+   * Return the index searcher manager of an index. If the manager has no
+   * searcher warmer yet, it gets a {@link DefaultSearcherWarmer} using the
+   * config.
+   *
+   * @param config The config of the index.
+   *
+   * @return An instance of the corresponding index searcher manager.
+   * @throws RegainException If the directory does not exist or is not an index.
+   */
+  public static IndexSearcherManager getInstance(IndexConfig config) throws RegainException {
+    IndexSearcherManager manager = getInstance(config.getDirectory());
+    synchronized (manager) {
+      if (manager.mSearcherWarmer == null) {
+        manager.mRecentQueryCount = config.getWarmUpRecentQueryCount();
+        manager.mSearcherWarmer = new DefaultSearcherWarmer(config);
+      }
+    }
+    return manager;
+  }
+
+  /**
+   * Sets the warmer that warms up the searcher of a new index before it is
+   * used for searching.
+   *
+   * @param warmer The warmer. <code>null</code> means that the searcher of a
+   *        new index is used right away.
+   * @param recentQueryCount The maximum number of recent queries to pass to
+   *        the warmer.
+   */
+  public synchronized void setSearcherWarmer(SearcherWarmer warmer, int recentQueryCount) {
+    mSearcherWarmer = warmer;
+    mRecentQueryCount = recentQueryCount;
+  }
+
+  /**
+   * Remembers a query, so it is replayed when the searcher of the next index
+   * is warmed up.
+   *
+   * @param query The query searched on this index.
+   */
+  public void addRecentQuery(Query query) {
+    synchronized (mRecentQueryMap) {
+      if (mRecentQueryCount > 0) {
+        mRecentQueryMap.put(query.toString(), query);
+        Iterator<String> iter = mRecentQueryMap.keySet().iterator();
+        while (mRecentQueryMap.size() > mRecentQueryCount) {
+          iter.next();
+          iter.remove();
+        }
+      }
+    }
+  }
+
+  /**
+   * Gets the recently searched queries.
+   *
+   * @return The recent queries. The newest query is the last.
+   */
+  private Query[] getRecentQueries() {
+    synchronized (mRecentQueryMap) {
+      return mRecentQueryMap.values().toArray(new Query[mRecentQueryMap.size()]);
+    }
+  }
+
   /**
    * Gets all distinct values a index has for a certain field. The values are
    * sorted alphabetically.
@@ -159,10 +325,6 @@ public class IndexSearcherManager implements Closeable {
    * @throws RegainException If reading the values failed.
    */
   public String[] getFieldValues(String field) throws RegainException {
-    if (mFieldTermHash == null) {
-      mFieldTermHash = new HashMap<String,String[]>();
-    }
-
     String[] valueArr = mFieldTermHash.get(field);
     if (valueArr == null) {
       valueArr = readFieldValues(field);
@@ -251,11 +413,32 @@ public class IndexSearcherManager implements Closeable {
       untokenizedFieldNames = new String[0];
     }
 
+    File reversedFieldNamesFile = new File(mWorkingIndexDir, "reversedFieldNames.txt");
+    Set<String> reversedFieldNames = new HashSet<String>();
+    if (reversedFieldNamesFile.exists()) {
+      reversedFieldNames.addAll(Arrays.asList(RegainToolkit.readListFromFile(reversedFieldNamesFile)));
+    }
+    mReversedFieldNames = reversedFieldNames;
+
     // NOTE: Make shure to use the same analyzer as in the crawler
     mAnalyzer = RegainToolkit.createAnalyzer(analyzerType, stopWordList,
             exclusionList, untokenizedFieldNames);
   }
 
+  /**
+   * Gets the names of the fields whose terms are also indexed reversed.
+   *
+   * @return The names of the fields with reversed terms.
+   * @throws RegainException If reading the index settings failed.
+   */
+  public Set<String> getReversedFieldNames() throws RegainException {
+    if (mAnalyzer == null) {
+      createAnalyzer();
+    }
+
+    return mReversedFieldNames;
+  }
+
   /**
    * Check if the index directory exists. If not,
    * @throws RegainException
@@ -274,6 +457,31 @@ public class IndexSearcherManager implements Closeable {
     }
   }
 
+  /**
+   * Checks for a new index in a thread of the update executor. The
+   * {@link DirectoryWatcher} thread is not blocked while the new searcher is
+   * warmed up, so the other indexes are updated in the meantime.
+   */
+  private void scheduleIndexUpdate() {
+    if (! mUpdateScheduled.compareAndSet(false, true)) {
+      // There already is an update of this index
+      return;
+    }
+
+    getUpdateExecutor().execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          checkForIndexUpdate();
+        } catch (Throwable thr) {
+          mLog.error("Updating index " + mIndexDir + " failed", thr);
+        } finally {
+          mUpdateScheduled.set(false);
+        }
+      }
+    });
+  }
+
   /**
    * Check if there is a new index available.
    * If so, prepare it by renaming the dirs - it will be opened at the next search.
@@ -284,6 +492,7 @@ public class IndexSearcherManager implements Closeable {
    * @throws RegainException If error during update of index.
    */
   private void checkForIndexUpdate() throws RegainException {
+    boolean indexSwapped = false;
     if (mNewIndexDir.exists()) {
       synchronized (this)
       {
@@ -293,7 +502,7 @@ public class IndexSearcherManager implements Closeable {
 
           // Recreate analyzer and field term cache on next use
           mAnalyzer = null;
-          mFieldTermHash = null;
+          mFieldTermHash.clear();
 
           // ---- Okay, now we can move the directories
 
@@ -315,20 +524,33 @@ public class IndexSearcherManager implements Closeable {
             throw new RegainException("Renaming " + mNewIndexDir + " to "
                     + mWorkingIndexDir + " failed!");
           }
+          indexSwapped = true;
+        }
+      }
+    }
 
-          try
-          {
-            if (mSearcherManager != null)
-              mSearcherManager.maybeRefresh();
-          }
-          catch (IOException e)
-          {
-            throw new RegainException("Refresh of lucene index failed.");
-          }
+    if (indexSwapped) {
+      // NOTE: The new searcher is opened (and warmed up) outside the lock, so
+      // the old searcher keeps answering the queries in the meantime
+      try
+      {
+        if (mSearcherManager != null)
+          mSearcherManager.maybeRefresh();
+      }
+      catch (IOException e)
+      {
+        throw new RegainException("Refresh of lucene index failed.");
+      }
 
-          System.out.println("Finished loading new index.");
-        }
+      synchronized (this) {
+        // The field values may have been read from the old searcher meanwhile
+        mFieldTermHash.clear();
       }
+
+      // The cached hits belong to the old index
+      QueryResultCache.getInstance().removeIndex(mIndexDir);
+
+      System.out.println("Finished loading new index.");
     }
   }
 
@@ -377,14 +599,102 @@ public class IndexSearcherManager implements Closeable {
   @Override
   public void close() throws IOException
   {
-    if (mIndexUpdateThread != null)
-      mIndexUpdateThread.close();
-    mIndexUpdateThread = null;
+    if (mNewIndexListener != null)
+      DirectoryWatcher.getInstance().removeDirectory(mNewIndexDir);
+    mNewIndexListener = null;
 
     mSearcherManager.close();
     mSearcherManager = null;
   }
 
+  /**
+   * Gets the executor that searches the indexes of a multi-index search
+   * concurrently.
+   *
+   * @return The executor for the index searches.
+   */
+  public static synchronized ExecutorService getSearchExecutor() {
+    if (mSearchExecutor == null) {
+      mSearchExecutor = createExecutor("IndexSearch", MAX_SEARCH_THREADS);
+    }
+    return mSearchExecutor;
+  }
+
+  /**
+   * Gets the executor that swaps the indexes and warms up their new searchers.
+   *
+   * @return The executor for index updates.
+   */
+  private static synchronized ExecutorService getUpdateExecutor() {
+    if (mUpdateExecutor == null) {
+      mUpdateExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+        private int mThreadCount = 0;
+
+        @Override
+        public synchronized Thread newThread(Runnable runnable) {
+          mThreadCount++;
+          Thread thread = new Thread(runnable, "IndexUpdate-" + mThreadCount);
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    return mUpdateExecutor;
+  }
+
+  /**
+   * Gets the executor that highlights the hits of a search concurrently.
+   *
+   * @return The executor for highlighting.
+   */
+  public static synchronized ExecutorService getHighlightExecutor() {
+    if (mHighlightExecutor == null) {
+      mHighlightExecutor = createExecutor("Highlight", MAX_HIGHLIGHT_THREADS);
+    }
+    return mHighlightExecutor;
+  }
+
+  /**
+   * Creates an executor with a limited number of daemon threads. A task that
+   * is submitted while all threads are busy runs in the submitting thread, so
+   * searches that are left out after their timeout can't make the number of
+   * threads grow.
+   *
+   * @param threadName The prefix of the thread names.
+   * @param maxThreads The maximum number of threads.
+   * @return The executor.
+   */
+  private static ExecutorService createExecutor(final String threadName, int maxThreads) {
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(maxThreads, maxThreads,
+        EXECUTOR_KEEP_ALIVE, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+        new ThreadFactory() {
+          private int mThreadCount = 0;
+
+          @Override
+          public synchronized Thread newThread(Runnable runnable) {
+            mThreadCount++;
+            Thread thread = new Thread(runnable, threadName + "-" + mThreadCount);
+            thread.setDaemon(true);
+            return thread;
+          }
+        },
+        new ThreadPoolExecutor.CallerRunsPolicy());
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  /**
+   * Gets the generation of a searcher. Every time the index is swapped, the
+   * new searcher gets a higher generation. The document numbers of two
+   * searchers with the same generation are the same.
+   *
+   * @param searcher A searcher returned by {@link #getIndexSearcher()}.
+   * @return The generation of the searcher.
+   */
+  public static long getGeneration(IndexSearcher searcher) {
+    return ((GenerationSearcher) searcher).mSearcherGeneration;
+  }
+
   public static void closeAll() throws IOException
   {
     for (Closeable indexManager : mIndexManagerHash.values())
@@ -393,6 +703,21 @@ public class IndexSearcherManager implements Closeable {
     }
     mIndexManagerHash.clear();
 
+    synchronized (IndexSearcherManager.class) {
+      if (mSearchExecutor != null) {
+        mSearchExecutor.shutdown();
+        mSearchExecutor = null;
+      }
+      if (mHighlightExecutor != null) {
+        mHighlightExecutor.shutdown();
+        mHighlightExecutor = null;
+      }
+      if (mUpdateExecutor != null) {
+        mUpdateExecutor.shutdown();
+        mUpdateExecutor = null;
+      }
+    }
+
     try
     {
       // Give the threads some time to shut down before returning
@@ -402,48 +727,23 @@ public class IndexSearcherManager implements Closeable {
   }
 
   /**
-   * WARNING: Thread Programming ahead.
-   * Every single line may have its importance.
-   *
+   * An IndexSearcher that knows its generation.
    */
-  private class IndexUpdateThread extends Thread implements Closeable
-  {
-    /**
-     * Nb of milliseconds between a check if a new index is available.
-     */
-    private static final int INDEX_UPDATE_THREAD_SLEEPTIME = 10000;
+  private static class GenerationSearcher extends IndexSearcher {
 
-    private volatile boolean quit = false;
-
-    @Override
-    public void run() {
-      // Do while no termination is requested
-      while (!quit)
-      {
-        // Check regularly for new indexes
-        try {
-          checkForIndexUpdate();
-        } catch (RegainException exc) {
-          System.out.println("Updating index failed!");
-          exc.printStackTrace(System.err);
-        }
-
-        // Wait some time (approx. 10 sec, but don't be disappointed if it's more or less)
-        try {
-          Thread.sleep(INDEX_UPDATE_THREAD_SLEEPTIME);
-        } catch (InterruptedException exc) {
-        }
-      }
-    }
+    /** The generation of this searcher. */
+    private long mSearcherGeneration;
 
     /**
-     * Request termination of thread.
-     * Will terminate as soon as possible.
+     * Creates a new instance of GenerationSearcher.
+     *
+     * @param reader The reader to search.
+     * @param generation The generation of this searcher.
      */
-    public void close()
-    {
-      quit = true;
-      interrupt(); // Wake him up if he's sleeping!
+    public GenerationSearcher(IndexReader reader, long generation) {
+      super(reader);
+      mSearcherGeneration = generation;
     }
+
   }
 }
@@ -0,0 +1,178 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004 Thomas Tesche, Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider <info@murfman.de>, Thomas Tesche <thtesche@gmail.com>
+ */
+package net.sf.regain.search;
+
+import java.io.IOException;
+
+import net.sf.regain.RegainToolkit;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.FilteredTermEnum;
+import org.apache.lucene.search.MultiTermQuery;
+import org.apache.lucene.search.WildcardTermEnum;
+import org.apache.lucene.util.ToStringUtils;
+
+/**
+ * A wildcard query with a leading wildcard (like <code>*bericht</code>) that
+ * finds the matching terms in the field with the reversed terms (see
+ * {@link RegainToolkit#getReversedFieldName(String)}).
+ * <p>
+ * The reversed pattern (<code>thcireb*</code>) starts with its literal part,
+ * so only the terms with this prefix are read instead of all terms of the
+ * field. The found terms are turned back and searched in the original field,
+ * so the hits, the scores and the highlighting are the same as for a normal
+ * wildcard query.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class ReversedWildcardQuery extends MultiTermQuery {
+
+  /** The wildcard term in the original field. */
+  private Term mTerm;
+
+
+  /**
+   * Creates a new instance of ReversedWildcardQuery.
+   *
+   * @param term The wildcard term in the original field.
+   */
+  public ReversedWildcardQuery(Term term) {
+    mTerm = term;
+  }
+
+
+  /**
+   * Gets the wildcard term in the original field.
+   *
+   * @return The wildcard term.
+   */
+  public Term getTerm() {
+    return mTerm;
+  }
+
+
+  /**
+   * {@inheritDoc }
+   */
+  @Override
+  protected FilteredTermEnum getEnum(IndexReader reader) throws IOException {
+    Term reversedTerm = new Term(RegainToolkit.getReversedFieldName(mTerm.field()),
+            RegainToolkit.reverseTerm(mTerm.text()));
+    return new ReversedTermEnum(new WildcardTermEnum(reader, reversedTerm), mTerm.field());
+  }
+
+
+  /**
+   * {@inheritDoc }
+   */
+  @Override
+  public String toString(String field) {
+    StringBuilder buffer = new StringBuilder();
+    if (! mTerm.field().equals(field)) {
+      buffer.append(mTerm.field()).append(':');
+    }
+    buffer.append(mTerm.text());
+    buffer.append(ToStringUtils.boost(getBoost()));
+    return buffer.toString();
+  }
+
+
+  /**
+   * {@inheritDoc }
+   */
+  @Override
+  public int hashCode() {
+    return 31 * super.hashCode() + mTerm.hashCode();
+  }
+
+
+  /**
+   * {@inheritDoc }
+   */
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (! super.equals(obj) || getClass() != obj.getClass()) {
+      return false;
+    }
+    return mTerm.equals(((ReversedWildcardQuery) obj).mTerm);
+  }
+
+
+  /**
+   * Enumerates the terms of a reversed field that match the reversed pattern
+   * and returns them turned back as terms of the original field.
+   */
+  private static class ReversedTermEnum extends FilteredTermEnum {
+
+    /** The name of the original field. */
+    private String mFieldName;
+
+
+    /**
+     * Creates a new instance of ReversedTermEnum.
+     *
+     * @param reversedEnum The matching terms of the reversed field.
+     * @param fieldName The name of the original field.
+     * @throws IOException If reading the terms failed.
+     */
+    public ReversedTermEnum(WildcardTermEnum reversedEnum, String fieldName)
+      throws IOException
+    {
+      mFieldName = fieldName;
+      setEnum(reversedEnum);
+    }
+
+
+    @Override
+    protected boolean termCompare(Term term) {
+      // The nested enum only returns matching terms
+      return true;
+    }
+
+
+    @Override
+    public float difference() {
+      return 1.0f;
+    }
+
+
+    @Override
+    protected boolean endEnum() {
+      return false;
+    }
+
+
+    @Override
+    public Term term() {
+      Term reversedTerm = super.term();
+      if (reversedTerm == null) {
+        return null;
+      }
+      return new Term(mFieldName, RegainToolkit.reverseTerm(reversedTerm.text()));
+    }
+
+  }
+
+}
@@ -0,0 +1,96 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004 Thomas Tesche, Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider <info@murfman.de>, Thomas Tesche <thtesche@gmail.com>
+ */
+package net.sf.regain.search;
+
+import java.util.Set;
+
+import net.sf.regain.RegainToolkit;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queryParser.ParseException;
+import org.apache.lucene.queryParser.QueryParser;
+import org.apache.lucene.search.Query;
+
+/**
+ * A query parser that searches wildcard terms with a leading wildcard (like
+ * <code>*bericht</code> or <code>*be?icht</code>) in the reversed terms of a
+ * field, if the index has them. See {@link ReversedWildcardQuery}.
+ * <p>
+ * Terms that start and end with a wildcard (like <code>*bericht*</code>) are
+ * searched as usual, because the reversed terms don't help there.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class ReversedWildcardQueryParser extends QueryParser {
+
+  /** The names of the fields whose terms are also indexed reversed. */
+  private Set<String> mReversedFieldNames;
+
+
+  /**
+   * Creates a new instance of ReversedWildcardQueryParser.
+   *
+   * @param field The default field to search in.
+   * @param analyzer The analyzer to use.
+   * @param reversedFieldNames The names of the fields whose terms are also
+   *        indexed reversed.
+   */
+  public ReversedWildcardQueryParser(String field, Analyzer analyzer,
+    Set<String> reversedFieldNames)
+  {
+    super(RegainToolkit.getLuceneVersion(), field, analyzer);
+    mReversedFieldNames = reversedFieldNames;
+    setAllowLeadingWildcard(true);
+  }
+
+
+  /**
+   * {@inheritDoc }
+   */
+  @Override
+  protected Query getWildcardQuery(String field, String termStr) throws ParseException {
+    if (mReversedFieldNames.contains(field) && termStr.length() > 1
+      && isWildcard(termStr.charAt(0)) && ! isWildcard(termStr.charAt(termStr.length() - 1)))
+    {
+      if (getLowercaseExpandedTerms()) {
+        termStr = termStr.toLowerCase(getLocale());
+      }
+      ReversedWildcardQuery query = new ReversedWildcardQuery(new Term(field, termStr));
+      query.setRewriteMethod(getMultiTermRewriteMethod());
+      return query;
+    }
+
+    return super.getWildcardQuery(field, termStr);
+  }
+
+
+  /**
+   * Gets whether a character is a wildcard.
+   *
+   * @param c The character to check.
+   * @return Whether the character is a wildcard.
+   */
+  private static boolean isWildcard(char c) {
+    return c == '*' || c == '?';
+  }
+
+}
@@ -60,4 +60,12 @@ public interface SearchConstants {
   /** The name of the parameter containing the maximum number of results to show. */
   public static final String PARAM_MAX_RESULTS = "maxresults";
 
+  /**
+   * The name of the parameter containing the cursor of the last hit of the
+   * previous page.
+   *
+   * @see net.sf.regain.search.results.SearchResults#getHitCursor(int)
+   */
+  public static final String PARAM_AFTER_HIT = "afterhit";
+
 }
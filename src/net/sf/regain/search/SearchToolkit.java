@@ -32,6 +32,7 @@ import java.util.zip.DataFormatException;
 
 import net.sf.regain.RegainException;
 import net.sf.regain.RegainToolkit;
+import net.sf.regain.search.access.GroupFilterCache;
 import net.sf.regain.search.access.SearchAccessController;
 import net.sf.regain.search.config.DefaultSearchConfigFactory;
 import net.sf.regain.search.config.IndexConfig;
@@ -46,14 +47,14 @@ import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.WhitespaceAnalyzer;
 import org.apache.lucene.document.CompressionTools;
 import org.apache.lucene.document.Document;
-import org.apache.lucene.index.Term;
 import org.apache.lucene.queryParser.ParseException;
 import org.apache.lucene.queryParser.QueryParser;
 import org.apache.lucene.search.BooleanClause.Occur;
 import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.Filter;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
-import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopScoreDocCollector;
 
 /**
@@ -71,6 +72,12 @@ public class SearchToolkit {
    * The name of the page context attribute that holds the SearchResults.
    */
   private static final String SEARCH_RESULTS_ATTR_NAME = "SearchResults";
+
+  /**
+   * The prefix of the session attributes where the groups of the user are
+   * cached. The name of the index is appended.
+   */
+  private static final String USER_GROUPS_SESSION_ATTR_NAME_PREFIX = "UserGroups.";
   /**
    * The name of the page context attribute that holds the IndexConfig array.
    */
@@ -437,9 +444,7 @@ public class SearchToolkit {
         throw new RegainException("Parsing of url lookup-query failed.", ex);
       }
       if (configArr[i].getSearchAccessController() != null) {
-        SearchAccessController accessController = configArr[i].getSearchAccessController();
-        String[] allGroups = accessController.getUserGroups(request);
-        RegainToolkit.checkGroupArray(accessController, allGroups);
+        String[] allGroups = getUserGroups(configArr[i], request);
         query = addAccessControlToQuery(query, allGroups);
       }
 
@@ -465,6 +470,36 @@ public class SearchToolkit {
     return false;
   }
 
+  /**
+   * Gets the groups the current user has reading rights for. The groups are
+   * cached in the session, so the SearchAccessController is only asked again
+   * when the cache time of the index is over.
+   *
+   * @param config The config of the index. Must have a SearchAccessController.
+   * @param request The page request to use for identifying the user.
+   * @return The groups of the current user.
+   * @throws RegainException If getting the groups failed.
+   */
+  public static String[] getUserGroups(IndexConfig config, PageRequest request)
+          throws RegainException {
+    String attrName = USER_GROUPS_SESSION_ATTR_NAME_PREFIX + config.getName();
+    long now = System.currentTimeMillis();
+    Object[] cached = (Object[]) request.getSessionAttribute(attrName);
+    if (cached != null && ((Long) cached[1]).longValue() > now) {
+      return (String[]) cached[0];
+    }
+
+    SearchAccessController accessController = config.getSearchAccessController();
+    String[] groupArr = accessController.getUserGroups(request);
+    RegainToolkit.checkGroupArray(accessController, groupArr);
+
+    long cacheTime = config.getUserGroupsCacheTime() * 1000L;
+    if (cacheTime > 0) {
+      request.setSessionAttribute(attrName, new Object[] { groupArr, now + cacheTime });
+    }
+    return groupArr;
+  }
+
   /**
    * Restrict query: only allow documents that have one group of allGroups (To be used together with SearchAccessController)
    *
@@ -473,9 +508,6 @@ public class SearchToolkit {
    * @return Modified Query
    */
   public static BooleanQuery addAccessControlToQuery(Query query, String[] allGroups) {
-    // Create a query that matches any group
-    BooleanQuery groupQuery = new BooleanQuery();
-
     // Not very logical behaviour, in my opinion: If no groups are returned by the SearchAccessController, all files are shown.
     // However, if one of the Controllers returns a group, then suddenly this super-admin-capability vanished.
     // Maybe allow "null" as Super-Admin, "empty array" as No-Permissions-At-All?
@@ -483,16 +515,17 @@ public class SearchToolkit {
       if (query instanceof BooleanQuery) {
         return (BooleanQuery) query;
       } else {
-        groupQuery.add(query, Occur.MUST);
-        return groupQuery;
+        BooleanQuery mainQuery = new BooleanQuery();
+        mainQuery.add(query, Occur.MUST);
+        return mainQuery;
       }
     }
 
-    for (String group : allGroups) {
-      // Add as OR
-      groupQuery.add(new TermQuery(new Term(RegainToolkit.FIELD_ACCESS_CONTROL_GROUPS, group)),
-              Occur.SHOULD);
-    }
+    // Create a query that matches any group. The documents of a group set are
+    // cached per index segment and the query doesn't add to the score.
+    Filter groupFilter = GroupFilterCache.getInstance().getFilter(allGroups);
+    ConstantScoreQuery groupQuery = new ConstantScoreQuery(groupFilter);
+    groupQuery.setBoost(0);
 
     // Create a main query that contains the group query and the search query
     // combined with AND
@@ -0,0 +1,56 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004 Thomas Tesche, Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider <info@murfman.de>, Thomas Tesche <thtesche@gmail.com>
+ */
+package net.sf.regain.search;
+
+import net.sf.regain.RegainException;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+
+/**
+ * Warms up the searcher of a new index before it is used for searching.
+ * <p>
+ * The first queries on a new index are slow, because the caches are empty.
+ * The {@link IndexSearcherManager} calls the warmer after an index update,
+ * so the queries of the users only see the new index when it is warm.
+ *
+ * @see DefaultSearcherWarmer
+ * @author Til Schneider, www.murfman.de
+ */
+public interface SearcherWarmer {
+
+  /**
+   * Warms up the searcher of a new index.
+   * <p>
+   * The searcher is not used for searching until this method returns.
+   *
+   * @param searcher The searcher of the new index.
+   * @param analyzer The analyzer of the new index.
+   * @param recentQueryArr The queries recently searched on the old index. The
+   *        newest query is the last.
+   * @throws RegainException If warming up failed. The new index is used
+   *         anyway.
+   */
+  public void warm(IndexSearcher searcher, Analyzer analyzer, Query[] recentQueryArr)
+    throws RegainException;
+
+}
@@ -0,0 +1,169 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004 Thomas Tesche, Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider <info@murfman.de>, Thomas Tesche <thtesche@gmail.com>
+ */
+package net.sf.regain.search.access;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import net.sf.regain.RegainToolkit;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.CachingWrapperFilter;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.QueryWrapperFilter;
+import org.apache.lucene.search.TermQuery;
+
+/**
+ * Caches the access control filters of the group sets of the users.
+ * <p>
+ * Most users share one of a few group sets. So the documents a group set may
+ * read are only determined once per index segment. The filters cache a bit
+ * set for every segment, so after an index update only the new segments are
+ * read again.
+ * <p>
+ * This class is thread-safe.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class GroupFilterCache {
+
+  /** The maximum number of group sets to cache filters for. */
+  private static final int MAX_ENTRY_COUNT = 200;
+
+  /** The singleton. */
+  private static GroupFilterCache mSingleton = new GroupFilterCache();
+
+  /** The filters of the group sets in access order. */
+  private Map<String, Filter> mFilterMap;
+
+  /** The number of group sets found in the cache. */
+  private long mHitCount;
+  /** The number of group sets not found in the cache. */
+  private long mMissCount;
+
+
+  /**
+   * Creates a new instance of GroupFilterCache.
+   */
+  private GroupFilterCache() {
+    mFilterMap = new LinkedHashMap<String, Filter>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Filter> eldest) {
+        return size() > MAX_ENTRY_COUNT;
+      }
+    };
+  }
+
+
+  /**
+   * Gets the singleton.
+   *
+   * @return The group filter cache.
+   */
+  public static GroupFilterCache getInstance() {
+    return mSingleton;
+  }
+
+
+  /**
+   * Creates the canonical form of a group set. The order and duplicates of
+   * the groups don't matter.
+   *
+   * @param groupArr The groups.
+   * @return The sorted groups without duplicates separated by blanks.
+   */
+  public static String getGroupSetKey(String[] groupArr) {
+    String[] sortedArr = groupArr.clone();
+    Arrays.sort(sortedArr);
+
+    StringBuilder key = new StringBuilder();
+    for (int i = 0; i < sortedArr.length; i++) {
+      if (i == 0 || ! sortedArr[i].equals(sortedArr[i - 1])) {
+        if (key.length() > 0) {
+          key.append(' ');
+        }
+        key.append(sortedArr[i]);
+      }
+    }
+    return key.toString();
+  }
+
+
+  /**
+   * Gets the filter that only allows documents that have one of the groups.
+   *
+   * @param groupArr The groups of the user. Must not be empty.
+   * @return The filter.
+   */
+  public synchronized Filter getFilter(String[] groupArr) {
+    String key = getGroupSetKey(groupArr);
+    Filter filter = mFilterMap.get(key);
+    if (filter != null) {
+      mHitCount++;
+      return filter;
+    }
+
+    mMissCount++;
+    BooleanQuery groupQuery = new BooleanQuery();
+    for (String group : key.split(" ")) {
+      // Add as OR
+      groupQuery.add(new TermQuery(new Term(RegainToolkit.FIELD_ACCESS_CONTROL_GROUPS, group)),
+              Occur.SHOULD);
+    }
+    filter = new CachingWrapperFilter(new QueryWrapperFilter(groupQuery));
+    mFilterMap.put(key, filter);
+    return filter;
+  }
+
+
+  /**
+   * Gets the number of group sets found in the cache.
+   *
+   * @return The number of cache hits.
+   */
+  public synchronized long getHitCount() {
+    return mHitCount;
+  }
+
+
+  /**
+   * Gets the number of group sets not found in the cache.
+   *
+   * @return The number of cache misses.
+   */
+  public synchronized long getMissCount() {
+    return mMissCount;
+  }
+
+
+  /**
+   * Gets the number of cached filters.
+   *
+   * @return The number of entries.
+   */
+  public synchronized int getEntryCount() {
+    return mFilterMap.size();
+  }
+
+}
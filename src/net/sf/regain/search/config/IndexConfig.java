@@ -64,6 +64,18 @@ public class IndexConfig {
   /** The sorting options for the results. */
   private SortingOption[] mSortingOptions;
   private boolean mShowSortFieldContent;
+  /** The time in milliseconds to wait for this index in a multi-index search. */
+  private int mSearchTimeout;
+  /** The time in seconds the groups of a user are cached in the session. */
+  private int mUserGroupsCacheTime;
+  /** The queries to run when the searcher of a new index is warmed up. */
+  private String[] mWarmUpQueries = new String[0];
+  /** The number of recent queries to replay when warming up. */
+  private int mWarmUpRecentQueryCount;
+  /** Whether all index files should be read when warming up. */
+  private boolean mWarmUpTouchFiles;
+  /** The fields whose values are counted for the hits of a search. */
+  private String[] mFacetFieldList = new String[] { "mimetype" };
 
   /**
    * Creates a new instance of IndexConfig.
@@ -271,6 +283,124 @@ public class IndexConfig {
     this.mHasParent = true;
   }
 
+  /**
+   * Gets the time to wait for this index when several indexes are searched.
+   * If the index is slower, the search results don't contain its hits.
+   *
+   * @return The time in milliseconds to wait for this index. 0 means that
+   *         there is no timeout.
+   */
+  public int getSearchTimeout() {
+    return mSearchTimeout;
+  }
+
+  /**
+   * Sets the time to wait for this index when several indexes are searched.
+   *
+   * @param searchTimeout The time in milliseconds to wait for this index. 0
+   *        means that there is no timeout.
+   */
+  public void setSearchTimeout(int searchTimeout) {
+    this.mSearchTimeout = searchTimeout;
+  }
+
+  /**
+   * Gets the time the groups of a user are cached in the session. Within this
+   * time the SearchAccessController is not asked again.
+   *
+   * @return The time in seconds. 0 means that the groups are not cached.
+   */
+  public int getUserGroupsCacheTime() {
+    return mUserGroupsCacheTime;
+  }
+
+  /**
+   * Sets the time the groups of a user are cached in the session.
+   *
+   * @param userGroupsCacheTime The time in seconds. 0 means that the groups
+   *        are not cached.
+   */
+  public void setUserGroupsCacheTime(int userGroupsCacheTime) {
+    this.mUserGroupsCacheTime = userGroupsCacheTime;
+  }
+
+  /**
+   * Gets the queries to run when the searcher of a new index is warmed up.
+   *
+   * @return The warm-up queries in the query syntax of the users.
+   */
+  public String[] getWarmUpQueries() {
+    return mWarmUpQueries;
+  }
+
+  /**
+   * Sets the queries to run when the searcher of a new index is warmed up.
+   *
+   * @param warmUpQueries The warm-up queries in the query syntax of the users.
+   */
+  public void setWarmUpQueries(String[] warmUpQueries) {
+    this.mWarmUpQueries = warmUpQueries;
+  }
+
+  /**
+   * Gets the number of recently searched queries to replay when the searcher
+   * of a new index is warmed up.
+   *
+   * @return The number of recent queries.
+   */
+  public int getWarmUpRecentQueryCount() {
+    return mWarmUpRecentQueryCount;
+  }
+
+  /**
+   * Sets the number of recently searched queries to replay when the searcher
+   * of a new index is warmed up.
+   *
+   * @param warmUpRecentQueryCount The number of recent queries.
+   */
+  public void setWarmUpRecentQueryCount(int warmUpRecentQueryCount) {
+    this.mWarmUpRecentQueryCount = warmUpRecentQueryCount;
+  }
+
+  /**
+   * Gets whether all files of a new index should be read once when its
+   * searcher is warmed up, so the operating system caches them.
+   *
+   * @return Whether the index files should be read.
+   */
+  public boolean getWarmUpTouchFiles() {
+    return mWarmUpTouchFiles;
+  }
+
+  /**
+   * Sets whether all files of a new index should be read once when its
+   * searcher is warmed up.
+   *
+   * @param warmUpTouchFiles Whether the index files should be read.
+   */
+  public void setWarmUpTouchFiles(boolean warmUpTouchFiles) {
+    this.mWarmUpTouchFiles = warmUpTouchFiles;
+  }
+
+  /**
+   * Gets the fields whose values are counted for the hits of a search. The
+   * values of these fields are counted together in one pass over the hits.
+   *
+   * @return The names of the facet fields.
+   */
+  public String[] getFacetFieldList() {
+    return mFacetFieldList;
+  }
+
+  /**
+   * Sets the fields whose values are counted for the hits of a search.
+   *
+   * @param facetFieldList The names of the facet fields.
+   */
+  public void setFacetFieldList(String[] facetFieldList) {
+    this.mFacetFieldList = facetFieldList;
+  }
+
   /**
    * @return the sortingOptions
    */
@@ -154,6 +154,44 @@ public class XmlSearchConfig implements SearchConfig {
         }
       }
 
+      // Read the search timeout
+      node = XmlToolkit.getCascadedChild(indexNode, defaultNode, "searchTimeout");
+      int searchTimeout = (node == null) ? 10000 : XmlToolkit.getTextAsInt(node);
+
+      // Read the time the groups of a user are cached
+      node = XmlToolkit.getCascadedChild(indexNode, defaultNode, "userGroupsCacheTime");
+      int userGroupsCacheTime = (node == null) ? 300 : XmlToolkit.getTextAsInt(node);
+
+      node = XmlToolkit.getCascadedChild(indexNode, defaultNode, "facetFieldList");
+      String[] facetFieldList = new String[] { "mimetype" };
+      if (node != null) {
+        facetFieldList = XmlToolkit.getTextAsWordList(node, false);
+        if (facetFieldList == null) {
+          facetFieldList = new String[0];
+        }
+      }
+
+      // Read the warm-up settings
+      String[] warmUpQueries = new String[0];
+      int warmUpRecentQueryCount = 20;
+      boolean warmUpTouchFiles = false;
+      node = XmlToolkit.getCascadedChild(indexNode, defaultNode, "warmUp");
+      if (node != null) {
+        Node[] queryNodeArr = XmlToolkit.getChildArr(node, "query");
+        warmUpQueries = new String[queryNodeArr.length];
+        for (int i = 0; i < queryNodeArr.length; i++) {
+          warmUpQueries[i] = XmlToolkit.getText(queryNodeArr[i], true);
+        }
+        Node countNode = XmlToolkit.getChild(node, "recentQueryCount");
+        if (countNode != null) {
+          warmUpRecentQueryCount = XmlToolkit.getTextAsInt(countNode);
+        }
+        Node touchNode = XmlToolkit.getChild(node, "touchFiles");
+        if (touchNode != null) {
+          warmUpTouchFiles = XmlToolkit.getTextAsBoolean(touchNode);
+        }
+      }
+
       // Create the index config
       IndexConfig indexConfig = new IndexConfig(indexName, directory,
               openInNewWindowRegex, useFileToHttpBridge, searchFieldList, rewriteRules,
@@ -161,6 +199,12 @@ public class XmlSearchConfig implements SearchConfig {
               searchAccessControllerConfig, highlighting, sortingOptions,
               showSortFieldContent);
       indexConfig.setParent(isParent);
+      indexConfig.setSearchTimeout(searchTimeout);
+      indexConfig.setUserGroupsCacheTime(userGroupsCacheTime);
+      indexConfig.setWarmUpQueries(warmUpQueries);
+      indexConfig.setWarmUpRecentQueryCount(warmUpRecentQueryCount);
+      indexConfig.setWarmUpTouchFiles(warmUpTouchFiles);
+      indexConfig.setFacetFieldList(facetFieldList);
       if (null != parentName && parentName.length() > 0) {
         indexConfig.setParentName(parentName);
       }
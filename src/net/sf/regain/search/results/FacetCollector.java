@@ -0,0 +1,173 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004 Thomas Tesche, Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider <info@murfman.de>, Thomas Tesche <thtesche@gmail.com>
+ */
+package net.sf.regain.search.results;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.Scorer;
+
+/**
+ * Counts the values of one or more fields for all hits of a query in one pass.
+ * <p>
+ * Within a segment the values are counted by ordinal in an int array (see
+ * {@link FacetOrdinals}). The counts are added by value when the next segment
+ * starts, so the values have to be compared only once per segment.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class FacetCollector extends Collector {
+
+  /** The names of the fields to count. */
+  private String[] mFieldArr;
+  /** The counts by value (value) for each field (key). */
+  private HashMap<String, HashMap<String, Integer>> mCountHash;
+  /** The ordinals of the current segment for each field. */
+  private FacetOrdinals[] mSegmentOrdinalsArr;
+  /** The counts by ordinal of the current segment for each field. */
+  private int[][] mSegmentCountArr;
+
+
+  /**
+   * Creates a new instance of FacetCollector.
+   *
+   * @param fieldArr The names of the fields to count.
+   */
+  public FacetCollector(String[] fieldArr) {
+    mFieldArr = fieldArr;
+    mCountHash = new HashMap<String, HashMap<String, Integer>>();
+    for (int i = 0; i < fieldArr.length; i++) {
+      mCountHash.put(fieldArr[i], new HashMap<String, Integer>());
+    }
+  }
+
+
+  /**
+   * {@inheritDoc }
+   */
+  @Override
+  public void setScorer(Scorer scorer) {
+    // The scores are not needed
+  }
+
+
+  /**
+   * {@inheritDoc }
+   */
+  @Override
+  public void setNextReader(IndexReader reader, int docBase) throws IOException {
+    addSegmentCounts();
+
+    mSegmentOrdinalsArr = new FacetOrdinals[mFieldArr.length];
+    mSegmentCountArr = new int[mFieldArr.length][];
+    for (int i = 0; i < mFieldArr.length; i++) {
+      mSegmentOrdinalsArr[i] = FacetOrdinals.getInstance(reader, mFieldArr[i]);
+      mSegmentCountArr[i] = new int[mSegmentOrdinalsArr[i].getValueCount()];
+    }
+  }
+
+
+  /**
+   * {@inheritDoc }
+   */
+  @Override
+  public void collect(int doc) {
+    for (int i = 0; i < mSegmentOrdinalsArr.length; i++) {
+      mSegmentOrdinalsArr[i].countValues(doc, mSegmentCountArr[i]);
+    }
+  }
+
+
+  /**
+   * {@inheritDoc }
+   */
+  @Override
+  public boolean acceptsDocsOutOfOrder() {
+    return true;
+  }
+
+
+  /**
+   * Adds the counts of the current segment to the counts by value.
+   */
+  private void addSegmentCounts() {
+    if (mSegmentOrdinalsArr == null) {
+      return;
+    }
+
+    for (int i = 0; i < mFieldArr.length; i++) {
+      HashMap<String, Integer> countMap = mCountHash.get(mFieldArr[i]);
+      int[] countArr = mSegmentCountArr[i];
+      for (int ord = 0; ord < countArr.length; ord++) {
+        if (countArr[ord] > 0) {
+          String value = mSegmentOrdinalsArr[i].getValue(ord);
+          Integer count = countMap.get(value);
+          countMap.put(value, (count == null) ? countArr[ord] : count + countArr[ord]);
+        }
+      }
+    }
+
+    mSegmentOrdinalsArr = null;
+    mSegmentCountArr = null;
+  }
+
+
+  /**
+   * Gets the counted values of a field. Must be called after the search.
+   *
+   * @param field The name of the field.
+   * @return The number of hits (value) for each value of the field (key),
+   *         sorted by descending count. Values without hits are not
+   *         contained.
+   */
+  public Map<String, Integer> getCounts(String field) {
+    addSegmentCounts();
+
+    HashMap<String, Integer> countMap = mCountHash.get(field);
+    if (countMap == null) {
+      throw new IllegalArgumentException("Field '" + field + "' was not counted");
+    }
+
+    List<Map.Entry<String, Integer>> entryList =
+      new ArrayList<Map.Entry<String, Integer>>(countMap.entrySet());
+    Collections.sort(entryList, new Comparator<Map.Entry<String, Integer>>() {
+      public int compare(Map.Entry<String, Integer> e1, Map.Entry<String, Integer> e2) {
+        int diff = e2.getValue().compareTo(e1.getValue());
+        return (diff != 0) ? diff : e1.getKey().compareTo(e2.getKey());
+      }
+    });
+
+    LinkedHashMap<String, Integer> sortedMap = new LinkedHashMap<String, Integer>();
+    for (Map.Entry<String, Integer> entry : entryList) {
+      sortedMap.put(entry.getKey(), entry.getValue());
+    }
+    return sortedMap;
+  }
+
+}
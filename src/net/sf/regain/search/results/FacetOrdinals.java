@@ -0,0 +1,188 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004 Thomas Tesche, Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider <info@murfman.de>, Thomas Tesche <thtesche@gmail.com>
+ */
+package net.sf.regain.search.results;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.index.TermEnum;
+
+/**
+ * The values of a field in one index segment and which documents have them.
+ * <p>
+ * Every distinct value gets an ordinal (its position in the sorted values).
+ * So the values of the hits can be counted in an int array. A document may
+ * have several values.
+ * <p>
+ * The ordinals are created once per segment and field and are cached as long
+ * as the segment is used. So after an index update only the new segments are
+ * read.
+ *
+ * @see FacetCollector
+ * @author Til Schneider, www.murfman.de
+ */
+public class FacetOrdinals {
+
+  /**
+   * The ordinals (value, Map of field name to FacetOrdinals) by the core cache
+   * key of the segment (key).
+   */
+  private static final Map<Object, Map<String, FacetOrdinals>> mCache =
+    new WeakHashMap<Object, Map<String, FacetOrdinals>>();
+
+  /** The distinct values of the field sorted alphabetically. */
+  private String[] mValueArr;
+  /**
+   * The start of the ordinals of each document in {@link #mOrdinalArr}. The
+   * ordinals of document <code>doc</code> are between
+   * <code>mDocStartArr[doc]</code> (inclusive) and
+   * <code>mDocStartArr[doc + 1]</code> (exclusive).
+   */
+  private int[] mDocStartArr;
+  /** The ordinals of all documents. */
+  private int[] mOrdinalArr;
+
+
+  /**
+   * Reads the ordinals of a field from a segment.
+   *
+   * @param reader The reader of the segment.
+   * @param field The name of the field.
+   * @throws IOException If reading the terms failed.
+   */
+  private FacetOrdinals(IndexReader reader, String field) throws IOException {
+    ArrayList<String> valueList = new ArrayList<String>();
+    int maxDoc = reader.maxDoc();
+    mDocStartArr = new int[maxDoc + 1];
+
+    // Pass 1: Read the values and count the values of each document
+    TermEnum termEnum = reader.terms(new Term(field, ""));
+    TermDocs termDocs = reader.termDocs();
+    try {
+      for (Term term = termEnum.term(); term != null && term.field().equals(field);
+        term = termEnum.next() ? termEnum.term() : null)
+      {
+        valueList.add(term.text());
+        termDocs.seek(termEnum);
+        while (termDocs.next()) {
+          mDocStartArr[termDocs.doc() + 1]++;
+        }
+      }
+
+      mValueArr = valueList.toArray(new String[valueList.size()]);
+      for (int doc = 0; doc < maxDoc; doc++) {
+        mDocStartArr[doc + 1] += mDocStartArr[doc];
+      }
+
+      // Pass 2: Fill in the ordinals
+      mOrdinalArr = new int[mDocStartArr[maxDoc]];
+      int[] posArr = new int[maxDoc];
+      for (int ord = 0; ord < mValueArr.length; ord++) {
+        termDocs.seek(new Term(field, mValueArr[ord]));
+        while (termDocs.next()) {
+          int doc = termDocs.doc();
+          mOrdinalArr[mDocStartArr[doc] + posArr[doc]] = ord;
+          posArr[doc]++;
+        }
+      }
+    }
+    finally {
+      termDocs.close();
+      termEnum.close();
+    }
+  }
+
+
+  /**
+   * Gets the ordinals of a field in a segment.
+   *
+   * @param reader The reader of the segment.
+   * @param field The name of the field.
+   * @return The ordinals.
+   * @throws IOException If reading the terms failed.
+   */
+  public static FacetOrdinals getInstance(IndexReader reader, String field)
+    throws IOException
+  {
+    Object key = reader.getCoreCacheKey();
+    Map<String, FacetOrdinals> fieldMap;
+    synchronized (mCache) {
+      fieldMap = mCache.get(key);
+      if (fieldMap == null) {
+        fieldMap = new HashMap<String, FacetOrdinals>();
+        mCache.put(key, fieldMap);
+      }
+    }
+
+    // NOTE: The ordinals are read outside the cache lock, so other segments
+    //       don't have to wait
+    synchronized (fieldMap) {
+      FacetOrdinals ordinals = fieldMap.get(field);
+      if (ordinals == null) {
+        ordinals = new FacetOrdinals(reader, field);
+        fieldMap.put(field, ordinals);
+      }
+      return ordinals;
+    }
+  }
+
+
+  /**
+   * Gets the number of distinct values.
+   *
+   * @return The number of values.
+   */
+  public int getValueCount() {
+    return mValueArr.length;
+  }
+
+
+  /**
+   * Gets the value of an ordinal.
+   *
+   * @param ordinal The ordinal.
+   * @return The value.
+   */
+  public String getValue(int ordinal) {
+    return mValueArr[ordinal];
+  }
+
+
+  /**
+   * Adds the values of a document to the counts.
+   *
+   * @param doc The document number within the segment.
+   * @param countArr The counts by ordinal.
+   */
+  public void countValues(int doc, int[] countArr) {
+    int end = mDocStartArr[doc + 1];
+    for (int i = mDocStartArr[doc]; i < end; i++) {
+      countArr[mOrdinalArr[i]]++;
+    }
+  }
+
+}
@@ -0,0 +1,330 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004 Thomas Tesche, Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider <info@murfman.de>, Thomas Tesche <thtesche@gmail.com>
+ */
+package net.sf.regain.search.results;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.lucene.search.ScoreDoc;
+
+/**
+ * Caches the hits of search queries, so repeated queries and clicks on the
+ * result pages don't run the query again.
+ * <p>
+ * The key of an entry contains the generation of the searchers of all
+ * searched indexes (see
+ * {@link net.sf.regain.search.IndexSearcherManager#getGeneration(org.apache.lucene.search.IndexSearcher)}).
+ * So a query on a new index never finds the hits of the old index. The
+ * entries of an old index are removed when the index is swapped. If the
+ * cache holds too many entries or hits, the least recently used entries are
+ * removed.
+ * <p>
+ * This class is thread-safe.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class QueryResultCache {
+
+  /** The maximum number of entries. */
+  private static final int MAX_ENTRY_COUNT = 1000;
+  /** The maximum number of hits of all entries. */
+  private static final int MAX_HIT_COUNT = 500000;
+
+  /** The singleton. */
+  private static QueryResultCache mSingleton = new QueryResultCache();
+
+  /** The entries in access order. */
+  private LinkedHashMap<String, Entry> mEntryMap;
+  /** The number of hits of all entries. */
+  private int mCachedHitCount;
+
+  /** The number of queries found in the cache. */
+  private long mHitCount;
+  /** The number of queries not found in the cache. */
+  private long mMissCount;
+  /** The number of entries removed because the cache was full. */
+  private long mEvictionCount;
+  /** The number of entries removed because their index was swapped. */
+  private long mInvalidationCount;
+
+
+  /**
+   * Creates a new instance of QueryResultCache.
+   */
+  private QueryResultCache() {
+    mEntryMap = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+  }
+
+
+  /**
+   * Gets the singleton.
+   *
+   * @return The query result cache.
+   */
+  public static QueryResultCache getInstance() {
+    return mSingleton;
+  }
+
+
+  /**
+   * Creates the key of a query.
+   *
+   * @param queryText The normalized query text. Contains the access control
+   *        and mime type clauses.
+   * @param sortOrder The sort order.
+   * @param indexDirArr The directories of the searched indexes.
+   * @param generationArr The generations of the searchers of the indexes.
+   * @return The key.
+   */
+  public static String createKey(String queryText, String sortOrder,
+    String[] indexDirArr, long[] generationArr)
+  {
+    StringBuilder key = new StringBuilder(queryText);
+    key.append('\n').append(sortOrder);
+    for (int i = 0; i < indexDirArr.length; i++) {
+      key.append('\n').append(indexDirArr[i]).append('@').append(generationArr[i]);
+    }
+    return key.toString();
+  }
+
+
+  /**
+   * Gets the hits of a query.
+   *
+   * @param key The key of the query.
+   * @param numHits The number of hits needed.
+   * @return The cached hits or <code>null</code> if the query is not in the
+   *         cache or if the cache has less hits than needed.
+   */
+  public synchronized Entry get(String key, int numHits) {
+    Entry entry = mEntryMap.get(key);
+    if (entry != null && entry.covers(numHits)) {
+      mHitCount++;
+      return entry;
+    }
+    mMissCount++;
+    return null;
+  }
+
+
+  /**
+   * Puts the hits of a query into the cache.
+   *
+   * @param key The key of the query.
+   * @param indexDirArr The directories of the searched indexes.
+   * @param hits The collected hits.
+   * @param totalHits The total number of hits.
+   */
+  public synchronized void put(String key, String[] indexDirArr,
+    ScoreDoc[] hits, int totalHits)
+  {
+    if (hits.length > MAX_HIT_COUNT) {
+      return;
+    }
+
+    Entry entry = new Entry(indexDirArr, hits, totalHits);
+    Entry oldEntry = mEntryMap.put(key, entry);
+    if (oldEntry != null) {
+      mCachedHitCount -= oldEntry.mDocArr.length;
+    }
+    mCachedHitCount += hits.length;
+
+    Iterator<Entry> iter = mEntryMap.values().iterator();
+    while ((mEntryMap.size() > MAX_ENTRY_COUNT || mCachedHitCount > MAX_HIT_COUNT)
+      && iter.hasNext())
+    {
+      Entry eldest = iter.next();
+      iter.remove();
+      mCachedHitCount -= eldest.mDocArr.length;
+      mEvictionCount++;
+    }
+  }
+
+
+  /**
+   * Removes all entries of an index. Called when the index was swapped.
+   *
+   * @param indexDir The directory of the index.
+   */
+  public synchronized void removeIndex(String indexDir) {
+    Iterator<Entry> iter = mEntryMap.values().iterator();
+    while (iter.hasNext()) {
+      Entry entry = iter.next();
+      for (int i = 0; i < entry.mIndexDirArr.length; i++) {
+        if (entry.mIndexDirArr[i].equals(indexDir)) {
+          iter.remove();
+          mCachedHitCount -= entry.mDocArr.length;
+          mInvalidationCount++;
+          break;
+        }
+      }
+    }
+  }
+
+
+  /**
+   * Gets the number of queries found in the cache.
+   *
+   * @return The number of cache hits.
+   */
+  public synchronized long getHitCount() {
+    return mHitCount;
+  }
+
+
+  /**
+   * Gets the number of queries not found in the cache.
+   *
+   * @return The number of cache misses.
+   */
+  public synchronized long getMissCount() {
+    return mMissCount;
+  }
+
+
+  /**
+   * Gets the ratio of the queries found in the cache.
+   *
+   * @return The hit ratio (between 0 and 1).
+   */
+  public synchronized double getHitRatio() {
+    long lookups = mHitCount + mMissCount;
+    return (lookups == 0) ? 0 : (double) mHitCount / lookups;
+  }
+
+
+  /**
+   * Gets the number of entries removed because the cache was full.
+   *
+   * @return The number of evictions.
+   */
+  public synchronized long getEvictionCount() {
+    return mEvictionCount;
+  }
+
+
+  /**
+   * Gets the number of entries removed because their index was swapped.
+   *
+   * @return The number of invalidations.
+   */
+  public synchronized long getInvalidationCount() {
+    return mInvalidationCount;
+  }
+
+
+  /**
+   * Gets the number of entries.
+   *
+   * @return The number of entries.
+   */
+  public synchronized int getEntryCount() {
+    return mEntryMap.size();
+  }
+
+
+  /**
+   * Gets the statistics of the cache.
+   *
+   * @return The statistics.
+   */
+  @Override
+  public synchronized String toString() {
+    return "Query result cache: " + mEntryMap.size() + " entries with "
+      + mCachedHitCount + " hits, " + mHitCount + " hits, " + mMissCount
+      + " misses (" + Math.round(getHitRatio() * 100) + "%), "
+      + mEvictionCount + " evictions, " + mInvalidationCount + " invalidations";
+  }
+
+
+  /**
+   * The hits of a query.
+   */
+  public static class Entry {
+
+    /** The directories of the searched indexes. */
+    private String[] mIndexDirArr;
+    /** The document numbers of the hits. */
+    private int[] mDocArr;
+    /** The scores of the hits. */
+    private float[] mScoreArr;
+    /** The total number of hits. */
+    private int mTotalHits;
+
+
+    /**
+     * Creates a new instance of Entry.
+     *
+     * @param indexDirArr The directories of the searched indexes.
+     * @param hits The collected hits.
+     * @param totalHits The total number of hits.
+     */
+    Entry(String[] indexDirArr, ScoreDoc[] hits, int totalHits) {
+      mIndexDirArr = indexDirArr;
+      mDocArr = new int[hits.length];
+      mScoreArr = new float[hits.length];
+      for (int i = 0; i < hits.length; i++) {
+        mDocArr[i] = hits[i].doc;
+        mScoreArr[i] = hits[i].score;
+      }
+      mTotalHits = totalHits;
+    }
+
+
+    /**
+     * Gets whether this entry has enough hits.
+     *
+     * @param numHits The number of hits needed.
+     * @return Whether this entry has enough hits.
+     */
+    boolean covers(int numHits) {
+      return (mDocArr.length >= numHits) || (mDocArr.length >= mTotalHits);
+    }
+
+
+    /**
+     * Gets the hits.
+     *
+     * @param numHits The maximum number of hits to return.
+     * @return The first hits.
+     */
+    public ScoreDoc[] getHits(int numHits) {
+      ScoreDoc[] hits = new ScoreDoc[Math.min(numHits, mDocArr.length)];
+      for (int i = 0; i < hits.length; i++) {
+        hits[i] = new ScoreDoc(mDocArr[i], mScoreArr[i]);
+      }
+      return hits;
+    }
+
+
+    /**
+     * Gets the total number of hits.
+     *
+     * @return The total number of hits.
+     */
+    public int getTotalHits() {
+      return mTotalHits;
+    }
+
+  }
+
+}
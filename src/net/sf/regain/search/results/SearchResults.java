@@ -20,6 +20,8 @@
  */
 package net.sf.regain.search.results;
 
+import java.util.Map;
+
 import net.sf.regain.RegainException;
 
 import org.apache.lucene.document.Document;
@@ -34,11 +36,22 @@ public interface SearchResults {
 
   /**
    * Gets the number of hits the search had.
+   * <p>
+   * Only the hits of the requested page are collected, so only these may be
+   * read. The number of hits is counted separately.
    *
    * @return the number of hits the search had.
    */
   public int getHitCount();
 
+  /**
+   * Gets whether the results are incomplete. This is the case if several
+   * indexes were searched and one of them didn't answer in time.
+   *
+   * @return Whether the results are incomplete.
+   */
+  public boolean isPartialResult();
+
   /**
    * Gets the number of documents in the in index.
    *
@@ -68,6 +81,17 @@ public interface SearchResults {
    */
   public float getHitScore(int index) throws RegainException;
 
+  /**
+   * Gets the cursor of a hit. If the cursor of the last hit of a page is
+   * passed as parameter <code>afterhit</code> to the next page, the next
+   * page only has to collect its own hits.
+   *
+   * @param index The index of the hit.
+   * @return The cursor of the hit or <code>null</code> if the search can't
+   *         continue after a hit (e.g. when sorting by a field).
+   */
+  public String getHitCursor(int index);
+
   /**
    * Gets the url from a hit and rewrites it according to the rewrite rules
    * specified in the index config.
@@ -128,6 +152,16 @@ public interface SearchResults {
    */
   public void highlightHitDocument(int index) throws RegainException;
 
+  /**
+   * Highlights fields in the documents of several hits. Hits that were
+   * highlighted already are skipped.
+   *
+   * @param fromIndex The index of the first hit.
+   * @param toIndex The index of the last hit.
+   * @throws RegainException If highlighting failed.
+   */
+  public void highlightHitDocuments(int fromIndex, int toIndex) throws RegainException;
+
   /**
    * Gets whether the search terms should be highlighted
    *
@@ -144,4 +178,16 @@ public interface SearchResults {
    */
   public void shortenSummary(int index) throws RegainException;
 
+  /**
+   * Gets how many hits have each value of a field. The values of all facet
+   * fields configured for the index are counted together when the first
+   * field is asked for.
+   *
+   * @param field The name of the field. Should be untokenized.
+   * @return The number of hits (value) for each value of the field (key),
+   *         sorted by descending count.
+   * @throws RegainException If counting the values failed.
+   */
+  public Map<String, Integer> getFacetCounts(String field) throws RegainException;
+
 }
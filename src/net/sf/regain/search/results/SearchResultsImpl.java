@@ -24,14 +24,26 @@ import java.io.IOException;
 import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import net.sf.regain.RegainException;
 import net.sf.regain.RegainToolkit;
 import net.sf.regain.search.IndexSearcherManager;
+import net.sf.regain.search.ReversedWildcardQueryParser;
+import net.sf.regain.search.SearchConstants;
 import net.sf.regain.search.SearchToolkit;
-import net.sf.regain.search.access.SearchAccessController;
 import net.sf.regain.search.config.IndexConfig;
 import net.sf.regain.util.sharedtag.PageRequest;
 import org.apache.commons.collections.Factory;
@@ -45,22 +57,35 @@ import org.apache.lucene.document.Field;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.MultiReader;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermFreqVector;
+import org.apache.lucene.index.TermPositionVector;
 import org.apache.lucene.queryParser.ParseException;
 import org.apache.lucene.queryParser.QueryParser;
 import org.apache.lucene.search.BooleanClause.Occur;
 import org.apache.lucene.search.BooleanQuery;
-import org.apache.lucene.search.FieldValueHitQueue;
+import org.apache.lucene.search.Collector;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MultiCollector;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.TermQuery;
-import org.apache.lucene.search.TopDocsCollector;
+import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.search.TopFieldCollector;
+import org.apache.lucene.search.TopFieldDocs;
+import org.apache.lucene.search.TopScoreDocCollector;
 import org.apache.lucene.search.WildcardQuery;
 import org.apache.lucene.search.highlight.Highlighter;
+import org.apache.lucene.search.highlight.InvalidTokenOffsetsException;
 import org.apache.lucene.search.highlight.QueryScorer;
+import org.apache.lucene.search.highlight.SimpleHTMLEncoder;
 import org.apache.lucene.search.highlight.SimpleHTMLFormatter;
+import org.apache.lucene.search.vectorhighlight.FastVectorHighlighter;
+import org.apache.lucene.search.vectorhighlight.FieldQuery;
+import org.apache.lucene.search.vectorhighlight.FragListBuilder;
+import org.apache.lucene.search.vectorhighlight.ScoreOrderFragmentsBuilder;
+import org.apache.lucene.search.vectorhighlight.SimpleFragListBuilder;
+import org.apache.lucene.search.vectorhighlight.SingleFragListBuilder;
 import org.apache.regexp.RE;
 import org.apache.regexp.RESyntaxException;
 
@@ -82,10 +107,35 @@ public class SearchResultsImpl implements SearchResults {
   private int mSearchTime;
   /** The index name. In case of an single index it's exactly this name and 'multiindex' in other case. */
   private String mIndexName;
-  /** The hits of this search. */
+  /**
+   * The collected hits of this search. These are the hits up to the requested
+   * page or, when the search continued after a cursor, the hits of the
+   * requested page only.
+   */
   private ScoreDoc[] hitScoreDocs;
-  /** The DocCollector. */
-  private TopDocsCollector<FieldValueHitQueue.Entry> topDocsCollector;
+  /** The index of the first collected hit. */
+  private int mHitOffset;
+  /** The total number of hits of this search. */
+  private int mTotalHits;
+  /**
+   * Specifies whether the results are incomplete, because an index didn't
+   * answer within its search timeout.
+   */
+  private boolean mPartialResult;
+  /** Specifies whether the hits have a cursor. */
+  private boolean mCursorPaging;
+  /**
+   * The version of the searched indexes. A cursor is only valid for the same
+   * version, because the document numbers change with the index.
+   */
+  private long mIndexVersion;
+  /** The fields whose values are counted together by {@link #getFacetCounts(String)}. */
+  private String[] mFacetFieldArr = new String[0];
+  /**
+   * The counted values (value) for each field (key). Is <code>null</code>
+   * until the values are counted the first time.
+   */
+  private HashMap<String, Map<String, Integer>> mFacetCountHash;
 
   private static Pattern mimetypeFieldPattern = Pattern.compile("(mimetype:\"([^:]*)\")");
   private static Pattern negativeMimetypeFieldPattern = Pattern.compile("((-|!|NOT )mimetype:\"([^:]*)\")");
@@ -96,6 +146,28 @@ public class SearchResultsImpl implements SearchResults {
   private RE mOpenInNewWindowRegex;
   /** The boolean query used while searching and highlighting */
   private BooleanQuery mQuery;
+  /**
+   * The query rewritten for highlighting. Is <code>null</code> until the first
+   * hit is highlighted.
+   */
+  private Query mRewrittenQuery;
+  /** Specifies for every collected hit whether it was highlighted already. */
+  private boolean[] mHighlightedArr;
+  /** The number of characters of a summary that are searched for fragments. */
+  private static final int HIGHLIGHT_CHAR_BUDGET = 50000;
+  /** The maximum number of threads that highlight the hits of a page. */
+  private static final int HIGHLIGHT_THREAD_COUNT = 4;
+  /** The tag that is put before a highlighted term. */
+  private static final String[] HIGHLIGHT_PRE_TAGS = { "<span class=\"highlight\">" };
+  /** The tag that is put after a highlighted term. */
+  private static final String[] HIGHLIGHT_POST_TAGS = { "</span>" };
+  /**
+   * The highlighter for fields with term vectors. Is <code>null</code> until
+   * the first hit is highlighted.
+   */
+  private FastVectorHighlighter mVectorHighlighter;
+  /** The query prepared for the highlighter for fields with term vectors. */
+  private FieldQuery mFieldQuery;
   /** The current analyzer */
   private Analyzer mAnalyzer;
   /** The current config. */
@@ -146,18 +218,14 @@ public class SearchResultsImpl implements SearchResults {
       boolean useAccessController = false;
       for (int i = 0; i < indexConfigs.length; i++) {
         // Get the groups the current user has reading rights for
-        String[] groupArr = null;
-        SearchAccessController accessController = indexConfigs[i].getSearchAccessController();
-        if (accessController != null) {
+        if (indexConfigs[i].getSearchAccessController() != null) {
           useAccessController = true;
-          groupArr = accessController.getUserGroups(request);
-          // Check the Group array
-          RegainToolkit.checkGroupArray(accessController, groupArr);
+          String[] groupArr = SearchToolkit.getUserGroups(indexConfigs[i], request);
           groupsArr.addAll(Arrays.asList(groupArr));
         }
         // build composed result: all groups over all indeces the user has the rights.
         // find the IndexSearcherManager for every index
-        indexSearcherManagers[i] = IndexSearcherManager.getInstance(indexConfigs[i].getDirectory());
+        indexSearcherManagers[i] = IndexSearcherManager.getInstance(indexConfigs[i]);
 
       }
 
@@ -198,14 +266,21 @@ public class SearchResultsImpl implements SearchResults {
         try {
           mQuery = new BooleanQuery();
 
+          // Use reversed terms for leading wildcards only if all indexes have them
+          Set<String> reversedFieldNames = new HashSet<String>(
+                  indexSearcherManagers[0].getReversedFieldNames());
+          for (int k = 1; k < indexSearcherManagers.length; k++) {
+            reversedFieldNames.retainAll(indexSearcherManagers[k].getReversedFieldNames());
+          }
+
           for (int k = 0; k < indexConfigs.length; k++) {
 
             String[] searchFieldArr = indexConfigs[k].getSearchFieldList();
             for (int i = 0; i < searchFieldArr.length; i++) {
 
-              QueryParser parser = new QueryParser(RegainToolkit.getLuceneVersion(), searchFieldArr[i], mAnalyzer);
+              QueryParser parser = new ReversedWildcardQueryParser(searchFieldArr[i], mAnalyzer,
+                      reversedFieldNames);
               parser.setDefaultOperator(QueryParser.AND_OPERATOR);
-              parser.setAllowLeadingWildcard(true);
 
 //              if (!searchFieldArr[i].equals("filename")) {
                 Query fieldQuery = parser.parse(queryText);
@@ -244,18 +319,99 @@ public class SearchResultsImpl implements SearchResults {
       }
 
 
+      mFacetFieldArr = indexConfigs[0].getFacetFieldList();
+
       if (mQuery != null) {
         mLog.debug("Lucene Query: " + mQuery.toString());
 
         try {
           SortingOption sortingOption = new SortingOption(request.getParameter("order"));
-          Sort sort = new Sort(sortingOption.getSortField());
           mLog.debug("Sort by:" + sortingOption.toString());
 
-          topDocsCollector = TopFieldCollector.create(sort, 10000, true, true, true, false);
+          // Collect only the hits up to the requested page
+          int fromResult = Math.max(0, request.getParameterAsInt(SearchConstants.PARAM_FROM_RESULT, 0));
+          int maxResults = Math.max(1, request.getParameterAsInt(SearchConstants.PARAM_MAX_RESULTS,
+                  SearchConstants.DEFAULT_MAX_RESULTS));
+          int numHits = (int) Math.min((long) fromResult + maxResults,
+                  Math.max(1, mMultiReader.maxDoc()));
+
+          boolean relevance = SortingOption.RELEVANCE.equals(sortingOption.getSortFieldName());
+          if (relevance && indexConfigs.length == 1) {
+            mCursorPaging = true;
+            mIndexVersion = getIndexVersion(readerArray);
+          }
+
+          // Look for the hits in the cache. The key contains the generation of
+          // the searchers, so the document numbers are still valid.
+          String[] indexDirArr = new String[indexConfigs.length];
+          long[] generationArr = new long[indexConfigs.length];
+          for (int i = 0; i < indexConfigs.length; i++) {
+            indexDirArr[i] = indexConfigs[i].getDirectory();
+            generationArr[i] = IndexSearcherManager.getGeneration(
+                    (indexConfigs.length == 1) ? mIndexSearcher : searchers[i]);
+          }
+          QueryResultCache cache = QueryResultCache.getInstance();
+          String cacheKey = QueryResultCache.createKey(mQuery.toString(),
+                  sortingOption.getFieldNameAndOrder(), indexDirArr, generationArr);
+          QueryResultCache.Entry cacheEntry = cache.get(cacheKey, numHits);
+
+          // Count the facets of a single index in the search of the hits
+          FacetCollector facetCollector = null;
+          if (cacheEntry == null && indexConfigs.length == 1 && mFacetFieldArr.length > 0) {
+            Set<String> facetFieldSet = new LinkedHashSet<String>(Arrays.asList(mFacetFieldArr));
+            facetCollector = new FacetCollector(
+                    facetFieldSet.toArray(new String[facetFieldSet.size()]));
+          }
+
+          TopDocs topDocs;
+          if (cacheEntry != null) {
+            topDocs = new TopDocs(cacheEntry.getTotalHits(), cacheEntry.getHits(numHits), Float.NaN);
+          } else if (indexConfigs.length > 1) {
+            topDocs = searchConcurrently(searchers, indexConfigs, sortingOption, numHits);
+          } else if (relevance) {
+            ScoreDoc after = null;
+            if (fromResult > 0) {
+              after = parseCursor(request.getParameter(SearchConstants.PARAM_AFTER_HIT));
+            }
+            TopScoreDocCollector collector;
+            if (after != null) {
+              // Continue after the last hit of the previous page
+              collector = TopScoreDocCollector.create(Math.min(maxResults, numHits), after, false);
+              mHitOffset = fromResult;
+            } else {
+              collector = TopScoreDocCollector.create(numHits, false);
+            }
+            searchHits(collector, facetCollector);
+            topDocs = collector.topDocs();
+          } else {
+            // The scores are only needed for sorting by relevance
+            Sort sort = new Sort(sortingOption.getSortField());
+            TopFieldCollector collector = TopFieldCollector.create(sort, numHits,
+                    false, false, false, false);
+            searchHits(collector, facetCollector);
+            topDocs = collector.topDocs();
+          }
+          if (facetCollector != null) {
+            mFacetCountHash = new HashMap<String, Map<String, Integer>>();
+            for (String field : mFacetFieldArr) {
+              mFacetCountHash.put(field, facetCollector.getCounts(field));
+            }
+          }
+          hitScoreDocs = topDocs.scoreDocs;
+          mTotalHits = topDocs.totalHits;
+
+          // Cache only complete results that start with the first hit
+          if (cacheEntry == null && ! mPartialResult && mHitOffset == 0) {
+            cache.put(cacheKey, indexDirArr, hitScoreDocs, mTotalHits);
+          }
+          if (mLog.isDebugEnabled()) {
+            mLog.debug(cache.toString());
+          }
 
-          mIndexSearcher.search(mQuery, topDocsCollector);
-          hitScoreDocs = topDocsCollector.topDocs().scoreDocs;
+          // Replay the query when the next index is warmed up
+          for (int i = 0; i < indexSearcherManagers.length; i++) {
+            indexSearcherManagers[i].addRecentQuery(mQuery);
+          }
 
         } catch (IOException exc) {
           throw new RegainException("Searching query failed", exc);
@@ -288,6 +444,166 @@ public class SearchResultsImpl implements SearchResults {
 
   }
 
+  /**
+   * Searches the hits of the query in the index. If facets should be counted,
+   * this happens in the same pass.
+   *
+   * @param hitCollector The collector for the hits.
+   * @param facetCollector The collector that counts the facets. May be
+   *        <code>null</code>.
+   * @throws IOException If searching failed.
+   */
+  private void searchHits(Collector hitCollector, FacetCollector facetCollector)
+          throws IOException {
+    if (facetCollector == null) {
+      mIndexSearcher.search(mQuery, hitCollector);
+    } else {
+      mIndexSearcher.search(mQuery, MultiCollector.wrap(hitCollector, facetCollector));
+    }
+  }
+
+  /**
+   * Searches every index in its own thread and merges the hits.
+   * <p>
+   * An index that doesn't answer within its search timeout is left out and
+   * the results are marked as partial.
+   *
+   * @param searchers The searchers of the indexes.
+   * @param indexConfigs The configurations of the indexes.
+   * @param sortingOption The sorting of the hits.
+   * @param numHits The number of hits to collect.
+   * @return The merged hits. The document numbers are those of the
+   *         {@link MultiReader}.
+   * @throws IOException If merging the hits failed.
+   * @throws RegainException If searching an index failed.
+   */
+  private TopDocs searchConcurrently(IndexSearcher[] searchers,
+          IndexConfig[] indexConfigs, SortingOption sortingOption, final int numHits)
+          throws IOException, RegainException {
+    final Query query = mQuery;
+    final Sort sort;
+    if (SortingOption.RELEVANCE.equals(sortingOption.getSortFieldName())) {
+      sort = null;
+    } else {
+      sort = new Sort(sortingOption.getSortField());
+    }
+
+    ExecutorService executor = IndexSearcherManager.getSearchExecutor();
+    List<Future<TopDocs>> futureList = new ArrayList<Future<TopDocs>>(searchers.length);
+    for (int i = 0; i < searchers.length; i++) {
+      final IndexSearcher searcher = searchers[i];
+      futureList.add(executor.submit(new Callable<TopDocs>() {
+        @Override
+        public TopDocs call() throws IOException {
+          if (sort == null) {
+            return searcher.search(query, numHits);
+          } else {
+            // The sort values are needed for merging, the scores are not
+            TopFieldCollector collector = TopFieldCollector.create(sort, numHits,
+                    true, false, false, false);
+            searcher.search(query, collector);
+            return collector.topDocs();
+          }
+        }
+      }));
+    }
+
+    // Wait for every index, but not longer than its timeout
+    // NOTE: A running search is not interrupted, because interrupting a
+    //       thread that reads from a NIOFSDirectory closes the index files.
+    long startTime = System.currentTimeMillis();
+    TopDocs[] shardHits = new TopDocs[searchers.length];
+    for (int i = 0; i < searchers.length; i++) {
+      Future<TopDocs> future = futureList.get(i);
+      int timeout = indexConfigs[i].getSearchTimeout();
+      try {
+        if (timeout > 0) {
+          long wait = Math.max(0, startTime + timeout - System.currentTimeMillis());
+          shardHits[i] = future.get(wait, TimeUnit.MILLISECONDS);
+        } else {
+          shardHits[i] = future.get();
+        }
+      } catch (TimeoutException exc) {
+        future.cancel(false);
+        mLog.warn("Searching index " + indexConfigs[i].getName()
+                + " took longer than " + timeout + " ms. It is left out.");
+        mPartialResult = true;
+      } catch (InterruptedException exc) {
+        future.cancel(false);
+        mPartialResult = true;
+        Thread.currentThread().interrupt();
+      } catch (ExecutionException exc) {
+        for (int j = i + 1; j < searchers.length; j++) {
+          futureList.get(j).cancel(false);
+        }
+        throw new RegainException("Searching index " + indexConfigs[i].getName()
+                + " failed", exc.getCause());
+      }
+
+      if (shardHits[i] == null) {
+        if (sort == null) {
+          shardHits[i] = new TopDocs(0, new ScoreDoc[0], Float.NaN);
+        } else {
+          shardHits[i] = new TopFieldDocs(0, new ScoreDoc[0], sort.getSort(), Float.NaN);
+        }
+      }
+    }
+
+    // Merge the hits and translate their document numbers to the MultiReader
+    TopDocs topDocs = TopDocs.merge(sort, numHits, shardHits);
+    int[] docBaseArr = new int[searchers.length];
+    for (int i = 1; i < searchers.length; i++) {
+      docBaseArr[i] = docBaseArr[i - 1] + searchers[i - 1].getIndexReader().maxDoc();
+    }
+    for (int i = 0; i < topDocs.scoreDocs.length; i++) {
+      ScoreDoc scoreDoc = topDocs.scoreDocs[i];
+      scoreDoc.doc += docBaseArr[scoreDoc.shardIndex];
+    }
+    return topDocs;
+  }
+
+  /**
+   * Gets the version of the searched indexes.
+   *
+   * @param readerArr The readers of the searched indexes.
+   * @return The version or 0 if a reader has no version.
+   */
+  private static long getIndexVersion(IndexReader[] readerArr) {
+    long version = 17;
+    try {
+      for (int i = 0; i < readerArr.length; i++) {
+        version = version * 31 + readerArr[i].getVersion();
+      }
+    } catch (UnsupportedOperationException exc) {
+      return 0;
+    }
+    return version;
+  }
+
+  /**
+   * Parses the cursor of a hit.
+   *
+   * @param cursor The cursor to parse. May be <code>null</code>.
+   * @return The hit to continue after or <code>null</code> if the cursor is
+   *         missing or does not belong to the current version of the indexes.
+   * @see #getHitCursor(int)
+   */
+  private ScoreDoc parseCursor(String cursor) {
+    if (cursor == null || mIndexVersion == 0) {
+      return null;
+    }
+
+    String[] parts = cursor.split(":");
+    try {
+      if (parts.length == 3 && Long.parseLong(parts[2]) == mIndexVersion) {
+        return new ScoreDoc(Integer.parseInt(parts[0]), Float.parseFloat(parts[1]));
+      }
+    } catch (NumberFormatException exc) {
+      mLog.debug("Ignoring invalid hit cursor: " + cursor);
+    }
+    return null;
+  }
+
   /**
    * Create a Query from mime type terms and remove them from the query text
    * @param queryText   Original query text
@@ -395,10 +711,33 @@ public class SearchResultsImpl implements SearchResults {
    */
   @Override
   public int getHitCount() {
-    if (hitScoreDocs == null) {
-      return 0;
+    return mTotalHits;
+  }
+
+  /**
+   * Gets the collected hit with a certain index.
+   *
+   * @param index The index of the hit.
+   * @return The collected hit.
+   * @throws RegainException If the hit is not on the requested page.
+   */
+  private ScoreDoc getScoreDoc(int index) throws RegainException {
+    int localIndex = index - mHitOffset;
+    if (hitScoreDocs == null || localIndex < 0 || localIndex >= hitScoreDocs.length) {
+      throw new RegainException("Search hit #" + index + " was not collected");
     }
-    return hitScoreDocs.length;
+    return hitScoreDocs[localIndex];
+  }
+
+  /**
+   * Gets whether the results are incomplete, because an index didn't answer
+   * within its search timeout.
+   *
+   * @return Whether the results are incomplete.
+   */
+  @Override
+  public boolean isPartialResult() {
+    return mPartialResult;
   }
 
   /**
@@ -427,17 +766,19 @@ public class SearchResultsImpl implements SearchResults {
   @Override
   public Document getHitDocument(int index) throws RegainException {
 
+    ScoreDoc scoreDoc = getScoreDoc(index);
+    int localIndex = index - mHitOffset;
     try {
-      Document currDoc = (Document) lazyHitList.get(index);
+      Document currDoc = (Document) lazyHitList.get(localIndex);
       // The document is empty, so it's created by the factory. Replace it with the real one
       // at this position
       if (currDoc.getFields().isEmpty()) {
-        lazyHitList.set(index, mIndexSearcher.doc(hitScoreDocs[index].doc));
+        lazyHitList.set(localIndex, mIndexSearcher.doc(scoreDoc.doc));
       }
     } catch (Exception ex) {
       throw new RegainException("Error while accessing index", ex);
     }
-    return (Document) lazyHitList.get(index);
+    return (Document) lazyHitList.get(localIndex);
 
   }
 
@@ -449,7 +790,7 @@ public class SearchResultsImpl implements SearchResults {
    * @throws RegainException
    */
   private void setHitDocument(int index, Document document) throws RegainException {
-    lazyHitList.set(index, document);
+    lazyHitList.set(index - mHitOffset, document);
   }
 
   /**
@@ -463,11 +804,28 @@ public class SearchResultsImpl implements SearchResults {
    */
   @Override
   public float getHitScore(int index) throws RegainException {
-    try {
-      return hitScoreDocs[index].score;
-    } catch (Exception exc) {
-      throw new RegainException("Error while getting score of search hit #" + index, exc);
+    // NOTE: When sorting by a field the scores are not calculated (NaN)
+    float score = getScoreDoc(index).score;
+    return Float.isNaN(score) ? 0 : score;
+  }
+
+  /**
+   * Gets the cursor of a hit. The cursor holds the document number and the
+   * score of the hit and the version of the searched indexes.
+   *
+   * @param index The index of the hit.
+   * @return The cursor of the hit or <code>null</code> if the search can't
+   *         continue after a hit.
+   */
+  @Override
+  public String getHitCursor(int index) {
+    int localIndex = index - mHitOffset;
+    if (! mCursorPaging || mIndexVersion == 0 || hitScoreDocs == null
+            || localIndex < 0 || localIndex >= hitScoreDocs.length) {
+      return null;
     }
+    ScoreDoc scoreDoc = hitScoreDocs[localIndex];
+    return scoreDoc.doc + ":" + scoreDoc.score + ":" + mIndexVersion;
   }
 
   /**
@@ -588,6 +946,52 @@ public class SearchResultsImpl implements SearchResults {
     }
   }
 
+  /**
+   * {@inheritDoc }
+   */
+  @Override
+  public synchronized Map<String, Integer> getFacetCounts(String field) throws RegainException {
+    if (mFacetCountHash == null) {
+      mFacetCountHash = new HashMap<String, Map<String, Integer>>();
+    }
+
+    Map<String, Integer> countMap = mFacetCountHash.get(field);
+    if (countMap == null) {
+      // Count the configured fields and the wanted one in one pass
+      ArrayList<String> fieldList = new ArrayList<String>();
+      for (int i = 0; i < mFacetFieldArr.length; i++) {
+        if (! mFacetCountHash.containsKey(mFacetFieldArr[i])
+          && ! fieldList.contains(mFacetFieldArr[i]))
+        {
+          fieldList.add(mFacetFieldArr[i]);
+        }
+      }
+      if (! fieldList.contains(field)) {
+        fieldList.add(field);
+      }
+
+      if (mQuery == null || mIndexSearcher == null) {
+        for (String countedField : fieldList) {
+          mFacetCountHash.put(countedField, new HashMap<String, Integer>());
+        }
+      } else {
+        FacetCollector collector = new FacetCollector(fieldList.toArray(new String[fieldList.size()]));
+        try {
+          mIndexSearcher.search(mQuery, collector);
+        } catch (IOException exc) {
+          throw new RegainException("Counting the values of field '" + field + "' failed", exc);
+        }
+        for (String countedField : fieldList) {
+          mFacetCountHash.put(countedField, collector.getCounts(countedField));
+        }
+      }
+
+      countMap = mFacetCountHash.get(field);
+    }
+
+    return countMap;
+  }
+
   /**
    * Highlights fields in the document. Fields for highlighting will be:
    * - summary
@@ -598,42 +1002,204 @@ public class SearchResultsImpl implements SearchResults {
    */
   @Override
   public void highlightHitDocument(int index) throws RegainException {
+    highlightHitDocuments(index, index);
+  }
+
+  /**
+   * Highlights the fields of all hits of a page. The query is rewritten only
+   * once and the hits are highlighted in parallel. Hits that were already
+   * highlighted are skipped.
+   *
+   * @param fromIndex The index of the first hit to highlight.
+   * @param toIndex The index of the last hit to highlight.
+   * @throws RegainException If highlighting failed.
+   */
+  @Override
+  public void highlightHitDocuments(int fromIndex, int toIndex) throws RegainException {
+    if (mHighlightedArr == null) {
+      mHighlightedArr = new boolean[hitScoreDocs.length];
+    }
+
+    // Load the documents that were not highlighted yet
+    List<Integer> indexList = new ArrayList<Integer>();
+    final List<Document> documentList = new ArrayList<Document>();
+    final List<Integer> docIdList = new ArrayList<Integer>();
+    for (int index = fromIndex; index <= toIndex; index++) {
+      if (! mHighlightedArr[index - mHitOffset]) {
+        indexList.add(index);
+        documentList.add(getHitDocument(index));
+        docIdList.add(getScoreDoc(index).doc);
+      }
+    }
+    if (documentList.isEmpty()) {
+      return;
+    }
 
-    IndexSearcher searcher = null;
-    IndexSearcherManager manager = null;
     try {
-      manager = IndexSearcherManager.getInstance(mIndexConfig.getDirectory());
-      searcher = manager.getIndexSearcher();
       // The highlighter needs a rewritten query to work with wildcard and fuzzy queries
-      Query rewrittenQuery = searcher.rewrite(mQuery);
-      QueryScorer queryScorer = new QueryScorer(rewrittenQuery);
-      // End added by Anders
-
-      Highlighter highlighter = new Highlighter(
-              new SimpleHTMLFormatter("<span class=\"highlight\">", "</span>"), queryScorer);
-
-      // Remark: the summary is at this point not a summary. It contains the
-      // first n characters from the document. n is configurable (default: 250000)
-      // We transform this summary into
-      // a) a summary matching the search terms (highlighting)
-      // b) and a shortend summary (200 characters)
-//      int docId = hitScoreDocs[index].doc;
-
-      Document document = getHitDocument(index);
-      String text = SearchToolkit.getCompressedFieldValue(document, "summary");
-
-      if (text != null) {
-        // Overwrite the content with a shortend summary
-        String resSummary = RegainToolkit.createSummaryFromContent(text, 200);
-        document.removeField("summary");
-        if (resSummary != null) {
-          //System.out.println("resSummary " + resSummary);
-          document.add(new Field("summary", resSummary, Field.Store.NO, Field.Index.NOT_ANALYZED));
-          document.add(new Field("summary", CompressionTools.compressString(resSummary)));
+      if (mRewrittenQuery == null) {
+        mRewrittenQuery = mIndexSearcher.rewrite(mQuery);
+        // The fields of the query don't matter, because the summary is not searched
+        mVectorHighlighter = new FastVectorHighlighter(true, false);
+        mFieldQuery = mVectorHighlighter.getFieldQuery(mQuery, mIndexSearcher.getIndexReader());
+      }
+
+      if (documentList.size() == 1) {
+        highlightDocument(documentList.get(0), docIdList.get(0), createHighlighter(),
+                new TextFragmentsBuilder());
+      } else {
+        // Every thread highlights a part of the hits with its own highlighter
+        int threadCount = Math.min(documentList.size(), HIGHLIGHT_THREAD_COUNT);
+        ExecutorService executor = IndexSearcherManager.getHighlightExecutor();
+        List<Future<Object>> futureList = new ArrayList<Future<Object>>(threadCount);
+        for (int thread = 0; thread < threadCount; thread++) {
+          final int firstDoc = thread;
+          final int docStep = threadCount;
+          futureList.add(executor.submit(new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+              Highlighter highlighter = createHighlighter();
+              TextFragmentsBuilder fragmentsBuilder = new TextFragmentsBuilder();
+              for (int i = firstDoc; i < documentList.size(); i += docStep) {
+                highlightDocument(documentList.get(i), docIdList.get(i), highlighter,
+                        fragmentsBuilder);
+              }
+              return null;
+            }
+          }));
+        }
+        for (Future<Object> future : futureList) {
+          future.get();
+        }
+      }
+    } catch (ExecutionException exc) {
+      throw new RegainException("Error while searching pattern: " + mQueryText, exc.getCause());
+
+    } catch (InterruptedException exc) {
+      throw new RegainException("Error while searching pattern: " + mQueryText, exc);
+
+    } catch (InvalidTokenOffsetsException exToken) {
+      throw new RegainException("Error while searching pattern: " + mQueryText, exToken);
+
+    } catch (IOException exIO) {
+      throw new RegainException("Error while searching pattern: " + mQueryText, exIO);
+    }
+
+    // write back the transformed documents
+    for (int i = 0; i < indexList.size(); i++) {
+      int index = indexList.get(i);
+      setHitDocument(index, documentList.get(i));
+      mHighlightedArr[index - mHitOffset] = true;
+    }
+  }
+
+  /**
+   * Creates a highlighter for the rewritten query.
+   * <p>
+   * NOTE: A highlighter must not be used by more than one thread at a time.
+   *
+   * @return The highlighter.
+   */
+  private Highlighter createHighlighter() {
+    QueryScorer queryScorer = new QueryScorer(mRewrittenQuery);
+    Highlighter highlighter = new Highlighter(
+            new SimpleHTMLFormatter(HIGHLIGHT_PRE_TAGS[0], HIGHLIGHT_POST_TAGS[0]), queryScorer);
+    highlighter.setMaxDocCharsToAnalyze(HIGHLIGHT_CHAR_BUDGET);
+    return highlighter;
+  }
+
+  /**
+   * Checks whether a field of a document has term vectors with offsets.
+   *
+   * @param docId The document number.
+   * @param fieldName The name of the field.
+   * @return Whether the field can be highlighted using its term vectors.
+   * @throws IOException If reading the term vectors failed.
+   */
+  private boolean hasTermVectorOffsets(int docId, String fieldName) throws IOException {
+    TermFreqVector vector = mIndexSearcher.getIndexReader().getTermFreqVector(docId, fieldName);
+    return (vector instanceof TermPositionVector) && (vector.size() > 0)
+            && (((TermPositionVector) vector).getOffsets(0) != null);
+  }
+
+  /**
+   * Highlights a field using its term vectors. The text is not analyzed.
+   *
+   * @param docId The document number.
+   * @param fieldName The name of the field.
+   * @param text The text of the field.
+   * @param maxFragments The maximum number of fragments. If 1 the whole text
+   *        is one fragment.
+   * @param fragmentsBuilder The fragments builder to use.
+   * @return The highlighted fragments separated by " ... " or
+   *         <code>null</code> if the text contains no search term.
+   * @throws IOException If reading the term vectors failed.
+   */
+  private String highlightWithTermVectors(int docId, String fieldName, String text,
+          int maxFragments, TextFragmentsBuilder fragmentsBuilder) throws IOException {
+    fragmentsBuilder.setText(text);
+    FragListBuilder fragListBuilder = (maxFragments == 1)
+            ? new SingleFragListBuilder() : new SimpleFragListBuilder();
+    String[] fragmentArr = mVectorHighlighter.getBestFragments(mFieldQuery,
+            mIndexSearcher.getIndexReader(), docId, fieldName, 100, maxFragments,
+            fragListBuilder, fragmentsBuilder, HIGHLIGHT_PRE_TAGS, HIGHLIGHT_POST_TAGS,
+            new SimpleHTMLEncoder());
+    if (fragmentArr == null || fragmentArr.length == 0) {
+      return null;
+    }
+
+    StringBuilder result = new StringBuilder(fragmentArr[0]);
+    for (int i = 1; i < fragmentArr.length; i++) {
+      result.append(" ... ").append(fragmentArr[i]);
+    }
+    return result.toString();
+  }
+
+  /**
+   * Highlights the summary and the title of a document.
+   * <p>
+   * If the crawler stored term vectors with offsets, these are used for
+   * highlighting. Otherwise the text is analyzed again.
+   *
+   * @param document The document to highlight.
+   * @param docId The document number.
+   * @param highlighter The highlighter to use when there are no term vectors.
+   * @param fragmentsBuilder The fragments builder to use when there are term
+   *        vectors.
+   * @throws IOException If highlighting failed.
+   * @throws InvalidTokenOffsetsException If highlighting failed.
+   * @throws RegainException If reading the summary failed.
+   */
+  private void highlightDocument(Document document, int docId, Highlighter highlighter,
+          TextFragmentsBuilder fragmentsBuilder)
+          throws IOException, InvalidTokenOffsetsException, RegainException {
+    // Remark: the summary is at this point not a summary. It contains the
+    // first n characters from the document. n is configurable (default: 250000)
+    // We transform this summary into
+    // a) a summary matching the search terms (highlighting)
+    // b) and a shortend summary (200 characters)
+    String text = SearchToolkit.getCompressedFieldValue(document, "summary");
+
+    if (text != null) {
+      // Overwrite the content with a shortend summary
+      String resSummary = RegainToolkit.createSummaryFromContent(text, 200);
+      document.removeField("summary");
+      if (resSummary != null) {
+        document.add(new Field("summary", resSummary, Field.Store.NO, Field.Index.NOT_ANALYZED));
+        document.add(new Field("summary", CompressionTools.compressString(resSummary)));
+      }
+
+      String resHighlSummary = null;
+      if (hasTermVectorOffsets(docId, "summary")) {
+        // Get 3 best fragments using the offsets stored by the crawler
+        resHighlSummary = highlightWithTermVectors(docId, "summary", text, 3, fragmentsBuilder);
 
+      } else {
+        // Only the first characters are searched for fragments
+        if (text.length() > HIGHLIGHT_CHAR_BUDGET) {
+          text = text.substring(0, HIGHLIGHT_CHAR_BUDGET);
         }
 
-        String resHighlSummary = null;
         // Remove 'html', this works the same way as PageResponse.printNoHTML()
         text = RegainToolkit.replace(text, "<", "&lt;");
         text = RegainToolkit.replace(text, ">", "&gt;");
@@ -642,51 +1208,33 @@ public class SearchResultsImpl implements SearchResults {
                 new StringReader(text));
         // Get 3 best fragments and seperate with a " ... "
         resHighlSummary = highlighter.getBestFragments(tokenStream, text, 3, " ... ");
+      }
 
-        if (resHighlSummary != null) {
-          //System.out.println("Highlighted summary: " + resHighlSummary);
-          // write the result back to the document in a new field
-          document.add(new Field("highlightedSummary", resHighlSummary, Field.Store.NO, Field.Index.NOT_ANALYZED));
-          document.add(new Field("highlightedSummary", CompressionTools.compressString(resHighlSummary)));
-        }
+      if (resHighlSummary != null) {
+        // write the result back to the document in a new field
+        document.add(new Field("highlightedSummary", resHighlSummary, Field.Store.NO, Field.Index.NOT_ANALYZED));
+        document.add(new Field("highlightedSummary", CompressionTools.compressString(resHighlSummary)));
       }
-      // Highlight the title
-      text = document.get("title");
-      String resHighlTitle = null;
-      if (text != null) {
+    }
+    // Highlight the title
+    text = document.get("title");
+    String resHighlTitle = null;
+    if (text != null) {
+      if (hasTermVectorOffsets(docId, "title")) {
+        resHighlTitle = highlightWithTermVectors(docId, "title", text, 1, fragmentsBuilder);
+      } else {
         TokenStream tokenStream = mAnalyzer.tokenStream("content",
                 new StringReader(text));
         // Get the best fragment
         resHighlTitle = highlighter.getBestFragment(tokenStream, text);
       }
-
-      if (resHighlTitle != null) {
-        // write the result back to the document in a new field
-        //System.out.println("Highlighted title: " + resHighlTitle);
-        document.add(new Field("highlightedTitle", resHighlTitle,
-                Field.Store.YES, Field.Index.NOT_ANALYZED));
-
-      }
-      // write back the transformed document
-      setHitDocument(index, document);
-
-      //System.out.println("The document: " + hitDocs.get(index).toString());
-
-    } catch (org.apache.lucene.index.CorruptIndexException exCorr) {
-      throw new RegainException("Error while searching pattern: " + mQueryText, exCorr);
-
-    } catch (org.apache.lucene.search.highlight.InvalidTokenOffsetsException exToken) {
-      throw new RegainException("Error while searching pattern: " + mQueryText, exToken);
-
-    } catch (IOException exIO) {
-      throw new RegainException("Error while searching pattern: " + mQueryText, exIO);
-
-    } finally {
-      if (manager != null) {
-        manager.releaseIndexSearcher(searcher);
-      }
     }
 
+    if (resHighlTitle != null) {
+      // write the result back to the document in a new field
+      document.add(new Field("highlightedTitle", resHighlTitle,
+              Field.Store.YES, Field.Index.NOT_ANALYZED));
+    }
   }
 
   /**
@@ -699,4 +1247,38 @@ public class SearchResultsImpl implements SearchResults {
   public boolean getShouldHighlight(int index) throws RegainException {
     return mIndexConfig.getShouldHighlight();
   }
-}
\ No newline at end of file
+
+  /**
+   * Builds the fragments from a given text instead of a stored field. The
+   * summary is stored compressed, so the highlighter can't read it.
+   * <p>
+   * NOTE: Must not be used by more than one thread at a time.
+   */
+  private static class TextFragmentsBuilder extends ScoreOrderFragmentsBuilder {
+
+    /** The text of the field to highlight. */
+    private String mText;
+
+    /**
+     * Creates a new instance of TextFragmentsBuilder.
+     */
+    public TextFragmentsBuilder() {
+      super(HIGHLIGHT_PRE_TAGS, HIGHLIGHT_POST_TAGS);
+    }
+
+    /**
+     * Sets the text of the field to highlight next.
+     *
+     * @param text The text of the field.
+     */
+    public void setText(String text) {
+      mText = text;
+    }
+
+    @Override
+    protected Field[] getFields(IndexReader reader, int docId, String fieldName) {
+      return new Field[] { new Field(fieldName, mText, Field.Store.YES, Field.Index.NO) };
+    }
+  }
+
+}
@@ -0,0 +1,133 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.search.sharedlib;
+
+import java.util.Map;
+
+import net.sf.regain.RegainException;
+import net.sf.regain.RegainToolkit;
+import net.sf.regain.search.SearchConstants;
+import net.sf.regain.search.SearchToolkit;
+import net.sf.regain.search.results.SearchResults;
+import net.sf.regain.util.sharedtag.PageRequest;
+import net.sf.regain.util.sharedtag.PageResponse;
+import net.sf.regain.util.sharedtag.SharedTag;
+
+/**
+ * Lists the values of a field the hits have, each with its number of hits.
+ * Every value links to a search that is restricted to this value.
+ * <p>
+ * Tag Parameters:
+ * <ul>
+ * <li><code>field</code>: The name of the field. Should be untokenized, like
+ *     <code>mimetype</code>.</li>
+ * <li><code>maxValues</code>: The maximum number of values to show. Default
+ *     is 10.</li>
+ * <li><code>targetPage</code>: The URL of the page where the links should
+ *     point to.</li>
+ * <li><code>class</code>: The style sheet class to use for the link tags.</li>
+ * </ul>
+ *
+ * @see SearchResults#getFacetCounts(String)
+ * @author Til Schneider, www.murfman.de
+ */
+public class FacetTag extends SharedTag implements SearchConstants {
+
+  /** The default maximum number of values to show. */
+  private static final int DEFAULT_MAX_VALUES = 10;
+
+  /** Die Default-Seite, auf die die Links zeigen sollen. */
+  private static final String DEFAULT_TARGET_PAGE = "SearchOutput.jsp";
+
+
+  /**
+   * Called when the parser reaches the end tag.
+   *
+   * @param request The page request.
+   * @param response The page response.
+   * @throws RegainException If there was an exception.
+   */
+  @Override
+  public void printEndTag(PageRequest request, PageResponse response)
+    throws RegainException
+  {
+    String field = getParameter("field", true);
+    int maxValues = getParameterAsInt("maxValues", DEFAULT_MAX_VALUES);
+    String targetPage = getParameter("targetPage", DEFAULT_TARGET_PAGE);
+    String styleSheetClass = getParameter("class");
+
+    String query = SearchToolkit.getSearchQuery(request);
+    SearchResults results = SearchToolkit.getSearchResults(request);
+    Map<String, Integer> countMap = results.getFacetCounts(field);
+
+    String encoding = response.getEncoding();
+    String[] indexNameArr = request.getParameters("index");
+    int valueCount = 0;
+    for (Map.Entry<String, Integer> entry : countMap.entrySet()) {
+      if (valueCount >= maxValues) {
+        break;
+      }
+      valueCount++;
+
+      String value = entry.getKey();
+      String valueQuery = ((query == null) ? "" : query + " ")
+        + field + ":\"" + escapePhrase(value) + "\"";
+
+      response.print("<a href=\"" + targetPage + "?query="
+        + RegainToolkit.urlEncode(valueQuery, encoding));
+      if (indexNameArr != null) {
+        for (int i = 0; i < indexNameArr.length; i++) {
+          response.print("&index=" + RegainToolkit.urlEncode(indexNameArr[i], encoding));
+        }
+      }
+      response.print("\"");
+      if (styleSheetClass != null) {
+        response.print(" class=\"" + styleSheetClass + "\"");
+      }
+      response.print(">");
+      response.printNoHtml(value);
+      response.print("</a> (" + entry.getValue() + ") ");
+    }
+  }
+
+
+  /**
+   * Escapes a text for a phrase of a query. Only quotes and backslashes are
+   * escaped, since the other special characters have no meaning in a phrase.
+   * This way the mimetype phrases are still recognized by the search (see
+   * {@link net.sf.regain.search.results.SearchResultsImpl}).
+   *
+   * @param text The text to escape.
+   * @return The escaped text.
+   */
+  private static String escapePhrase(String text) {
+    StringBuilder buffer = new StringBuilder(text.length());
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (c == '"' || c == '\\') {
+        buffer.append('\\');
+      }
+      buffer.append(c);
+    }
+    return buffer.toString();
+  }
+
+}
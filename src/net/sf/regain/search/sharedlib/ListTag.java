@@ -46,6 +46,8 @@ import org.apache.lucene.document.Fieldable;
  * <ul>
  * <li><code>msgNoResults</code>: The message to generate if the were no
  *     results.</li>
+ * <li><code>msgPartialResults</code>: The message to generate if an index
+ *     didn't answer in time and the results are incomplete.</li>
  * </ul>
  *
  * @author Til Schneider, www.murfman.de
@@ -87,6 +89,13 @@ public class ListTag extends SharedTag implements SearchConstants {
 
       return SKIP_TAG_BODY;
     } else {
+      if (results.isPartialResult()) {
+        String msgPartialResults = getParameter("msgPartialResults");
+        if (msgPartialResults != null) {
+          response.print(msgPartialResults);
+        }
+      }
+
       mCurrentResult = fromResult;
 
       mToResult = fromResult + maxResults - 1;
@@ -94,6 +103,11 @@ public class ListTag extends SharedTag implements SearchConstants {
         mToResult = results.getHitCount() - 1;
       }
 
+      // Highlight all hits of the page at once
+      if (mCurrentResult <= mToResult && results.getShouldHighlight(mCurrentResult)) {
+        results.highlightHitDocuments(mCurrentResult, mToResult);
+      }
+
       writeHitToAttributes(mCurrentResult, results, request);
 
       return EVAL_TAG_BODY;
@@ -96,7 +96,7 @@ public class NavigationTag extends SharedTag implements SearchConstants {
     if (currButton > 0) {
       String msgBack = getParameter("msgBack", true);
       msgBack = RegainToolkit.replace(msgBack, "&quot;", "\"");
-      printLink(request, response, currButton - 1, query, maxResults, indexNameArr, msgBack);
+      printLink(request, response, currButton - 1, query, maxResults, indexNameArr, msgBack, null);
     }
     for (int i = fromButton; i <= toButton; i++) {
       if (i == currButton) {
@@ -104,13 +104,19 @@ public class NavigationTag extends SharedTag implements SearchConstants {
         response.print("<b>" + (i + 1) + "</b> ");
       } else {
         String linkText = Integer.toString(i + 1);
-        printLink(request, response, i, query, maxResults, indexNameArr, linkText);
+        printLink(request, response, i, query, maxResults, indexNameArr, linkText, null);
       }
     }
     if (currButton < (buttonCount -1)) {
       String msgForward = getParameter("msgForward", true);
       msgForward = RegainToolkit.replace(msgForward, "'", "\"");
-      printLink(request, response, currButton + 1, query, maxResults, indexNameArr, msgForward);
+      // The next page may continue after the last hit of this page. This is
+      // only the hit before the target page if this page starts at a button
+      String cursor = null;
+      if (fromResult % maxResults == 0) {
+        cursor = results.getHitCursor(fromResult + maxResults - 1);
+      }
+      printLink(request, response, currButton + 1, query, maxResults, indexNameArr, msgForward, cursor);
     }
   }
 
@@ -124,10 +130,12 @@ public class NavigationTag extends SharedTag implements SearchConstants {
    * @param maxResults The maximum results.
    * @param indexNameArr The names of the search indexes.
    * @param linkText The link text.
+   * @param afterHit The cursor of the hit the target page continues after.
+   *        May be <code>null</code>.
    * @throws RegainException If printing failed.
    */
   private void printLink(PageRequest request, PageResponse response, int button, String query,
-    int maxResults, String[] indexNameArr, String linkText)
+    int maxResults, String[] indexNameArr, String linkText, String afterHit)
     throws RegainException
   {
     String targetPage = getParameter("targetPage",  DEFAULT_TARGET_PAGE);
@@ -152,6 +160,9 @@ public class NavigationTag extends SharedTag implements SearchConstants {
     if (order != null && order.length() > 0) {
       response.print("&order=" + order);
     }
+    if (afterHit != null) {
+      response.print("&" + PARAM_AFTER_HIT + "=" + RegainToolkit.urlEncode(afterHit, encoding));
+    }
     response.print("\"");
     String styleSheetClass = getParameter("class");
     if (styleSheetClass != null) {
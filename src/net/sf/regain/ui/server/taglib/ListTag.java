@@ -47,4 +47,15 @@ public class ListTag extends SharedTagWrapperTag {
     getNestedTag().setParameter("msgNoResults", msgNoResults);
   }
 
+
+  /**
+   * Sets the message to generate if the results are incomplete.
+   *
+   * @param msgPartialResults The message to generate if an index didn't
+   *        answer in time.
+   */
+  public void setMsgPartialResults(String msgPartialResults) {
+    getNestedTag().setParameter("msgPartialResults", msgPartialResults);
+  }
+
 }
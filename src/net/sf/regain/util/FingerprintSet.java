@@ -0,0 +1,427 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+
+import net.sf.regain.RegainException;
+import net.sf.regain.RegainToolkit;
+
+/**
+ * A set of Strings that may hold tens of millions of entries without using
+ * much heap.
+ * <p>
+ * Only a 64 bit fingerprint of each String is kept in an open addressing hash
+ * table. The hash table is a memory mapped file, so it lives outside the heap.
+ * Two Strings with the same fingerprint are treated as equal. For a set of ten
+ * million entries the chance that this happens at all is about 1:300000.
+ * <p>
+ * The Strings themselves are appended to a data file. So they may be listed
+ * and the set may be saved and loaded again.
+ * <p>
+ * Subclasses may override {@link #getKey(String)} to treat different Strings
+ * as equal. The Strings are kept as they were added.
+ * <p>
+ * This class is thread-safe.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class FingerprintSet {
+
+  /** The number of slots of a new hash table. Must be a power of 2. */
+  private static final int INITIAL_CAPACITY = 1 << 16;
+  /**
+   * The maximum number of slots. A mapped buffer may have at most 2 GB and
+   * each slot takes 8 bytes.
+   */
+  private static final int MAX_CAPACITY = 1 << 28;
+
+  /** The directory where the files of the set are. */
+  private File mDir;
+  /** The name of the set. Used as prefix for the file names. */
+  private String mName;
+
+  /** The file where the Strings are appended. */
+  private File mDataFile;
+  /** The stream that appends to mDataFile. */
+  private DataOutputStream mDataOut;
+
+  /** The file that holds the hash table. */
+  private File mTableFile;
+  /** The file access of mTableFile. */
+  private RandomAccessFile mTableAccess;
+  /** The hash table. A slot is 0 if it is empty. */
+  private LongBuffer mTable;
+  /** The number of slots in mTable. Always a power of 2. */
+  private int mCapacity;
+  /** The number of entries. */
+  private int mSize;
+
+
+  /**
+   * Creates a new, empty FingerprintSet.
+   *
+   * @param dir The directory where to create the files of the set. Is created
+   *        if it does not exist.
+   * @param name The name of the set. Used as prefix for the file names. Files
+   *        of an old set with the same name are overwritten.
+   * @throws RegainException If creating the files failed.
+   */
+  public FingerprintSet(File dir, String name) throws RegainException {
+    mDir = dir;
+    mName = name;
+
+    if (!dir.exists() && !dir.mkdirs()) {
+      throw new RegainException("Creating directory failed: " + dir.getAbsolutePath());
+    }
+
+    mDataFile = new File(dir, name + ".dat");
+    try {
+      mDataOut = new DataOutputStream(new BufferedOutputStream(
+          new FileOutputStream(mDataFile)));
+    } catch (IOException exc) {
+      throw new RegainException("Creating data file failed: " + mDataFile, exc);
+    }
+
+    createTable(INITIAL_CAPACITY);
+  }
+
+
+  /**
+   * Calculates the fingerprint of a String.
+   *
+   * @param text The String to calculate the fingerprint for.
+   * @return The fingerprint. Is never 0.
+   */
+  public static long fingerprint(String text) {
+    // FNV-1a
+    long hash = 0xcbf29ce484222325L;
+    for (int i = 0; i < text.length(); i++) {
+      hash ^= text.charAt(i);
+      hash *= 0x100000001b3L;
+    }
+
+    // Mix the bits, so the lower bits can be used as table index
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb9fe1a85ec53L;
+    hash ^= hash >>> 33;
+
+    return (hash == 0) ? 1 : hash;
+  }
+
+
+  /**
+   * Creates a new, empty hash table.
+   *
+   * @param capacity The number of slots.
+   * @throws RegainException If creating the table file failed.
+   */
+  private void createTable(int capacity) throws RegainException {
+    mTableFile = new File(mDir, mName + "." + capacity + ".idx");
+    try {
+      mTableAccess = new RandomAccessFile(mTableFile, "rw");
+      mTableAccess.setLength(0);
+      mTable = mTableAccess.getChannel().map(FileChannel.MapMode.READ_WRITE,
+          0, capacity * 8L).asLongBuffer();
+    } catch (IOException exc) {
+      throw new RegainException("Creating hash table file failed: " + mTableFile, exc);
+    }
+
+    // NOTE: The content of a grown file is not defined
+    for (int i = 0; i < capacity; i++) {
+      mTable.put(i, 0);
+    }
+    mCapacity = capacity;
+  }
+
+
+  /**
+   * Closes and deletes the file of the hash table.
+   */
+  private void deleteTable() {
+    mTable = null;
+    try {
+      mTableAccess.close();
+    } catch (IOException exc) {
+      // Ignore
+    }
+    if (!mTableFile.delete()) {
+      // NOTE: On Windows a file can't be deleted as long as it is mapped.
+      //       The mapping is released by the garbage collector.
+      mTableFile.deleteOnExit();
+    }
+  }
+
+
+  /**
+   * Puts a fingerprint into the hash table.
+   *
+   * @param fingerprint The fingerprint to put.
+   * @return Whether the fingerprint was added. <code>false</code> if the
+   *         table already contained the fingerprint.
+   */
+  private boolean putFingerprint(long fingerprint) {
+    int mask = mCapacity - 1;
+    int slot = (int) fingerprint & mask;
+    while (true) {
+      long current = mTable.get(slot);
+      if (current == 0) {
+        mTable.put(slot, fingerprint);
+        return true;
+      } else if (current == fingerprint) {
+        return false;
+      }
+      slot = (slot + 1) & mask;
+    }
+  }
+
+
+  /**
+   * Doubles the size of the hash table.
+   *
+   * @throws RegainException If creating the new table failed.
+   */
+  private void growTable() throws RegainException {
+    if (mCapacity >= MAX_CAPACITY) {
+      throw new RegainException("The set " + mName + " is full (" + mSize + " entries)");
+    }
+
+    LongBuffer oldTable = mTable;
+    int oldCapacity = mCapacity;
+    File oldTableFile = mTableFile;
+    RandomAccessFile oldTableAccess = mTableAccess;
+
+    createTable(oldCapacity * 2);
+    for (int i = 0; i < oldCapacity; i++) {
+      long fingerprint = oldTable.get(i);
+      if (fingerprint != 0) {
+        putFingerprint(fingerprint);
+      }
+    }
+
+    try {
+      oldTableAccess.close();
+    } catch (IOException exc) {
+      // Ignore
+    }
+    if (!oldTableFile.delete()) {
+      oldTableFile.deleteOnExit();
+    }
+  }
+
+
+  /**
+   * Gets the key a String is compared by. Two Strings with the same key are
+   * treated as equal.
+   *
+   * @param text The String to get the key for.
+   * @return The key. Is the String itself by default.
+   */
+  protected String getKey(String text) {
+    return text;
+  }
+
+
+  /**
+   * Adds a String to the set.
+   *
+   * @param text The String to add.
+   * @return Whether the String was added. <code>false</code> if the set
+   *         already contained the String.
+   * @throws RegainException If writing the String failed.
+   */
+  public synchronized boolean add(String text) throws RegainException {
+    if (!putFingerprint(fingerprint(getKey(text)))) {
+      return false;
+    }
+
+    try {
+      RegainToolkit.writeString(mDataOut, text);
+    } catch (IOException exc) {
+      throw new RegainException("Writing to data file failed: " + mDataFile, exc);
+    }
+
+    mSize++;
+    if (mSize * 2L > mCapacity) {
+      growTable();
+    }
+    return true;
+  }
+
+
+  /**
+   * Checks whether the set contains a String.
+   *
+   * @param text The String to check.
+   * @return Whether the set contains the String.
+   */
+  public synchronized boolean contains(String text) {
+    long fingerprint = fingerprint(getKey(text));
+    int mask = mCapacity - 1;
+    int slot = (int) fingerprint & mask;
+    while (true) {
+      long current = mTable.get(slot);
+      if (current == 0) {
+        return false;
+      } else if (current == fingerprint) {
+        return true;
+      }
+      slot = (slot + 1) & mask;
+    }
+  }
+
+
+  /**
+   * Gets the number of Strings in the set.
+   *
+   * @return The number of Strings in the set.
+   */
+  public synchronized int size() {
+    return mSize;
+  }
+
+
+  /**
+   * Writes all Strings of the set to a stream. One String per line.
+   *
+   * @param printer The stream to write to.
+   * @throws RegainException If reading the Strings failed.
+   */
+  public synchronized void writeStrings(PrintStream printer)
+    throws RegainException
+  {
+    DataInputStream in = openDataFile(mDataFile);
+    try {
+      for (int i = 0; i < mSize; i++) {
+        printer.println(RegainToolkit.readString(in));
+      }
+    } catch (IOException exc) {
+      throw new RegainException("Reading data file failed: " + mDataFile, exc);
+    } finally {
+      try { in.close(); } catch (IOException exc) {}
+    }
+  }
+
+
+  /**
+   * Saves the set to a file.
+   *
+   * @param file The file to save the set to.
+   * @throws RegainException If saving failed.
+   * @see #load(File)
+   */
+  public synchronized void save(File file) throws RegainException {
+    // NOTE: The data file already contains all Strings, so we only have to
+    //       copy it
+    flushDataFile();
+    RegainToolkit.copyFile(mDataFile, file);
+  }
+
+
+  /**
+   * Adds all Strings of a saved set to this set.
+   *
+   * @param file The file to load the Strings from.
+   * @throws RegainException If loading failed.
+   * @see #save(File)
+   */
+  public synchronized void load(File file) throws RegainException {
+    DataInputStream in = openDataFile(file);
+    try {
+      while (true) {
+        String text;
+        try {
+          text = RegainToolkit.readString(in);
+        } catch (EOFException exc) {
+          break;
+        }
+        add(text);
+      }
+    } catch (IOException exc) {
+      throw new RegainException("Loading set from " + file + " failed", exc);
+    } finally {
+      try { in.close(); } catch (IOException exc) {}
+    }
+  }
+
+
+  /**
+   * Closes the set and deletes its files. After that the set can't be used
+   * any more.
+   */
+  public synchronized void close() {
+    try {
+      mDataOut.close();
+    } catch (IOException exc) {
+      // Ignore
+    }
+    mDataFile.delete();
+    deleteTable();
+  }
+
+
+  /**
+   * Flushes the data file.
+   *
+   * @throws RegainException If flushing failed.
+   */
+  private void flushDataFile() throws RegainException {
+    try {
+      mDataOut.flush();
+    } catch (IOException exc) {
+      throw new RegainException("Writing to data file failed: " + mDataFile, exc);
+    }
+  }
+
+
+  /**
+   * Opens a data file for reading.
+   *
+   * @param file The data file to open.
+   * @return The stream to read from.
+   * @throws RegainException If opening failed.
+   */
+  private DataInputStream openDataFile(File file) throws RegainException {
+    if (file == mDataFile) {
+      flushDataFile();
+    }
+    try {
+      return new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+    } catch (IOException exc) {
+      throw new RegainException("Opening data file failed: " + file, exc);
+    }
+  }
+
+}
@@ -0,0 +1,193 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004 Thomas Tesche, Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider <info@murfman.de>, Thomas Tesche <thtesche@gmail.com>
+ */
+package net.sf.regain.util.io;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Notifies listeners when a watched directory exists, e.g. when the crawler
+ * has put a new index into place.
+ * <p>
+ * One thread watches all directories. When a directory is created in this
+ * JVM, the creator calls {@link #directoryCreated(File)} and the listeners
+ * are notified at once. Directories created by other processes are found by
+ * checking all directories every {@link #POLL_INTERVAL} milliseconds.
+ * <p>
+ * This class is thread-safe.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class DirectoryWatcher {
+
+  /** The logger for this class. */
+  private static Logger mLog = Logger.getLogger(DirectoryWatcher.class);
+
+  /** The time in milliseconds between two checks of all directories. */
+  public static final int POLL_INTERVAL = 1000;
+
+  /** The singleton. */
+  private static DirectoryWatcher mSingleton = new DirectoryWatcher();
+
+  /** The listeners (value) of the watched directories (key). */
+  private Map<File, Listener> mListenerMap;
+  /** The thread that checks the directories. Is <code>null</code> if there are none. */
+  private Thread mWatchThread;
+  /** Whether a directory was created since the last check. */
+  private boolean mCheckRequested;
+
+
+  /**
+   * Creates a new instance of DirectoryWatcher.
+   */
+  private DirectoryWatcher() {
+    mListenerMap = new HashMap<File, Listener>();
+  }
+
+
+  /**
+   * Gets the singleton.
+   *
+   * @return The directory watcher.
+   */
+  public static DirectoryWatcher getInstance() {
+    return mSingleton;
+  }
+
+
+  /**
+   * Starts watching a directory. Every time the directory exists, the
+   * listener is notified. So the listener should remove or rename the
+   * directory.
+   *
+   * @param dir The directory to watch.
+   * @param listener The listener to notify.
+   */
+  public synchronized void addDirectory(File dir, Listener listener) {
+    mListenerMap.put(dir.getAbsoluteFile(), listener);
+
+    if (mWatchThread == null) {
+      mWatchThread = new Thread("DirectoryWatcher") {
+        @Override
+        public void run() {
+          watchThreadRun(this);
+        }
+      };
+      mWatchThread.setDaemon(true);
+      mWatchThread.setPriority(Thread.MIN_PRIORITY);
+      mWatchThread.start();
+    }
+    notifyAll();
+  }
+
+
+  /**
+   * Stops watching a directory. If no directory is left, the watch thread
+   * ends.
+   *
+   * @param dir The directory to stop watching.
+   */
+  public synchronized void removeDirectory(File dir) {
+    mListenerMap.remove(dir.getAbsoluteFile());
+    if (mListenerMap.isEmpty()) {
+      mWatchThread = null;
+      notifyAll();
+    }
+  }
+
+
+  /**
+   * Tells the watcher that a directory was created. The listeners are
+   * notified without waiting for the next regular check.
+   *
+   * @param dir The created directory. It doesn't matter whether it is watched.
+   */
+  public synchronized void directoryCreated(File dir) {
+    if (mListenerMap.containsKey(dir.getAbsoluteFile())) {
+      mCheckRequested = true;
+      notifyAll();
+    }
+  }
+
+
+  /**
+   * The run method of the watch thread.
+   *
+   * @param thread The watch thread. The method returns when it is no longer
+   *        the watch thread.
+   */
+  private void watchThreadRun(Thread thread) {
+    while (true) {
+      List<Map.Entry<File, Listener>> entryList;
+      synchronized (this) {
+        if (mWatchThread != thread) {
+          return;
+        }
+        mCheckRequested = false;
+        entryList = new ArrayList<Map.Entry<File, Listener>>(mListenerMap.entrySet());
+      }
+
+      // Notify the listeners outside the lock, they may take some time
+      for (Map.Entry<File, Listener> entry : entryList) {
+        if (entry.getKey().exists()) {
+          try {
+            entry.getValue().directoryExists(entry.getKey());
+          }
+          catch (Throwable thr) {
+            mLog.error("Handling directory " + entry.getKey() + " failed", thr);
+          }
+        }
+      }
+
+      synchronized (this) {
+        if (! mCheckRequested && mWatchThread == thread) {
+          try {
+            wait(POLL_INTERVAL);
+          }
+          catch (InterruptedException exc) {}
+        }
+      }
+    }
+  }
+
+
+  /**
+   * Is notified when a watched directory exists.
+   */
+  public static interface Listener {
+
+    /**
+     * Called by the watch thread when a watched directory exists.
+     *
+     * @param dir The directory.
+     * @throws Exception If handling the directory failed. The directory is
+     *         checked again next time.
+     */
+    public void directoryExists(File dir) throws Exception;
+
+  }
+
+}
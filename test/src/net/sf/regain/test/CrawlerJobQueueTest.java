@@ -0,0 +1,69 @@
+package net.sf.regain.test;
+import java.io.File;
+import junit.framework.TestCase;
+import net.sf.regain.RegainToolkit;
+import net.sf.regain.crawler.CrawlerJob;
+import net.sf.regain.crawler.CrawlerJobQueue;
+
+public class CrawlerJobQueueTest extends TestCase {
+
+  private File dir;
+  private CrawlerJobQueue queue;
+
+  @Override
+  public void setUp() throws Exception
+  {
+    dir = new File(System.getProperty("java.io.tmpdir"), "CrawlerJobQueueTest");
+    RegainToolkit.deleteDirectory(dir);
+    queue = new CrawlerJobQueue(dir);
+  }
+
+  @Override
+  public void tearDown() throws Exception
+  {
+    queue.close();
+    RegainToolkit.deleteDirectory(dir);
+  }
+
+  private static CrawlerJob job(String url, boolean parse)
+  {
+    return new CrawlerJob(url, null, null, parse, true);
+  }
+
+  public void testOrder() throws Exception
+  {
+    queue.add(job("file:///parsed1", true));
+    queue.add(job("file:///unparsed1", false));
+    queue.add(job("file:///parsed2", true));
+    queue.add(job("file:///unparsed2", false));
+
+    assertEquals("file:///unparsed2", queue.removeFirst().getUrl());
+    assertEquals("file:///unparsed1", queue.removeFirst().getUrl());
+    assertEquals("file:///parsed1", queue.removeFirst().getUrl());
+    assertEquals("file:///parsed2", queue.removeFirst().getUrl());
+    assertNull(queue.removeFirst());
+  }
+
+  public void testSpooledUnparsedJobs() throws Exception
+  {
+    int count = 35000;
+    for (int i = 0; i < count; i++)
+      queue.add(job("file:///" + i, false));
+
+    File saved = new File(dir, "saved.dat");
+    queue.save(saved);
+    CrawlerJobQueue loaded = new CrawlerJobQueue(new File(dir, "loaded"));
+    try {
+      loaded.load(saved);
+      for (int i = count - 1; i >= 0; i--) {
+        assertEquals("file:///" + i, queue.removeFirst().getUrl());
+        assertEquals("file:///" + i, loaded.removeFirst().getUrl());
+      }
+      assertTrue(queue.isEmpty());
+      assertTrue(loaded.isEmpty());
+    } finally {
+      loaded.close();
+    }
+  }
+
+}
@@ -0,0 +1,56 @@
+package net.sf.regain.test;
+import java.io.File;
+import junit.framework.TestCase;
+import net.sf.regain.RegainToolkit;
+import net.sf.regain.util.io.DirectoryWatcher;
+
+public class DirectoryWatcherTest extends TestCase {
+
+  private File dir;
+  private int notifyCount;
+
+  @Override
+  public void setUp() throws Exception
+  {
+    dir = new File(System.getProperty("java.io.tmpdir"), "DirectoryWatcherTest");
+    RegainToolkit.deleteDirectory(dir);
+  }
+
+  @Override
+  public void tearDown() throws Exception
+  {
+    DirectoryWatcher.getInstance().removeDirectory(dir);
+    RegainToolkit.deleteDirectory(dir);
+  }
+
+  private synchronized void waitForNotify(long timeout) throws InterruptedException
+  {
+    long deadline = System.currentTimeMillis() + timeout;
+    while (notifyCount == 0 && System.currentTimeMillis() < deadline) {
+      wait(10);
+    }
+  }
+
+  public void testDirectoryCreated() throws Exception
+  {
+    DirectoryWatcher.getInstance().addDirectory(dir, new DirectoryWatcher.Listener() {
+      public void directoryExists(File existingDir) {
+        synchronized (DirectoryWatcherTest.this) {
+          notifyCount++;
+          existingDir.delete();
+        }
+      }
+    });
+    // Let the watch thread do its first check
+    Thread.sleep(100);
+
+    dir.mkdirs();
+    DirectoryWatcher.getInstance().directoryCreated(dir);
+
+    // The listener must be notified before the next regular check
+    waitForNotify(DirectoryWatcher.POLL_INTERVAL / 2);
+    assertEquals(1, notifyCount);
+    assertFalse(dir.exists());
+  }
+
+}
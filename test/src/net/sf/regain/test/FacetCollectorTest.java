@@ -0,0 +1,86 @@
+package net.sf.regain.test;
+import java.util.Iterator;
+import java.util.Map;
+import junit.framework.TestCase;
+import net.sf.regain.RegainToolkit;
+import net.sf.regain.search.results.FacetCollector;
+import org.apache.lucene.analysis.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.RAMDirectory;
+
+public class FacetCollectorTest extends TestCase {
+
+  private IndexSearcher searcher;
+
+  @Override
+  public void setUp() throws Exception
+  {
+    RAMDirectory dir = new RAMDirectory();
+    IndexWriterConfig config = new IndexWriterConfig(RegainToolkit.getLuceneVersion(),
+        new WhitespaceAnalyzer(RegainToolkit.getLuceneVersion()));
+    IndexWriter writer = new IndexWriter(dir, config);
+    String[][] docs = {
+      { "application/pdf", "a b" },
+      { "text/html", "a" },
+      { "application/pdf", "b" },
+      { "text/plain", "a" },
+      { "application/pdf", "a" }
+    };
+    for (int i = 0; i < docs.length; i++) {
+      Document doc = new Document();
+      doc.add(new Field("mimetype", docs[i][0], Field.Store.YES, Field.Index.NOT_ANALYZED));
+      doc.add(new Field("group", docs[i][1], Field.Store.NO, Field.Index.ANALYZED));
+      writer.addDocument(doc);
+      if (i == 2) {
+        // Create a second segment
+        writer.commit();
+      }
+    }
+    writer.close();
+    searcher = new IndexSearcher(IndexReader.open(dir));
+  }
+
+  @Override
+  public void tearDown() throws Exception
+  {
+    searcher.getIndexReader().close();
+  }
+
+  public void testCountAll() throws Exception
+  {
+    FacetCollector collector = new FacetCollector(new String[] { "mimetype", "group" });
+    searcher.search(new MatchAllDocsQuery(), collector);
+
+    Map<String, Integer> counts = collector.getCounts("mimetype");
+    assertEquals(3, counts.size());
+    Iterator<Map.Entry<String, Integer>> iter = counts.entrySet().iterator();
+    Map.Entry<String, Integer> first = iter.next();
+    assertEquals("application/pdf", first.getKey());
+    assertEquals(3, first.getValue().intValue());
+    assertEquals(1, counts.get("text/html").intValue());
+
+    // Multi-valued field
+    counts = collector.getCounts("group");
+    assertEquals(4, counts.get("a").intValue());
+    assertEquals(2, counts.get("b").intValue());
+  }
+
+  public void testCountHits() throws Exception
+  {
+    FacetCollector collector = new FacetCollector(new String[] { "mimetype" });
+    searcher.search(new TermQuery(new Term("group", "b")), collector);
+
+    Map<String, Integer> counts = collector.getCounts("mimetype");
+    assertEquals(1, counts.size());
+    assertEquals(2, counts.get("application/pdf").intValue());
+  }
+
+}
@@ -0,0 +1,95 @@
+package net.sf.regain.test;
+import java.io.File;
+import java.io.RandomAccessFile;
+import junit.framework.TestCase;
+import net.sf.regain.RegainToolkit;
+import net.sf.regain.crawler.FileManifest;
+
+public class FileManifestTest extends TestCase {
+
+  private File dir;
+  private File file;
+
+  @Override
+  public void setUp() throws Exception
+  {
+    dir = new File(System.getProperty("java.io.tmpdir"), "FileManifestTest");
+    RegainToolkit.deleteDirectory(dir);
+    dir.mkdirs();
+    file = new File(dir, FileManifest.MANIFEST_FILE_NAME);
+  }
+
+  @Override
+  public void tearDown() throws Exception
+  {
+    RegainToolkit.deleteDirectory(dir);
+  }
+
+  public void testNoOldManifest() throws Exception
+  {
+    FileManifest manifest = new FileManifest(null, file);
+    assertFalse(manifest.isUnchanged("file:///one", 10, 1000));
+    manifest.close();
+  }
+
+  public void testUnchanged() throws Exception
+  {
+    FileManifest manifest = new FileManifest(null, file);
+    manifest.add("file:///one", 10, 1000);
+    manifest.add("file:///two", 20, 2000);
+    manifest.close();
+    assertEquals(2, manifest.getNewSize());
+
+    // The new manifest replaces the old one
+    manifest = new FileManifest(file, file);
+    assertTrue(manifest.isUnchanged("file:///one", 10, 1000));
+    assertTrue(manifest.isUnchanged("file:///two", 20, 2000));
+    assertFalse("Changed size not detected", manifest.isUnchanged("file:///one", 11, 1000));
+    assertFalse("Changed date not detected", manifest.isUnchanged("file:///two", 20, 2001));
+    assertFalse(manifest.isUnchanged("file:///three", 30, 3000));
+    manifest.add("file:///two", 20, 2000);
+    manifest.close();
+
+    manifest = new FileManifest(file, file);
+    assertFalse("Dropped file still in manifest", manifest.isUnchanged("file:///one", 10, 1000));
+    assertTrue(manifest.isUnchanged("file:///two", 20, 2000));
+    manifest.close();
+  }
+
+  public void testKeepOldEntries() throws Exception
+  {
+    FileManifest manifest = new FileManifest(null, file);
+    manifest.add("file:///one", 10, 1000);
+    manifest.close();
+
+    // Continuing from a breakpoint: The file is not visited again
+    manifest = new FileManifest(file, file, true);
+    manifest.add("file:///two", 20, 2000);
+    manifest.close();
+    assertEquals(2, manifest.getNewSize());
+
+    manifest = new FileManifest(file, file);
+    assertTrue(manifest.isUnchanged("file:///one", 10, 1000));
+    assertTrue(manifest.isUnchanged("file:///two", 20, 2000));
+    manifest.close();
+  }
+
+  public void testIncompleteManifest() throws Exception
+  {
+    FileManifest manifest = new FileManifest(null, file);
+    manifest.add("file:///one", 10, 1000);
+    manifest.add("file:///two", 20, 2000);
+    manifest.close();
+
+    // Cut the last entry like a copy of a manifest that is written
+    RandomAccessFile access = new RandomAccessFile(file, "rw");
+    access.setLength(access.length() - 4);
+    access.close();
+
+    manifest = new FileManifest(file, new File(dir, "new.dat"));
+    assertTrue(manifest.isUnchanged("file:///one", 10, 1000));
+    assertFalse(manifest.isUnchanged("file:///two", 20, 2000));
+    manifest.close();
+  }
+
+}
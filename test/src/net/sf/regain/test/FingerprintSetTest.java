@@ -0,0 +1,107 @@
+package net.sf.regain.test;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import junit.framework.TestCase;
+import net.sf.regain.RegainToolkit;
+import net.sf.regain.util.FingerprintSet;
+
+public class FingerprintSetTest extends TestCase {
+
+  private File dir;
+  private FingerprintSet data;
+
+  @Override
+  public void setUp() throws Exception
+  {
+    dir = new File(System.getProperty("java.io.tmpdir"), "FingerprintSetTest");
+    RegainToolkit.deleteDirectory(dir);
+    data = new FingerprintSet(dir, "test");
+  }
+
+  @Override
+  public void tearDown() throws Exception
+  {
+    data.close();
+    RegainToolkit.deleteDirectory(dir);
+  }
+
+  public void testAdd() throws Exception
+  {
+    assertTrue(data.add("file:///one"));
+    assertTrue(data.add("file:///two"));
+    assertFalse("Adding a String twice didn't work", data.add("file:///one"));
+
+    assertEquals(2, data.size());
+    assertTrue(data.contains("file:///one"));
+    assertTrue(data.contains("file:///two"));
+    assertFalse(data.contains("file:///three"));
+  }
+
+  public void testGrow() throws Exception
+  {
+    for (int i = 0; i < 100000; i++)
+      assertTrue(data.add("http://www.example.com/" + i));
+
+    assertEquals(100000, data.size());
+    for (int i = 0; i < 100000; i++)
+      assertTrue("Lost entry " + i, data.contains("http://www.example.com/" + i));
+    assertFalse(data.contains("http://www.example.com/100000"));
+  }
+
+  public void testWriteStrings() throws Exception
+  {
+    data.add("one");
+    data.add("two");
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    PrintStream printer = new PrintStream(bytes, true, "UTF-8");
+    data.writeStrings(printer);
+    printer.close();
+
+    String lineSeparator = RegainToolkit.getLineSeparator();
+    assertEquals("one" + lineSeparator + "two" + lineSeparator, bytes.toString("UTF-8"));
+  }
+
+  public void testKey() throws Exception
+  {
+    FingerprintSet keyed = new FingerprintSet(dir, "keyed") {
+      @Override
+      protected String getKey(String text) {
+        return text.toLowerCase();
+      }
+    };
+    try {
+      assertTrue(keyed.add("One"));
+      assertFalse(keyed.add("ONE"));
+      assertTrue(keyed.contains("one"));
+
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      PrintStream printer = new PrintStream(bytes, true, "UTF-8");
+      keyed.writeStrings(printer);
+      printer.close();
+      assertEquals("One" + RegainToolkit.getLineSeparator(), bytes.toString("UTF-8"));
+    } finally {
+      keyed.close();
+    }
+  }
+
+  public void testSaveAndLoad() throws Exception
+  {
+    data.add("one");
+    data.add("t\u00fcr");
+    File file = new File(dir, "saved.dat");
+    data.save(file);
+
+    FingerprintSet loaded = new FingerprintSet(dir, "loaded");
+    try {
+      loaded.load(file);
+      assertEquals(2, loaded.size());
+      assertTrue(loaded.contains("one"));
+      assertTrue(loaded.contains("t\u00fcr"));
+    } finally {
+      loaded.close();
+    }
+  }
+
+}
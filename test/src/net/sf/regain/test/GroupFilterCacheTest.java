@@ -0,0 +1,61 @@
+package net.sf.regain.test;
+import junit.framework.TestCase;
+import net.sf.regain.RegainToolkit;
+import net.sf.regain.search.SearchToolkit;
+import net.sf.regain.search.access.GroupFilterCache;
+import org.apache.lucene.analysis.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.RAMDirectory;
+
+public class GroupFilterCacheTest extends TestCase {
+
+  public void testGroupSetKey() throws Exception
+  {
+    assertEquals("a b c", GroupFilterCache.getGroupSetKey(new String[] { "c", "a", "b", "a" }));
+    assertEquals("", GroupFilterCache.getGroupSetKey(new String[0]));
+  }
+
+  public void testSameFilter() throws Exception
+  {
+    GroupFilterCache cache = GroupFilterCache.getInstance();
+    long hits = cache.getHitCount();
+    assertSame(cache.getFilter(new String[] { "x", "y" }), cache.getFilter(new String[] { "y", "x", "y" }));
+    assertEquals(hits + 1, cache.getHitCount());
+    assertNotSame(cache.getFilter(new String[] { "x" }), cache.getFilter(new String[] { "x", "y" }));
+  }
+
+  public void testAccessControl() throws Exception
+  {
+    RAMDirectory dir = new RAMDirectory();
+    IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig(RegainToolkit.getLuceneVersion(),
+        new WhitespaceAnalyzer(RegainToolkit.getLuceneVersion())));
+    String[] groups = { "admin", "staff", "admin staff" };
+    for (int i = 0; i < groups.length; i++) {
+      Document doc = new Document();
+      doc.add(new Field("content", "test", Field.Store.NO, Field.Index.ANALYZED));
+      doc.add(new Field(RegainToolkit.FIELD_ACCESS_CONTROL_GROUPS, groups[i], Field.Store.NO, Field.Index.ANALYZED));
+      writer.addDocument(doc);
+    }
+    writer.close();
+
+    IndexSearcher searcher = new IndexSearcher(IndexReader.open(dir));
+    Query query = new TermQuery(new Term("content", "test"));
+    TopDocs plain = searcher.search(query, 10);
+    TopDocs staff = searcher.search(SearchToolkit.addAccessControlToQuery(query, new String[] { "staff" }), 10);
+    assertEquals(2, staff.totalHits);
+    assertEquals("The groups must not change the score", plain.scoreDocs[0].score, staff.scoreDocs[0].score, 0.0001f);
+    assertEquals(3, searcher.search(SearchToolkit.addAccessControlToQuery(query, new String[] { "staff", "admin" }), 10).totalHits);
+    assertEquals(0, searcher.search(SearchToolkit.addAccessControlToQuery(query, new String[] { "guest" }), 10).totalHits);
+    searcher.getIndexReader().close();
+  }
+
+}
@@ -0,0 +1,158 @@
+package net.sf.regain.test;
+import java.io.File;
+import junit.framework.TestCase;
+import net.sf.regain.RegainToolkit;
+import net.sf.regain.crawler.CrawlerJob;
+import net.sf.regain.crawler.CrawlerJobQueue;
+import net.sf.regain.crawler.HostScheduler;
+import net.sf.regain.crawler.RobotsTxt;
+
+public class HostSchedulerTest extends TestCase {
+
+  private File dir;
+  private CrawlerJobQueue queue;
+
+  @Override
+  public void setUp() throws Exception
+  {
+    dir = new File(System.getProperty("java.io.tmpdir"), "HostSchedulerTest");
+    RegainToolkit.deleteDirectory(dir);
+    queue = new CrawlerJobQueue(dir);
+  }
+
+  @Override
+  public void tearDown() throws Exception
+  {
+    queue.close();
+    RegainToolkit.deleteDirectory(dir);
+  }
+
+  private static CrawlerJob job(String url)
+  {
+    return new CrawlerJob(url, null, null, true, true);
+  }
+
+  public void testRoundRobin() throws Exception
+  {
+    HostScheduler scheduler = new HostScheduler(queue, 4, 0, false);
+    scheduler.add(job("http://a/1"));
+    scheduler.add(job("http://a/2"));
+    scheduler.add(job("http://a/3"));
+    scheduler.add(job("http://b/1"));
+
+    assertEquals("http://a/1", scheduler.takeJob(0).getUrl());
+    assertEquals("http://b/1", scheduler.takeJob(0).getUrl());
+    assertEquals("http://a/2", scheduler.takeJob(0).getUrl());
+    assertEquals("http://a/3", scheduler.takeJob(0).getUrl());
+    assertNull(scheduler.takeJob(0));
+    assertTrue(scheduler.isEmpty());
+  }
+
+  public void testDefaultPort() throws Exception
+  {
+    HostScheduler scheduler = new HostScheduler(queue, 1, 0, false);
+    scheduler.add(job("http://a/1"));
+    scheduler.add(job("http://a:80/2"));
+
+    assertEquals("http://a/1", scheduler.takeJob(0).getUrl());
+    assertNull("Explicit default port is another host", scheduler.takeJob(0));
+  }
+
+  public void testManyJobsOfOneHost() throws Exception
+  {
+    HostScheduler scheduler = new HostScheduler(queue, 4, 1000, false);
+    for (int i = 0; i < 300; i++)
+      scheduler.add(job("http://a/" + i));
+    scheduler.add(job("http://b/1"));
+
+    assertEquals("http://a/0", scheduler.takeJob(0).getUrl());
+    assertEquals("Host b has to wait for host a", "http://b/1", scheduler.takeJob(0).getUrl());
+    assertEquals(299, scheduler.size());
+
+    int count = 0;
+    CrawlerJob job;
+    for (long now = 1000; (job = scheduler.takeJob(now)) != null; now += 1000) {
+      scheduler.jobFinished(job);
+      count++;
+    }
+    assertEquals(299, count);
+    assertTrue(scheduler.isEmpty());
+  }
+
+  public void testMaxJobsPerHost() throws Exception
+  {
+    HostScheduler scheduler = new HostScheduler(queue, 1, 0, false);
+    scheduler.add(job("http://a/1"));
+    scheduler.add(job("http://a/2"));
+    scheduler.add(job("file:///tmp/1"));
+
+    CrawlerJob first = scheduler.takeJob(0);
+    assertEquals("http://a/1", first.getUrl());
+    assertEquals("file:///tmp/1", scheduler.takeJob(0).getUrl());
+    assertNull("Second job of host a was started", scheduler.takeJob(0));
+    assertEquals(0, scheduler.getWaitTime(0));
+
+    scheduler.jobFinished(first);
+    assertEquals("http://a/2", scheduler.takeJob(0).getUrl());
+  }
+
+  public void testHostDelay() throws Exception
+  {
+    HostScheduler scheduler = new HostScheduler(queue, 4, 500, false);
+    scheduler.add(job("http://a/1"));
+    scheduler.add(job("http://a/2"));
+
+    scheduler.jobFinished(scheduler.takeJob(1000));
+    assertNull(scheduler.takeJob(1200));
+    assertEquals(300, scheduler.getWaitTime(1200));
+    assertEquals("http://a/2", scheduler.takeJob(1500).getUrl());
+  }
+
+  public void testBackoff() throws Exception
+  {
+    HostScheduler scheduler = new HostScheduler(queue, 4, 0, false);
+    scheduler.add(job("http://a/1"));
+    scheduler.add(job("http://a/2"));
+
+    CrawlerJob first = scheduler.takeJob(0);
+    scheduler.reportResult(first.getUrl(), 0, true);
+    scheduler.jobFinished(first);
+    assertNull("Overloaded host was not slowed down", scheduler.takeJob(500));
+    assertNotNull(scheduler.takeJob(1000));
+  }
+
+  public void testRobotsTxt() throws Exception
+  {
+    HostScheduler scheduler = new HostScheduler(queue, 4, 0, true);
+    scheduler.add(job("http://a/1"));
+    scheduler.add(job("http://a/2"));
+
+    CrawlerJob first = scheduler.takeJob(0);
+    assertEquals("http://a/robots.txt", scheduler.takeRobotsTxtUrl(first.getUrl()));
+    assertNull(scheduler.takeRobotsTxtUrl(first.getUrl()));
+    assertNull("Job started before robots.txt was loaded", scheduler.takeJob(0));
+
+    scheduler.setCrawlDelay(first.getUrl(), 2000);
+    scheduler.jobFinished(first);
+    assertNull(scheduler.takeJob(1000));
+    assertNotNull(scheduler.takeJob(2000));
+  }
+
+  public void testParseCrawlDelay()
+  {
+    String robotsTxt = "User-agent: *\n"
+      + "Disallow: /private/\n"
+      + "Crawl-delay: 2\n"
+      + "\n"
+      + "# The regain crawler may be faster\n"
+      + "User-agent: googlebot\n"
+      + "User-agent: regain\n"
+      + "Crawl-delay: 0.5\n";
+
+    assertEquals(500, RobotsTxt.parseCrawlDelay(robotsTxt, "regain/2.0 (+http://regain.sf.net)"));
+    assertEquals(2000, RobotsTxt.parseCrawlDelay(robotsTxt, "Java/1.6"));
+    assertEquals(2000, RobotsTxt.parseCrawlDelay(robotsTxt, null));
+    assertEquals(-1, RobotsTxt.parseCrawlDelay("User-agent: *\nDisallow:\n", "regain"));
+  }
+
+}
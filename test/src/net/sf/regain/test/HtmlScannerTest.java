@@ -0,0 +1,70 @@
+package net.sf.regain.test;
+import junit.framework.TestCase;
+import net.sf.regain.crawler.document.CharsetSniffer;
+import net.sf.regain.crawler.preparator.html.HtmlScanner;
+
+public class HtmlScannerTest extends TestCase {
+
+  private static final String HTML =
+    "<html><head><TITLE>The &amp; title</TITLE>"
+    + "<base href=\"http://www.example.com/dir/\">"
+    + "<script type=\"text/javascript\">if (a < b) { document.write('<a href=\"x\">'); }</script>"
+    + "<style>p { color: red; }</style></head>\n"
+    + "<body><!-- <a href=\"comment.html\">no link</a> -->"
+    + "<h1>Head&uuml;line</h1><p>Some   text\n with <b>bold</b> words.</p>"
+    + "<div>Main <A HREF='page.html#top' title=\"a > b\">the\n link</a> part</div>"
+    + "<a href=\"mailto:info@example.com\">mail</a>"
+    + "<frame src=\"frame.html\">&nbsp;end"
+    + "</body></html>";
+
+  public void testScan() throws Exception
+  {
+    HtmlScanner scanner = new HtmlScanner(HTML, 0, HTML.length());
+    scanner.scan();
+
+    assertEquals("The &amp; title", scanner.getTitle());
+    assertEquals("http://www.example.com/dir/", scanner.getBaseHref());
+    assertEquals("Head\u00fcline\n", scanner.getHeadlines());
+    assertEquals("The & title\nHead\u00fcline\nSome text with bold words.\n"
+        + "Main the link part\nmail end", scanner.getText());
+
+    assertEquals(2, scanner.getLinkUrlList().size());
+    assertEquals("page.html#top", scanner.getLinkUrlList().get(0));
+    assertEquals("the link", scanner.getLinkTextList().get(0));
+    assertEquals("mailto:info@example.com", scanner.getLinkUrlList().get(1));
+    assertEquals("mail", scanner.getLinkTextList().get(1));
+
+    assertEquals(1, scanner.getFrameUrlList().size());
+    assertEquals("frame.html", scanner.getFrameUrlList().get(0));
+  }
+
+  public void testTextRange() throws Exception
+  {
+    int start = HTML.indexOf("<div>");
+    int end = HTML.indexOf("</div>");
+    HtmlScanner scanner = new HtmlScanner(HTML, start, end);
+    scanner.scan();
+
+    assertEquals("Main the link part", scanner.getText());
+    assertEquals(2, scanner.getLinkUrlList().size());
+  }
+
+  public void testSniffCharset() throws Exception
+  {
+    byte[] utf8 = "<meta charset=\"utf-8\"><p>\u00fc</p>".getBytes("UTF-8");
+    assertEquals("utf-8", CharsetSniffer.sniffCharset(utf8, "ISO-8859-1"));
+    assertEquals("<meta charset=\"utf-8\"><p>\u00fc</p>", CharsetSniffer.decode(utf8, "ISO-8859-1"));
+
+    byte[] latin1 = ("<meta http-equiv=\"Content-Type\" content=\"text/html; charset=ISO-8859-1\">"
+        + "\u00fc").getBytes("ISO-8859-1");
+    assertEquals("ISO-8859-1", CharsetSniffer.sniffCharset(latin1, "UTF-8"));
+
+    byte[] bom = { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF, 'a' };
+    assertEquals("UTF-8", CharsetSniffer.sniffCharset(bom, "ISO-8859-1"));
+    assertEquals("a", CharsetSniffer.decode(bom, "ISO-8859-1"));
+
+    byte[] plain = "<p>text</p>".getBytes("ISO-8859-1");
+    assertEquals("windows-1252", CharsetSniffer.sniffCharset(plain, "windows-1252"));
+  }
+
+}
@@ -0,0 +1,93 @@
+package net.sf.regain.test;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import junit.framework.TestCase;
+import net.sf.regain.RegainToolkit;
+import net.sf.regain.crawler.document.PathElement;
+import net.sf.regain.crawler.document.PreparationCache;
+import net.sf.regain.crawler.document.RawDocument;
+
+public class PreparationCacheTest extends TestCase {
+
+  private File dir;
+
+  @Override
+  public void setUp() throws Exception
+  {
+    dir = new File(System.getProperty("java.io.tmpdir"), "PreparationCacheTest");
+    RegainToolkit.deleteDirectory(dir);
+    dir.mkdirs();
+  }
+
+  @Override
+  public void tearDown() throws Exception
+  {
+    RegainToolkit.deleteDirectory(dir);
+  }
+
+  private RawDocument createDocument(String name, String content) throws Exception
+  {
+    File file = new File(dir, name);
+    FileOutputStream out = new FileOutputStream(file);
+    out.write(content.getBytes("UTF-8"));
+    out.close();
+    return new RawDocument(RegainToolkit.fileToUrl(file), null, null, file, null);
+  }
+
+  public void testDigest() throws Exception
+  {
+    String digest1 = PreparationCache.getDigest(createDocument("a.txt", "Hello"), "Prep");
+    String digest2 = PreparationCache.getDigest(createDocument("b.txt", "Hello"), "Prep");
+    String digest3 = PreparationCache.getDigest(createDocument("c.txt", "Hallo"), "Prep");
+    assertEquals("Same content must have the same digest", digest1, digest2);
+    assertFalse(digest1.equals(digest3));
+    assertFalse("Preparator not part of the digest",
+        digest1.equals(PreparationCache.getDigest(createDocument("d.txt", "Hello"), "Other")));
+
+    RawDocument doc = createDocument("e.txt", "Hello");
+    doc.setCharset("UTF-16");
+    assertFalse("Charset not part of the digest",
+        digest1.equals(PreparationCache.getDigest(doc, "Prep")));
+    assertFalse("Preparation variant not part of the digest",
+        PreparationCache.getDigest(createDocument("f.txt", "Hello"), "Prep", "0").equals(
+        PreparationCache.getDigest(createDocument("g.txt", "Hello"), "Prep", "1")));
+  }
+
+  public void testPutGet() throws Exception
+  {
+    File cacheDir = new File(dir, "cache");
+    PreparationCache cache = new PreparationCache(cacheDir, 1024 * 1024);
+    assertNull(cache.get("0123456789abcdef"));
+
+    Map<String, String> fieldMap = new HashMap<String, String>();
+    fieldMap.put("author", "M\u00fcller");
+    PathElement[] path = { new PathElement("file:///a", "A") };
+    cache.put("0123456789abcdef", new PreparationCache.Entry("Title", "Content",
+        null, "Summary", "Headlines", path, fieldMap));
+
+    // A new instance reads the existing entries
+    cache = new PreparationCache(cacheDir, 1024 * 1024);
+    assertEquals(1, cache.getEntryCount());
+    PreparationCache.Entry entry = cache.get("0123456789abcdef");
+    assertEquals("Title", entry.getTitle());
+    assertEquals("Content", entry.getCleanedContent());
+    assertNull(entry.getMetadata());
+    assertEquals("Summary", entry.getSummary());
+    assertEquals("Headlines", entry.getHeadlines());
+    assertEquals("A", entry.getPath()[0].getTitle());
+    assertEquals("M\u00fcller", entry.getAdditionalFieldMap().get("author"));
+  }
+
+  public void testEviction() throws Exception
+  {
+    PreparationCache cache = new PreparationCache(new File(dir, "cache"), 1);
+    cache.put("00000000000000000000000000000001", new PreparationCache.Entry("Title", "Content",
+        null, null, null, null, null));
+    assertEquals(0, cache.getEntryCount());
+    assertEquals(0, cache.getSize());
+    assertNull(cache.get("00000000000000000000000000000001"));
+  }
+
+}
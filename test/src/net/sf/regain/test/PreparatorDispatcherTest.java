@@ -0,0 +1,93 @@
+package net.sf.regain.test;
+import java.io.File;
+import junit.framework.TestCase;
+import net.sf.regain.RegainException;
+import net.sf.regain.crawler.document.AbstractPreparator;
+import net.sf.regain.crawler.document.MimeTypeCache;
+import net.sf.regain.crawler.document.Preparator;
+import net.sf.regain.crawler.document.PreparatorDispatcher;
+import net.sf.regain.crawler.document.RawDocument;
+import org.apache.regexp.RE;
+
+public class PreparatorDispatcherTest extends TestCase {
+
+  private static class TestPreparator extends AbstractPreparator {
+    public TestPreparator(String[] mimeTypeArr, int priority) throws RegainException {
+      super(mimeTypeArr);
+      setPriority(priority);
+    }
+
+    public void prepare(RawDocument rawDocument) throws RegainException {
+    }
+  }
+
+  private static class ExternalTestPreparator extends TestPreparator {
+    public ExternalTestPreparator(int priority) throws RegainException {
+      super(new String[] { "text/html" }, priority);
+    }
+
+    @Override
+    public boolean accepts(RawDocument rawDocument) {
+      return rawDocument.getUrl().endsWith(".htm");
+    }
+  }
+
+  private Preparator[] preparators;
+
+  @Override
+  public void setUp() throws Exception
+  {
+    preparators = new Preparator[] {
+      new TestPreparator(new String[] { "text/plain" }, 1),
+      new TestPreparator(new String[] { "text/html", "application/xhtml+xml" }, 5),
+      new TestPreparator(new String[] { "text/html" }, 5),
+      new ExternalTestPreparator(7),
+      new TestPreparator(new String[0], 9),
+      new TestPreparator(new String[] { "text/plain", "text/html" }, 3)
+    };
+    preparators[4].setUrlRegex(new RE("\\.txt$"));
+  }
+
+  private int[] dispatch(String url, String mimeType) throws Exception
+  {
+    RawDocument doc = new RawDocument(url, null, null, new File("/tmp"), null);
+    doc.setMimeType(mimeType);
+    return new PreparatorDispatcher(preparators).getAcceptingPreparators(doc);
+  }
+
+  private void assertIndexes(int[] expected, int[] actual)
+  {
+    assertEquals(expected.length, actual.length);
+    for (int i = 0; i < expected.length; i++) {
+      assertEquals(expected[i], actual[i]);
+    }
+  }
+
+  public void testDispatch() throws Exception
+  {
+    assertIndexes(new int[] { 1, 2, 5 }, dispatch("http://www.example.com/", "text/html"));
+    assertIndexes(new int[] { 3, 1, 2, 5 }, dispatch("http://www.example.com/x.htm", "text/html"));
+    assertIndexes(new int[] { 4, 5, 0 }, dispatch("file:///x.txt", "text/plain"));
+    assertIndexes(new int[] { 5, 0 }, dispatch("file:///x.log", "text/plain"));
+    assertIndexes(new int[] { 1 }, dispatch("file:///x.xhtml", "application/xhtml+xml"));
+    assertIndexes(new int[0], dispatch("file:///x.pdf", "application/pdf"));
+    assertIndexes(new int[0], dispatch("file:///x.pdf", null));
+  }
+
+  public void testMimeTypeCache() throws Exception
+  {
+    MimeTypeCache cache = new MimeTypeCache(2);
+    cache.put("txt", "txt", new byte[] { 1, 2 }, "text/plain");
+    cache.put("html", null, new byte[] { 1, 2 }, "text/html");
+    assertEquals("text/plain", cache.get("txt", "txt", new byte[] { 1, 2 }));
+    assertEquals("text/html", cache.get("html", null, new byte[] { 1, 2 }));
+    assertNull(cache.get("txt", "txt", new byte[] { 1, 3 }));
+    assertNull(cache.get("txt", null, new byte[] { 1, 2 }));
+
+    cache.put("pdf", "pdf", new byte[] { 3 }, "application/pdf");
+    assertEquals(2, cache.size());
+    assertNull(cache.get("txt", "txt", new byte[] { 1, 2 }));
+    assertEquals("application/pdf", cache.get("pdf", "pdf", new byte[] { 3 }));
+  }
+
+}
@@ -0,0 +1,76 @@
+package net.sf.regain.test;
+import junit.framework.TestCase;
+import net.sf.regain.search.results.QueryResultCache;
+import org.apache.lucene.search.ScoreDoc;
+
+public class QueryResultCacheTest extends TestCase {
+
+  private static final String[] INDEX_DIRS = { "/index/a", "/index/b" };
+
+  private ScoreDoc[] createHits(int count)
+  {
+    ScoreDoc[] hits = new ScoreDoc[count];
+    for (int i = 0; i < count; i++) {
+      hits[i] = new ScoreDoc(i * 2, 1.0f / (i + 1));
+    }
+    return hits;
+  }
+
+  public void testKey() throws Exception
+  {
+    String key1 = QueryResultCache.createKey("content:test", "relevance_desc", INDEX_DIRS, new long[] { 1, 1 });
+    String key2 = QueryResultCache.createKey("content:test", "relevance_desc", INDEX_DIRS, new long[] { 1, 2 });
+    String key3 = QueryResultCache.createKey("content:test", "size_desc", INDEX_DIRS, new long[] { 1, 1 });
+    assertFalse("Generation not part of the key", key1.equals(key2));
+    assertFalse("Sort order not part of the key", key1.equals(key3));
+  }
+
+  public void testGet() throws Exception
+  {
+    QueryResultCache cache = QueryResultCache.getInstance();
+    String key = QueryResultCache.createKey("content:get", "relevance_desc", INDEX_DIRS, new long[] { 1, 1 });
+    assertNull(cache.get(key, 10));
+
+    cache.put(key, INDEX_DIRS, createHits(20), 100);
+    QueryResultCache.Entry entry = cache.get(key, 10);
+    assertEquals(100, entry.getTotalHits());
+    assertEquals(10, entry.getHits(10).length);
+    assertEquals(4, entry.getHits(10)[2].doc);
+    assertEquals(0.5f, entry.getHits(10)[1].score, 0);
+
+    // A later page needs more hits than cached
+    assertNull(cache.get(key, 30));
+
+    // All hits are cached
+    cache.put(key, INDEX_DIRS, createHits(5), 5);
+    assertEquals(5, cache.get(key, 30).getHits(30).length);
+  }
+
+  public void testRemoveIndex() throws Exception
+  {
+    QueryResultCache cache = QueryResultCache.getInstance();
+    String[] indexDirs = { "/index/c", "/index/d" };
+    String key = QueryResultCache.createKey("content:remove", "relevance_desc", indexDirs, new long[] { 1, 1 });
+    cache.put(key, indexDirs, createHits(5), 5);
+    long invalidations = cache.getInvalidationCount();
+
+    cache.removeIndex("/index/d");
+    assertNull(cache.get(key, 5));
+    assertEquals(invalidations + 1, cache.getInvalidationCount());
+  }
+
+  public void testEviction() throws Exception
+  {
+    QueryResultCache cache = QueryResultCache.getInstance();
+    String first = QueryResultCache.createKey("content:first", "relevance_desc", INDEX_DIRS, new long[] { 1, 1 });
+    cache.put(first, INDEX_DIRS, createHits(1), 1);
+    for (int i = 0; i < 1000; i++) {
+      String key = QueryResultCache.createKey("content:" + i, "relevance_desc", INDEX_DIRS, new long[] { 1, 1 });
+      cache.put(key, INDEX_DIRS, createHits(1), 1);
+    }
+    assertEquals(1000, cache.getEntryCount());
+    assertNull("Least recently used entry not evicted", cache.get(first, 1));
+    assertTrue(cache.getEvictionCount() > 0);
+  }
+
+}
@@ -0,0 +1,80 @@
+package net.sf.regain.test;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import junit.framework.TestCase;
+import net.sf.regain.RegainToolkit;
+import net.sf.regain.crawler.CrawlerToolkit;
+import net.sf.regain.crawler.document.RawDocument;
+
+public class RawDocumentTest extends TestCase {
+
+  private File file;
+
+  @Override
+  public void setUp() throws Exception
+  {
+    file = File.createTempFile("rawdocumenttest", ".html");
+  }
+
+  @Override
+  public void tearDown() throws Exception
+  {
+    file.delete();
+  }
+
+  private RawDocument createDocument(byte[] content) throws Exception
+  {
+    FileOutputStream out = new FileOutputStream(file);
+    out.write(content);
+    out.close();
+    return new RawDocument(RegainToolkit.fileToUrl(file), null, null, file, null);
+  }
+
+  public void testCharset() throws Exception
+  {
+    String text = "<html><head><meta charset=\"utf-8\"></head><body>\u00e4\u00f6\u00fc</body></html>";
+    RawDocument doc = createDocument(text.getBytes("UTF-8"));
+    assertEquals("utf-8", doc.getCharset());
+    assertEquals(text, doc.getContentAsString());
+
+    byte[] bom = { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF };
+    byte[] plain = "\u00e4bc".getBytes("UTF-8");
+    byte[] content = new byte[bom.length + plain.length];
+    System.arraycopy(bom, 0, content, 0, bom.length);
+    System.arraycopy(plain, 0, content, bom.length, plain.length);
+    doc = createDocument(content);
+    assertEquals("\u00e4bc", doc.getContentAsString());
+    assertEquals("UTF-8", doc.getCharset());
+  }
+
+  public void testChannelAndCopy() throws Exception
+  {
+    byte[] content = new byte[100000];
+    for (int i = 0; i < content.length; i++) {
+      content[i] = (byte) i;
+    }
+    RawDocument doc = createDocument(content);
+
+    ReadableByteChannel channel = doc.getContentAsChannel();
+    ByteBuffer buffer = ByteBuffer.allocate(content.length + 1);
+    while (channel.read(buffer) != -1) {}
+    channel.close();
+    assertEquals(content.length, buffer.position());
+    assertEquals(content[99999], buffer.get(99999));
+
+    File copy = doc.getContentAsFile(true);
+    try {
+      assertFalse(file.equals(copy));
+      byte[] copied = CrawlerToolkit.loadFile(copy);
+      assertEquals(content.length, copied.length);
+      assertEquals(content[12345], copied[12345]);
+    }
+    finally {
+      doc.dispose();
+    }
+    assertFalse(copy.exists());
+  }
+
+}
@@ -0,0 +1,71 @@
+package net.sf.regain.test;
+import java.util.Collections;
+import java.util.Set;
+import junit.framework.TestCase;
+import net.sf.regain.RegainToolkit;
+import net.sf.regain.search.ReversedWildcardQuery;
+import net.sf.regain.search.ReversedWildcardQueryParser;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.WildcardQuery;
+import org.apache.lucene.store.RAMDirectory;
+
+public class ReversedWildcardQueryTest extends TestCase {
+
+  private IndexSearcher searcher;
+  private Analyzer analyzer;
+
+  @Override
+  public void setUp() throws Exception
+  {
+    analyzer = RegainToolkit.createAnalyzer("english", new String[0], new String[0], new String[0]);
+    RAMDirectory dir = new RAMDirectory();
+    IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig(RegainToolkit.getLuceneVersion(), analyzer));
+    String[] texts = { "Monatsbericht Mai", "Jahresbericht", "Berichtsheft", "M\u00fcllbericht" };
+    for (int i = 0; i < texts.length; i++) {
+      Document doc = new Document();
+      doc.add(new Field("content", texts[i], Field.Store.YES, Field.Index.ANALYZED));
+      doc.add(new Field(RegainToolkit.getReversedFieldName("content"), texts[i], Field.Store.NO, Field.Index.ANALYZED_NO_NORMS));
+      writer.addDocument(doc);
+    }
+    writer.close();
+    searcher = new IndexSearcher(IndexReader.open(dir));
+  }
+
+  @Override
+  public void tearDown() throws Exception
+  {
+    searcher.getIndexReader().close();
+  }
+
+  public void testSameHits() throws Exception
+  {
+    String[] patterns = { "*bericht", "*b?richt", "*llbericht", "*nothing" };
+    for (int i = 0; i < patterns.length; i++) {
+      Term term = new Term("content", patterns[i]);
+      assertEquals(patterns[i], searcher.search(new WildcardQuery(term), 10).totalHits,
+          searcher.search(new ReversedWildcardQuery(term), 10).totalHits);
+    }
+    assertEquals(3, searcher.search(new ReversedWildcardQuery(new Term("content", "*bericht")), 10).totalHits);
+  }
+
+  public void testParser() throws Exception
+  {
+    Set<String> reversed = Collections.singleton("content");
+    ReversedWildcardQueryParser parser = new ReversedWildcardQueryParser("content", analyzer, reversed);
+    assertTrue(parser.parse("*Bericht") instanceof ReversedWildcardQuery);
+    assertEquals("content:*bericht", parser.parse("*Bericht").toString());
+    Query infix = parser.parse("*bericht*");
+    assertTrue(infix instanceof WildcardQuery);
+    assertTrue(parser.parse("title:*bericht") instanceof WildcardQuery);
+    assertEquals(3, searcher.search(parser.parse("*Bericht"), 10).totalHits);
+  }
+
+}
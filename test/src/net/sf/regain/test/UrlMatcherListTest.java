@@ -0,0 +1,64 @@
+package net.sf.regain.test;
+import junit.framework.TestCase;
+import net.sf.regain.crawler.config.PrefixUrlMatcher;
+import net.sf.regain.crawler.config.RegexUrlMatcher;
+import net.sf.regain.crawler.config.UrlMatcher;
+import net.sf.regain.crawler.config.UrlMatcherList;
+
+public class UrlMatcherListTest extends TestCase {
+
+  private UrlMatcher[] matchers;
+
+  @Override
+  public void setUp() throws Exception
+  {
+    matchers = new UrlMatcher[] {
+      new PrefixUrlMatcher("http://www.example.com/wiki/Special:", false, false),
+      new RegexUrlMatcher(".*\\.(jpg|gif)", false, true),
+      new PrefixUrlMatcher("http://www.example.com/wiki/", true, true),
+      new RegexUrlMatcher("(?i).*/ARCHIVE/.*", true, false),
+      new RegexUrlMatcher("http://(\\w+)\\.example\\.com/\\1/.*", false, false),
+      new PrefixUrlMatcher("http://www.example.com/", true, false),
+      new PrefixUrlMatcher("file://", true, true)
+    };
+  }
+
+  private UrlMatcher firstMatch(String url)
+  {
+    for (int i = 0; i < matchers.length; i++) {
+      if (matchers[i].matches(url)) {
+        return matchers[i];
+      }
+    }
+    return null;
+  }
+
+  public void testSameAsLinear() throws Exception
+  {
+    UrlMatcherList list = new UrlMatcherList(matchers);
+    String[] urls = {
+      "http://www.example.com/wiki/Special:Random",
+      "http://www.example.com/wiki/Main_Page",
+      "http://www.example.com/wiki/logo.gif",
+      "http://www.example.com/archive/2010.html",
+      "http://docs.example.com/docs/index.html",
+      "http://docs.example.com/other/index.html",
+      "http://www.example.com/",
+      "http://www.example.org/",
+      "file:///home/regain/doc.pdf",
+      ""
+    };
+    for (int i = 0; i < urls.length; i++) {
+      assertSame(urls[i], firstMatch(urls[i]), list.getFirstMatch(urls[i]));
+      assertEquals(urls[i], firstMatch(urls[i]) != null, list.matches(urls[i]));
+    }
+  }
+
+  public void testEmpty() throws Exception
+  {
+    UrlMatcherList list = new UrlMatcherList(new UrlMatcher[0]);
+    assertNull(list.getFirstMatch("http://www.example.com/"));
+    assertFalse(list.matches("http://www.example.com/"));
+  }
+
+}
@@ -46,9 +46,14 @@
         </td>
       </tr>
 
+      <tr><td colspan="2" class="hitDetails">
+          <search:msg key="facets"/>: <search:facet field="mimetype" targetPage="search.jsp"/>
+      </td></tr>
+
       <tr><td colspan="2"> <br/> </td></tr>
 
-      <search:list msgNoResults="<tr><td colspan='2'>{msg:noResultsFound}<br/><br/></td></tr>">
+      <search:list msgNoResults="<tr><td colspan='2'>{msg:noResultsFound}<br/><br/></td></tr>"
+                   msgPartialResults="<tr><td colspan='2'>{msg:partialResults}<br/><br/></td></tr>">
         <tr><td colspan="2">
             <search:hit_typeicon imgpath="img/ext"/> <search:hit_link/>
             <span class="hitDetails">